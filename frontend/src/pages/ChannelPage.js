@@ -1,4 +1,4 @@
-import React, {useEffect, useState} from "react";
+import React, {useEffect, useRef, useState} from "react";
 import {useNavigate, useParams} from "react-router-dom";
 import axios from "axios";
 import "../styles/ChannelPage.css";
@@ -16,6 +16,11 @@ const ChannelPage = () => {
   const [notifChannels, setNotifChannels] = useState(new Set());
   const [lastMessageID, setLastMessageID] = useState(null);
   const [justSentMessage, setJustSentMessage] = useState(false);
+  const syncRef = useRef(null); // Change feed position of the loaded channel ({channel, seq})
+  const socketRef = useRef(null); // WebSocket pushing channel events
+  const syncChannelRef = useRef(null); // Latest syncChannel, called from the socket handlers
+  const [olderCursor, setOlderCursor] = useState(null); // Cursor of the oldest loaded page ({before, hasOlder})
+  const olderChannelRef = useRef(null); // Channel whose older pages were loaded, kept when its newest page is reloaded
 
   // Getting current user and check if they are admin
   const getUserData = async () => {
@@ -50,13 +55,53 @@ const ChannelPage = () => {
     // Get logged user data when the page is loaded
     getUserData();
     // Get all channel data from the backend when the channel changes
-    // Poll for new messages every 5 seconds
+    // Then poll the channel's change feed every 5 seconds
     getChannelData();
 
-    const interval = setInterval(getChannelData, 5000);
+    // Events are pushed through the WebSocket, polling is only a fallback while it is down
+    const interval = setInterval(() => {
+      if (socketRef.current && socketRef.current.readyState === WebSocket.OPEN) {
+        return;
+      }
+      syncChannel();
+    }, 5000);
     return () => clearInterval(interval); // Cleanup on unmount
   }, [rawChannelName]);
 
+  useEffect(() => {
+    // Open the push connection once, it is subscribed to all the channels of the user
+    let socket;
+    let retry;
+    let closed = false;
+    const connect = () => {
+      socket = new WebSocket("ws://localhost:8080/ws/channels");
+      socketRef.current = socket;
+      socket.onopen = () => syncChannelRef.current(); // Catch up on what was missed while disconnected
+      socket.onmessage = (msg) => {
+        const data = JSON.parse(msg.data);
+        if (data.type !== "event") {
+          return;
+        }
+        if (data.event.channelName === syncRef.current?.channel) {
+          syncChannelRef.current();
+        } else if (data.event.type === "MESSAGE_CREATED") {
+          setNotifChannels((prevNotifChannel) => new Set(prevNotifChannel).add(data.event.channelName));
+        }
+      };
+      socket.onclose = () => {
+        if (!closed) {
+          retry = setTimeout(connect, 5000);
+        }
+      };
+    };
+    connect();
+    return () => {
+      closed = true;
+      clearTimeout(retry);
+      socket.close();
+    };
+  }, []);
+
   useEffect(() => {
     //Update channel type state when the channel changes
     const currentChannel = channels.find((channel) => channel.name === rawChannelName);
@@ -81,12 +126,23 @@ const ChannelPage = () => {
   const getChannelData = async (targetChannel = rawChannelName) => {
     try {
       const response = await axios.get(`http://localhost:8080/api/channel/${targetChannel}`, {withCredentials: true});
-      setMessages(response.data.messages);
+      // Each sender is sent once in "senders", put it back on its messages like in the pushed events
+      const {messages, senders, cursor} = response.data;
+      const page = messages.map((msg) => ({...msg, sender: senders[msg.senderId]}));
+      if (olderChannelRef.current === targetChannel && page.length > 0) {
+        // Reloading the channel only replaces the newest page, the older pages loaded before stay
+        setMessages((prevMessages) => [...prevMessages.filter((msg) => msg.id < page[0].id), ...page]);
+      } else {
+        olderChannelRef.current = null;
+        setMessages(page);
+        setOlderCursor(cursor);
+      }
       setUsers(response.data.users);
       setChannels(response.data.channels);
       setLastMessageID(response.data.lastMessageID);
+      syncRef.current = {channel: targetChannel, seq: response.data.seq};
       console.log("last seen message (id) by the user was: " + response.data.lastMessageID);
-      
+
     } catch (err) {
       console.error("Error fetching channel data:", err);
       if (err.response && err.response.status === 403) {
@@ -96,6 +152,67 @@ const ChannelPage = () => {
     }
   };
 
+  // Load the page before the oldest loaded message, returns whether any was loaded
+  const loadOlderMessages = async () => {
+    if (!olderCursor || !olderCursor.hasOlder) {
+      return false;
+    }
+    try {
+      const response = await axios.get(`http://localhost:8080/api/channel/${rawChannelName}/messages?before=${olderCursor.before}`, {withCredentials: true});
+      const {messages, senders, cursor} = response.data;
+      const older = messages.map((msg) => ({...msg, sender: senders[msg.senderId]}));
+      setMessages((prevMessages) => {
+        const known = new Set(prevMessages.map((msg) => msg.id));
+        return [...older.filter((msg) => !known.has(msg.id)), ...prevMessages];
+      });
+      setOlderCursor(cursor);
+      olderChannelRef.current = rawChannelName;
+      return true;
+    } catch (err) {
+      console.error("Error loading older messages:", err);
+      return false;
+    }
+  };
+
+  // Apply only the changes since the last sync instead of reloading the whole channel
+  const syncChannel = async () => {
+    const sync = syncRef.current;
+    if (!sync || sync.channel !== rawChannelName) {
+      return getChannelData();
+    }
+    try {
+      const response = await axios.get(`http://localhost:8080/api/channel/${rawChannelName}/events?since=${sync.seq}`, {withCredentials: true});
+      const {events, senders, seq, hasMore, resync} = response.data;
+
+      // Missed events or a member list change, reload everything once
+      if (resync || events.some((event) => event.type === "MEMBERSHIP_CHANGED")) {
+        return getChannelData();
+      }
+
+      const created = events.filter((event) => event.type === "MESSAGE_CREATED" && event.message).map((event) => ({...event.message, sender: senders[event.message.senderId]}));
+      const deleted = new Set(events.filter((event) => event.type === "MESSAGE_DELETED").map((event) => event.messageId));
+      if (created.length > 0 || deleted.size > 0) {
+        setMessages((prevMessages) => {
+          const kept = prevMessages.filter((msg) => !deleted.has(msg.id));
+          const known = new Set(kept.map((msg) => msg.id));
+          return [...kept, ...created.filter((msg) => !known.has(msg.id))];
+        });
+      }
+
+      syncRef.current = {channel: rawChannelName, seq};
+      if (hasMore) {
+        await syncChannel();
+      }
+    } catch (err) {
+      console.error("Error syncing channel:", err);
+      if (err.response && err.response.status === 403) {
+        getChannelData();
+      }
+    }
+  };
+
+  syncChannelRef.current = syncChannel;
+
   const handleLogout = async () => {
     try {
       await axios.post("http://localhost:8080/api/auth/logout", null, {
@@ -187,6 +304,8 @@ const ChannelPage = () => {
     </div>
 
     <Channel messages={messages}
+      hasOlder={olderCursor !== null && olderCursor.hasOlder}
+      loadOlderMessages={loadOlderMessages}
       newMessage={newMessage}
       setNewMessage={setNewMessage}
       handleSendMessage={handleSendMessage}
@@ -568,6 +687,8 @@ function UserDMButton({user, index, loggedUser, createNewDM}) {
 
 function Channel({
   messages,
+  hasOlder,
+  loadOlderMessages,
   newMessage,
   setNewMessage,
   handleSendMessage,
@@ -583,6 +704,8 @@ function Channel({
     <ChannelLogo channelName={channelName}/>
     <Messages
       messages={messages}
+      hasOlder={hasOlder}
+      loadOlderMessages={loadOlderMessages}
       channelName={channelName}
       handleDeleteMessage={handleDeleteMessage}
       isAdmin={isAdmin}
@@ -607,6 +730,8 @@ function ChannelLogo({channelName}) {
 
 function Messages({
   messages,
+  hasOlder,
+  loadOlderMessages,
   channelName,
   handleDeleteMessage,
   isAdmin,
@@ -616,11 +741,30 @@ function Messages({
   setNotifChannels,
 }) {
   const messagesEndRef = React.useRef(null);
+  const containerRef = React.useRef(null);
+  const scrollFromBottomRef = React.useRef(null); // Set while older messages load, so the view stays on the same message
 
   React.useEffect(() => {
     messagesEndRef.current?.scrollIntoView({behavior: "smooth"});
   }, [channelName]);
 
+  React.useLayoutEffect(() => {
+    const container = containerRef.current;
+    if (container && scrollFromBottomRef.current !== null) {
+      container.scrollTop = container.scrollHeight - scrollFromBottomRef.current;
+      scrollFromBottomRef.current = null;
+    }
+  }, [messages]);
+
+  const handleLoadOlder = async (e) => {
+    e.stopPropagation(); // Loading history doesn't mark the channel as read
+    const container = containerRef.current;
+    scrollFromBottomRef.current = container.scrollHeight - container.scrollTop;
+    if (!(await loadOlderMessages())) {
+      scrollFromBottomRef.current = null;
+    }
+  };
+
   const handleMessageClick = () => {
     if (messages.length === 0) {
       return;
@@ -640,7 +784,10 @@ function Messages({
       return updatedNotifChannel;
     });
   };
-  return (<div className="message-container" onClick={handleMessageClick}>
+  return (<div className="message-container" ref={containerRef} onClick={handleMessageClick}>
+    {hasOlder && (<button className="load-older-button" onClick={handleLoadOlder}>
+        Load older messages
+    </button>)}
     {messages.map((msg, index) => (<div key={msg.id}>
       <Message
         key={msg.id}
@@ -882,7 +1029,7 @@ function UserSearch({active, loggedUser}) {
   };
   const handleSearch = async () => {
     try {
-      const response = await axios.get(`http://localhost:8080/api/channel/users/search?query=${searchQuery}`, {
+      const response = await axios.get(`http://localhost:8080/api/channel/users/search?query=${encodeURIComponent(searchQuery)}`, {
         withCredentials: true,
       });
       setSearchResults(response.data);
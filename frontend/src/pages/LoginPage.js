@@ -29,7 +29,8 @@ const LoginPage = () => {
         navigate("/channel/General"); // Redirect to the General channel
       }
     } catch (err) {
-      setError("Invalid username or password");
+      // 503 when the server is busy checking other passwords, it asks to try again
+      setError(err.response?.status === 503 ? err.response.data.error : "Invalid username or password");
     }
   };
 
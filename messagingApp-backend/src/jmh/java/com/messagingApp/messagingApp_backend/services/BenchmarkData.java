@@ -0,0 +1,46 @@
+package com.messagingApp.messagingApp_backend.services;
+
+import com.messagingApp.messagingApp_backend.models.Channel;
+import com.messagingApp.messagingApp_backend.models.Message;
+import com.messagingApp.messagingApp_backend.models.User;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+// Fixed test data for the benchmarks, the same on every run so results can be compared between runs
+final class BenchmarkData {
+
+    static final long EPOCH_MILLIS = 1_700_000_000_000L;
+    static final LocalDateTime START = LocalDateTime.ofEpochSecond(EPOCH_MILLIS / 1000, 0, ZoneOffset.UTC);
+
+    static List<Channel> channels(int count) {
+        List<Channel> channels = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            channels.add(new Channel(i == 0 ? "General" : "Channel " + i, i % 5 == 4 ? Channel.ChannelType.DM : Channel.ChannelType.PC));
+        }
+        return channels;
+    }
+
+    static List<User> users(int count) {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            users.add(new User("user" + i, null, i % 20 == 0 ? User.UserRole.ADMIN : User.UserRole.MEMBER));
+        }
+        return users;
+    }
+
+    // Messages of the General channel, oldest first, with a text length typical of a chat message
+    static List<Message> messages(int count, int senders) {
+        List<Message> messages = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            User sender = new User("user" + (i % senders), null, i % senders == 0 ? User.UserRole.ADMIN : User.UserRole.MEMBER);
+            messages.add(new Message(i, "Message number " + i + ", did anyone look at the build failure from this morning?", sender, new Channel("General", null), START.plusSeconds(i)));
+        }
+        return messages;
+    }
+
+    private BenchmarkData() {
+    }
+}
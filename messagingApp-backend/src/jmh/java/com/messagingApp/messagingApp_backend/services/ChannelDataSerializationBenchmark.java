@@ -0,0 +1,94 @@
+package com.messagingApp.messagingApp_backend.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.messagingApp.messagingApp_backend.config.BinaryFormatsConfig;
+import com.messagingApp.messagingApp_backend.dto.ChannelDto;
+import com.messagingApp.messagingApp_backend.dto.MessagePageDto;
+import com.messagingApp.messagingApp_backend.dto.UserDto;
+import com.messagingApp.messagingApp_backend.models.Message;
+import com.messagingApp.messagingApp_backend.models.MessagePage;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Jackson serialization of the GET /api/channel/{channelName} response, built the same way as in ChannelController
+// small is a team channel, large a busy one with many members and a user in many channels
+// format is the encoding negotiated with the Accept header, readFromBytes is the client decoding it
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class ChannelDataSerializationBenchmark {
+
+    @Param({"small", "large"})
+    private String size;
+
+    @Param({"json", "cbor", "smile"})
+    private String format;
+
+    private ObjectMapper objectMapper;
+    private Map<String, Object> response;
+    private byte[] encoded;
+    // Discards the bytes, unlike OutputStream.nullOutputStream() it can't be closed, writeValue closes its target
+    private final OutputStream sink = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    @Setup
+    public void setup() {
+        // Same defaults as the ObjectMapper Spring Boot gives the controllers, and as the binary converters
+        objectMapper = switch (format) {
+            case "cbor" -> BinaryFormatsConfig.binaryObjectMapper(Jackson2ObjectMapperBuilder.json(), new CBORFactory());
+            case "smile" -> BinaryFormatsConfig.binaryObjectMapper(Jackson2ObjectMapperBuilder.json(), new SmileFactory());
+            default -> Jackson2ObjectMapperBuilder.json().build();
+        };
+
+        boolean large = size.equals("large");
+        int users = large ? 500 : 12;
+        List<Message> messages = BenchmarkData.messages(ChannelService.DEFAULT_PAGE_SIZE, users);
+        MessagePageDto page = MessagePageDto.from(new MessagePage(messages, true, false));
+        response = Map.of("channels", ChannelDto.fromAll(BenchmarkData.channels(large ? 60 : 6)),
+            "users", UserDto.fromAll(BenchmarkData.users(users)),
+            "messages", page.getMessages(),
+            "senders", page.getSenders(),
+            "cursor", page.getCursor(),
+            "lastMessageID", 40L,
+            "seq", 1234L);
+        try {
+            encoded = objectMapper.writeValueAsBytes(response);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Benchmark
+    public void writeToStream() throws IOException {
+        objectMapper.writeValue(sink, response);
+    }
+
+    @Benchmark
+    public byte[] writeToBytes() throws IOException {
+        return objectMapper.writeValueAsBytes(response);
+    }
+
+    @Benchmark
+    public JsonNode readFromBytes() throws IOException {
+        return objectMapper.readTree(encoded);
+    }
+}
@@ -0,0 +1,61 @@
+package com.messagingApp.messagingApp_backend.services;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+// Time to get a usable connection, a new physical connection per call (how ServiceUtility worked before the pool)
+// against borrowing one from the Hikari pool. Runs against an embedded PostgreSQL, no database has to be set up
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class ConnectionAcquireBenchmark {
+
+    private EmbeddedPostgres postgres;
+    private HikariDataSource pool;
+    private String url;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        postgres = EmbeddedPostgres.start();
+        url = postgres.getJdbcUrl("postgres", "postgres");
+
+        // Same settings as spring.datasource.hikari.* in application.properties
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(url);
+        config.setMaximumPoolSize(10);
+        config.setMinimumIdle(2);
+        config.setConnectionTimeout(5000);
+        pool = new HikariDataSource(config);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        pool.close();
+        postgres.close();
+    }
+
+    @Benchmark
+    public boolean driverManager() throws SQLException {
+        try (Connection connection = DriverManager.getConnection(url)) {
+            return connection.isValid(1);
+        }
+    }
+
+    @Benchmark
+    public boolean pooled() throws SQLException {
+        try (Connection connection = pool.getConnection()) {
+            return connection.isValid(1);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.messagingApp.messagingApp_backend.services;
+
+import com.messagingApp.messagingApp_backend.models.Channel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// The membership and channel existence checks done on every channel request, served from memory once loaded
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class MembershipBenchmark {
+
+    private MembershipCache membershipCache;
+    private ChannelCatalog channelCatalog;
+    private List<Channel> channels;
+
+    @Setup
+    public void setup() {
+        channels = BenchmarkData.channels(50);
+        membershipCache = new MembershipCache(new SimpleMeterRegistry(), Long.MAX_VALUE, 10000);
+        channelCatalog = new ChannelCatalog();
+        for (int i = 0; i < 1000; i++) {
+            membershipCache.getChannels("user" + i, username -> channels);
+        }
+        channelCatalog.exists("General", () -> channels);
+    }
+
+    @Benchmark
+    public boolean isMember() {
+        return membershipCache.isMember("user500", "Channel 25", username -> channels);
+    }
+
+    @Benchmark
+    public boolean isNotMember() {
+        return membershipCache.isMember("user500", "Unknown", username -> channels);
+    }
+
+    // Several request threads checking at once, the cache is synchronized
+    @Benchmark
+    @Threads(4)
+    public boolean isMemberContended() {
+        return membershipCache.isMember("user500", "Channel 25", username -> channels);
+    }
+
+    @Benchmark
+    public boolean channelExists() {
+        return channelCatalog.exists("Channel 25", () -> channels);
+    }
+}
@@ -0,0 +1,48 @@
+package com.messagingApp.messagingApp_backend.services;
+
+import com.messagingApp.messagingApp_backend.models.Channel;
+import com.messagingApp.messagingApp_backend.models.Message;
+import com.messagingApp.messagingApp_backend.models.User;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+// Cost of the model objects built for every message read, with new or shared (ModelRegistry) senders and channels
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class ModelBuildingBenchmark {
+
+    // Read from fields so the JIT can't fold the values into constants
+    private long id = 42;
+    private String text = "Did anyone look at the build failure from this morning?";
+    private String username = "user7";
+    private String role = "MEMBER";
+    private String channelName = "General";
+    private String channelType = "PC";
+    private LocalDateTime timestamp = BenchmarkData.START;
+
+    @Benchmark
+    public User user() {
+        return new User(username, null, User.UserRole.valueOf(role));
+    }
+
+    @Benchmark
+    public Channel channel() {
+        return new Channel(channelName, Channel.ChannelType.valueOf(channelType));
+    }
+
+    @Benchmark
+    public Message message() {
+        return new Message(id, text, new User(username, null, User.UserRole.valueOf(role)), new Channel(channelName, null), timestamp);
+    }
+
+    @Benchmark
+    public Message sharedMessage() {
+        return new Message(id, text, ModelRegistry.user(username, User.UserRole.valueOf(role)), ModelRegistry.channel(channelName, null), timestamp);
+    }
+}
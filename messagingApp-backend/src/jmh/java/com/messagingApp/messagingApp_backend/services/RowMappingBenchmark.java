@@ -0,0 +1,88 @@
+package com.messagingApp.messagingApp_backend.services;
+
+import com.messagingApp.messagingApp_backend.models.Channel;
+import com.messagingApp.messagingApp_backend.models.Message;
+import com.messagingApp.messagingApp_backend.models.User;
+import org.openjdk.jmh.annotations.*;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetMetaDataImpl;
+import javax.sql.rowset.RowSetProvider;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Compares the map per row path with the row mappers on an in-memory result set shaped like the message queries
+// Run with -prof gc to see the bytes allocated per operation
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class RowMappingBenchmark {
+
+    @Param({"50", "1000"})
+    private int rows;
+
+    private CachedRowSet resultSet;
+
+    @Setup
+    public void setup() throws SQLException {
+        RowSetMetaDataImpl metaData = new RowSetMetaDataImpl();
+        metaData.setColumnCount(6);
+        String[] names = {"id", "text", "date_time", "channel_name", "username", "role"};
+        int[] types = {Types.BIGINT, Types.VARCHAR, Types.TIMESTAMP, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR};
+        for (int i = 0; i < names.length; i++) {
+            metaData.setColumnName(i + 1, names[i]);
+            metaData.setColumnLabel(i + 1, names[i]);
+            metaData.setColumnType(i + 1, types[i]);
+        }
+
+        resultSet = RowSetProvider.newFactory().createCachedRowSet();
+        resultSet.setMetaData(metaData);
+        for (int id = 1; id <= rows; id++) {
+            resultSet.moveToInsertRow();
+            resultSet.updateLong(1, id);
+            resultSet.updateString(2, "Message number " + id + " in the general channel");
+            resultSet.updateTimestamp(3, new Timestamp(BenchmarkData.EPOCH_MILLIS + id * 1000L));
+            resultSet.updateString(4, "General");
+            resultSet.updateString(5, "user" + (id % 20));
+            resultSet.updateString(6, id % 20 == 0 ? "ADMIN" : "MEMBER");
+            resultSet.insertRow();
+            resultSet.moveToCurrentRow();
+        }
+    }
+
+    // What ChannelService did before the row mappers: a map per row, then casts out of the map
+    @Benchmark
+    public List<Message> mapPerRow() throws SQLException {
+        resultSet.beforeFirst();
+        List<Map<String, Object>> result = new ArrayList<>();
+        ServiceUtility.readRows(resultSet, result);
+
+        List<Message> messages = new ArrayList<>();
+        for (Map<String, Object> row : result) {
+            User sender = new User((String) row.get("username"), null, User.UserRole.valueOf((String) row.get("role")));
+            messages.add(new Message(((Number) row.get("id")).longValue(), (String) row.get("text"), sender, new Channel((String) row.get("channel_name"), null),
+                ((Timestamp) row.get("date_time")).toLocalDateTime()));
+        }
+        return messages;
+    }
+
+    @Benchmark
+    public List<Message> rowMapper() throws SQLException {
+        resultSet.beforeFirst();
+        RowMapper.Reader<Message> reader = RowMappers.MESSAGE.bind(resultSet);
+
+        List<Message> messages = new ArrayList<>();
+        while (resultSet.next()) {
+            messages.add(reader.read(resultSet));
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,159 @@
+package com.messagingApp.messagingApp_backend.load;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.messagingApp.messagingApp_backend.load.LoadReport.Endpoint;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+// One simulated user: logs in, then loops over the actions of the mix like the frontend does while a channel is open
+// Each client keeps its own session cookie, the HTTP client and its connections are shared
+class LoadClient implements Runnable {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final HttpClient httpClient;
+    private final String baseUrl;
+    private final String username;
+    private final LoadMix mix;
+    private final long thinkMillis;
+    private final LoadReport report;
+    private final Random random;
+    private volatile boolean running = true;
+
+    private String sessionCookie;
+    private final List<String> channels = new ArrayList<>(List.of("General"));
+    private String currentChannel = "General";
+    private long lastMessageId;
+
+    LoadClient(HttpClient httpClient, String baseUrl, String username, LoadMix mix, long thinkMillis, LoadReport report, long seed) {
+        this.httpClient = httpClient;
+        this.baseUrl = baseUrl;
+        this.username = username;
+        this.mix = mix;
+        this.thinkMillis = thinkMillis;
+        this.report = report;
+        this.random = new Random(seed);
+    }
+
+    void stop() {
+        running = false;
+    }
+
+    @Override
+    public void run() {
+        try {
+            login();
+            // Spread the clients so they don't all poll in step
+            Thread.sleep(random.nextInt((int) Math.max(1, thinkMillis)));
+            while (running) {
+                switch (mix.next(random)) {
+                    case GET_CHANNEL_DATA -> getChannelData();
+                    case SEND_MESSAGE -> sendMessage();
+                    case GET_UNREAD_CHANNELS -> getUnreadChannels();
+                    case UPDATE_LAST_SEEN -> updateLastSeen();
+                }
+                if (thinkMillis > 0) {
+                    // Exponential think time around the mean, like users acting independently
+                    Thread.sleep((long) (-Math.log(1 - random.nextDouble()) * thinkMillis));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.err.println("Client " + username + " stopped: " + e.getMessage());
+        }
+    }
+
+    private void login() throws IOException, InterruptedException {
+        String body = objectMapper.writeValueAsString(Map.of("username", username, "password", LoadSeeder.PASSWORD));
+        HttpResponse<String> response = httpClient.send(post("/api/auth/login", body), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IOException("Login failed with status " + response.statusCode());
+        }
+        sessionCookie = response.headers().firstValue("Set-Cookie").map(cookie -> cookie.split(";", 2)[0])
+            .orElseThrow(() -> new IOException("No session cookie"));
+    }
+
+    private void getChannelData() throws IOException, InterruptedException {
+        // Mostly the open channel, sometimes switch to another one of the user's channels
+        if (random.nextInt(10) == 0) {
+            currentChannel = channels.get(random.nextInt(channels.size()));
+        }
+        long start = System.nanoTime();
+        HttpResponse<String> response = send(get("/api/channel/" + encode(currentChannel)));
+        boolean ok = response != null && response.statusCode() == 200;
+        report.record(Endpoint.GET_CHANNEL_DATA, start, ok);
+        if (!ok) {
+            return;
+        }
+
+        JsonNode data = objectMapper.readTree(response.body());
+        channels.clear();
+        for (JsonNode channel : data.get("channels")) {
+            channels.add(channel.get("name").asText());
+        }
+        JsonNode messages = data.get("messages");
+        lastMessageId = messages.isEmpty() ? 0 : messages.get(messages.size() - 1).get("id").asLong();
+    }
+
+    private void sendMessage() throws IOException, InterruptedException {
+        String body = objectMapper.writeValueAsString(Map.of("content", "Load test message from " + username + " " + random.nextInt(1_000_000)));
+        long start = System.nanoTime();
+        HttpResponse<String> response = send(post("/api/channel/" + encode(currentChannel) + "/sendMessage", body));
+        report.record(Endpoint.SEND_MESSAGE, start, response != null && response.statusCode() == 200);
+    }
+
+    private void getUnreadChannels() throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        HttpResponse<String> response = send(get("/api/channel/getUnreadChannels"));
+        report.record(Endpoint.GET_UNREAD_CHANNELS, start, response != null && response.statusCode() == 200);
+    }
+
+    private void updateLastSeen() throws IOException, InterruptedException {
+        String body = objectMapper.writeValueAsString(Map.of("lastSeenMessageID", lastMessageId));
+        long start = System.nanoTime();
+        HttpResponse<String> response = send(post("/api/channel/" + encode(currentChannel) + "/updateLastSeenMessage", body));
+        report.record(Endpoint.UPDATE_LAST_SEEN, start, response != null && response.statusCode() == 200);
+    }
+
+    // Null when the request failed without a response, counted as an error
+    private HttpResponse<String> send(HttpRequest request) throws InterruptedException {
+        try {
+            return httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private HttpRequest get(String path) {
+        return request(path).GET().build();
+    }
+
+    private HttpRequest post(String path, String json) {
+        return request(path).header("Content-Type", "application/json").POST(HttpRequest.BodyPublishers.ofString(json)).build();
+    }
+
+    private HttpRequest.Builder request(String path) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(baseUrl + path)).timeout(Duration.ofSeconds(30));
+        if (sessionCookie != null) {
+            builder.header("Cookie", sessionCookie);
+        }
+        return builder;
+    }
+
+    private static String encode(String channelName) {
+        return URLEncoder.encode(channelName, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+}
@@ -0,0 +1,95 @@
+package com.messagingApp.messagingApp_backend.load;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedThread;
+import jdk.jfr.consumer.RecordingStream;
+
+import java.io.PrintStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Time the request threads spend blocked on contended monitors (synchronized), from the JFR jdk.JavaMonitorEnter events
+// Enabled with contention=true, shows for example request threads queueing on the System.out lock
+class LoadContention implements AutoCloseable {
+
+    private final RecordingStream stream = new RecordingStream();
+    private final Map<String, Contention> byMonitor = new ConcurrentHashMap<>(); // Updated by the stream thread only
+    private volatile Instant windowStart = Instant.MAX;
+    private volatile Instant windowEnd = Instant.MAX;
+    private volatile Instant lastFlush = Instant.MIN;
+
+    LoadContention() {
+        // Only contended entries are recorded, a zero threshold counts all of them
+        stream.enable("jdk.JavaMonitorEnter").withThreshold(Duration.ZERO).withStackTrace();
+        stream.onEvent("jdk.JavaMonitorEnter", this::onEvent);
+        stream.onFlush(() -> lastFlush = Instant.now());
+        stream.startAsync();
+    }
+
+    void startRecording() {
+        byMonitor.clear();
+        windowEnd = Instant.MAX;
+        windowStart = Instant.now();
+    }
+
+    void stopRecording() {
+        windowEnd = Instant.now();
+    }
+
+    private void onEvent(RecordedEvent event) {
+        RecordedThread thread = event.getThread();
+        if (thread == null || thread.getJavaName() == null || !thread.getJavaName().startsWith("http-nio")) {
+            return; // Not a request thread
+        }
+        if (event.getStartTime().isBefore(windowStart) || event.getStartTime().isAfter(windowEnd)) {
+            return;
+        }
+        String monitor = event.getClass("monitorClass").getName();
+        List<RecordedFrame> frames = event.getStackTrace() != null ? event.getStackTrace().getFrames() : List.of();
+        String site = frames.isEmpty() ? "?" : frames.get(0).getMethod().getType().getName() + "." + frames.get(0).getMethod().getName();
+        Contention contention = byMonitor.computeIfAbsent(monitor + " in " + site, key -> new Contention());
+        contention.count++;
+        contention.nanos += event.getDuration().toNanos();
+    }
+
+    void print(PrintStream out) {
+        // Events reach the stream about once a second, wait for the ones of the measured window
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (!lastFlush.isAfter(windowEnd) && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+
+        List<Map.Entry<String, Contention>> entries = new ArrayList<>(byMonitor.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue().nanos, a.getValue().nanos));
+        long count = 0;
+        long nanos = 0;
+        for (Map.Entry<String, Contention> entry : entries) {
+            count += entry.getValue().count;
+            nanos += entry.getValue().nanos;
+        }
+        out.printf("Monitor contention on request threads: %d waits, %.1f ms blocked%n", count, nanos / 1e6);
+        for (Map.Entry<String, Contention> entry : entries.subList(0, Math.min(5, entries.size()))) {
+            out.printf("  %8d waits %10.1f ms  %s%n", entry.getValue().count, entry.getValue().nanos / 1e6, entry.getKey());
+        }
+    }
+
+    @Override
+    public void close() {
+        stream.close();
+    }
+
+    private static class Contention {
+        private long count;
+        private long nanos;
+    }
+}
@@ -0,0 +1,54 @@
+package com.messagingApp.messagingApp_backend.load;
+
+import com.messagingApp.messagingApp_backend.load.LoadReport.Endpoint;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
+// Weighted choice of the next action of a client, parsed from e.g. "channel=70,unread=15,seen=10,send=5"
+class LoadMix {
+
+    private static final Map<String, Endpoint> NAMES = Map.of(
+        "channel", Endpoint.GET_CHANNEL_DATA,
+        "send", Endpoint.SEND_MESSAGE,
+        "unread", Endpoint.GET_UNREAD_CHANNELS,
+        "seen", Endpoint.UPDATE_LAST_SEEN);
+
+    private final Map<Endpoint, Integer> weights = new EnumMap<>(Endpoint.class);
+    private final int total;
+
+    LoadMix(String spec) {
+        int sum = 0;
+        for (String part : spec.split(",")) {
+            String[] entry = part.trim().split("=");
+            Endpoint endpoint = NAMES.get(entry[0]);
+            if (endpoint == null || entry.length != 2) {
+                throw new IllegalArgumentException("Unknown mix entry " + part + ", expected one of " + NAMES.keySet());
+            }
+            int weight = Integer.parseInt(entry[1]);
+            weights.put(endpoint, weight);
+            sum += weight;
+        }
+        if (sum <= 0) {
+            throw new IllegalArgumentException("The mix needs at least one positive weight");
+        }
+        this.total = sum;
+    }
+
+    Endpoint next(Random random) {
+        int pick = random.nextInt(total);
+        for (Map.Entry<Endpoint, Integer> entry : weights.entrySet()) {
+            pick -= entry.getValue();
+            if (pick < 0) {
+                return entry.getKey();
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    @Override
+    public String toString() {
+        return weights.toString();
+    }
+}
@@ -0,0 +1,78 @@
+package com.messagingApp.messagingApp_backend.load;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.PrintStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Latency and error counts per endpoint for one step of the load test
+class LoadReport {
+
+    enum Endpoint {
+        GET_CHANNEL_DATA("GET  /api/channel/{name}"),
+        SEND_MESSAGE("POST /api/channel/{name}/sendMessage"),
+        GET_UNREAD_CHANNELS("GET  /api/channel/getUnreadChannels"),
+        UPDATE_LAST_SEEN("POST /api/channel/{name}/updateLastSeenMessage");
+
+        private final String label;
+
+        Endpoint(String label) {
+            this.label = label;
+        }
+    }
+
+    private final Map<Endpoint, ConcurrentHistogram> latencies = new EnumMap<>(Endpoint.class);
+    private final Map<Endpoint, LongAdder> errors = new EnumMap<>(Endpoint.class);
+    private volatile boolean recording; // Off during the warmup
+
+    LoadReport() {
+        for (Endpoint endpoint : Endpoint.values()) {
+            // Microseconds, up to one minute, 3 significant digits
+            latencies.put(endpoint, new ConcurrentHistogram(TimeUnit.MINUTES.toMicros(1), 3));
+            errors.put(endpoint, new LongAdder());
+        }
+    }
+
+    void startRecording() {
+        recording = true;
+    }
+
+    void stopRecording() {
+        recording = false;
+    }
+
+    void record(Endpoint endpoint, long startNanos, boolean success) {
+        if (!recording) {
+            return;
+        }
+        long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+        latencies.get(endpoint).recordValue(Math.min(micros, latencies.get(endpoint).getHighestTrackableValue()));
+        if (!success) {
+            errors.get(endpoint).increment();
+        }
+    }
+
+    void print(PrintStream out, int clients, double seconds) {
+        out.printf("%n%d clients, %.0f s measured%n", clients, seconds);
+        out.printf("%-45s %10s %9s %8s %9s %9s %9s %9s%n", "endpoint", "requests", "req/s", "errors", "p50 ms", "p95 ms", "p99 ms", "max ms");
+
+        long total = 0;
+        for (Endpoint endpoint : Endpoint.values()) {
+            Histogram histogram = latencies.get(endpoint);
+            long count = histogram.getTotalCount();
+            total += count;
+            out.printf("%-45s %10d %9.1f %8d %9.2f %9.2f %9.2f %9.2f%n", endpoint.label, count, count / seconds, errors.get(endpoint).sum(),
+                millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(95)),
+                millis(histogram.getValueAtPercentile(99)), millis(histogram.getMaxValue()));
+        }
+        out.printf("%-45s %10d %9.1f%n", "total", total, total / seconds);
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+}
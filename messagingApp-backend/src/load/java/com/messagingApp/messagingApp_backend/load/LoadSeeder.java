@@ -0,0 +1,120 @@
+package com.messagingApp.messagingApp_backend.load;
+
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+// Creates the schema and fills the load test database
+// Every user is in General and in channelsPerUser other channels, the messages are spread over all channels
+class LoadSeeder {
+
+    static final String PASSWORD = "password";
+    private static final int BATCH_SIZE = 1000;
+
+    private final DataSource dataSource;
+    private final Random random = new Random(42); // Same data on every run
+
+    LoadSeeder(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    void createSchema() throws SQLException, IOException {
+        try (Connection connection = dataSource.getConnection()) {
+            PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
+            ScriptUtils.executeSqlScript(connection, resolver.getResource("classpath:load-schema.sql"));
+
+            // The database scripts of the application, in numeric order
+            Resource[] scripts = resolver.getResources("classpath:db/*.sql");
+            Arrays.sort(scripts, Comparator.comparing(Resource::getFilename));
+            for (Resource script : scripts) {
+                ScriptUtils.executeSqlScript(connection, script);
+            }
+        }
+    }
+
+    static String username(int index) {
+        return "user" + index;
+    }
+
+    static String channelName(int index) {
+        return index == 0 ? "General" : "channel-" + index;
+    }
+
+    void seed(int users, int channels, int channelsPerUser, int messages) throws SQLException {
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < users; i++) {
+            rows.add(new Object[]{username(i), PASSWORD, i % 50 == 0 ? "ADMIN" : "MEMBER"});
+        }
+        insert("INSERT INTO users (username, password, role) VALUES (?, ?, ?)", rows);
+
+        rows.clear();
+        for (int c = 0; c < channels; c++) {
+            rows.add(new Object[]{channelName(c), "PC"});
+        }
+        insert("INSERT INTO channels (name, type) VALUES (?, ?)", rows);
+
+        // Members of each channel, used to pick the senders of its messages
+        List<List<String>> members = new ArrayList<>();
+        for (int c = 0; c < channels; c++) {
+            members.add(new ArrayList<>());
+        }
+        rows.clear();
+        for (int i = 0; i < users; i++) {
+            List<Integer> joined = new ArrayList<>(List.of(0));
+            while (joined.size() < Math.min(channels, channelsPerUser + 1)) {
+                int c = 1 + random.nextInt(channels - 1);
+                if (!joined.contains(c)) {
+                    joined.add(c);
+                }
+            }
+            for (int c : joined) {
+                rows.add(new Object[]{username(i), channelName(c)});
+                members.get(c).add(username(i));
+            }
+        }
+        insert("INSERT INTO user_channel (username, channel_name) VALUES (?, ?)", rows);
+
+        rows.clear();
+        LocalDateTime start = LocalDateTime.now().minusDays(30);
+        for (int m = 0; m < messages; m++) {
+            int c = random.nextInt(channels);
+            List<String> senders = members.get(c);
+            if (senders.isEmpty()) {
+                continue;
+            }
+            String sender = senders.get(random.nextInt(senders.size()));
+            rows.add(new Object[]{"Seeded message " + m + " from " + sender, sender, channelName(c), Timestamp.valueOf(start.plusSeconds(m * 10L))});
+        }
+        insert("INSERT INTO messages (text, username, channel_name, date_time) VALUES (?, ?, ?, ?)", rows);
+    }
+
+    private void insert(String sql, List<Object[]> rows) throws SQLException {
+        try (Connection connection = dataSource.getConnection(); PreparedStatement ps = connection.prepareStatement(sql)) {
+            int pending = 0;
+            for (Object[] row : rows) {
+                for (int i = 0; i < row.length; i++) {
+                    ps.setObject(i + 1, row[i]);
+                }
+                ps.addBatch();
+                if (++pending == BATCH_SIZE) {
+                    ps.executeBatch();
+                    pending = 0;
+                }
+            }
+            ps.executeBatch();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.messagingApp.messagingApp_backend.load;
+
+import com.messagingApp.messagingApp_backend.MessagingAppBackendApplication;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// End-to-end load test: starts the backend against an embedded PostgreSQL, seeds it, then runs steps of simulated clients
+// Run with: mvn -P load-test test-compile exec:exec -Dload.args="clients=50,100,200 duration=30"
+// Options are key=value, arguments starting with -- are passed to Spring Boot (e.g. --spring.datasource.hikari.maximum-pool-size=20)
+public class LoadTest {
+
+    private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+
+    static {
+        DEFAULTS.put("users", "500"); // Seeded users, each client logs in as a different one
+        DEFAULTS.put("channels", "20"); // Seeded channels, General included
+        DEFAULTS.put("channelsPerUser", "3"); // Channels each user is in besides General
+        DEFAULTS.put("messages", "50000"); // Seeded messages, spread over the channels
+        DEFAULTS.put("clients", "25,50,100"); // Concurrent clients of each step
+        DEFAULTS.put("warmup", "10"); // Seconds run before measuring each step
+        DEFAULTS.put("duration", "30"); // Seconds measured in each step
+        DEFAULTS.put("think", "1000"); // Mean pause between two actions of a client in ms, the frontend polls about every second
+        DEFAULTS.put("mix", "channel=60,unread=20,seen=10,send=10"); // Relative weights of the actions
+        DEFAULTS.put("quiet", "true"); // Hide the application's console output, and log at WARN only
+        DEFAULTS.put("contention", "false"); // Report the monitor contention of the request threads (JFR)
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>(DEFAULTS);
+        List<String> springArgs = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                springArgs.add(arg);
+            } else if (arg.contains("=") && DEFAULTS.containsKey(arg.substring(0, arg.indexOf('=')))) {
+                options.put(arg.substring(0, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            } else {
+                throw new IllegalArgumentException("Unknown option " + arg + ", known options: " + DEFAULTS);
+            }
+        }
+
+        int users = Integer.parseInt(options.get("users"));
+        LoadMix mix = new LoadMix(options.get("mix"));
+        List<Integer> steps = new ArrayList<>();
+        for (String step : options.get("clients").split(",")) {
+            int clients = Integer.parseInt(step.trim());
+            if (clients > users) {
+                throw new IllegalArgumentException("A step has " + clients + " clients but only " + users + " users are seeded");
+            }
+            steps.add(clients);
+        }
+
+        PrintStream out = System.out;
+        out.println("Load test options " + options);
+
+        try (EmbeddedPostgres postgres = EmbeddedPostgres.start()) {
+            LoadSeeder seeder = new LoadSeeder(postgres.getPostgresDatabase());
+            seeder.createSchema();
+            long seedStart = System.nanoTime();
+            seeder.seed(users, Integer.parseInt(options.get("channels")), Integer.parseInt(options.get("channelsPerUser")), Integer.parseInt(options.get("messages")));
+            out.printf("Seeded in %.1f s%n", (System.nanoTime() - seedStart) / 1e9);
+
+            if (Boolean.parseBoolean(options.get("quiet"))) {
+                System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            }
+            System.setProperty("spring.devtools.restart.enabled", "false");
+
+            List<String> appArgs = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--spring.datasource.url=" + postgres.getJdbcUrl("postgres", "postgres"),
+                "--spring.datasource.username=postgres",
+                "--spring.datasource.password=postgres",
+                "--spring.sql.init.mode=never"));
+            if (Boolean.parseBoolean(options.get("quiet"))) {
+                appArgs.add("--logging.level.root=WARN");
+            }
+            appArgs.addAll(springArgs);
+
+            try (ConfigurableApplicationContext context = SpringApplication.run(MessagingAppBackendApplication.class, appArgs.toArray(new String[0]))) {
+                String baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+                HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).connectTimeout(Duration.ofSeconds(5)).build();
+
+                try (LoadContention contention = Boolean.parseBoolean(options.get("contention")) ? new LoadContention() : null) {
+                    for (int clients : steps) {
+                        runStep(httpClient, baseUrl, clients, mix, options, contention, out);
+                    }
+                }
+            }
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    private static void runStep(HttpClient httpClient, String baseUrl, int clientCount, LoadMix mix, Map<String, String> options, LoadContention contention, PrintStream out) throws InterruptedException {
+        long warmupMillis = Long.parseLong(options.get("warmup")) * 1000;
+        long durationMillis = Long.parseLong(options.get("duration")) * 1000;
+        long thinkMillis = Long.parseLong(options.get("think"));
+
+        LoadReport report = new LoadReport();
+        List<LoadClient> clients = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < clientCount; i++) {
+            LoadClient client = new LoadClient(httpClient, baseUrl, LoadSeeder.username(i), mix, thinkMillis, report, i);
+            Thread thread = new Thread(client, "load-client-" + i);
+            thread.setDaemon(true);
+            clients.add(client);
+            threads.add(thread);
+            thread.start();
+        }
+
+        Thread.sleep(warmupMillis);
+        report.startRecording();
+        if (contention != null) {
+            contention.startRecording();
+        }
+        long start = System.nanoTime();
+        Thread.sleep(durationMillis);
+        report.stopRecording();
+        if (contention != null) {
+            contention.stopRecording();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        for (LoadClient client : clients) {
+            client.stop();
+        }
+        for (Thread thread : threads) {
+            thread.join(30000);
+        }
+        report.print(out, clientCount, seconds);
+        if (contention != null) {
+            contention.print(out);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+-- Base tables for the load test database, matching the Supabase schema the application runs against
+-- The scripts in src/main/resources/db are applied on top of it, like on the real database
+CREATE TABLE users (
+    username TEXT PRIMARY KEY,
+    password TEXT NOT NULL,
+    role TEXT NOT NULL
+);
+
+CREATE TABLE channels (
+    name TEXT PRIMARY KEY,
+    type TEXT NOT NULL
+);
+
+CREATE TABLE user_channel (
+    username TEXT NOT NULL REFERENCES users (username) ON DELETE CASCADE,
+    channel_name TEXT NOT NULL REFERENCES channels (name) ON DELETE CASCADE,
+    PRIMARY KEY (username, channel_name)
+);
+
+CREATE TABLE messages (
+    id BIGSERIAL PRIMARY KEY,
+    text TEXT NOT NULL,
+    username TEXT NOT NULL REFERENCES users (username) ON DELETE CASCADE,
+    channel_name TEXT NOT NULL REFERENCES channels (name) ON DELETE CASCADE,
+    date_time TIMESTAMP NOT NULL
+);
+
+CREATE TABLE messages_seen (
+    username TEXT NOT NULL REFERENCES users (username) ON DELETE CASCADE,
+    channel_name TEXT NOT NULL REFERENCES channels (name) ON DELETE CASCADE,
+    last_read_msg_id BIGINT NOT NULL,
+    PRIMARY KEY (username, channel_name)
+);
@@ -0,0 +1,57 @@
+package com.messagingApp.messagingApp_backend.config;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.Appender;
+import com.messagingApp.messagingApp_backend.logging.AsyncLogAppender;
+import com.messagingApp.messagingApp_backend.logging.LogSamplingFilter;
+import com.messagingApp.messagingApp_backend.services.ChannelCatalog;
+import com.messagingApp.messagingApp_backend.services.MessageHighWaterMarks;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Iterator;
+
+@Configuration
+public class MetricsConfig {
+    // Meters for the in-memory structures and the logging pipeline, which don't register their own
+    // The caches with a MeterRegistry (recent messages, membership) and the HTTP, Tomcat session and pool metrics are bound elsewhere
+
+    @Bean
+    public MeterBinder channelCatalogMetrics(ChannelCatalog channelCatalog) {
+        return registry -> Gauge.builder("cache.size", channelCatalog, ChannelCatalog::size).tag("cache", "channels").description("Channels held by the channel catalog").register(registry);
+    }
+
+    @Bean
+    public MeterBinder highWaterMarkMetrics(MessageHighWaterMarks highWaterMarks) {
+        return registry -> Gauge.builder("cache.size", highWaterMarks, MessageHighWaterMarks::size).tag("cache", "high-water-marks").description("Channels with a known newest message id").register(registry);
+    }
+
+    // Events lost by the async appenders and denied by the sampling filters of logback-spring.xml
+    @Bean
+    public MeterBinder loggingPipelineMetrics() {
+        return registry -> {
+            if (!(LoggerFactory.getILoggerFactory() instanceof LoggerContext context)) {
+                return; // Not logging through logback
+            }
+            Iterator<Appender<ILoggingEvent>> appenders = context.getLogger(Logger.ROOT_LOGGER_NAME).iteratorForAppenders();
+            while (appenders.hasNext()) {
+                if (appenders.next() instanceof AsyncLogAppender appender) {
+                    FunctionCounter.builder("logging.events.dropped", appender, AsyncLogAppender::getDroppedCount).tag("appender", appender.getName()).description("Log events dropped because the appender queue was full").register(registry);
+                    Gauge.builder("logging.queue.size", appender, AsyncLogAppender::getQueuedCount).tag("appender", appender.getName()).description("Log events waiting for the writer thread").register(registry);
+                }
+            }
+            for (TurboFilter filter : context.getTurboFilterList()) {
+                if (filter instanceof LogSamplingFilter sampling) {
+                    FunctionCounter.builder("logging.events.sampled", sampling, LogSamplingFilter::getSampledOutCount).tag("category", sampling.getCategory()).tag("level", sampling.getLevel().toString()).description("Log events denied by the per-category rate cap").register(registry);
+                }
+            }
+        };
+    }
+}
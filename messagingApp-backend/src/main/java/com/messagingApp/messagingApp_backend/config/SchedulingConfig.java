@@ -0,0 +1,10 @@
+package com.messagingApp.messagingApp_backend.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+    // Enables the @Scheduled background jobs of the services
+}
@@ -0,0 +1,48 @@
+package com.messagingApp.messagingApp_backend.config;
+
+import com.messagingApp.messagingApp_backend.controllers.ChannelSocketHandler;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+import org.springframework.web.socket.server.support.HttpSessionHandshakeInterceptor;
+
+import java.util.Map;
+
+@Configuration
+@EnableWebSocket
+public class WebSocketConfig implements WebSocketConfigurer {
+    private final ChannelSocketHandler channelSocketHandler;
+
+    public WebSocketConfig(ChannelSocketHandler channelSocketHandler) {
+        this.channelSocketHandler = channelSocketHandler;
+    }
+
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        registry.addHandler(channelSocketHandler, "/ws/channels")
+            .addInterceptors(new HttpSessionHandshakeInterceptor(), new LoggedInHandshakeInterceptor()) // Copy the HTTP session attributes, then require a logged-in user
+            .setAllowedOrigins("http://localhost:3000"); // Allow frontend
+    }
+
+    // Refuse the upgrade when the HTTP session has no logged-in user
+    private static class LoggedInHandshakeInterceptor implements HandshakeInterceptor {
+        @Override
+        public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response, WebSocketHandler wsHandler, Map<String, Object> attributes) {
+            if (attributes.get("loggedInUser") == null) {
+                response.setStatusCode(HttpStatus.UNAUTHORIZED);
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response, WebSocketHandler wsHandler, Exception exception) {
+        }
+    }
+}
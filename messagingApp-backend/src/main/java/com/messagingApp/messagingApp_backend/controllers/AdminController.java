@@ -26,7 +26,12 @@ public class AdminController {
     @PutMapping("/updateRole")
     public ResponseEntity<String> updateUserRole(@RequestParam String currentUsername, @RequestParam String targetUsername, @RequestParam String newRole) {
 
-        int updatedRows = adminService.updateUserRole(currentUsername, targetUsername, newRole);
+        int updatedRows;
+        try {
+            updatedRows = adminService.updateUserRole(currentUsername, targetUsername, newRole);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        }
 
         if (updatedRows > 0) {
             return ResponseEntity.ok("User role updated successfully.");
@@ -40,7 +45,6 @@ public class AdminController {
     public ResponseEntity<String> deleteMessage(@PathVariable Long messageId) {
         boolean isDeleted = adminService.deleteMessage(messageId);
         if (isDeleted) {
-            System.out.println("Message deleted successfully");
             return ResponseEntity.ok("Message deleted successfully.");
         } else {
             return ResponseEntity.status(403).body("Something went wrong");
@@ -6,6 +6,9 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/api/auth")
@@ -16,19 +19,21 @@ public class AuthController {
         this.authService = authService;
     }
 
-    // Login endpoint
+    // Login endpoint, answered once the password is checked, without holding a request thread meanwhile
     @PostMapping("/login")
-    public ResponseEntity<?> login(@RequestBody Map<String, String> credentials, HttpSession session) {
+    public CompletableFuture<ResponseEntity<?>> login(@RequestBody Map<String, String> credentials, HttpSession session) {
         String username = credentials.get("username");
         String password = credentials.get("password");
 
-        System.out.println("Received login request: " + username + " | " + password);
-
-        if (authService.authenticateUser(username, password, session)) {
-            return ResponseEntity.ok(Map.of("message", "Login successful"));
-        } else {
+        return authService.authenticateUser(username, password, session).handle((authenticated, error) -> {
+            if (error != null) {
+                return errorResponse(error, "Login failed");
+            }
+            if (authenticated) {
+                return ResponseEntity.ok(Map.of("message", "Login successful"));
+            }
             return ResponseEntity.status(401).body(Map.of("error", "Invalid username or password"));
-        }
+        });
     }
 
     // Check logged in user
@@ -51,19 +56,31 @@ public class AuthController {
 
     // Register endpoint
     @PostMapping("/register")
-    public ResponseEntity<?> register(@RequestBody Map<String, String> userDetails) {
+    public CompletableFuture<ResponseEntity<?>> register(@RequestBody Map<String, String> userDetails) {
         String username = userDetails.get("username");
         String password = userDetails.get("password");
         String role = userDetails.get("role");
 
-        System.out.println("Received registration request: " + username + " | " + password + " | " + role);
-        int rowsAffected = authService.registerUser(username, password, role);
-        if (rowsAffected == 2) {
-            return ResponseEntity.ok(Map.of("message", "Registration successful"));
-        } else if (rowsAffected == 1) {
-            return ResponseEntity.status(400).body(Map.of("error", "Invalid Role"));
+        return authService.registerUser(username, password, role).handle((rowsAffected, error) -> {
+            if (error != null) {
+                return errorResponse(error, "Error creating user");
+            }
+            if (rowsAffected == 2) {
+                return ResponseEntity.ok(Map.of("message", "Registration successful"));
+            } else if (rowsAffected == 1) {
+                return ResponseEntity.status(400).body(Map.of("error", "Invalid Role"));
+            }
+            return ResponseEntity.status(409).body(Map.of("error", "Error creating user"));
+        });
+    }
+
+    // A full password hasher answers 503, the client should retry after a second
+    private ResponseEntity<?> errorResponse(Throwable error, String message) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof RejectedExecutionException) {
+            return ResponseEntity.status(503).header("Retry-After", "1").body(Map.of("error", cause.getMessage()));
         }
-        return ResponseEntity.status(409).body(Map.of("error", "Error creating user"));
+        return ResponseEntity.status(500).body(Map.of("error", message));
     }
 
 }
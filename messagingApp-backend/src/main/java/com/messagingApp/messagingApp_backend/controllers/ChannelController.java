@@ -1,71 +1,106 @@
 package com.messagingApp.messagingApp_backend.controllers;
 
+import com.messagingApp.messagingApp_backend.dto.ChannelDto;
+import com.messagingApp.messagingApp_backend.dto.ChannelEventPageDto;
+import com.messagingApp.messagingApp_backend.dto.MessagePageDto;
+import com.messagingApp.messagingApp_backend.dto.MessageWithSendersDto;
+import com.messagingApp.messagingApp_backend.dto.UserDto;
 import com.messagingApp.messagingApp_backend.models.Channel;
+import com.messagingApp.messagingApp_backend.models.ChannelList;
+import com.messagingApp.messagingApp_backend.models.ChannelStats;
 import com.messagingApp.messagingApp_backend.models.Message;
 import com.messagingApp.messagingApp_backend.models.User;
 import com.messagingApp.messagingApp_backend.services.AuthService;
+import com.messagingApp.messagingApp_backend.services.ChangeFeedService;
 import com.messagingApp.messagingApp_backend.services.ChannelService;
+import com.messagingApp.messagingApp_backend.services.ExportLimiter;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpSession;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.AsyncWebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/api/channel")
 public class ChannelController {
     private final ChannelService channelService;
     private final AuthService authService;
+    private final ExportLimiter exportLimiter;
 
-    public ChannelController(ChannelService channelService, AuthService authService) {
+    private static final long DEFAULT_WAIT_TIMEOUT_MS = 30000;
+    // The browser keeps the polled responses but checks them on every request, sending their ETag in If-None-Match
+    // They are sent with Vary: Accept, a JSON and a CBOR response share the same ETag
+    private static final CacheControl REVALIDATE = CacheControl.noCache().cachePrivate();
+
+    public ChannelController(ChannelService channelService, AuthService authService, ExportLimiter exportLimiter) {
         this.channelService = channelService;
         this.authService = authService;
+        this.exportLimiter = exportLimiter;
     }
 
 
-    // Get all data for a channel
+    // Get all data for a channel, a client sending the ETag it already has gets 304 when nothing changed
     @GetMapping("/{channelName}")
-    public ResponseEntity<?> getChannelData(@PathVariable String channelName, HttpSession session) {
+    public ResponseEntity<?> getChannelData(@PathVariable String channelName, @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch, HttpSession session) {
         //Check user is logged in
         String username = authService.getLoggedInUser(session);
         if (username == null) {
             return ResponseEntity.status(401).body(Map.of("error", "User not logged in"));
         }
-        System.out.println("REQUEST by User: " + username + " for channel: " + channelName);
 
         //Check channel exists
-        List<Channel> channels = channelService.getAllChannels();
-        boolean isExist = channels.stream().anyMatch(channel -> channel.getName().equals(channelName));
-        if (!isExist) {
+        if (!channelService.channelExists(channelName)) {
             return ResponseEntity.status(404).body(Map.of("error", "Channel does not exist"));
         }
 
         //Check if the user is a member of the channel
-        List<Channel> userChannels = channelService.getUserChannels(username);
-        boolean isMember = userChannels.stream().anyMatch(channel -> channel.getName().equals(channelName));
-        if (!isMember) {
+        if (!channelService.isMember(username, channelName)) {
             return ResponseEntity.status(403).body(Map.of("error", "User is not a member of the channel"));
         }
 
-        //Get channel data
+        //Taken before the data, a change made while reading it gets a new tag on the next poll
+        String etag = channelService.getChannelDataTag(username, channelName);
+        if (matchesETag(ifNoneMatch, etag)) {
+            return notModified(etag);
+        }
+
+        //Get channel data, the feed position is read first so no change can slip between it and the data
+        List<Channel> userChannels = channelService.getUserChannels(username);
+        long seq = channelService.getLatestEventSeq(channelName);
         List<User> users = channelService.getUsersInChannel(channelName);
-        List<Message> messages = channelService.getMessagesInChannel(channelName);
+        MessagePageDto page = MessagePageDto.from(channelService.getMessagesPage(channelName, null, null, null, ChannelService.DEFAULT_PAGE_SIZE));
         Long lastMessageID = channelService.getLastSeenMsg(username, channelName);
 
-        return ResponseEntity.ok(Map.of("channels", userChannels, // All channels the user is in
-            "users", users, // Users in the selected channel
-            "messages", messages, // Messages in the selected channel
-            "lastMessageID", lastMessageID //Last seen message by loggedin User
+        return ResponseEntity.ok().eTag(etag).cacheControl(REVALIDATE).varyBy(HttpHeaders.ACCEPT).body(Map.of("channels", ChannelDto.fromAll(userChannels), // All channels the user is in
+            "users", UserDto.fromAll(users), // Users in the selected channel
+            "messages", page.getMessages(), // Newest page of messages in the selected channel, each with its senderId
+            "senders", page.getSenders(), // Sender of each message by username, may include users who left the channel
+            "cursor", page.getCursor(), // Cursor to load older messages through /messages
+            "lastMessageID", lastMessageID, //Last seen message by loggedin User
+            "seq", seq // Change feed position, poll /events?since=seq for what changes next
         ));
     }
 
-    // Send a message to a channel
-    @PostMapping("/{channelName}/sendMessage")
-    public ResponseEntity<?> sendMessage(@PathVariable String channelName, @RequestBody Map<String, String> messageData, HttpSession session) {
+    // Get the changes in a channel after the given change feed position
+    @GetMapping("/{channelName}/events")
+    public ResponseEntity<?> getChannelEvents(@PathVariable String channelName, @RequestParam long since, @RequestParam(defaultValue = "" + ChangeFeedService.DEFAULT_EVENT_LIMIT) int limit, HttpSession session) {
         //Check user is logged in
         String username = authService.getLoggedInUser(session);
         if (username == null) {
@@ -73,18 +108,103 @@ public class ChannelController {
         }
 
         //Check if the user is a member of the channel
-        List<Channel> userChannels = channelService.getUserChannels(username);
-        boolean isMember = userChannels.stream().anyMatch(channel -> channel.getName().equals(channelName));
-        if (!isMember) {
+        if (!channelService.isMember(username, channelName)) {
             return ResponseEntity.status(403).body(Map.of("error", "User is not a member of the channel"));
         }
 
-        //Send message
-        channelService.sendMessage(channelName, messageData.get("content"), username);
-        // Simulate storing message (in real case, insert into DB)
-        System.out.println("Message sent to " + channelName + ": " + messageData.get("content"));
+        return ResponseEntity.ok(ChannelEventPageDto.from(channelService.getEventsSince(channelName, since, limit)));
+    }
+
+    // Get a page of messages in a channel, use the cursor of a previous page to load older or newer messages
+    @GetMapping("/{channelName}/messages")
+    public ResponseEntity<?> getMessages(@PathVariable String channelName, @RequestParam(required = false) Long before, @RequestParam(required = false) Long after, @RequestParam(required = false) Long around, @RequestParam(defaultValue = "" + ChannelService.DEFAULT_PAGE_SIZE) int limit, HttpSession session) {
+        //Check user is logged in
+        String username = authService.getLoggedInUser(session);
+        if (username == null) {
+            return ResponseEntity.status(401).body(Map.of("error", "User not logged in"));
+        }
 
-        return ResponseEntity.ok(Map.of("message", "Message sent successfully"));
+        //Check if the user is a member of the channel
+        if (!channelService.isMember(username, channelName)) {
+            return ResponseEntity.status(403).body(Map.of("error", "User is not a member of the channel"));
+        }
+
+        try {
+            return ResponseEntity.ok(MessagePageDto.from(channelService.getMessagesPage(channelName, before, after, around, limit)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(400).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // Download the whole history of a channel as JSON, the messages and their senders like a page, streamed while it is read from the database
+    @GetMapping("/{channelName}/export")
+    public ResponseEntity<StreamingResponseBody> exportMessages(@PathVariable String channelName, HttpSession session, HttpServletRequest request) {
+        //Check user is logged in
+        String username = authService.getLoggedInUser(session);
+        if (username == null) {
+            return streamedError(401, "User not logged in");
+        }
+
+        //Check if the user is a member of the channel
+        if (!channelService.isMember(username, channelName)) {
+            return streamedError(403, "User is not a member of the channel");
+        }
+
+        //Only a few exports at once, each holds a database connection until it is downloaded
+        Runnable release = exportLimiter.tryStart();
+        if (release == null) {
+            return ResponseEntity.status(503)
+                .header("Retry-After", "30")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(out -> out.write("{\"error\":\"Too many exports at once, try again later\"}".getBytes(StandardCharsets.UTF_8)));
+        }
+
+        //The body is written after the request turns async, under the export timeout instead of the default one
+        //The slot is freed when the body is written, or when the request ends without it (timeout, client gone)
+        AsyncWebRequest asyncWebRequest = WebAsyncUtils.getAsyncManager(request).getAsyncWebRequest();
+        asyncWebRequest.setTimeout(exportLimiter.getTimeoutMillis());
+        asyncWebRequest.addCompletionHandler(release);
+
+        return ResponseEntity.ok()
+            .contentType(MediaType.APPLICATION_JSON)
+            .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(channelName + "-messages.json").build().toString())
+            .body(out -> {
+                try {
+                    channelService.exportMessages(channelName, out);
+                } finally {
+                    release.run();
+                }
+            });
+    }
+
+    // Send a message to a channel, answered once the message is stored
+    @PostMapping("/{channelName}/sendMessage")
+    public CompletableFuture<ResponseEntity<?>> sendMessage(@PathVariable String channelName, @RequestBody Map<String, String> messageData, HttpSession session) {
+        //Check user is logged in
+        String username = authService.getLoggedInUser(session);
+        if (username == null) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(401).body(Map.of("error", "User not logged in")));
+        }
+
+        //Check if the user is a member of the channel
+        if (!channelService.isMember(username, channelName)) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(403).body(Map.of("error", "User is not a member of the channel")));
+        }
+
+        //Send message
+        return channelService.sendMessage(channelName, messageData.get("content"), username).handle((message, error) -> {
+            if (error == null) {
+                return ResponseEntity.ok(Map.of("message", "Message sent successfully"));
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (cause instanceof RejectedExecutionException) {
+                return ResponseEntity.status(503).header("Retry-After", "1").body(Map.of("error", cause.getMessage()));
+            }
+            if (cause instanceof IllegalArgumentException) {
+                return ResponseEntity.status(400).body(Map.of("error", cause.getMessage()));
+            }
+            return ResponseEntity.status(500).body(Map.of("error", "Message could not be sent"));
+        });
     }
 
     // Get the latest message in a channel
@@ -97,9 +217,7 @@ public class ChannelController {
         }
 
         //Check if the user is a member of the channel
-        List<Channel> userChannels = channelService.getUserChannels(username);
-        boolean isMember = userChannels.stream().anyMatch(channel -> channel.getName().equals(channelName));
-        if (!isMember) {
+        if (!channelService.isMember(username, channelName)) {
             return ResponseEntity.status(403).body(Map.of("error", "User is not a member of the channel"));
         }
 
@@ -111,21 +229,60 @@ public class ChannelController {
             return ResponseEntity.ok(Map.of("message", "No messages yet"));
         }
 
-        return ResponseEntity.ok(latestMessage);
+        return ResponseEntity.ok(MessageWithSendersDto.from(latestMessage));
+    }
+
+    // Long-poll variant of /latest, waits until a message newer than `after` is sent or answers 204 when the timeout passes
+    // The servlet thread is released while the request waits
+    @GetMapping("/{channelName}/latest/wait")
+    public DeferredResult<ResponseEntity<?>> waitForLatestMessage(@PathVariable String channelName, @RequestParam long after, @RequestParam(defaultValue = "" + DEFAULT_WAIT_TIMEOUT_MS) long timeout, HttpSession session) {
+        //Check user is logged in
+        String username = authService.getLoggedInUser(session);
+        if (username == null) {
+            return completed(ResponseEntity.status(401).body(Map.of("error", "User not logged in")));
+        }
+
+        //Check if the user is a member of the channel
+        if (!channelService.isMember(username, channelName)) {
+            return completed(ResponseEntity.status(403).body(Map.of("error", "User is not a member of the channel")));
+        }
+
+        return channelService.waitForMessageAfter(channelName, after, timeout);
+    }
+
+    // Get all channels, a client passing the version it already has gets 304 when nothing changed
+    @GetMapping("/all")
+    public ResponseEntity<?> getAllChannels(@RequestParam(required = false) Long version, HttpSession session) {
+        //Check user is logged in
+        String username = authService.getLoggedInUser(session);
+        if (username == null) {
+            return ResponseEntity.status(401).body(Map.of("error", "User not logged in"));
+        }
+
+        ChannelList channelList = channelService.getChannelList();
+        if (version != null && version == channelList.getVersion()) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).build();
+        }
+        return ResponseEntity.ok(channelList);
     }
 
-    // Get all users
+    // Get all users, 304 when the client's ETag is still current
     @GetMapping("/users")
-    public ResponseEntity<?> getAllUsers(HttpSession session) {
+    public ResponseEntity<?> getAllUsers(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch, HttpSession session) {
         //Check user is logged in
         String username = authService.getLoggedInUser(session);
         if (username == null) {
             return ResponseEntity.status(401).body(Map.of("error", "User not logged in"));
         }
 
+        String etag = channelService.getAllUsersTag();
+        if (matchesETag(ifNoneMatch, etag)) {
+            return notModified(etag);
+        }
+
         //Get all users
         List<User> users = channelService.getAllUsers();
-        return ResponseEntity.ok(users);
+        return ResponseEntity.ok().eTag(etag).cacheControl(REVALIDATE).varyBy(HttpHeaders.ACCEPT).body(UserDto.fromAll(users));
     }
 
     // Get the number of admins in a specific channel
@@ -137,6 +294,27 @@ public class ChannelController {
         return ResponseEntity.ok(response);
     }
 
+    // Get the member, admin and message counts and the last activity of a channel
+    @GetMapping("/{channelName}/stats")
+    public ResponseEntity<?> getChannelStats(@PathVariable String channelName, HttpSession session) {
+        //Check user is logged in
+        String username = authService.getLoggedInUser(session);
+        if (username == null) {
+            return ResponseEntity.status(401).body(Map.of("error", "User not logged in"));
+        }
+
+        //Check if the user is a member of the channel
+        if (!channelService.isMember(username, channelName)) {
+            return ResponseEntity.status(403).body(Map.of("error", "User is not a member of the channel"));
+        }
+
+        ChannelStats stats = channelService.getChannelStats(channelName);
+        if (stats == null) {
+            return ResponseEntity.status(404).body(Map.of("error", "Channel stats are not available"));
+        }
+        return ResponseEntity.ok(stats);
+    }
+
     // Creating a channel
     @PostMapping("/create-channel")
     public ResponseEntity<?> createChannel(@RequestBody Map<String, String> channelData, HttpSession session) {
@@ -150,8 +328,6 @@ public class ChannelController {
 
         channelService.createChannel(channelName, creatorUsername);
 
-        System.out.println("Channel created: " + channelName + " by " + creatorUsername);
-
         return ResponseEntity.ok(Map.of("message", "Channel created successfully"));
     }
 
@@ -177,7 +353,6 @@ public class ChannelController {
 
         String channelName = channelData.get("formattedChannelName");
 
-        System.out.println("Channel joined successfully: " + channelName + " by " + username);
         boolean result = channelService.joinChannel(channelName, username);
         if (result) {
             return ResponseEntity.ok("Channel joined successfully");
@@ -186,21 +361,42 @@ public class ChannelController {
         }
     }
 
-    // Get users from a search input
+    // Search messages in the user's channels, or in one of them with the channel parameter
+    @GetMapping("/search")
+    public ResponseEntity<?> searchMessages(@RequestParam("q") String query, @RequestParam(required = false) String channel, @RequestParam(defaultValue = "0") int offset, @RequestParam(defaultValue = "" + ChannelService.DEFAULT_SEARCH_LIMIT) int limit, HttpSession session) {
+        //Check user is logged in
+        String username = authService.getLoggedInUser(session);
+        if (username == null) {
+            return ResponseEntity.status(401).body(Map.of("error", "User not logged in"));
+        }
+
+        //Check if the user is a member of the channel
+        if (channel != null && !channelService.isMember(username, channel)) {
+            return ResponseEntity.status(403).body(Map.of("error", "User is not a member of the channel"));
+        }
+
+        try {
+            return ResponseEntity.ok(channelService.searchMessages(username, query, channel, offset, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(400).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // Get users from a search input, the best limit matches
     @GetMapping("/users/search")
-    public ResponseEntity<?> searchUsers(HttpSession session, @RequestParam String query) {
+    public ResponseEntity<?> searchUsers(HttpSession session, @RequestParam String query, @RequestParam(defaultValue = "" + ChannelService.DEFAULT_USER_SEARCH_LIMIT) int limit) {
         //check user logged in
         String username = authService.getLoggedInUser(session);
         if (username == null) {
             return ResponseEntity.status(401).body(Map.of("error", "User not logged in"));
         }
         //get users based off search
-        List<User> matchUsers = channelService.findUser(query);
+        List<User> matchUsers = channelService.findUser(query, limit);
 
         if (matchUsers.size() == 0) {
             return ResponseEntity.status(404).body(Map.of("error", "no matching users found"));
         }
-        return ResponseEntity.ok(matchUsers);
+        return ResponseEntity.ok(UserDto.fromAll(matchUsers));
     }
 
     // Update the last seen messages
@@ -208,6 +404,14 @@ public class ChannelController {
     public ResponseEntity<String> updateLastSeenMessage(@PathVariable String channelName, HttpSession session, @RequestBody Map<String, Object> messageData) {
         try {
             String username = authService.getLoggedInUser(session);
+            if (username == null) {
+                return ResponseEntity.status(401).body("User not logged in");
+            }
+
+            //Only members get a marker, a marker for any other channel would fail the buffered batch
+            if (!channelService.isMember(username, channelName)) {
+                return ResponseEntity.status(403).body("User is not a member of the channel");
+            }
             Long lastSeenMessageID = ((Number) messageData.get("lastSeenMessageID")).longValue();
 
             channelService.updateMessageSeenTable(username, channelName, lastSeenMessageID);
@@ -217,18 +421,33 @@ public class ChannelController {
         }
     }
 
-    // Get channels with unread messages
+    // Get channels with unread messages, 304 when the client's ETag is still current
     @GetMapping("/getUnreadChannels")
-    public ResponseEntity<List<String>> getUnreadChannels(HttpSession session) {
+    public ResponseEntity<List<String>> getUnreadChannels(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch, HttpSession session) {
         try {
             String username = authService.getLoggedInUser(session);
+            String etag = channelService.getUnreadTag(username);
+            if (matchesETag(ifNoneMatch, etag)) {
+                return notModified(etag);
+            }
             List<String> unreadChannels = channelService.getUnreadChannels(username);
-            return ResponseEntity.ok(unreadChannels);
+            return ResponseEntity.ok().eTag(etag).cacheControl(REVALIDATE).varyBy(HttpHeaders.ACCEPT).body(unreadChannels);
         } catch (Exception err) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new ArrayList<>());
         }
     }
 
+    // Get the number of unread messages in each channel of the user
+    @GetMapping("/getUnreadCounts")
+    public ResponseEntity<Map<String, Integer>> getUnreadCounts(HttpSession session) {
+        try {
+            String username = authService.getLoggedInUser(session);
+            return ResponseEntity.ok(channelService.getUnreadCounts(username));
+        } catch (Exception err) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new HashMap<>());
+        }
+    }
+
     //Create a channel for DM between 2 users.
     @PostMapping("/create-dm-channel")
     public ResponseEntity<?> createDMChannel(@RequestBody Map<String, String> channelData, HttpSession session) {
@@ -242,8 +461,43 @@ public class ChannelController {
 
         channelService.createDMChannel(channelName, user1, user2);
 
-        System.out.println("Channel created: " + channelName + " with users " + user1 + " and " + user2);
-
         return ResponseEntity.ok(Map.of("message", "Channel created successfully"));
     }
+
+    // Error response for the endpoints streaming their body, same {"error": message} body as the others
+    private static ResponseEntity<StreamingResponseBody> streamedError(int status, String message) {
+        return ResponseEntity.status(status)
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(out -> out.write(("{\"error\":\"" + message + "\"}").getBytes(StandardCharsets.UTF_8)));
+    }
+
+    // Whether the If-None-Match header holds the current ETag, weak tags compare equal to strong ones for a GET
+    private static boolean matchesETag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        String current = opaqueTag(etag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = opaqueTag(candidate.trim());
+            if (tag.equals(current) || tag.equals("*")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String opaqueTag(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+
+    private static <T> ResponseEntity<T> notModified(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(REVALIDATE).varyBy(HttpHeaders.ACCEPT).build();
+    }
+
+    // Wrap a response that is known right away for the endpoints returning a DeferredResult
+    private static DeferredResult<ResponseEntity<?>> completed(ResponseEntity<?> response) {
+        DeferredResult<ResponseEntity<?>> result = new DeferredResult<>();
+        result.setResult(response);
+        return result;
+    }
 }
@@ -0,0 +1,79 @@
+package com.messagingApp.messagingApp_backend.controllers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.messagingApp.messagingApp_backend.services.PushService;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PongMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.util.Map;
+
+@Component
+public class ChannelSocketHandler extends TextWebSocketHandler {
+    // WebSocket endpoint pushing channel events (new and deleted messages, membership changes) to logged-in users
+    // Clients send {"type": "subscribe" | "unsubscribe", "channel": "..."} or {"type": "ping"}
+
+    private final PushService pushService;
+    private final ObjectMapper objectMapper;
+
+    public ChannelSocketHandler(PushService pushService, ObjectMapper objectMapper) {
+        this.pushService = pushService;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        // Copied from the HTTP session during the handshake
+        String username = (String) session.getAttributes().get("loggedInUser");
+        if (username == null) {
+            session.close(CloseStatus.POLICY_VIOLATION);
+            return;
+        }
+        pushService.open(session, username);
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+        pushService.touch(session);
+
+        JsonNode request;
+        try {
+            request = objectMapper.readTree(message.getPayload());
+        } catch (Exception e) {
+            pushService.sendTo(session, Map.of("type", "error", "error", "Invalid message"));
+            return;
+        }
+
+        String type = request.path("type").asText();
+        String channelName = request.path("channel").asText();
+        switch (type) {
+            case "subscribe" -> {
+                if (!pushService.subscribe(session, channelName)) {
+                    pushService.sendTo(session, Map.of("type", "error", "error", "User is not a member of the channel", "channel", channelName));
+                }
+            }
+            case "unsubscribe" -> pushService.unsubscribe(session, channelName);
+            case "ping" -> pushService.sendTo(session, Map.of("type", "pong"));
+            default -> pushService.sendTo(session, Map.of("type", "error", "error", "Unknown message type"));
+        }
+    }
+
+    @Override
+    protected void handlePongMessage(WebSocketSession session, PongMessage message) {
+        pushService.touch(session);
+    }
+
+    @Override
+    public void handleTransportError(WebSocketSession session, Throwable exception) {
+        pushService.close(session);
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        pushService.close(session);
+    }
+}
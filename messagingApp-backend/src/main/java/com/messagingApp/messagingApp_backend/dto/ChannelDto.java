@@ -0,0 +1,39 @@
+package com.messagingApp.messagingApp_backend.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.messagingApp.messagingApp_backend.models.Channel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// A channel as sent to the clients, without its members
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ChannelDto {
+    private final String name;
+    private final Channel.ChannelType type;
+
+    public ChannelDto(String name, Channel.ChannelType type) {
+        this.name = name;
+        this.type = type;
+    }
+
+    public static ChannelDto from(Channel channel) {
+        return new ChannelDto(channel.getName(), channel.getType());
+    }
+
+    public static List<ChannelDto> fromAll(List<Channel> channels) {
+        List<ChannelDto> dtos = new ArrayList<>(channels.size());
+        for (Channel channel : channels) {
+            dtos.add(from(channel));
+        }
+        return dtos;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Channel.ChannelType getType() {
+        return type;
+    }
+}
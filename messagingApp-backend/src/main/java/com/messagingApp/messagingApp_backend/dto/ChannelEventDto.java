@@ -0,0 +1,59 @@
+package com.messagingApp.messagingApp_backend.dto;
+
+import com.messagingApp.messagingApp_backend.models.ChannelEvent;
+
+import java.time.LocalDateTime;
+
+// A change feed event as sent to the clients, its message names the sender, described in the senders next to the events
+public class ChannelEventDto {
+    private final long seq;
+    private final String channelName;
+    private final ChannelEvent.EventType type;
+    private final Long messageId;
+    private final String username;
+    private final MessageDto message; // Set for MESSAGE_CREATED while the message still exists
+    private final LocalDateTime timestamp;
+
+    public ChannelEventDto(long seq, String channelName, ChannelEvent.EventType type, Long messageId, String username, MessageDto message, LocalDateTime timestamp) {
+        this.seq = seq;
+        this.channelName = channelName;
+        this.type = type;
+        this.messageId = messageId;
+        this.username = username;
+        this.message = message;
+        this.timestamp = timestamp;
+    }
+
+    public static ChannelEventDto from(ChannelEvent event) {
+        MessageDto message = event.getMessage() != null ? MessageDto.from(event.getMessage()) : null;
+        return new ChannelEventDto(event.getSeq(), event.getChannelName(), event.getType(), event.getMessageId(), event.getUsername(), message, event.getTimestamp());
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public String getChannelName() {
+        return channelName;
+    }
+
+    public ChannelEvent.EventType getType() {
+        return type;
+    }
+
+    public Long getMessageId() {
+        return messageId;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public MessageDto getMessage() {
+        return message;
+    }
+
+    public LocalDateTime getTimestamp() {
+        return timestamp;
+    }
+}
@@ -0,0 +1,58 @@
+package com.messagingApp.messagingApp_backend.dto;
+
+import com.messagingApp.messagingApp_backend.models.ChannelEvent;
+import com.messagingApp.messagingApp_backend.models.ChannelEventPage;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// A page of the change feed as sent to the clients, each sender of the created messages is sent once
+public class ChannelEventPageDto {
+    private final List<ChannelEventDto> events;
+    private final Map<String, UserDto> senders; // By username, every sender of the messages of the events
+    private final long seq;
+    private final boolean hasMore;
+    private final boolean resync;
+
+    public ChannelEventPageDto(List<ChannelEventDto> events, Map<String, UserDto> senders, long seq, boolean hasMore, boolean resync) {
+        this.events = events;
+        this.senders = senders;
+        this.seq = seq;
+        this.hasMore = hasMore;
+        this.resync = resync;
+    }
+
+    public static ChannelEventPageDto from(ChannelEventPage page) {
+        List<ChannelEventDto> events = new ArrayList<>(page.getEvents().size());
+        Map<String, UserDto> senders = new LinkedHashMap<>();
+        for (ChannelEvent event : page.getEvents()) {
+            events.add(ChannelEventDto.from(event));
+            if (event.getMessage() != null) {
+                UserDto.addTo(senders, event.getMessage().getSender());
+            }
+        }
+        return new ChannelEventPageDto(events, senders, page.getSeq(), page.isHasMore(), page.isResync());
+    }
+
+    public List<ChannelEventDto> getEvents() {
+        return events;
+    }
+
+    public Map<String, UserDto> getSenders() {
+        return senders;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public boolean isHasMore() {
+        return hasMore;
+    }
+
+    public boolean isResync() {
+        return resync;
+    }
+}
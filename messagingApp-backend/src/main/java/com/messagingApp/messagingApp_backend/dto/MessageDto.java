@@ -0,0 +1,43 @@
+package com.messagingApp.messagingApp_backend.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.messagingApp.messagingApp_backend.models.Message;
+
+import java.time.LocalDateTime;
+
+// A message of a page, the sender is only named, its details are in the senders of the page
+// The channel is left out, a page is always of one channel
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class MessageDto {
+    private final long id;
+    private final String content;
+    private final String senderId; // Username, key of MessagePageDto.senders
+    private final LocalDateTime timestamp;
+
+    public MessageDto(long id, String content, String senderId, LocalDateTime timestamp) {
+        this.id = id;
+        this.content = content;
+        this.senderId = senderId;
+        this.timestamp = timestamp;
+    }
+
+    public static MessageDto from(Message message) {
+        return new MessageDto(message.getId(), message.getContent(), message.getSender() != null ? message.getSender().getUsername() : null, message.getTimestamp());
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public String getSenderId() {
+        return senderId;
+    }
+
+    public LocalDateTime getTimestamp() {
+        return timestamp;
+    }
+}
@@ -0,0 +1,45 @@
+package com.messagingApp.messagingApp_backend.dto;
+
+import com.messagingApp.messagingApp_backend.models.Message;
+import com.messagingApp.messagingApp_backend.models.MessageCursor;
+import com.messagingApp.messagingApp_backend.models.MessagePage;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// A page of messages as sent to the clients, each sender is sent once however many messages it wrote
+public class MessagePageDto {
+    private final List<MessageDto> messages; // Sorted by id, oldest first
+    private final Map<String, UserDto> senders; // By username, every sender of the messages, in order of first message
+    private final MessageCursor cursor;
+
+    public MessagePageDto(List<MessageDto> messages, Map<String, UserDto> senders, MessageCursor cursor) {
+        this.messages = messages;
+        this.senders = senders;
+        this.cursor = cursor;
+    }
+
+    public static MessagePageDto from(MessagePage page) {
+        List<MessageDto> messages = new ArrayList<>(page.getMessages().size());
+        Map<String, UserDto> senders = new LinkedHashMap<>();
+        for (Message message : page.getMessages()) {
+            messages.add(MessageDto.from(message));
+            UserDto.addTo(senders, message.getSender());
+        }
+        return new MessagePageDto(messages, senders, page.getCursor());
+    }
+
+    public List<MessageDto> getMessages() {
+        return messages;
+    }
+
+    public Map<String, UserDto> getSenders() {
+        return senders;
+    }
+
+    public MessageCursor getCursor() {
+        return cursor;
+    }
+}
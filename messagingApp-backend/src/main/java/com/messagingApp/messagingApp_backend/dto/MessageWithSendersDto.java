@@ -0,0 +1,33 @@
+package com.messagingApp.messagingApp_backend.dto;
+
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+import com.messagingApp.messagingApp_backend.models.Message;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// A single message as sent to the clients, the fields of a MessageDto with the senders next to them like in a page
+public class MessageWithSendersDto {
+    private final MessageDto message;
+    private final Map<String, UserDto> senders; // By username, the sender of the message
+
+    public MessageWithSendersDto(MessageDto message, Map<String, UserDto> senders) {
+        this.message = message;
+        this.senders = senders;
+    }
+
+    public static MessageWithSendersDto from(Message message) {
+        Map<String, UserDto> senders = new LinkedHashMap<>();
+        UserDto.addTo(senders, message.getSender());
+        return new MessageWithSendersDto(MessageDto.from(message), senders);
+    }
+
+    @JsonUnwrapped
+    public MessageDto getMessage() {
+        return message;
+    }
+
+    public Map<String, UserDto> getSenders() {
+        return senders;
+    }
+}
@@ -0,0 +1,47 @@
+package com.messagingApp.messagingApp_backend.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.messagingApp.messagingApp_backend.models.User;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// A user as sent to the clients, never with the password
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class UserDto {
+    private final String username;
+    private final User.UserRole role;
+
+    public UserDto(String username, User.UserRole role) {
+        this.username = username;
+        this.role = role;
+    }
+
+    public static UserDto from(User user) {
+        return new UserDto(user.getUsername(), user.getRole());
+    }
+
+    public static List<UserDto> fromAll(List<User> users) {
+        List<UserDto> dtos = new ArrayList<>(users.size());
+        for (User user : users) {
+            dtos.add(from(user));
+        }
+        return dtos;
+    }
+
+    // Add a sender to the senders of a response once, however many of its messages it holds
+    public static void addTo(Map<String, UserDto> senders, User user) {
+        if (user != null) {
+            senders.computeIfAbsent(user.getUsername(), username -> from(user));
+        }
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public User.UserRole getRole() {
+        return role;
+    }
+}
@@ -0,0 +1,143 @@
+package com.messagingApp.messagingApp_backend.logging;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import ch.qos.logback.core.spi.AppenderAttachable;
+import ch.qos.logback.core.spi.AppenderAttachableImpl;
+
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+public class AsyncLogAppender extends UnsynchronizedAppenderBase<ILoggingEvent> implements AppenderAttachable<ILoggingEvent> {
+    // This appender hands the events to one writer thread through a bounded queue, configured in logback-spring.xml
+    // The logging threads never wait for the console (or its lock), a full queue drops the event and counts it
+    // Unlike logback's AsyncAppender it never blocks and never drops below a threshold, every lost event is counted
+
+    private final AppenderAttachableImpl<ILoggingEvent> appenders = new AppenderAttachableImpl<>();
+    private final LongAdder droppedCount = new LongAdder();
+    private int queueSize = 8192;
+    private long maxFlushTimeMillis = 1000;
+
+    private BlockingQueue<ILoggingEvent> queue;
+    private Thread writer;
+
+    @Override
+    public void start() {
+        if (isStarted()) {
+            return;
+        }
+        if (!appenders.iteratorForAppenders().hasNext()) {
+            addError("No appender attached to " + getName());
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(queueSize);
+        writer = new Thread(this::runWriter, "log-writer-" + getName());
+        writer.setDaemon(true);
+        super.start(); // Before the writer, which runs while started
+        writer.start();
+    }
+
+    @Override
+    public void stop() {
+        if (!isStarted()) {
+            return;
+        }
+        super.stop(); // New events are ignored, the writer empties the queue then ends
+        try {
+            writer.join(maxFlushTimeMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writer.isAlive()) {
+            addWarn(queue.size() + " events still queued after " + maxFlushTimeMillis + " ms, they are lost");
+            writer.interrupt();
+        }
+        appenders.detachAndStopAllAppenders();
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        // Read the thread name, MDC and formatted message now, they can't be read later on the writer thread
+        event.prepareForDeferredProcessing();
+        if (!queue.offer(event)) {
+            droppedCount.increment();
+        }
+    }
+
+    private void runWriter() {
+        try {
+            while (isStarted() || !queue.isEmpty()) {
+                ILoggingEvent event = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (event != null) {
+                    appenders.appendLoopOnAppenders(event);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    public int getQueuedCount() {
+        BlockingQueue<ILoggingEvent> current = queue;
+        return current != null ? current.size() : 0;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public void setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    public long getMaxFlushTimeMillis() {
+        return maxFlushTimeMillis;
+    }
+
+    public void setMaxFlushTimeMillis(long maxFlushTimeMillis) {
+        this.maxFlushTimeMillis = maxFlushTimeMillis;
+    }
+
+    @Override
+    public void addAppender(Appender<ILoggingEvent> appender) {
+        appenders.addAppender(appender);
+    }
+
+    @Override
+    public Iterator<Appender<ILoggingEvent>> iteratorForAppenders() {
+        return appenders.iteratorForAppenders();
+    }
+
+    @Override
+    public Appender<ILoggingEvent> getAppender(String name) {
+        return appenders.getAppender(name);
+    }
+
+    @Override
+    public boolean isAttached(Appender<ILoggingEvent> appender) {
+        return appenders.isAttached(appender);
+    }
+
+    @Override
+    public void detachAndStopAllAppenders() {
+        appenders.detachAndStopAllAppenders();
+    }
+
+    @Override
+    public boolean detachAppender(Appender<ILoggingEvent> appender) {
+        return appenders.detachAppender(appender);
+    }
+
+    @Override
+    public boolean detachAppender(String name) {
+        return appenders.detachAppender(name);
+    }
+}
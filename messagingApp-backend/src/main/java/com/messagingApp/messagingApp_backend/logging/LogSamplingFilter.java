@@ -0,0 +1,75 @@
+package com.messagingApp.messagingApp_backend.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.Marker;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+public class LogSamplingFilter extends TurboFilter {
+    // This filter caps the events of one category (a logger name prefix) at maxPerSecond, configured in logback-spring.xml
+    // Only events at or below the level are capped, the rest of the second's events are denied before any formatting
+    // Meant for high-frequency events (per request, per message), the denied ones are counted
+
+    private String category = "";
+    private Level level = Level.INFO;
+    private int maxPerSecond = 100;
+
+    private volatile long currentSecond;
+    private final AtomicInteger countInSecond = new AtomicInteger();
+    private final LongAdder sampledOutCount = new LongAdder();
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level eventLevel, String format, Object[] params, Throwable t) {
+        // A null format is an isXxxEnabled() check, not an event
+        if (format == null || eventLevel.toInt() > level.toInt() || !logger.getName().startsWith(category)) {
+            return FilterReply.NEUTRAL;
+        }
+        if (!eventLevel.isGreaterOrEqual(logger.getEffectiveLevel())) {
+            return FilterReply.NEUTRAL; // Disabled anyway, it doesn't use the budget
+        }
+
+        long second = System.currentTimeMillis() / 1000;
+        if (second != currentSecond) {
+            // Two threads may both reset, the window lets a few more events through, which is fine
+            currentSecond = second;
+            countInSecond.set(0);
+        }
+        if (countInSecond.incrementAndGet() <= maxPerSecond) {
+            return FilterReply.NEUTRAL;
+        }
+        sampledOutCount.increment();
+        return FilterReply.DENY;
+    }
+
+    public long getSampledOutCount() {
+        return sampledOutCount.sum();
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public void setCategory(String category) {
+        this.category = category;
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    public void setLevel(Level level) {
+        this.level = level;
+    }
+
+    public int getMaxPerSecond() {
+        return maxPerSecond;
+    }
+
+    public void setMaxPerSecond(int maxPerSecond) {
+        this.maxPerSecond = maxPerSecond;
+    }
+}
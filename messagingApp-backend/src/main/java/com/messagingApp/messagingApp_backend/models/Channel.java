@@ -1,11 +1,11 @@
 package com.messagingApp.messagingApp_backend.models;
 
-import java.util.List;
+import java.util.Objects;
 
-public class Channel {
+// Immutable, the same instance is shared by every message of the channel, see ModelRegistry
+public final class Channel {
     private final String name;
     private final ChannelType type;
-    private List<User> members;
 
     public Channel(String name, ChannelType type) {
         this.name = name;
@@ -20,20 +20,20 @@ public class Channel {
         return type;
     }
 
-    public List<User> getMembers() {
-        return members;
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Channel other)) {
+            return false;
+        }
+        return Objects.equals(name, other.name) && type == other.type;
     }
 
-    public void setMembers(List<User> members) {
-        this.members = members;
-    }
-
-    public void addMember(User user) {
-        this.members.add(user);
-    }
-
-    public void removeMember(User user) {
-        this.members.remove(user);
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, type);
     }
 
     public enum ChannelType {
@@ -0,0 +1,55 @@
+package com.messagingApp.messagingApp_backend.models;
+
+import java.time.LocalDateTime;
+
+public class ChannelEvent {
+    private final long seq; // Position in the channel's change feed, increases by one per event
+    private final String channelName;
+    private final EventType type;
+    private final Long messageId; // Set for message events
+    private final String username; // Sender for MESSAGE_CREATED, member for MEMBERSHIP_CHANGED
+    private final Message message; // Set for MESSAGE_CREATED while the message still exists
+    private final LocalDateTime timestamp;
+
+    public ChannelEvent(long seq, String channelName, EventType type, Long messageId, String username, Message message, LocalDateTime timestamp) {
+        this.seq = seq;
+        this.channelName = channelName;
+        this.type = type;
+        this.messageId = messageId;
+        this.username = username;
+        this.message = message;
+        this.timestamp = timestamp;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public String getChannelName() {
+        return channelName;
+    }
+
+    public EventType getType() {
+        return type;
+    }
+
+    public Long getMessageId() {
+        return messageId;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    public LocalDateTime getTimestamp() {
+        return timestamp;
+    }
+
+    public enum EventType {
+        MESSAGE_CREATED, MESSAGE_DELETED, MEMBERSHIP_CHANGED
+    }
+}
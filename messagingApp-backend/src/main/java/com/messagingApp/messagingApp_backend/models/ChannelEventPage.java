@@ -0,0 +1,33 @@
+package com.messagingApp.messagingApp_backend.models;
+
+import java.util.List;
+
+public class ChannelEventPage {
+    private final List<ChannelEvent> events;
+    private final long seq; // Pass as "since" on the next poll
+    private final boolean hasMore;
+    private final boolean resync; // Events after "since" are no longer available, reload the channel instead
+
+    public ChannelEventPage(List<ChannelEvent> events, long seq, boolean hasMore, boolean resync) {
+        this.events = events;
+        this.seq = seq;
+        this.hasMore = hasMore;
+        this.resync = resync;
+    }
+
+    public List<ChannelEvent> getEvents() {
+        return events;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public boolean isHasMore() {
+        return hasMore;
+    }
+
+    public boolean isResync() {
+        return resync;
+    }
+}
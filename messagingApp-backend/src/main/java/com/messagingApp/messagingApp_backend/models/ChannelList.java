@@ -0,0 +1,21 @@
+package com.messagingApp.messagingApp_backend.models;
+
+import java.util.List;
+
+public class ChannelList {
+    private final long version; // Changes whenever a channel is created or deleted
+    private final List<Channel> channels;
+
+    public ChannelList(long version, List<Channel> channels) {
+        this.version = version;
+        this.channels = channels;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public List<Channel> getChannels() {
+        return channels;
+    }
+}
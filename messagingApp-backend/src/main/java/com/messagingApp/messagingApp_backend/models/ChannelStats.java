@@ -0,0 +1,50 @@
+package com.messagingApp.messagingApp_backend.models;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+public final class ChannelStats {
+    private final long memberCount;
+    private final long adminCount; // Members with the ADMIN role
+    private final long messageCount;
+    private final LocalDateTime lastActivity; // Time of the newest message, null if there are none
+
+    public ChannelStats(long memberCount, long adminCount, long messageCount, LocalDateTime lastActivity) {
+        this.memberCount = memberCount;
+        this.adminCount = adminCount;
+        this.messageCount = messageCount;
+        this.lastActivity = lastActivity;
+    }
+
+    public long getMemberCount() {
+        return memberCount;
+    }
+
+    public long getAdminCount() {
+        return adminCount;
+    }
+
+    public long getMessageCount() {
+        return messageCount;
+    }
+
+    public LocalDateTime getLastActivity() {
+        return lastActivity;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ChannelStats other)) {
+            return false;
+        }
+        return memberCount == other.memberCount && adminCount == other.adminCount && messageCount == other.messageCount && Objects.equals(lastActivity, other.lastActivity);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(memberCount, adminCount, messageCount, lastActivity);
+    }
+}
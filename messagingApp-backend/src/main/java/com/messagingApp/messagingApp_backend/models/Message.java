@@ -2,7 +2,7 @@ package com.messagingApp.messagingApp_backend.models;
 
 import java.time.LocalDateTime;
 
-public class Message {
+public final class Message {
     private final long id;
     private final String content;
     private final User sender;
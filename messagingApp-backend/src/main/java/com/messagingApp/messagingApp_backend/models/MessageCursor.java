@@ -0,0 +1,31 @@
+package com.messagingApp.messagingApp_backend.models;
+
+public class MessageCursor {
+    private final Long before; // Pass as "before" to load older messages, null if there are none
+    private final Long after;  // Pass as "after" to load newer messages
+    private final boolean hasOlder;
+    private final boolean hasNewer;
+
+    public MessageCursor(Long before, Long after, boolean hasOlder, boolean hasNewer) {
+        this.before = before;
+        this.after = after;
+        this.hasOlder = hasOlder;
+        this.hasNewer = hasNewer;
+    }
+
+    public Long getBefore() {
+        return before;
+    }
+
+    public Long getAfter() {
+        return after;
+    }
+
+    public boolean isHasOlder() {
+        return hasOlder;
+    }
+
+    public boolean isHasNewer() {
+        return hasNewer;
+    }
+}
@@ -0,0 +1,23 @@
+package com.messagingApp.messagingApp_backend.models;
+
+import java.util.List;
+
+public class MessagePage {
+    private final List<Message> messages; // Always sorted by id, oldest first
+    private final MessageCursor cursor;
+
+    public MessagePage(List<Message> messages, boolean hasOlder, boolean hasNewer) {
+        this.messages = messages;
+        Long before = hasOlder && !messages.isEmpty() ? messages.get(0).getId() : null;
+        Long after = !messages.isEmpty() ? messages.get(messages.size() - 1).getId() : null;
+        this.cursor = new MessageCursor(before, after, hasOlder, hasNewer);
+    }
+
+    public List<Message> getMessages() {
+        return messages;
+    }
+
+    public MessageCursor getCursor() {
+        return cursor;
+    }
+}
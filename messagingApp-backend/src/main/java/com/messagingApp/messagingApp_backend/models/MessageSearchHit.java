@@ -0,0 +1,52 @@
+package com.messagingApp.messagingApp_backend.models;
+
+import java.util.List;
+
+public class MessageSearchHit {
+    private final Message message;
+    private final double rank; // Higher is more relevant, only comparable within one search
+    private final String snippet; // Plain text excerpt around the matches
+    private final List<Highlight> highlights; // Matched words in the snippet, in order
+
+    public MessageSearchHit(Message message, double rank, String snippet, List<Highlight> highlights) {
+        this.message = message;
+        this.rank = rank;
+        this.snippet = snippet;
+        this.highlights = highlights;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    public double getRank() {
+        return rank;
+    }
+
+    public String getSnippet() {
+        return snippet;
+    }
+
+    public List<Highlight> getHighlights() {
+        return highlights;
+    }
+
+    // Characters start (inclusive) to end (exclusive) of the snippet, offsets instead of markup so the client never renders message text as HTML
+    public static class Highlight {
+        private final int start;
+        private final int end;
+
+        public Highlight(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        public int getStart() {
+            return start;
+        }
+
+        public int getEnd() {
+            return end;
+        }
+    }
+}
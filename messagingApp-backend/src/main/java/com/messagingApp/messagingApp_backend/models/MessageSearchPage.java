@@ -0,0 +1,27 @@
+package com.messagingApp.messagingApp_backend.models;
+
+import java.util.List;
+
+public class MessageSearchPage {
+    private final List<MessageSearchHit> hits; // Most relevant first, newest first for equal ranks
+    private final int offset;
+    private final boolean hasMore; // Ask for the next page with offset + hits.size()
+
+    public MessageSearchPage(List<MessageSearchHit> hits, int offset, boolean hasMore) {
+        this.hits = hits;
+        this.offset = offset;
+        this.hasMore = hasMore;
+    }
+
+    public List<MessageSearchHit> getHits() {
+        return hits;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public boolean isHasMore() {
+        return hasMore;
+    }
+}
@@ -1,12 +1,13 @@
 package com.messagingApp.messagingApp_backend.models;
 
-import java.util.List;
+import java.util.Objects;
 
-public class User {
+// Immutable, the same instance is shared by every message of the user, see ModelRegistry
+public final class User {
     private final String username;
     private final String password;
     private final UserRole role;
-    private List<Channel> channels;
+
     public User(String username, String password, UserRole role) {
         this.username = username;
         this.password = password;
@@ -25,28 +26,20 @@ public class User {
         return role;
     }
 
-    public List<Channel> getChannels() {
-        return channels;
-    }
-
-    public void setChannels(List<Channel> channels) {
-        this.channels = channels;
-    }
-
-    public void addChannel(Channel channel) {
-        this.channels.add(channel);
-    }
-
-    public void removeChannel(Channel channel) {
-        this.channels.remove(channel);
-    }
-
-    public boolean hasChannel(Channel channel) {
-        return this.channels.contains(channel);
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof User other)) {
+            return false;
+        }
+        return Objects.equals(username, other.username) && Objects.equals(password, other.password) && role == other.role;
     }
 
-    public boolean hasChannel(String channelName) {
-        return this.channels.stream().anyMatch(channel -> channel.getName().equals(channelName));
+    @Override
+    public int hashCode() {
+        return Objects.hash(username, password, role);
     }
 
     public enum UserRole {
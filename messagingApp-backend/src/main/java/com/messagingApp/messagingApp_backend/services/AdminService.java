@@ -1,22 +1,34 @@
 package com.messagingApp.messagingApp_backend.services;
 
+import com.messagingApp.messagingApp_backend.models.ChannelEvent;
+import com.messagingApp.messagingApp_backend.models.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 
 @Service
 public class AdminService {
+    private static final Logger logger = LoggerFactory.getLogger(AdminService.class);
+
     private final ChannelService channelService;
+    private final ChangeFeedService changeFeedService;
+    private final ResponseVersions responseVersions;
 
-    public AdminService(ChannelService channelService) {
+    public AdminService(ChannelService channelService, ChangeFeedService changeFeedService, ResponseVersions responseVersions) {
         this.channelService = channelService;
+        this.changeFeedService = changeFeedService;
+        this.responseVersions = responseVersions;
     }
 
     // Checking if a user is an admin
     public boolean isAdmin(String username) {
-        String query = "SELECT role FROM users WHERE username = ?";
+        String query = "/* users.role */ SELECT role FROM users WHERE username = ?";
         List<Map<String, Object>> result = ServiceUtility.executeQuery(query, username);
 
         if (!result.isEmpty()) {
@@ -27,31 +39,70 @@ public class AdminService {
         return false;
     }
 
-    // Changing the role of a user
+    // Changing the role of a user, the role is matched ignoring case and throws IllegalArgumentException when it is not one
     public int updateUserRole(String currentUsername, String targetUsername, String newRole) {
+        User.UserRole role = parseRole(newRole);
         if (isAdmin(currentUsername)) {
-            String query = "UPDATE users SET role = ? WHERE username = ?";
+            String query = "/* users.update_role */ UPDATE users SET role = ? WHERE username = ?";
             String errorMessage = "Error updating user role";
 
-            return ServiceUtility.executeUpdate(query, errorMessage, newRole, targetUsername);
+            int rowsAffected = ServiceUtility.executeUpdate(query, errorMessage, role.name(), targetUsername);
+            if (rowsAffected > 0) {
+                ModelRegistry.roleChanged(targetUsername, role);
+                channelService.userRoleChanged(targetUsername);
+                responseVersions.directoryChanged(); // Roles are in the user list and in the members of every channel
+            }
+            return rowsAffected;
         } else {
-            System.out.println("Permission denied: Only admins can update user roles.");
+            logger.warn("Permission denied, {} is not an admin and cannot update the role of {}", currentUsername, targetUsername);
             return 0;
         }
     }
 
+    private static User.UserRole parseRole(String role) {
+        if (role != null) {
+            for (User.UserRole value : User.UserRole.values()) {
+                if (value.name().equals(role.trim().toUpperCase(Locale.ROOT))) {
+                    return value;
+                }
+            }
+        }
+        throw new IllegalArgumentException("Unknown role: " + role);
+    }
+
     // Deleting a message
+    // The MESSAGE_DELETED event is appended in the same statement, like the inserts of MessageIngestPipeline,
+    // so a message is never gone without its event or the other way round
     public boolean deleteMessage(Long msgId) {
-        System.out.println("Received message delete request for id " + msgId);
-        System.out.println("User is an admin. Deleting this message.");
-        String sql = "DELETE FROM messages WHERE id = ?";
+        logger.debug("Deleting message {}", msgId);
+        String sql = """
+            /* messages.delete */
+            WITH m AS (
+                DELETE FROM messages WHERE id = ?
+                RETURNING id, channel_name
+            ),
+            head AS (
+                INSERT INTO channel_event_heads (channel_name, seq)
+                SELECT channel_name, 1 FROM m
+                ON CONFLICT (channel_name) DO UPDATE SET seq = channel_event_heads.seq + 1
+                RETURNING channel_name, seq
+            )
+            INSERT INTO channel_events (channel_name, seq, event_type, message_id)
+            SELECT m.channel_name, head.seq, 'MESSAGE_DELETED', m.id
+            FROM m
+            JOIN head ON head.channel_name = m.channel_name
+            RETURNING channel_name, seq
+            """;
 
-        int rowsUpdated = ServiceUtility.executeUpdate(sql, "Error Deleting Message", msgId);
-        if (rowsUpdated > 0) {
-            System.out.println("Message deleted successfully.");
+        List<Map<String, Object>> result = ServiceUtility.executeQuery(sql, msgId);
+        if (!result.isEmpty()) {
+            logger.info("Message {} deleted", msgId);
+            String channelName = (String) result.get(0).get("channel_name");
+            long seq = ((Number) result.get(0).get("seq")).longValue();
+            changeFeedService.publish(new ChannelEvent(seq, channelName, ChannelEvent.EventType.MESSAGE_DELETED, msgId, null, null, LocalDateTime.now()));
             return true;
         } else {
-            System.out.println("No message found with ID: " + msgId);
+            logger.info("No message found with id {}", msgId);
             return false;
         }
     }
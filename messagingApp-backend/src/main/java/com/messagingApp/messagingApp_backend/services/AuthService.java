@@ -1,44 +1,101 @@
 package com.messagingApp.messagingApp_backend.services;
 
-import io.github.cdimascio.dotenv.Dotenv;
+import com.messagingApp.messagingApp_backend.models.ChannelEvent;
+import jakarta.annotation.PreDestroy;
 import jakarta.servlet.http.HttpSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.sql.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
 public class AuthService {
+    private static final Logger logger = LoggerFactory.getLogger(AuthService.class);
+
+    private final ChangeFeedService changeFeedService;
+    private final MembershipCache membershipCache;
+    private final ResponseVersions responseVersions;
+    private final PasswordHasher passwordHasher;
+    // Runs the statements that follow a hash, so the PasswordHasher threads only hash and a slow database doesn't fill their queue
+    private final ExecutorService databaseExecutor;
+
+    public AuthService(ChangeFeedService changeFeedService, MembershipCache membershipCache, ResponseVersions responseVersions, PasswordHasher passwordHasher,
+                       @Value("${auth.database-threads:4}") int databaseThreads) {
+        this.changeFeedService = changeFeedService;
+        this.membershipCache = membershipCache;
+        this.responseVersions = responseVersions;
+        this.passwordHasher = passwordHasher;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.databaseExecutor = Executors.newFixedThreadPool(databaseThreads, runnable -> {
+            Thread thread = new Thread(runnable, "auth-database-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
 
-    // Load .env variables
-    private static final Dotenv dotenv = Dotenv.configure().ignoreIfMissing().load();
+    @PreDestroy
+    public void shutdown() {
+        databaseExecutor.shutdown();
+    }
 
-    private static final String DB_URL = System.getenv("DB_URL") != null ? System.getenv("DB_URL") : dotenv.get("DB_URL");
-    private static final String DB_USER = System.getenv("DB_USER") != null ? System.getenv("DB_USER") : dotenv.get("DB_USER");
-    private static final String DB_PASSWORD = System.getenv("DB_PASSWORD") != null ? System.getenv("DB_PASSWORD") : dotenv.get("DB_PASSWORD");
+    // Check if combination of username and password is valid, the password is checked on the PasswordHasher threads
+    // The future fails with RejectedExecutionException when too many logins are waiting, the client should retry later
+    public CompletableFuture<Boolean> authenticateUser(String username, String password, HttpSession session) {
+        logger.debug("Authenticating user {}", username);
+        if (username == null || password == null) {
+            return CompletableFuture.completedFuture(false);
+        }
 
-    // Check if combination of username and password is valid
-    public boolean authenticateUser(String username, String password, HttpSession session) {
-        System.out.println("Received login request: " + username + " | " + password);
-        System.out.println("Authenticating user: " + username);
+        String storedPassword = findPassword(username);
+        return passwordHasher.matches(password, storedPassword).thenApply(matches -> {
+            if (!matches) {
+                if (storedPassword == null) {
+                    logger.info("Login attempt for unknown user {}", username);
+                } else {
+                    logger.info("Invalid password for user {}", username);
+                }
+                return false;
+            }
 
-        // Debugging database credentials
-        System.out.println("Database URL: " + DB_URL);
-        System.out.println("Database User: " + DB_USER);
-        System.out.println("Database Password: " + (DB_PASSWORD != null ? "Set" : "Not Set"));
+            session.setAttribute("loggedInUser", username); // Store username in session
+            logger.info("User {} logged in", username);
+            if (passwordHasher.needsRehash(storedPassword)) {
+                rehash(username, password, storedPassword);
+            }
+            return true;
+        });
+    }
 
-        // Check if credentials are loaded
-        if (DB_URL == null || DB_USER == null || DB_PASSWORD == null) {
-            System.out.println("Error: Database credentials are not set.");
-            return false;
-        }
+    // Replace a plain-text or weaker stored password with a new hash, in the background, the login doesn't wait for it
+    // Skipped when the hasher is busy, the next login tries again
+    private void rehash(String username, String password, String storedPassword) {
+        passwordHasher.hash(password).thenAcceptAsync(hash -> {
+            // Only if the password wasn't changed meanwhile
+            String sql = "/* users.rehash_password */ UPDATE users SET password = ? WHERE username = ? AND password = ?";
+            if (ServiceUtility.executeUpdate(sql, "Error rehashing password", hash, username, storedPassword) > 0) {
+                logger.info("Password of user {} rehashed", username);
+            }
+        }, databaseExecutor).exceptionally(e -> {
+            logger.debug("Password of user {} not rehashed: {}", username, e.getMessage());
+            return null;
+        });
+    }
 
+    // Stored password (hash, or plain text for the rows from before hashing) of a user, null if there is no such user
+    private String findPassword(String username) {
         String sql = "SELECT password FROM users WHERE username = ?";
 
-        try (Connection connection = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD); Statement statement = connection.createStatement()) {
+        try (Connection connection = ServiceUtility.getConnection(); Statement statement = connection.createStatement()) {
 
             // Set the role to postgres before executing any other SQL commands
             statement.execute("SET ROLE postgres;");
-            System.out.println("Role set to postgres successfully.");
 
             // Now execute the actual query to authenticate the user
             try (PreparedStatement ps = connection.prepareStatement(sql)) {
@@ -46,74 +103,71 @@ public class AuthService {
                 ResultSet resultSet = ps.executeQuery();
 
                 if (resultSet.next()) {
-                    String storedPassword = resultSet.getString("password");
-
-                    // If the provided password matches the stored one, authenticate
-                    if (storedPassword.equals(password)) {
-                        session.setAttribute("loggedInUser", username); // Store username in session
-                        System.out.println("User " + username + " authenticated successfully.");
-                        return true;
-                    } else {
-                        System.out.println("Invalid password for user: " + username);
-                    }
-                } else {
-                    System.out.println("User not found: " + username);
+                    return resultSet.getString("password");
                 }
+            } finally {
+                // The connection goes back to the pool, don't leak the role to the next borrower
+                statement.execute("RESET ROLE;");
             }
 
         } catch (SQLException e) {
-            System.out.println("Database error during authentication:");
-            e.printStackTrace();
+            logger.error("Database error during authentication", e);
         }
 
-        return false;
+        return null;
     }
 
     // Get logged-in user
     public String getLoggedInUser(HttpSession session) {
-        String user = (String) session.getAttribute("loggedInUser");
-        System.out.println("Fetching logged-in user: " + (user != null ? user : "No user logged in"));
-        return user;
+        return (String) session.getAttribute("loggedInUser"); // Called on every request, not logged
     }
 
     // Logout user
     public void logout(HttpSession session) {
-        System.out.println("Logging out user: " + session.getAttribute("loggedInUser"));
+        logger.info("User {} logged out", session.getAttribute("loggedInUser"));
         session.invalidate();
     }
 
-    // User creation helper method
-    public void createUser(String username, String password, String role) {
-        String sql = "INSERT INTO users (username, password, role) VALUES (?, ?, ?)";
-
-        // Execute the query
-        ServiceUtility.executeUpdate(sql, "Error creating user", username, password, role);
-
-        System.out.println("User created successfully.");
-
-        // Add the user to the general channel by default
-        String channelSql = "INSERT INTO user_channel (channel_name, username) VALUES (?, ?)";
-        ServiceUtility.executeUpdate(channelSql, "Error adding user to channel", "General", username);
+    // User creation helper method, completes with the rows inserted once the password is hashed and the user stored
+    // Like registerUser the future fails with RejectedExecutionException when the hasher is full, callers answer it with 503
+    public CompletableFuture<Integer> createUser(String username, String password, String role) {
+        return passwordHasher.hash(password).thenApplyAsync(hash -> insertUser(username, hash, role), databaseExecutor);
     }
 
-    // Register user
-    public int registerUser(String username, String password, String role) {
+    // Register user, completes once the password is hashed and the user stored
+    // The future fails with RejectedExecutionException when too many passwords are waiting to be hashed
+    public CompletableFuture<Integer> registerUser(String username, String password, String role) {
         // Check if the role is valid
-        if (!role.equals("MEMBER") && !role.equals("ADMIN")) {
-            System.out.println("Invalid role: " + role);
-            return 1; // Invalid role
+        if (role == null || (!role.equals("MEMBER") && !role.equals("ADMIN"))) {
+            logger.warn("Registration refused, invalid role {}", role);
+            return CompletableFuture.completedFuture(1); // Invalid role
         }
+        if (password == null) {
+            return CompletableFuture.completedFuture(0);
+        }
+
+        return passwordHasher.hash(password).thenApplyAsync(hash -> insertUser(username, hash, role), databaseExecutor);
+    }
 
-        String sql = "INSERT INTO users (username, password, role) VALUES (?, ?, ?)";
+    private int insertUser(String username, String hash, String role) {
+        String sql = "/* users.insert */ INSERT INTO users (username, password, role) VALUES (?, ?, ?)";
 
         // Execute the query
-        int rowsAffected = ServiceUtility.executeUpdate(sql, "Error creating user", username, password, role);
+        int rowsAffected = ServiceUtility.executeUpdate(sql, "Error creating user", username, hash, role);
+        if (rowsAffected > 0) {
+            responseVersions.directoryChanged();
+        }
 
-        System.out.println("User created successfully.");
+        logger.info("User {} created", username);
 
         // Add the user to the general channel by default
-        String channelSql = "INSERT INTO user_channel (channel_name, username) VALUES (?, ?)";
-        rowsAffected = rowsAffected + ServiceUtility.executeUpdate(channelSql, "Error adding user to channel", "General", username);
+        String channelSql = "/* user_channel.insert */ INSERT INTO user_channel (channel_name, username) VALUES (?, ?)";
+        int channelRowsAffected = ServiceUtility.executeUpdate(channelSql, "Error adding user to channel", "General", username);
+        if (channelRowsAffected > 0) {
+            membershipCache.invalidateUser(username);
+            changeFeedService.record("General", ChannelEvent.EventType.MEMBERSHIP_CHANGED, null, username);
+        }
+        rowsAffected = rowsAffected + channelRowsAffected;
 
         return rowsAffected; // If both queries are successful, return 2, otherwise return 1
     }
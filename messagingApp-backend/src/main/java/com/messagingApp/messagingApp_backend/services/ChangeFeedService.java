@@ -0,0 +1,143 @@
+package com.messagingApp.messagingApp_backend.services;
+
+import com.messagingApp.messagingApp_backend.models.ChannelEvent;
+import com.messagingApp.messagingApp_backend.models.ChannelEventPage;
+import com.messagingApp.messagingApp_backend.models.Message;
+import com.messagingApp.messagingApp_backend.models.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+@Service
+public class ChangeFeedService {
+    // This class keeps a per-channel, sequenced feed of changes (messages created or deleted, members joining)
+    // Clients poll the events after the last sequence number they have seen instead of reloading the whole channel
+
+    private static final Logger logger = LoggerFactory.getLogger(ChangeFeedService.class);
+
+    public static final int DEFAULT_EVENT_LIMIT = 100;
+    public static final int MAX_EVENT_LIMIT = 500;
+
+    private final int retentionDays;
+    private final ApplicationEventPublisher eventPublisher;
+
+    public ChangeFeedService(@Value("${changefeed.retention-days:7}") int retentionDays, ApplicationEventPublisher eventPublisher) {
+        this.retentionDays = retentionDays;
+        this.eventPublisher = eventPublisher;
+    }
+
+    // Append an event to the feed of a channel, returns its sequence number or -1 if it could not be stored
+    public long record(String channelName, ChannelEvent.EventType type, Long messageId, String username) {
+        return record(channelName, type, messageId, username, null);
+    }
+
+    // Same as above, the message is passed along to the in-process listeners (push delivery, caches)
+    // Listeners get the event even if it could not be stored, in that case its seq is -1
+    public long record(String channelName, ChannelEvent.EventType type, Long messageId, String username, Message message) {
+        // Bumping the head and inserting the event in one statement keeps the sequence dense and in commit order
+        String query = """
+            /* channel_events.record */
+            WITH head AS (
+                INSERT INTO channel_event_heads (channel_name, seq)
+                VALUES (?, 1)
+                ON CONFLICT (channel_name) DO UPDATE SET seq = channel_event_heads.seq + 1
+                RETURNING seq
+            )
+            INSERT INTO channel_events (channel_name, seq, event_type, message_id, username)
+            SELECT CAST(? AS TEXT), head.seq, CAST(? AS TEXT), CAST(? AS BIGINT), CAST(? AS TEXT) FROM head
+            RETURNING seq
+            """;
+        List<Map<String, Object>> result = ServiceUtility.executeQuery(query, channelName, channelName, type.name(), messageId, username);
+        long seq = -1;
+        if (result.isEmpty()) {
+            logger.error("Error recording {} event for channel {}", type, channelName);
+        } else {
+            seq = ((Number) result.get(0).get("seq")).longValue();
+        }
+
+        eventPublisher.publishEvent(new ChannelEvent(seq, channelName, type, messageId, username, message, LocalDateTime.now()));
+        return seq;
+    }
+
+    // Pass an event stored by another statement to the in-process listeners, see MessageIngestPipeline
+    public void publish(ChannelEvent event) {
+        eventPublisher.publishEvent(event);
+    }
+
+    // Get the events of a channel after the given sequence number, oldest first
+    public ChannelEventPage getEventsSince(String channelName, long since, int limit) {
+        limit = Math.max(1, Math.min(limit, MAX_EVENT_LIMIT));
+
+        // A single range probe on the (channel_name, seq) primary key, an idle channel returns no rows
+        String query = """
+            /* channel_events.since */
+            SELECT e.seq, e.event_type, e.message_id, e.username, e.created_at, m.text, m.date_time, u.role
+            FROM channel_events e
+            LEFT JOIN messages m ON e.event_type = 'MESSAGE_CREATED' AND m.id = e.message_id
+            LEFT JOIN users u ON m.username = u.username
+            WHERE e.channel_name = ? AND e.seq > ?
+            ORDER BY e.seq
+            LIMIT ?
+            """;
+        List<Map<String, Object>> result = ServiceUtility.executeQuery(query, channelName, since, limit + 1);
+
+        boolean hasMore = result.size() > limit;
+        List<ChannelEvent> events = new ArrayList<>();
+        for (Map<String, Object> row : result.subList(0, Math.min(result.size(), limit))) {
+            events.add(toEvent(channelName, row));
+        }
+
+        // The sequence is dense, so a hole right after "since" means those events were pruned
+        boolean resync = !events.isEmpty() && events.get(0).getSeq() > since + 1;
+        long seq = events.isEmpty() ? since : events.get(events.size() - 1).getSeq();
+        return new ChannelEventPage(resync ? List.of() : events, seq, hasMore && !resync, resync);
+    }
+
+    // Get the last sequence number of a channel, 0 if nothing happened in it yet
+    public long getLatestSeq(String channelName) {
+        String query = "/* channel_event_heads.seq */ SELECT seq FROM channel_event_heads WHERE channel_name = ?";
+        List<Map<String, Object>> result = ServiceUtility.executeQuery(query, channelName);
+        if (result.isEmpty()) {
+            return 0L;
+        }
+        return ((Number) result.get(0).get("seq")).longValue();
+    }
+
+    // Prune old events every night, the last event of each channel is kept so clients can detect the hole and resync
+    @Scheduled(cron = "${changefeed.prune-cron:0 30 3 * * *}")
+    public void pruneOldEvents() {
+        String query = """
+            /* channel_events.prune */
+            DELETE FROM channel_events e
+            WHERE e.created_at < ?
+            AND e.seq < (SELECT h.seq FROM channel_event_heads h WHERE h.channel_name = e.channel_name)
+            """;
+        int deleted = ServiceUtility.executeUpdate(query, "Error pruning channel events", Timestamp.valueOf(LocalDateTime.now().minusDays(retentionDays)));
+        logger.info("Pruned {} channel events older than {} days", deleted, retentionDays);
+    }
+
+    private ChannelEvent toEvent(String channelName, Map<String, Object> row) {
+        ChannelEvent.EventType type = ChannelEvent.EventType.valueOf((String) row.get("event_type"));
+        Long messageId = row.get("message_id") != null ? ((Number) row.get("message_id")).longValue() : null;
+        String username = (String) row.get("username");
+
+        // The message is joined in for creations, it is missing if it was deleted since
+        Message message = null;
+        if (type == ChannelEvent.EventType.MESSAGE_CREATED && row.get("text") != null) {
+            User sender = ModelRegistry.user(username, User.UserRole.valueOf((String) row.get("role")));
+            message = new Message(messageId, (String) row.get("text"), sender, ModelRegistry.channel(channelName, null),
+                ((Timestamp) row.get("date_time")).toLocalDateTime());
+        }
+
+        return new ChannelEvent(((Number) row.get("seq")).longValue(), channelName, type, messageId, username, message, ((Timestamp) row.get("created_at")).toLocalDateTime());
+    }
+}
@@ -0,0 +1,88 @@
+package com.messagingApp.messagingApp_backend.services;
+
+import com.messagingApp.messagingApp_backend.models.Channel;
+import com.messagingApp.messagingApp_backend.models.ChannelList;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+@Service
+public class ChannelCatalog {
+    // This class keeps every channel name with its type in memory, loaded once on the first lookup
+    // ChannelService updates it when a channel is created or deleted, each change bumps the version
+
+    private volatile Snapshot snapshot; // Replaced as a whole on every change, reads never lock
+
+    public boolean exists(String channelName, Supplier<List<Channel>> loader) {
+        return get(loader).channels.containsKey(channelName);
+    }
+
+    public Channel.ChannelType getType(String channelName, Supplier<List<Channel>> loader) {
+        Channel channel = get(loader).channels.get(channelName);
+        return channel != null ? channel.getType() : null;
+    }
+
+    public ChannelList getChannelList(Supplier<List<Channel>> loader) {
+        Snapshot current = get(loader);
+        return new ChannelList(current.version, current.list);
+    }
+
+    public synchronized void put(Channel channel) {
+        // Nothing to do before the first load, it will read the channel from the database
+        if (snapshot != null) {
+            Map<String, Channel> channels = new LinkedHashMap<>(snapshot.channels);
+            channels.put(channel.getName(), channel);
+            snapshot = new Snapshot(snapshot.version + 1, channels);
+        }
+    }
+
+    public synchronized void remove(String channelName) {
+        if (snapshot != null && snapshot.channels.containsKey(channelName)) {
+            Map<String, Channel> channels = new LinkedHashMap<>(snapshot.channels);
+            channels.remove(channelName);
+            snapshot = new Snapshot(snapshot.version + 1, channels);
+        }
+    }
+
+    // Number of channels held, 0 before the first load
+    public int size() {
+        Snapshot current = snapshot;
+        return current != null ? current.channels.size() : 0;
+    }
+
+    private Snapshot get(Supplier<List<Channel>> loader) {
+        Snapshot current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            // Loading holds the lock so a channel created meanwhile is applied after the load, not lost
+            if (snapshot == null) {
+                Map<String, Channel> channels = new LinkedHashMap<>();
+                for (Channel channel : loader.get()) {
+                    channels.put(channel.getName(), channel);
+                }
+                // Start from the clock so the versions a client saw before a restart are not reused
+                snapshot = new Snapshot(System.currentTimeMillis(), channels);
+            }
+            return snapshot;
+        }
+    }
+
+    private static class Snapshot {
+        private final long version;
+        private final Map<String, Channel> channels;
+        private final List<Channel> list;
+
+        private Snapshot(long version, Map<String, Channel> channels) {
+            this.version = version;
+            this.channels = Collections.unmodifiableMap(channels);
+            this.list = Collections.unmodifiableList(new ArrayList<>(channels.values()));
+        }
+    }
+}
@@ -1,44 +1,113 @@
 package com.messagingApp.messagingApp_backend.services;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.messagingApp.messagingApp_backend.dto.MessageDto;
+import com.messagingApp.messagingApp_backend.dto.MessageWithSendersDto;
+import com.messagingApp.messagingApp_backend.dto.UserDto;
 import com.messagingApp.messagingApp_backend.models.Channel;
+import com.messagingApp.messagingApp_backend.models.ChannelEvent;
+import com.messagingApp.messagingApp_backend.models.ChannelEventPage;
+import com.messagingApp.messagingApp_backend.models.ChannelList;
+import com.messagingApp.messagingApp_backend.models.ChannelStats;
 import com.messagingApp.messagingApp_backend.models.Message;
+import com.messagingApp.messagingApp_backend.models.MessagePage;
+import com.messagingApp.messagingApp_backend.models.MessageSearchHit;
+import com.messagingApp.messagingApp_backend.models.MessageSearchPage;
 import com.messagingApp.messagingApp_backend.models.User;
-import io.github.cdimascio.dotenv.Dotenv;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.async.DeferredResult;
 
-import java.sql.Timestamp;
-import java.time.LocalDateTime;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Pattern;
 
 
 @Service
 public class ChannelService {
     // This class is a service class that provides methods to get channels, users in a channel, messages in a channel, and the latest message in a channel
     // These methods are used by the channel controller to get data from the service layer
-    // Load .env variables
 
-    private static final Dotenv dotenv = Dotenv.configure().ignoreIfMissing().load();
-
-    private static final String DB_URL = System.getenv("DB_URL") != null ? System.getenv("DB_URL") : dotenv.get("DB_URL");
-    private static final String DB_USER = System.getenv("DB_USER") != null ? System.getenv("DB_USER") : dotenv.get("DB_USER");
-    private static final String DB_PASSWORD = System.getenv("DB_PASSWORD") != null ? System.getenv("DB_PASSWORD") : dotenv.get("DB_PASSWORD");
-
-    static {
-        System.out.println("Loaded DB_URL: " + (DB_URL != null && !DB_URL.isEmpty() ? "✔" : "❌"));
-        System.out.println("Loaded DB_USER: " + (DB_USER != null && !DB_USER.isEmpty() ? "✔" : "❌"));
-        System.out.println("Loaded DB_PASSWORD: " + (DB_PASSWORD != null && !DB_PASSWORD.isEmpty() ? "✔" : "❌"));
+    private static final Logger logger = LoggerFactory.getLogger(ChannelService.class);
+    private static final Pattern TRIGRAM_INPUT = Pattern.compile("[\\p{L}\\p{N}]{3}");
+
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 200;
+    public static final int DEFAULT_SEARCH_LIMIT = 20;
+    public static final int MAX_SEARCH_LIMIT = 50;
+    public static final int MAX_SEARCH_QUERY_LENGTH = 200;
+    // Matches ranked by a search, the newest ones, so a common word ranks a bounded set instead of every message containing it
+    static final int SEARCH_CANDIDATES = 1000;
+    public static final int DEFAULT_USER_SEARCH_LIMIT = 10;
+    public static final int MAX_USER_SEARCH_LIMIT = 50;
+    public static final int MAX_UNREAD_COUNT = 100; // Unread counts stop there, clients show it as "100+"
+
+    private final ChangeFeedService changeFeedService;
+    private final LongPollService longPollService;
+    private final RecentMessageCache recentMessageCache;
+    private final MembershipCache membershipCache;
+    private final ChannelCatalog channelCatalog;
+    private final MessageHighWaterMarks highWaterMarks;
+    private final ReadMarkerBuffer readMarkerBuffer;
+    private final MessageIngestPipeline messageIngestPipeline;
+    private final ResponseVersions responseVersions;
+    private final ChannelStatsService channelStatsService;
+    private final ObjectMapper objectMapper;
+
+    public ChannelService(ChangeFeedService changeFeedService, LongPollService longPollService, RecentMessageCache recentMessageCache, MembershipCache membershipCache, ChannelCatalog channelCatalog, MessageHighWaterMarks highWaterMarks, ReadMarkerBuffer readMarkerBuffer, MessageIngestPipeline messageIngestPipeline, ResponseVersions responseVersions, ChannelStatsService channelStatsService, ObjectMapper objectMapper) {
+        this.changeFeedService = changeFeedService;
+        this.longPollService = longPollService;
+        this.recentMessageCache = recentMessageCache;
+        this.membershipCache = membershipCache;
+        this.channelCatalog = channelCatalog;
+        this.highWaterMarks = highWaterMarks;
+        this.readMarkerBuffer = readMarkerBuffer;
+        this.messageIngestPipeline = messageIngestPipeline;
+        this.responseVersions = responseVersions;
+        this.channelStatsService = channelStatsService;
+        this.objectMapper = objectMapper;
     }
 
     // Get all channels
     public List<Channel> getAllChannels() {
-        System.out.println("Fetching all channels from the database...");
+        return channelCatalog.getChannelList(this::loadAllChannels).getChannels();
+    }
+
+    // Get all channels with the catalog version, the version changes whenever a channel is created or deleted
+    public ChannelList getChannelList() {
+        return channelCatalog.getChannelList(this::loadAllChannels);
+    }
+
+    // Check if a channel exists without listing all of them
+    public boolean channelExists(String channelName) {
+        return channelCatalog.exists(channelName, this::loadAllChannels);
+    }
 
-        List<Map<String, Object>> result = ServiceUtility.executeQuery("SELECT * FROM channels");
+    public Channel.ChannelType getChannelType(String channelName) {
+        return channelCatalog.getType(channelName, this::loadAllChannels);
+    }
+
+    private List<Channel> loadAllChannels() {
+        logger.debug("Loading all channels");
+
+        List<Map<String, Object>> result = ServiceUtility.executeQuery("/* channels.all */ SELECT * FROM channels");
         List<Channel> channels = new ArrayList<>();
         for (Map<String, Object> row : result) {
-            Channel channel = new Channel((String) row.get("name"), Channel.ChannelType.valueOf((String) row.get("type")));
+            Channel channel = ModelRegistry.channel((String) row.get("name"), Channel.ChannelType.valueOf((String) row.get("type")));
             channels.add(channel);
         }
         return channels;
@@ -46,7 +115,17 @@ public class ChannelService {
 
     // Get all channels for a user
     public List<Channel> getUserChannels(String username) {
+        return membershipCache.getChannels(username, this::loadUserChannels);
+    }
+
+    // Check if a user is a member of a channel, served from memory for the recently active users
+    public boolean isMember(String username, String channelName) {
+        return membershipCache.isMember(username, channelName, this::loadUserChannels);
+    }
+
+    private List<Channel> loadUserChannels(String username) {
         String query = """
+            /* channels.of_user */
             SELECT uc.username, uc.channel_name, c.type
             FROM user_channel uc
             JOIN channels c ON uc.channel_name = c.name
@@ -55,7 +134,7 @@ public class ChannelService {
         List<Map<String, Object>> result = ServiceUtility.executeQuery(query, username);
         List<Channel> channels = new ArrayList<>();
         for (Map<String, Object> row : result) {
-            Channel channel = new Channel((String) row.get("channel_name"), Channel.ChannelType.valueOf((String) row.get("type")));
+            Channel channel = ModelRegistry.channel((String) row.get("channel_name"), Channel.ChannelType.valueOf((String) row.get("type")));
             channels.add(channel);
         }
         return channels;
@@ -64,6 +143,7 @@ public class ChannelService {
     // Get all users in a channel
     public List<User> getUsersInChannel(String channelName) {
         String query = """
+            /* users.of_channel */
             SELECT uc.username, u.role
             FROM user_channel uc
             JOIN users u ON uc.username = u.username
@@ -72,7 +152,7 @@ public class ChannelService {
         List<Map<String, Object>> result = ServiceUtility.executeQuery(query, channelName);
         List<User> users = new ArrayList<>();
         for (Map<String, Object> row : result) {
-            User user = new User((String) row.get("username"), null, User.UserRole.valueOf((String) row.get("role"))); // Password set to null because it is not needed
+            User user = ModelRegistry.user((String) row.get("username"), User.UserRole.valueOf((String) row.get("role")));
             users.add(user);
         }
         return users;
@@ -80,75 +160,292 @@ public class ChannelService {
 
     // Get all messages in a channel
     public List<Message> getMessagesInChannel(String channelName) {
+        // Served from memory when the channel is small enough to fit in its recent message buffer
+        RecentMessageCache.Snapshot recent = getRecentMessages(channelName);
+        if (!recent.hasOlder()) {
+            return new ArrayList<>(recent.getMessages());
+        }
+
         // Query gets messages from a specific channel with only the username and role of the sender
         String query = """
+            /* messages.of_channel */
             SELECT m.id, m.text, m.date_time, m.channel_name, u.username, u.role
             FROM messages m
             JOIN users u ON m.username = u.username
             WHERE m.channel_name = ?
+            ORDER BY m.id
             """;
-        List<Map<String, Object>> result = ServiceUtility.executeQuery(query, channelName);
-        List<Message> messages = new ArrayList<>();
-        for (Map<String, Object> row : result) {
-            User sender = new User((String) row.get("username"), null, // Password set to null because it is not needed
-                User.UserRole.valueOf((String) row.get("role")));
+        return ServiceUtility.executeQuery(query, RowMappers.MESSAGE, channelName);
+    }
+
+    // Write every message of a channel to out as a JSON object with the messages, oldest first, and their senders, like a page
+    // Each row is written as it is read from a server-side cursor, so memory use doesn't grow with the channel
+    // Only the senders are kept until the end, one per user who wrote in the channel
+    public void exportMessages(String channelName, OutputStream out) throws IOException {
+        String query = """
+            /* messages.export */
+            SELECT m.id, m.text, m.date_time, m.channel_name, u.username, u.role
+            FROM messages m
+            JOIN users u ON m.username = u.username
+            WHERE m.channel_name = ?
+            ORDER BY m.id
+            """;
+        // Flushing after every message would send each one in its own chunk, the buffers are flushed when full instead
+        ObjectWriter writer = objectMapper.writerFor(MessageDto.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        Map<String, UserDto> senders = new LinkedHashMap<>();
+
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT); // Or closing it would end the array of a failed export
+            generator.writeStartObject();
+            generator.writeFieldName("messages");
+            generator.writeStartArray();
+            long rows;
+            try {
+                rows = ServiceUtility.executeStreamingQuery(query, RowMappers.MESSAGE, message -> {
+                    try {
+                        writer.writeValue(generator, MessageDto.from(message));
+                        UserDto.addTo(senders, message.getSender());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e); // Client went away, stops the query
+                    }
+                }, channelName);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            if (rows < 0) {
+                // Not closing the array, the client must not take a cut export for a complete one
+                throw new IOException("Export of channel " + channelName + " failed");
+            }
+            generator.writeEndArray();
+            generator.writeFieldName("senders");
+            writer.forType(Map.class).writeValue(generator, senders);
+            generator.writeEndObject();
+        }
+    }
 
-            Message message = new Message((int) row.get("id"), (String) row.get("text"), sender, new Channel((String) row.get("channel_name"), null), // Channel type set to null because it is not needed
-                ((java.sql.Timestamp) row.get("date_time")).toLocalDateTime());
-            messages.add(message);
+    // Get one page of messages in a channel using keyset pagination on the message id
+    // At most one of before, after and around can be set, with none of them the newest page is returned
+    public MessagePage getMessagesPage(String channelName, Long before, Long after, Long around, int limit) {
+        int cursors = (before != null ? 1 : 0) + (after != null ? 1 : 0) + (around != null ? 1 : 0);
+        if (cursors > 1) {
+            throw new IllegalArgumentException("Only one of before, after and around can be used");
         }
+        limit = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+
+        if (after != null) {
+            // Catching up on the tail of the channel is served from memory when the buffer reaches back to the cursor
+            List<Message> recentNewer = getRecentMessages(channelName).getAfter(after);
+            List<Message> newer = recentNewer != null ? recentNewer : getMessagesAfter(channelName, after, limit + 1);
+            boolean hasNewer = newer.size() > limit;
+            return new MessagePage(hasNewer ? newer.subList(0, limit) : newer, true, hasNewer);
+        }
+
+        if (around != null) {
+            // Split the page around the target message, which is part of the newer half
+            int olderLimit = limit / 2;
+            int newerLimit = limit - olderLimit;
+            List<Message> older = getMessagesBefore(channelName, around, olderLimit + 1);
+            List<Message> newer = getMessagesAfter(channelName, around - 1, newerLimit + 1);
+            boolean hasOlder = older.size() > olderLimit;
+            boolean hasNewer = newer.size() > newerLimit;
+            List<Message> messages = new ArrayList<>(hasOlder ? older.subList(1, older.size()) : older);
+            messages.addAll(hasNewer ? newer.subList(0, newerLimit) : newer);
+            return new MessagePage(messages, hasOlder, hasNewer);
+        }
+
+        // Newest page from memory
+        if (before == null && limit <= recentMessageCache.getCapacity()) {
+            RecentMessageCache.Snapshot recent = getRecentMessages(channelName);
+            List<Message> newest = recent.getNewest(limit);
+            if (newest != null) {
+                return new MessagePage(newest, recent.hasOlder() || recent.getMessages().size() > limit, false);
+            }
+        }
+
+        // Newest page, or the page just before the given cursor
+        List<Message> older = before != null ? getMessagesBefore(channelName, before, limit + 1) : getNewestMessages(channelName, limit + 1);
+        boolean hasOlder = older.size() > limit;
+        return new MessagePage(hasOlder ? older.subList(1, older.size()) : older, hasOlder, before != null);
+    }
+
+    // Newest messages of a channel from the recent message buffer, loaded from the database on the first read
+    private RecentMessageCache.Snapshot getRecentMessages(String channelName) {
+        return recentMessageCache.get(channelName, limit -> getNewestMessages(channelName, limit));
+    }
+
+    // Newest messages of a channel, returned oldest first
+    private List<Message> getNewestMessages(String channelName, int limit) {
+        String query = """
+            /* messages.newest */
+            SELECT m.id, m.text, m.date_time, m.channel_name, u.username, u.role
+            FROM messages m
+            JOIN users u ON m.username = u.username
+            WHERE m.channel_name = ?
+            ORDER BY m.id DESC
+            LIMIT ?
+            """;
+        return toAscending(ServiceUtility.executeQuery(query, RowMappers.MESSAGE, channelName, limit));
+    }
+
+    // Messages with an id lower than the cursor, returned oldest first
+    private List<Message> getMessagesBefore(String channelName, long before, int limit) {
+        String query = """
+            /* messages.before */
+            SELECT m.id, m.text, m.date_time, m.channel_name, u.username, u.role
+            FROM messages m
+            JOIN users u ON m.username = u.username
+            WHERE m.channel_name = ? AND m.id < ?
+            ORDER BY m.id DESC
+            LIMIT ?
+            """;
+        return toAscending(ServiceUtility.executeQuery(query, RowMappers.MESSAGE, channelName, before, limit));
+    }
+
+    // Messages with an id greater than the cursor, returned oldest first
+    private List<Message> getMessagesAfter(String channelName, long after, int limit) {
+        String query = """
+            /* messages.after */
+            SELECT m.id, m.text, m.date_time, m.channel_name, u.username, u.role
+            FROM messages m
+            JOIN users u ON m.username = u.username
+            WHERE m.channel_name = ? AND m.id > ?
+            ORDER BY m.id
+            LIMIT ?
+            """;
+        return ServiceUtility.executeQuery(query, RowMappers.MESSAGE, channelName, after, limit);
+    }
+
+    // Rows come newest first from the descending queries, the API always returns oldest first
+    private List<Message> toAscending(List<Message> messages) {
+        Collections.reverse(messages);
         return messages;
     }
 
     // Get last seen messages
     public Long getLastSeenMsg(String username, String channelName) {
         String query = """
+            /* messages_seen.last_read */
             SELECT last_read_msg_id
             FROM messages_seen
             WHERE username = ? AND channel_name = ?
             """;
         List<Map<String, Object>> result = ServiceUtility.executeQuery(query, username, channelName);
+        long lastSeenMsgId = 0L;
         if (!result.isEmpty() && result.get(0).get("last_read_msg_id") != null) {
-            return ((Number) result.get(0).get("last_read_msg_id")).longValue();
+            lastSeenMsgId = ((Number) result.get(0).get("last_read_msg_id")).longValue();
         }
-        return 0L;
+
+        // A marker not flushed yet is newer than the database
+        Long pending = readMarkerBuffer.getPending(username, channelName);
+        return pending != null ? Math.max(pending, lastSeenMsgId) : lastSeenMsgId;
     }
 
     // Updating the message seen table
+    // The marker is buffered and written in the next batch, see ReadMarkerBuffer
     public void updateMessageSeenTable(String username, String channelName, Long lastSeenMsgId) {
-        String query = """
-            INSERT INTO messages_seen (username, channel_name, last_read_msg_id)
-            VALUES (?, ?, ?)
-            ON CONFLICT (username, channel_name)
-            DO UPDATE SET last_read_msg_id = EXCLUDED.last_read_msg_id;
-            """;
+        readMarkerBuffer.record(username, channelName, lastSeenMsgId);
+        responseVersions.userChanged(username);
+    }
 
-        ServiceUtility.executeUpdate(query, "Error when updating messages_seen table", username, channelName, lastSeenMsgId);
+    // ETags of the polled responses, computed from in-memory counters only, see ResponseVersions
+    public String getChannelDataTag(String username, String channelName) {
+        return responseVersions.channelDataTag(username, channelName);
+    }
+
+    public String getUnreadTag(String username) {
+        List<String> channelNames = new ArrayList<>();
+        for (Channel channel : getUserChannels(username)) {
+            channelNames.add(channel.getName());
+        }
+        return responseVersions.unreadTag(username, channelNames);
+    }
+
+    public String getAllUsersTag() {
+        return responseVersions.directoryTag();
     }
 
     // Get unread channels
     public List<String> getUnreadChannels(String username) {
+        return new ArrayList<>(getUnreadCounts(username).keySet());
+    }
 
+    // Get the number of unread messages in each channel of the user, channels with nothing unread are left out
+    // Only the user's channels are looked at, and only the ones whose high-water mark is past the last read message are counted
+    public Map<String, Integer> getUnreadCounts(String username) {
+        Map<String, Long> lastRead = getLastReadMessages(username);
+        Map<String, Integer> unreadCounts = new LinkedHashMap<>();
+        for (Channel channel : getUserChannels(username)) {
+            long lastReadId = lastRead.getOrDefault(channel.getName(), 0L);
+            Long pending = readMarkerBuffer.getPending(username, channel.getName());
+            if (pending != null) {
+                lastReadId = Math.max(lastReadId, pending);
+            }
+            long lastMessageId = highWaterMarks.get(channel.getName(), this::loadLastMessageId);
+            if (lastMessageId <= lastReadId) {
+                continue;
+            }
+            int count = countMessagesAfter(channel.getName(), lastReadId);
+            if (count > 0) {
+                unreadCounts.put(channel.getName(), count);
+            }
+        }
+        return unreadCounts;
+    }
+
+    // Last read message of the user in every channel with a read marker
+    private Map<String, Long> getLastReadMessages(String username) {
         String query = """
-            SELECT DISTINCT m.channel_name
-            FROM messages m
-            LEFT JOIN messages_seen ms ON m.channel_name = ms.channel_name AND ms.username = ?
-            WHERE ms.last_read_msg_id IS NULL OR m.id > ms.last_read_msg_id;
+            /* messages_seen.of_user */
+            SELECT channel_name, last_read_msg_id
+            FROM messages_seen
+            WHERE username = ?
             """;
+        Map<String, Long> lastRead = new HashMap<>();
+        for (Map<String, Object> row : ServiceUtility.executeQuery(query, username)) {
+            if (row.get("last_read_msg_id") != null) {
+                lastRead.put((String) row.get("channel_name"), ((Number) row.get("last_read_msg_id")).longValue());
+            }
+        }
+        return lastRead;
+    }
 
-        List<Map<String, Object>> result = ServiceUtility.executeQuery(query, username);
+    // Highest message id of a channel, 0 when it has no messages
+    private long loadLastMessageId(String channelName) {
+        String query = "/* messages.last_id */ SELECT MAX(id) AS last_id FROM messages WHERE channel_name = ?";
+        List<Map<String, Object>> result = ServiceUtility.executeQuery(query, channelName);
+        if (result.isEmpty() || result.get(0).get("last_id") == null) {
+            return 0L;
+        }
+        return ((Number) result.get(0).get("last_id")).longValue();
+    }
 
-        List<String> unreadChannels = new ArrayList<>();
-        for (Map<String, Object> row : result) {
-            unreadChannels.add((String) row.get("channel_name"));
+    // Number of messages after the given id, counting stops at MAX_UNREAD_COUNT so it stays an index range scan of that size at most
+    private int countMessagesAfter(String channelName, long afterId) {
+        String query = """
+            /* messages.unread_count */
+            SELECT COUNT(*) AS count
+            FROM (SELECT 1 FROM messages WHERE channel_name = ? AND id > ? LIMIT ?) unread
+            """;
+        List<Map<String, Object>> result = ServiceUtility.executeQuery(query, channelName, afterId, MAX_UNREAD_COUNT);
+        if (result.isEmpty() || result.get(0).get("count") == null) {
+            return 0;
         }
-        return unreadChannels;
+        return ((Number) result.get(0).get("count")).intValue();
     }
 
     // Get the latest message in a channel
     public Message getLatestMessageInChannel(String channelName) {
+        RecentMessageCache.Snapshot recent = getRecentMessages(channelName);
+        if (!recent.getMessages().isEmpty()) {
+            return recent.getMessages().get(recent.getMessages().size() - 1);
+        }
+        if (!recent.hasOlder()) {
+            return null; // No messages in the channel
+        }
+
         // Query gets the latest message from a specific channel with only the username and role of the sender
         String query = """
+            /* messages.latest */
             SELECT m.id, m.text, m.date_time, m.channel_name, u.username, u.role
             FROM messages m
             JOIN users u ON m.username = u.username
@@ -156,23 +453,33 @@ public class ChannelService {
             ORDER BY m.date_time DESC
             LIMIT 1
             """;
-        List<Map<String, Object>> result = ServiceUtility.executeQuery(query, channelName);
+        List<Message> result = ServiceUtility.executeQuery(query, RowMappers.MESSAGE, channelName);
         if (result.isEmpty()) {
             return null;
         }
 
-        Map<String, Object> row = result.get(0);
-        User sender = new User((String) row.get("username"), null, // Password set to null because it is not needed
-            User.UserRole.valueOf((String) row.get("role")));
+        return result.get(0);
+    }
 
-        return new Message((int) row.get("id"), (String) row.get("text"), sender, new Channel((String) row.get("channel_name"), null), // Channel type set to null because it is not needed
-            ((java.sql.Timestamp) row.get("date_time")).toLocalDateTime());
+    // Wait for a message newer than afterId in a channel, the request is parked until sendMessage wakes it up or it times out
+    public DeferredResult<ResponseEntity<?>> waitForMessageAfter(String channelName, long afterId, long timeoutMillis) {
+        // The waiter is registered before checking the latest message, so a message sent in between still wakes it up
+        DeferredResult<ResponseEntity<?>> result = longPollService.await(channelName, afterId, timeoutMillis);
+        if (result.hasResult()) {
+            return result;
+        }
+
+        Message latestMessage = getLatestMessageInChannel(channelName);
+        if (latestMessage != null && latestMessage.getId() > afterId) {
+            result.setResult(ResponseEntity.ok(MessageWithSendersDto.from(latestMessage)));
+        }
+        return result;
     }
 
     //Get all users
     public List<User> getAllUsers() {
-        System.out.println("Fetching all users from the database...");
-        List<Map<String, Object>> result = ServiceUtility.executeQuery("SELECT * FROM users");
+        logger.debug("Fetching all users");
+        List<Map<String, Object>> result = ServiceUtility.executeQuery("/* users.all */ SELECT * FROM users");
         List<User> users = new ArrayList<>();
         for (Map<String, Object> row : result) {
             User user = new User((String) row.get("username"), (String) row.get("password"), User.UserRole.valueOf((String) row.get("role")));
@@ -181,151 +488,272 @@ public class ChannelService {
         return users;
     }
 
-    // Get all users with matching string
-    public List<User> findUser(String input) {
-        System.out.println("Fetching all users matching string " + input);
+    // Search the messages of the channels a user is in, or of one channel when channelName is set, most relevant first
+    // Uses web search syntax (words, "quoted phrases", or, -excluded word) against the search_vector GIN index (db/003_message_search.sql)
+    public MessageSearchPage searchMessages(String username, String text, String channelName, int offset, int limit) {
+        if (text == null || text.isBlank()) {
+            throw new IllegalArgumentException("Search query is empty");
+        }
+        if (text.length() > MAX_SEARCH_QUERY_LENGTH) {
+            throw new IllegalArgumentException("Search query is longer than " + MAX_SEARCH_QUERY_LENGTH + " characters");
+        }
+        limit = Math.max(1, Math.min(limit, MAX_SEARCH_LIMIT));
+        offset = Math.max(0, offset);
+        if (offset >= SEARCH_CANDIDATES) {
+            return new MessageSearchPage(List.of(), offset, false);
+        }
 
+        // The candidates are found through the index, then only they are ranked, and only the page gets a headline
+        // The tsquery is repeated rather than put in a CTE, the planner needs its words to estimate how many messages match:
+        // few go through the GIN index, a common word reads the newest messages backwards until it has enough candidates
+        String name = channelName != null ? "messages.search_channel" : "messages.search_all";
+        String scope = channelName != null ? "m.channel_name = ?" : "m.channel_name IN (SELECT uc.channel_name FROM user_channel uc WHERE uc.username = ?)";
         String query = """
+            /* %s */
+            WITH candidates AS (
+                SELECT m.id
+                FROM messages m
+                WHERE m.search_vector @@ websearch_to_tsquery('english', ?) AND %s
+                ORDER BY m.id DESC
+                LIMIT ?
+            ), page AS (
+                SELECT m.id, m.text, m.date_time, m.channel_name, m.username, ts_rank_cd(m.search_vector, websearch_to_tsquery('english', ?)) AS rank
+                FROM candidates c
+                JOIN messages m ON m.id = c.id
+                ORDER BY rank DESC, m.id DESC
+                OFFSET ? LIMIT ?
+            )
+            SELECT p.id, p.text, p.date_time, p.channel_name, u.username, u.role, p.rank,
+                ts_headline('english', p.text, websearch_to_tsquery('english', ?), 'MaxFragments=2, MaxWords=20, MinWords=8, StartSel=' || chr(2) || ', StopSel=' || chr(3)) AS headline
+            FROM page p
+            JOIN users u ON p.username = u.username
+            ORDER BY p.rank DESC, p.id DESC
+            """.formatted(name, scope);
+
+        List<MessageSearchHit> hits = ServiceUtility.executeQuery(query, RowMappers.MESSAGE_SEARCH_HIT, text, channelName != null ? channelName : username, SEARCH_CANDIDATES, text, offset, limit + 1, text);
+        boolean hasMore = hits.size() > limit;
+        return new MessageSearchPage(hasMore ? hits.subList(0, limit) : hits, offset, hasMore);
+    }
+
+    // Get the users whose name contains the input, names starting with it first, then the shortest names
+    // Uses the prefix and trigram indexes on LOWER(username) (db/004_user_search.sql)
+    public List<User> findUser(String input, int limit) {
+        logger.debug("Searching users matching {}", input);
+
+        limit = Math.max(1, Math.min(limit, MAX_USER_SEARCH_LIMIT));
+        String typed = input == null ? "" : input.trim().toLowerCase(Locale.ROOT);
+        String search = escapeLike(typed);
+
+        // The prefix index returns them in order, the lookup stops after limit names
+        String prefixQuery = """
+            /* users.search_prefix */
             SELECT u.username, u.role
             FROM users u
-            WHERE LOWER(username) LIKE LOWER(?)
+            WHERE LOWER(u.username) COLLATE "C" LIKE ?
+            ORDER BY LOWER(u.username) COLLATE "C"
+            LIMIT ?
             """;
-        String search = "%" + input + "%";
-        List<Map<String, Object>> result = ServiceUtility.executeQuery(query, search);
+        List<Map<String, Object>> result = new ArrayList<>(ServiceUtility.executeQuery(prefixQuery, search + "%", limit));
+
+        // The trigram index only knows runs of 3 letters or digits, other inputs would read all of it
+        if (result.size() < limit && TRIGRAM_INPUT.matcher(typed).find()) {
+            String substringQuery = """
+                /* users.search_substring */
+                SELECT u.username, u.role
+                FROM users u
+                WHERE LOWER(u.username) LIKE ? AND LOWER(u.username) NOT LIKE ?
+                ORDER BY LENGTH(u.username), LOWER(u.username)
+                LIMIT ?
+                """;
+            result.addAll(ServiceUtility.executeQuery(substringQuery, "%" + search + "%", search + "%", limit - result.size()));
+        }
+
         List<User> users = new ArrayList<>();
         for (Map<String, Object> row : result) {
-            User user = new User((String) row.get("username"), null, User.UserRole.valueOf((String) row.get("role"))); // Password set to null because it is not needed
+            User user = ModelRegistry.user((String) row.get("username"), User.UserRole.valueOf((String) row.get("role")));
             users.add(user);
         }
         return users;
     }
 
-    // Get the number of admins in a channel
+    // Typed % and _ are matched literally
+    private static String escapeLike(String input) {
+        return input.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    // Get the number of admins in a channel, from the channel stats
     public int getAdminsCountForChannel(String channelName) {
-        System.out.println("Fetching the number of admins in channel: " + channelName + " from the database...");
+        ChannelStats stats = getChannelStats(channelName);
+        return stats != null ? (int) stats.getAdminCount() : 0;
+    }
 
-        List<User> users = getUsersInChannel(channelName);
+    // Get the member, admin and message counts and the last activity of a channel, null if the channel doesn't exist
+    public ChannelStats getChannelStats(String channelName) {
+        if (!channelExists(channelName)) {
+            return null; // Not held, so unknown names can't fill the stats
+        }
+        return channelStatsService.get(channelName);
+    }
 
-        int adminsCount = 0;
-        for (User user : users) {
-            if (user.getRole() == User.UserRole.ADMIN) {
-                adminsCount++;
-            }
+    // Called once the role of a user is saved, the admin counts of the user's channels change
+    // and the buffered messages of the user still carry the old role
+    public void userRoleChanged(String username) {
+        List<String> channelNames = new ArrayList<>();
+        for (Channel channel : getUserChannels(username)) {
+            channelNames.add(channel.getName());
         }
+        channelStatsService.roleChanged(username, channelNames);
+        recentMessageCache.evictSender(username);
+    }
 
-        return adminsCount;
+    // Send a message to a channel, the future completes with the stored message once it is in the database
+    public CompletableFuture<Message> sendMessage(String channelName, String content, String sender) {
+        logger.debug("Sending a message of {} characters to channel {} from {}", content != null ? content.length() : 0, channelName, sender); // Never the content itself
+        return messageIngestPipeline.submit(channelName, content, sender);
     }
 
-    // Send a message to a channel
-    public void sendMessage(String channelName, String content, String sender) {
-        System.out.println("Sending message to channel: " + channelName + " from user: " + sender + " with content: " + content);
-        String query = "INSERT INTO messages (text, username, channel_name, date_time) VALUES (?, ?, ?, ?)";
-        ServiceUtility.executeUpdate(query, "Error sending message to channel", content, sender, channelName, Timestamp.valueOf(LocalDateTime.now()));
+    // Get the change feed of a channel after the given sequence number
+    public ChannelEventPage getEventsSince(String channelName, long since, int limit) {
+        return changeFeedService.getEventsSince(channelName, since, limit);
+    }
 
+    // Get the last sequence number of the change feed of a channel
+    public long getLatestEventSeq(String channelName) {
+        return changeFeedService.getLatestSeq(channelName);
     }
 
     // Creating a channel
     public int createChannel(String channelName, String creatorUsername) {
         if (creatorUsername == null) {
-            System.out.println("Error: No user logged in");
+            logger.warn("No user logged in");
             return -1;
         }
 
         // Insert the new channel into the database
-        String createChannelQuery = "INSERT INTO channels (name, type) VALUES (?, 'PC')";
+        String createChannelQuery = "/* channels.create */ INSERT INTO channels (name, type) VALUES (?, 'PC')";
         int rowsAffected = ServiceUtility.executeUpdate(createChannelQuery, "Error inserting channel", channelName);
 
         // If channel creation failed, don't continue
         if (rowsAffected <= 0) {
             return -1;
         }
+        channelCatalog.put(ModelRegistry.channel(channelName, Channel.ChannelType.PC));
+        channelStatsService.channelCreated(channelName);
 
         // Insert the creator into the user_channel table
-        String addUserToChannelQuery = "INSERT INTO user_channel (username, channel_name) VALUES (?, ?)";
+        String addUserToChannelQuery = "/* user_channel.insert */ INSERT INTO user_channel (username, channel_name) VALUES (?, ?)";
         ServiceUtility.executeUpdate(addUserToChannelQuery, "Error adding user to channel", creatorUsername, channelName);
+        membershipCache.invalidateUser(creatorUsername);
+        changeFeedService.record(channelName, ChannelEvent.EventType.MEMBERSHIP_CHANGED, null, creatorUsername);
 
-        System.out.println("Channel created successfully by user: " + creatorUsername);
+        logger.info("Channel {} created by {}", channelName, creatorUsername);
         return rowsAffected;
     }
 
     public int deleteChannel(String channelName) {
-        System.out.println("Trying to delete channel: " + channelName);
+        logger.debug("Deleting channel {}", channelName);
 
         // Check if the channel exists
-        String checkChannelQuery = "SELECT COUNT(*) AS count FROM channels WHERE name = ?";
+        String checkChannelQuery = "/* channels.exists */ SELECT COUNT(*) AS count FROM channels WHERE name = ?";
         List<Map<String, Object>> result = ServiceUtility.executeQuery(checkChannelQuery, channelName);
 
         // If no rows are found or count is 0 the channel doesn't exist
         if (result.isEmpty() || result.get(0).get("count") == null || ((Long) result.get(0).get("count")).intValue() <= 0) {
-            System.out.println("Error: Channel does not exist");
+            logger.warn("Cannot delete channel {}, it does not exist", channelName);
             return -1;
         }
 
         // Delete the associated rows in the user_channel table (all user-channel associations)
-        String deleteUserChannelQuery = "DELETE FROM user_channel WHERE channel_name = ?";
+        String deleteUserChannelQuery = "/* user_channel.delete_channel */ DELETE FROM user_channel WHERE channel_name = ?";
         int userChannelRowsAffected = ServiceUtility.executeUpdate(deleteUserChannelQuery, "Error deleting from user_channel", channelName);
 
         // If there's an issue deleting user-channel associations don't continue
         if (userChannelRowsAffected <= 0) {
-            System.out.println("Error: Failed to delete user-channel associations");
+            logger.warn("Failed to delete the memberships of channel {}", channelName);
             return -1;
         }
 
-        // Delete the channel from the channels table
-        String deleteChannelQuery = "DELETE FROM channels WHERE name = ?";
-        int rowsAffected = ServiceUtility.executeUpdate(deleteChannelQuery, "Error deleting channel", channelName);
+        // Delete the channel from the channels table, its change feed is deleted in the same statement
+        // so a channel created again under the same name starts with an empty feed and none of the old events
+        String deleteChannelQuery = """
+            /* channels.delete */
+            WITH events AS (
+                DELETE FROM channel_events WHERE channel_name = ?
+            ),
+            head AS (
+                DELETE FROM channel_event_heads WHERE channel_name = ?
+            )
+            DELETE FROM channels WHERE name = ?
+            """;
+        int rowsAffected = ServiceUtility.executeUpdate(deleteChannelQuery, "Error deleting channel", channelName, channelName, channelName);
 
         if (rowsAffected <= 0) {
-            System.out.println("Error: Failed to delete channel");
+            logger.warn("Failed to delete channel {}", channelName);
             return -1;
         }
 
-        System.out.println("Channel deleted successfully: " + channelName);
+        channelCatalog.remove(channelName);
+        highWaterMarks.remove(channelName);
+        readMarkerBuffer.removeChannel(channelName);
+        recentMessageCache.evict(channelName);
+        membershipCache.invalidateChannel(channelName);
+        responseVersions.removeChannel(channelName);
+        ModelRegistry.removeChannel(channelName);
+        channelStatsService.removeChannel(channelName);
+        logger.info("Channel {} deleted", channelName);
         return rowsAffected;
     }
 
     // Joining a channel
     public boolean joinChannel(String channelName, String username) {
-        System.out.println("Trying to join channel: " + channelName);
-        String sql = "INSERT INTO user_channel (username, channel_name) VALUES (?, ?)";
+        logger.debug("{} joining channel {}", username, channelName);
+        String sql = "/* user_channel.insert */ INSERT INTO user_channel (username, channel_name) VALUES (?, ?)";
         int rowsAffected = ServiceUtility.executeUpdate(sql, "Error joining the server", username, channelName);
         if (rowsAffected <= 0) {
-            System.out.println("Error: Failed to join channel");
+            logger.warn("{} failed to join channel {}", username, channelName);
             return false;
         }
-        System.out.println(username + " joined channel successfully: " + channelName);
+        membershipCache.invalidateUser(username);
+        changeFeedService.record(channelName, ChannelEvent.EventType.MEMBERSHIP_CHANGED, null, username);
+        logger.info("{} joined channel {}", username, channelName);
         return true;
     }
 
     // Creating a channel
     public int createDMChannel(String channelName, String user1, String user2) {
         if (user1 == null) {
-            System.out.println("Error: No user logged in");
+            logger.warn("No user logged in");
             return -1;
         }
         if (user2 == null) {
-            System.out.println("Error: No user selected");
+            logger.warn("No user selected for the direct message channel");
             return -1;
         }
-        System.out.println("Attempting to create channel: " + channelName + " with user: " + user1);
+        logger.debug("Creating direct message channel {} for {} and {}", channelName, user1, user2);
         // Insert the new channel into the database
-        String createChannelQuery = "INSERT INTO channels (name, type) VALUES (?, 'DM')";
+        String createChannelQuery = "/* channels.create_dm */ INSERT INTO channels (name, type) VALUES (?, 'DM')";
         int rowsAffected = ServiceUtility.executeUpdate(createChannelQuery, "Error inserting channel", channelName);
 
         // If channel creation failed, don't continue
         if (rowsAffected <= 0) {
-            System.out.println("Failed to create channel: " + channelName);
+            logger.warn("Failed to create channel {}", channelName);
             return -1;
         }
+        channelCatalog.put(ModelRegistry.channel(channelName, Channel.ChannelType.DM));
+        channelStatsService.channelCreated(channelName);
 
         // Insert the users into the user_channel table
-        String addUser1ToChannelQuery = "INSERT INTO user_channel (username, channel_name) VALUES (?, ?)";
+        String addUser1ToChannelQuery = "/* user_channel.insert */ INSERT INTO user_channel (username, channel_name) VALUES (?, ?)";
         ServiceUtility.executeUpdate(addUser1ToChannelQuery, "Error adding user to channel", user1, channelName);
 
-        String addUser2ToChannelQuery = "INSERT INTO user_channel (username, channel_name) VALUES (?, ?)";
+        String addUser2ToChannelQuery = "/* user_channel.insert */ INSERT INTO user_channel (username, channel_name) VALUES (?, ?)";
         ServiceUtility.executeUpdate(addUser2ToChannelQuery, "Error adding user to channel", user2, channelName);
+        membershipCache.invalidateUser(user1);
+        membershipCache.invalidateUser(user2);
+        changeFeedService.record(channelName, ChannelEvent.EventType.MEMBERSHIP_CHANGED, null, user1);
+        changeFeedService.record(channelName, ChannelEvent.EventType.MEMBERSHIP_CHANGED, null, user2);
 
-        System.out.println("DM Channel created successfully added both users: " + user1 + " and " + user2);
+        logger.info("Direct message channel {} created for {} and {}", channelName, user1, user2);
         return rowsAffected;
     }
 
@@ -0,0 +1,175 @@
+package com.messagingApp.messagingApp_backend.services;
+
+import com.messagingApp.messagingApp_backend.models.ChannelEvent;
+import com.messagingApp.messagingApp_backend.models.ChannelStats;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+
+@Service
+public class ChannelStatsService {
+    // This class keeps the member, admin and message counts and the last activity of each channel in memory
+    // A channel is read from the database on its first lookup, then kept up to date from the change feed events:
+    // - MESSAGE_CREATED and MESSAGE_DELETED count the messages, a deleted message leaves the last activity as it was
+    // - MEMBERSHIP_CHANGED is a join, the member's role is looked up to count the admins
+    // Role changes recount the admins of the user's channels, creating and deleting channels add and drop them
+    // Every held channel is read again in the background, an event in flight while it was read can leave a count off by one until then
+
+    private static final String STATS_QUERY = """
+        /* channel_stats.load */
+        SELECT
+            (SELECT COUNT(*) FROM user_channel uc WHERE uc.channel_name = ?) AS members,
+            (SELECT COUNT(*) FROM user_channel uc JOIN users u ON uc.username = u.username WHERE uc.channel_name = ? AND u.role = 'ADMIN') AS admins,
+            (SELECT COUNT(*) FROM messages m WHERE m.channel_name = ?) AS messages,
+            (SELECT m.date_time FROM messages m WHERE m.channel_name = ? ORDER BY m.id DESC LIMIT 1) AS last_activity
+        """;
+    private static final String ADMINS_QUERY = """
+        /* channel_stats.admins */
+        SELECT COUNT(*) AS admins
+        FROM user_channel uc
+        JOIN users u ON uc.username = u.username
+        WHERE uc.channel_name = ? AND u.role = 'ADMIN'
+        """;
+    private static final String ROLE_QUERY = "/* users.role */ SELECT role FROM users WHERE username = ?";
+
+    private final Map<String, Entry> stats = new ConcurrentHashMap<>();
+
+    private final Counter correctedCounter;
+
+    public ChannelStatsService(MeterRegistry meterRegistry) {
+        Gauge.builder("channelstats.size", stats, Map::size).description("Channels whose stats are held in memory").register(meterRegistry);
+        this.correctedCounter = Counter.builder("channelstats.corrected").description("Channel stats that differed from the database when reconciled").register(meterRegistry);
+    }
+
+    // Stats of a channel, null if they could not be read
+    public ChannelStats get(String channelName) {
+        Entry entry = stats.get(channelName);
+        if (entry != null) {
+            return entry.stats;
+        }
+        ChannelStats loaded = load(channelName);
+        if (loaded == null) {
+            return null;
+        }
+        // An event applied by another thread meanwhile wins, the background reconcile settles any difference
+        return stats.computeIfAbsent(channelName, key -> new Entry(loaded, 0)).stats;
+    }
+
+    // A new channel starts empty, its members are counted by the MEMBERSHIP_CHANGED events that follow
+    public void channelCreated(String channelName) {
+        stats.put(channelName, new Entry(new ChannelStats(0, 0, 0, null), 0));
+    }
+
+    public void removeChannel(String channelName) {
+        stats.remove(channelName);
+    }
+
+    // Called once a role is saved, the previous role isn't known so the admins of the user's held channels are counted again
+    public void roleChanged(String username, Collection<String> channelNames) {
+        for (String channelName : channelNames) {
+            Entry entry = stats.get(channelName);
+            if (entry == null) {
+                continue;
+            }
+            List<Map<String, Object>> result = ServiceUtility.executeQuery(ADMINS_QUERY, channelName);
+            if (!result.isEmpty()) {
+                long admins = ((Number) result.get(0).get("admins")).longValue();
+                ChannelStats current = entry.stats;
+                replace(channelName, entry, new ChannelStats(current.getMemberCount(), admins, current.getMessageCount(), current.getLastActivity()));
+            }
+        }
+    }
+
+    @EventListener
+    public void onChannelEvent(ChannelEvent event) {
+        String channelName = event.getChannelName();
+        if (!stats.containsKey(channelName)) {
+            return; // Read from the database with the event already in it on the first lookup
+        }
+        switch (event.getType()) {
+            case MESSAGE_CREATED -> {
+                LocalDateTime sent = event.getMessage() != null ? event.getMessage().getTimestamp() : event.getTimestamp();
+                update(channelName, current -> new ChannelStats(current.getMemberCount(), current.getAdminCount(), current.getMessageCount() + 1, latest(current.getLastActivity(), sent)));
+            }
+            case MESSAGE_DELETED -> update(channelName, current -> new ChannelStats(current.getMemberCount(), current.getAdminCount(), Math.max(0, current.getMessageCount() - 1), current.getLastActivity()));
+            case MEMBERSHIP_CHANGED -> {
+                if (event.getUsername() == null) {
+                    return;
+                }
+                long admin = isAdmin(event.getUsername()) ? 1 : 0;
+                update(channelName, current -> new ChannelStats(current.getMemberCount() + 1, current.getAdminCount() + admin, current.getMessageCount(), current.getLastActivity()));
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${channel-stats.reconcile-interval-ms:300000}", initialDelayString = "${channel-stats.reconcile-interval-ms:300000}")
+    public void scheduledReconcile() {
+        reconcile();
+    }
+
+    // Read every held channel again, returns the number of channels whose stats were corrected
+    // A channel changed by an event while it was read keeps its stats, it is read again on the next round
+    public int reconcile() {
+        int corrected = 0;
+        for (Map.Entry<String, Entry> held : new ArrayList<>(stats.entrySet())) {
+            ChannelStats fresh = load(held.getKey());
+            if (fresh != null && !fresh.equals(held.getValue().stats) && replace(held.getKey(), held.getValue(), fresh)) {
+                corrected++;
+            }
+        }
+        correctedCounter.increment(corrected);
+        return corrected;
+    }
+
+    public int size() {
+        return stats.size();
+    }
+
+    private ChannelStats load(String channelName) {
+        List<Map<String, Object>> result = ServiceUtility.executeQuery(STATS_QUERY, channelName, channelName, channelName, channelName);
+        if (result.isEmpty()) {
+            return null;
+        }
+        Map<String, Object> row = result.get(0);
+        Timestamp lastActivity = (Timestamp) row.get("last_activity");
+        return new ChannelStats(((Number) row.get("members")).longValue(), ((Number) row.get("admins")).longValue(), ((Number) row.get("messages")).longValue(),
+            lastActivity != null ? lastActivity.toLocalDateTime() : null);
+    }
+
+    private boolean isAdmin(String username) {
+        List<Map<String, Object>> result = ServiceUtility.executeQuery(ROLE_QUERY, username);
+        return !result.isEmpty() && "ADMIN".equals(result.get(0).get("role"));
+    }
+
+    private void update(String channelName, UnaryOperator<ChannelStats> change) {
+        stats.computeIfPresent(channelName, (key, entry) -> new Entry(change.apply(entry.stats), entry.version + 1));
+    }
+
+    // Replace the stats only if no event changed them since the entry was read
+    private boolean replace(String channelName, Entry expected, ChannelStats replacement) {
+        return stats.replace(channelName, expected, new Entry(replacement, expected.version + 1));
+    }
+
+    private static LocalDateTime latest(LocalDateTime a, LocalDateTime b) {
+        if (a == null) {
+            return b;
+        }
+        return b != null && b.isAfter(a) ? b : a;
+    }
+
+    // The version counts the changes, so an entry only equals itself until it changes
+    private record Entry(ChannelStats stats, long version) {
+    }
+}
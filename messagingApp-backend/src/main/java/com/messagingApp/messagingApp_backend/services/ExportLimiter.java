@@ -0,0 +1,58 @@
+package com.messagingApp.messagingApp_backend.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@Service
+public class ExportLimiter {
+    // This class bounds the channel exports running at once
+    // An export holds a database connection and its transaction until the client has downloaded the whole channel,
+    // a few slow downloads would otherwise take the connections every other request needs
+    // Exports past the limit are refused (503), the client retries later
+
+    private final int maxExports;
+    private final long timeoutMillis;
+    private final Semaphore slots;
+
+    private final Counter rejectedCounter;
+
+    public ExportLimiter(MeterRegistry meterRegistry,
+                         @Value("${export.max-concurrent:2}") int maxExports,
+                         @Value("${export.timeout-ms:600000}") long timeoutMillis) {
+        this.maxExports = maxExports;
+        this.timeoutMillis = timeoutMillis;
+        this.slots = new Semaphore(maxExports);
+
+        Gauge.builder("export.active", this, ExportLimiter::getActiveCount).description("Channel exports running").register(meterRegistry);
+        this.rejectedCounter = Counter.builder("export.rejected").description("Channel exports refused because too many were running").register(meterRegistry);
+    }
+
+    // Take a slot for one export, returns what frees it (safe to run more than once) or null when every slot is taken
+    public Runnable tryStart() {
+        if (!slots.tryAcquire()) {
+            rejectedCounter.increment();
+            return null;
+        }
+        AtomicBoolean released = new AtomicBoolean();
+        return () -> {
+            if (released.compareAndSet(false, true)) {
+                slots.release();
+            }
+        };
+    }
+
+    // How long an export may take, the download included, much longer than the default timeout of the async requests
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    public int getActiveCount() {
+        return maxExports - slots.availablePermits();
+    }
+}
@@ -0,0 +1,123 @@
+package com.messagingApp.messagingApp_backend.services;
+
+import com.messagingApp.messagingApp_backend.dto.MessageWithSendersDto;
+import com.messagingApp.messagingApp_backend.models.ChannelEvent;
+import com.messagingApp.messagingApp_backend.models.Message;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Service
+public class LongPollService {
+    // This class keeps the long-poll requests waiting for a new message, by channel
+    // A waiting request is a DeferredResult, the servlet thread is released while it waits
+    // Waiters are woken up by the MESSAGE_CREATED events published by the change feed
+
+    private final long maxTimeoutMillis;
+    private final int maxWaiters;
+
+    private final Map<String, Set<Waiter>> waiters = new ConcurrentHashMap<>(); // By channel name
+    private final AtomicInteger waiterCount = new AtomicInteger();
+
+    private final Counter timeoutCounter;
+    private final Counter rejectedCounter;
+
+    public LongPollService(MeterRegistry meterRegistry,
+                           @Value("${longpoll.max-timeout-ms:55000}") long maxTimeoutMillis,
+                           @Value("${longpoll.max-waiters:10000}") int maxWaiters) {
+        this.maxTimeoutMillis = maxTimeoutMillis;
+        this.maxWaiters = maxWaiters;
+
+        Gauge.builder("longpoll.waiters", waiterCount, AtomicInteger::get).description("Long-poll requests waiting for a message").register(meterRegistry);
+        this.timeoutCounter = Counter.builder("longpoll.timeouts").description("Long-poll requests answered with 204 after waiting the full timeout").register(meterRegistry);
+        this.rejectedCounter = Counter.builder("longpoll.rejected").description("Long-poll requests refused because too many were waiting").register(meterRegistry);
+    }
+
+    // Park a request until a message newer than afterId is sent to the channel, answers 204 when the timeout passes first
+    public DeferredResult<ResponseEntity<?>> await(String channelName, long afterId, long timeoutMillis) {
+        long timeout = Math.max(1, Math.min(timeoutMillis, maxTimeoutMillis));
+        DeferredResult<ResponseEntity<?>> result = new DeferredResult<>(timeout, () -> {
+            timeoutCounter.increment();
+            return ResponseEntity.noContent().build();
+        });
+
+        // Bound the number of parked requests, the client should back off and retry
+        if (waiterCount.incrementAndGet() > maxWaiters) {
+            waiterCount.decrementAndGet();
+            rejectedCounter.increment();
+            result.setResult(ResponseEntity.status(503).header("Retry-After", "5").build());
+            return result;
+        }
+
+        Waiter waiter = new Waiter(afterId, result);
+        // Added inside compute so it can't race with remove() dropping the set of the channel
+        waiters.compute(channelName, (key, set) -> {
+            Set<Waiter> channelWaiters = set != null ? set : ConcurrentHashMap.newKeySet();
+            channelWaiters.add(waiter);
+            return channelWaiters;
+        });
+        // Completion covers results, timeouts and errors (the client going away)
+        result.onCompletion(() -> remove(channelName, waiter));
+        return result;
+    }
+
+    // Wake up the requests of a channel that wait for a message newer than the last one they have
+    public void notifyMessage(String channelName, Message message) {
+        Set<Waiter> channelWaiters = waiters.get(channelName);
+        if (channelWaiters == null) {
+            return;
+        }
+        for (Waiter waiter : channelWaiters) {
+            if (message.getId() > waiter.afterId) {
+                waiter.result.setResult(ResponseEntity.ok(MessageWithSendersDto.from(message)));
+                remove(channelName, waiter);
+            }
+        }
+    }
+
+    @EventListener
+    public void onChannelEvent(ChannelEvent event) {
+        if (event.getType() == ChannelEvent.EventType.MESSAGE_CREATED && event.getMessage() != null) {
+            notifyMessage(event.getChannelName(), event.getMessage());
+        }
+    }
+
+    public int getWaiterCount() {
+        return waiterCount.get();
+    }
+
+    public int getWaiterCount(String channelName) {
+        Set<Waiter> channelWaiters = waiters.get(channelName);
+        return channelWaiters == null ? 0 : channelWaiters.size();
+    }
+
+    private void remove(String channelName, Waiter waiter) {
+        // Called both when a waiter is woken up and from its completion callback, only the first one counts
+        waiters.computeIfPresent(channelName, (key, set) -> {
+            if (set.remove(waiter)) {
+                waiterCount.decrementAndGet();
+            }
+            return set.isEmpty() ? null : set; // Drop the set of an idle channel
+        });
+    }
+
+    private static class Waiter {
+        private final long afterId;
+        private final DeferredResult<ResponseEntity<?>> result;
+
+        private Waiter(long afterId, DeferredResult<ResponseEntity<?>> result) {
+            this.afterId = afterId;
+            this.result = result;
+        }
+    }
+}
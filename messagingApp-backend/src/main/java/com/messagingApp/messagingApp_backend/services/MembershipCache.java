@@ -0,0 +1,110 @@
+package com.messagingApp.messagingApp_backend.services;
+
+import com.messagingApp.messagingApp_backend.models.Channel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+@Service
+public class MembershipCache {
+    // This class keeps the channels of the recently active users in memory for the membership checks done on every request
+    // Entries are invalidated by the services changing the memberships, the TTL covers changes made by another process
+
+    private static final String CACHE_NAME = "membership";
+
+    private final long ttlMillis;
+    private final int maxUsers;
+
+    // Access ordered, the first entry is the least recently used user
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long generation; // Bumped by every invalidation, a load started before it is not stored
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+
+    public MembershipCache(MeterRegistry meterRegistry,
+                           @Value("${membership-cache.ttl-ms:60000}") long ttlMillis,
+                           @Value("${membership-cache.max-users:10000}") int maxUsers) {
+        this.ttlMillis = ttlMillis;
+        this.maxUsers = maxUsers;
+
+        this.hitCounter = Counter.builder("cache.gets").tag("cache", CACHE_NAME).tag("result", "hit").description("Membership checks served from memory").register(meterRegistry);
+        this.missCounter = Counter.builder("cache.gets").tag("cache", CACHE_NAME).tag("result", "miss").description("Membership checks that loaded the user's channels").register(meterRegistry);
+        Gauge.builder("cache.size", this, MembershipCache::size).tag("cache", CACHE_NAME).description("Users with cached channels").register(meterRegistry);
+    }
+
+    // Get the channels of a user, the loader reads them from the database on a miss
+    public List<Channel> getChannels(String username, Function<String, List<Channel>> loader) {
+        return get(username, loader).channels;
+    }
+
+    public boolean isMember(String username, String channelName, Function<String, List<Channel>> loader) {
+        return get(username, loader).channelNames.contains(channelName);
+    }
+
+    public synchronized void invalidateUser(String username) {
+        generation++;
+        entries.remove(username);
+    }
+
+    // Drop every user of a deleted channel
+    public synchronized void invalidateChannel(String channelName) {
+        generation++;
+        entries.values().removeIf(entry -> entry.channelNames.contains(channelName));
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private Entry get(String username, Function<String, List<Channel>> loader) {
+        long loadGeneration;
+        synchronized (this) {
+            Entry entry = entries.get(username);
+            if (entry != null && System.currentTimeMillis() - entry.loadedAt < ttlMillis) {
+                hitCounter.increment();
+                return entry;
+            }
+            loadGeneration = generation;
+        }
+
+        missCounter.increment();
+        Entry loaded = new Entry(loader.apply(username));
+
+        synchronized (this) {
+            // A membership changed while loading, the result is used for this call only
+            if (loadGeneration == generation) {
+                entries.put(username, loaded);
+                Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+                while (entries.size() > maxUsers && iterator.hasNext()) {
+                    iterator.next();
+                    iterator.remove();
+                }
+            }
+        }
+        return loaded;
+    }
+
+    private static class Entry {
+        private final List<Channel> channels;
+        private final Set<String> channelNames = new HashSet<>();
+        private final long loadedAt = System.currentTimeMillis();
+
+        private Entry(List<Channel> channels) {
+            this.channels = List.copyOf(channels);
+            for (Channel channel : channels) {
+                channelNames.add(channel.getName());
+            }
+        }
+    }
+}
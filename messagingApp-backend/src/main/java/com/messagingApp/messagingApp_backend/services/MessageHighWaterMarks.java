@@ -0,0 +1,61 @@
+package com.messagingApp.messagingApp_backend.services;
+
+import com.messagingApp.messagingApp_backend.models.ChannelEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToLongFunction;
+
+@Service
+public class MessageHighWaterMarks {
+    // This class keeps the highest message id of each channel in memory
+    // A channel whose high-water mark is not above a user's last read message has nothing unread, without any query
+    // Marks only move up, a deleted newest message leaves the mark above the real last message until the next one
+    // The messages stored through this instance move the marks right away, the TTL covers the ones stored by another process
+
+    private final long ttlMillis;
+    private final Map<String, Mark> marks = new ConcurrentHashMap<>();
+
+    public MessageHighWaterMarks(@Value("${high-water-marks.ttl-ms:60000}") long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    // Get the high-water mark of a channel, the loader reads it from the database the first time and once the mark is older than the TTL
+    public long get(String channelName, ToLongFunction<String> loader) {
+        Mark mark = marks.get(channelName);
+        if (mark != null && System.currentTimeMillis() - mark.loadedAt < ttlMillis) {
+            return mark.messageId;
+        }
+        // Merged with max, a message sent while loading may already have moved the mark higher
+        Mark loaded = new Mark(loader.applyAsLong(channelName), System.currentTimeMillis());
+        return marks.merge(channelName, loaded, (current, fresh) -> new Mark(Math.max(current.messageId, fresh.messageId), fresh.loadedAt)).messageId;
+    }
+
+    // Ids only grow, so a new message is the highest of its channel even if the mark wasn't loaded yet
+    public void advance(String channelName, long messageId) {
+        marks.merge(channelName, new Mark(messageId, System.currentTimeMillis()),
+            (current, fresh) -> fresh.messageId > current.messageId ? new Mark(fresh.messageId, current.loadedAt) : current);
+    }
+
+    public void remove(String channelName) {
+        marks.remove(channelName);
+    }
+
+    public int size() {
+        return marks.size();
+    }
+
+    @EventListener
+    public void onChannelEvent(ChannelEvent event) {
+        if (event.getType() == ChannelEvent.EventType.MESSAGE_CREATED && event.getMessageId() != null) {
+            advance(event.getChannelName(), event.getMessageId());
+        }
+    }
+
+    // loadedAt is when the database was last read, moving the mark up doesn't make it fresher
+    private record Mark(long messageId, long loadedAt) {
+    }
+}
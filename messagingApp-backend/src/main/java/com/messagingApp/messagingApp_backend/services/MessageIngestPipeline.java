@@ -0,0 +1,320 @@
+package com.messagingApp.messagingApp_backend.services;
+
+import com.messagingApp.messagingApp_backend.models.ChannelEvent;
+import com.messagingApp.messagingApp_backend.models.Message;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+@Service
+@DependsOn("serviceUtility") // Destroyed first, so the queued messages can still be written on shutdown
+public class MessageIngestPipeline {
+    // This class saves sent messages in three stages so the request threads don't each run their own tiny transaction
+    // 1. Validate, on the caller's thread, then queue the message. A full queue rejects it right away (backpressure)
+    // 2. Persist, one thread inserting the queued messages in multi-row INSERTs of up to batch-size rows
+    //    The same statement appends their MESSAGE_CREATED events to the change feed, so a batch is one round trip
+    //    It waits up to linger-ms for more messages before writing a batch that isn't full
+    //    When the statement fails each message is inserted on its own, only the rejected ones fail and their senders retry
+    // 3. Fan out, one thread passing the stored events to the push, long-poll and cache listeners, in memory only
+    // The caller's future completes once the message is stored
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageIngestPipeline.class);
+
+    private final ChangeFeedService changeFeedService;
+    private final RecentMessageCache recentMessageCache;
+    private final MessageHighWaterMarks highWaterMarks;
+    private final int batchSize;
+    private final long lingerNanos;
+
+    private final BlockingQueue<PendingMessage> persistQueue;
+    private final BlockingQueue<ChannelEvent> fanOutQueue;
+    private final Thread persistThread;
+    private final Thread fanOutThread;
+    private volatile boolean running = true;
+
+    private final Counter rejectedCounter;
+    private final Counter failedCounter;
+    private final DistributionSummary batchSizeSummary;
+
+    public MessageIngestPipeline(ChangeFeedService changeFeedService, RecentMessageCache recentMessageCache, MessageHighWaterMarks highWaterMarks, MeterRegistry meterRegistry,
+                                 @Value("${ingest.queue-capacity:1000}") int queueCapacity,
+                                 @Value("${ingest.batch-size:50}") int batchSize,
+                                 @Value("${ingest.linger-ms:5}") long lingerMillis) {
+        this.changeFeedService = changeFeedService;
+        this.recentMessageCache = recentMessageCache;
+        this.highWaterMarks = highWaterMarks;
+        this.batchSize = batchSize;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        this.persistQueue = new ArrayBlockingQueue<>(queueCapacity);
+        this.fanOutQueue = new ArrayBlockingQueue<>(queueCapacity);
+
+        Gauge.builder("ingest.queue.size", persistQueue, BlockingQueue::size).tag("stage", "persist").description("Messages waiting to be stored").register(meterRegistry);
+        Gauge.builder("ingest.queue.size", fanOutQueue, BlockingQueue::size).tag("stage", "fanout").description("Stored messages waiting to be published").register(meterRegistry);
+        this.rejectedCounter = Counter.builder("ingest.rejected").description("Messages refused because the persist queue was full").register(meterRegistry);
+        this.failedCounter = Counter.builder("ingest.failed").description("Messages that could not be stored").register(meterRegistry);
+        this.batchSizeSummary = DistributionSummary.builder("ingest.batch.size").description("Messages stored per INSERT").register(meterRegistry);
+
+        this.persistThread = new Thread(this::runPersistStage, "ingest-persist");
+        this.persistThread.setDaemon(true);
+        this.fanOutThread = new Thread(this::runFanOutStage, "ingest-fanout");
+        this.fanOutThread.setDaemon(true);
+    }
+
+    @PostConstruct
+    public void start() {
+        persistThread.start();
+        fanOutThread.start();
+    }
+
+    // Queue a message, the future fails with IllegalArgumentException for an invalid message
+    // and with RejectedExecutionException when the pipeline is full, the client should retry later
+    public CompletableFuture<Message> submit(String channelName, String content, String sender) {
+        if (channelName == null || sender == null) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Channel and sender are required"));
+        }
+        if (content == null || content.isBlank()) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Message is empty"));
+        }
+
+        PendingMessage pending = new PendingMessage(channelName, content, sender, Timestamp.valueOf(LocalDateTime.now()));
+        if (!running || !persistQueue.offer(pending)) {
+            rejectedCounter.increment();
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Too many messages are being sent, try again later"));
+        }
+        return pending.future;
+    }
+
+    public int getPersistQueueSize() {
+        return persistQueue.size();
+    }
+
+    public int getFanOutQueueSize() {
+        return fanOutQueue.size();
+    }
+
+    // Stop taking messages, store and publish what is already queued
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (!persistThread.isAlive()) {
+            return; // Never started
+        }
+        try {
+            persistThread.join(10000);
+            fanOutThread.join(10000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runPersistStage() {
+        while (running || !persistQueue.isEmpty()) {
+            try {
+                persistBatch(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // Store the next batch, waiting up to pollMillis for its first message, returns the number of messages taken
+    int persistBatch(long pollMillis) throws InterruptedException {
+        PendingMessage first = persistQueue.poll(pollMillis, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return 0;
+        }
+        List<PendingMessage> batch = new ArrayList<>(batchSize);
+        batch.add(first);
+        persistQueue.drainTo(batch, batchSize - batch.size());
+
+        // Linger a little so a burst goes out in one INSERT instead of several small ones
+        long deadline = System.nanoTime() + lingerNanos;
+        while (batch.size() < batchSize) {
+            PendingMessage next = persistQueue.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+            persistQueue.drainTo(batch, batchSize - batch.size());
+        }
+
+        try {
+            persist(batch);
+        } catch (RuntimeException e) {
+            logger.error("Error in the message persist stage", e);
+            for (PendingMessage pending : batch) {
+                pending.future.completeExceptionally(e); // No effect on the messages already answered
+            }
+        }
+        return batch.size();
+    }
+
+    private void persist(List<PendingMessage> batch) throws InterruptedException {
+        batchSizeSummary.record(batch.size());
+        // An empty result is a failed statement (database unreachable, a channel or sender deleted meanwhile), nothing was written
+        List<StoredMessage> stored = insert(batch);
+        if (stored.isEmpty() && batch.size() > 1) {
+            stored = insertOneByOne(batch);
+        }
+
+        boolean[] saved = new boolean[batch.size()];
+        LocalDateTime now = LocalDateTime.now();
+        for (StoredMessage row : stored) {
+            saved[row.ordinal] = true;
+            Message message = row.message;
+            String channelName = message.getChannel().getName();
+            // Applied before answering so the sender's next read already sees the message, the events apply it again harmlessly
+            recentMessageCache.add(channelName, message);
+            highWaterMarks.advance(channelName, message.getId());
+            batch.get(row.ordinal).future.complete(message);
+            fanOutQueue.put(new ChannelEvent(row.seq, channelName, ChannelEvent.EventType.MESSAGE_CREATED, message.getId(), message.getSender().getUsername(), message, now));
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            if (!saved[i]) {
+                failedCounter.increment();
+                batch.get(i).future.completeExceptionally(new IllegalStateException("Message could not be saved"));
+            }
+        }
+    }
+
+    // The batch failed, either the database is unreachable or a row is rejected (a channel deleted while its messages were queued)
+    // The pass stops after two failures before any message was written,
+    // so an unreachable database costs two more statements per batch and not one per message
+    private List<StoredMessage> insertOneByOne(List<PendingMessage> batch) {
+        List<StoredMessage> stored = new ArrayList<>();
+        int failures = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            List<StoredMessage> row = insert(List.of(batch.get(i)));
+            if (!row.isEmpty()) {
+                stored.add(new StoredMessage(i, row.get(0).seq, row.get(0).message));
+            } else if (++failures >= 2 && stored.isEmpty()) {
+                break;
+            }
+        }
+        return stored;
+    }
+
+    // Insert the messages and their change feed events in one statement, so both are in the same transaction
+    // Each row carries its position in the batch (ord), the ids are drawn in the input CTE since RETURNING only sees the messages columns
+    // The head of each channel moves by its number of messages, the events take the sequence numbers below it in id order
+    private List<StoredMessage> insert(List<PendingMessage> batch) {
+        StringBuilder values = new StringBuilder();
+        List<Object> params = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            PendingMessage pending = batch.get(i);
+            // The first row types the columns, the parameters are untyped inside a CTE
+            values.append(i == 0 ? "(CAST(? AS INT), CAST(? AS TEXT), CAST(? AS TEXT), CAST(? AS TEXT), CAST(? AS TIMESTAMP))" : ", (?, ?, ?, ?, ?)");
+            params.add(i);
+            params.add(pending.content);
+            params.add(pending.sender);
+            params.add(pending.channelName);
+            params.add(pending.timestamp);
+        }
+        String query = """
+            /* messages.ingest */
+            WITH input (ord, text, username, channel_name, date_time) AS (
+                VALUES %s
+            ),
+            numbered AS (
+                SELECT nextval(pg_get_serial_sequence('messages', 'id')) AS id, input.* FROM input ORDER BY input.ord
+            ),
+            m AS (
+                INSERT INTO messages (id, text, username, channel_name, date_time)
+                SELECT id, text, username, channel_name, date_time FROM numbered
+                RETURNING id, text, date_time, channel_name, username
+            ),
+            heads AS (
+                INSERT INTO channel_event_heads (channel_name, seq)
+                SELECT channel_name, COUNT(*) FROM m GROUP BY channel_name
+                ON CONFLICT (channel_name) DO UPDATE SET seq = channel_event_heads.seq + EXCLUDED.seq
+                RETURNING channel_name, seq
+            ),
+            e AS (
+                INSERT INTO channel_events (channel_name, seq, event_type, message_id, username)
+                SELECT m.channel_name, heads.seq - COUNT(*) OVER (PARTITION BY m.channel_name) + ROW_NUMBER() OVER (PARTITION BY m.channel_name ORDER BY m.id),
+                    'MESSAGE_CREATED', m.id, m.username
+                FROM m
+                JOIN heads ON heads.channel_name = m.channel_name
+                RETURNING message_id, seq
+            )
+            SELECT numbered.ord, e.seq, m.id, m.text, m.date_time, m.channel_name, u.username, u.role
+            FROM m
+            JOIN numbered ON numbered.id = m.id
+            JOIN e ON e.message_id = m.id
+            JOIN users u ON m.username = u.username
+            ORDER BY m.id
+            """.formatted(values);
+
+        return ServiceUtility.executeQuery(query, STORED_MESSAGE, params.toArray());
+    }
+
+    private void runFanOutStage() {
+        while (running || persistThread.isAlive() || !fanOutQueue.isEmpty()) {
+            try {
+                publishNext(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // Pass the next stored event to the listeners, waiting up to pollMillis for one
+    boolean publishNext(long pollMillis) throws InterruptedException {
+        ChannelEvent event = fanOutQueue.poll(pollMillis, TimeUnit.MILLISECONDS);
+        if (event == null) {
+            return false;
+        }
+        try {
+            changeFeedService.publish(event);
+        } catch (RuntimeException e) {
+            logger.error("Error in the message fan-out stage", e);
+        }
+        return true;
+    }
+
+    // A stored message with its position in the batch and the sequence number of its event
+    record StoredMessage(int ordinal, long seq, Message message) {
+    }
+
+    private static final RowMapper<StoredMessage> STORED_MESSAGE = rs -> {
+        int ordinal = rs.findColumn("ord");
+        int seq = rs.findColumn("seq");
+        RowMapper.Reader<Message> message = RowMappers.MESSAGE.bind(rs);
+        return row -> new StoredMessage(row.getInt(ordinal), row.getLong(seq), message.read(row));
+    };
+
+    private static class PendingMessage {
+        private final String channelName;
+        private final String content;
+        private final String sender;
+        private final Timestamp timestamp;
+        private final CompletableFuture<Message> future = new CompletableFuture<>();
+
+        private PendingMessage(String channelName, String content, String sender, Timestamp timestamp) {
+            this.channelName = channelName;
+            this.content = content;
+            this.sender = sender;
+            this.timestamp = timestamp;
+        }
+    }
+}
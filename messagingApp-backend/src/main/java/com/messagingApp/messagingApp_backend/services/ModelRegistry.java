@@ -0,0 +1,65 @@
+package com.messagingApp.messagingApp_backend.services;
+
+import com.messagingApp.messagingApp_backend.models.Channel;
+import com.messagingApp.messagingApp_backend.models.User;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public final class ModelRegistry {
+    // Shared User and Channel instances, by name, so the rows of a message page don't each build their own
+    // A page has one channel and a handful of senders, every message now points at the same few objects
+    // The models are immutable, a row that disagrees with the shared instance (a changed role) replaces it
+    // The users are held without their password, the queries reading passwords build their own instance
+    // Static like RowMappers, which use it, full registries hand out new instances instead of growing
+
+    private static final int MAX_USERS = 50000;
+    private static final int MAX_CHANNELS = 10000;
+
+    private static final Map<String, User> users = new ConcurrentHashMap<>();
+    private static final Map<String, Channel> channels = new ConcurrentHashMap<>();
+
+    public static User user(String username, User.UserRole role) {
+        User user = users.get(username);
+        if (user != null && user.getRole() == role) {
+            return user;
+        }
+        user = new User(username, null, role);
+        if (users.size() < MAX_USERS || users.containsKey(username)) {
+            users.put(username, user);
+        }
+        return user;
+    }
+
+    // The message queries don't read the channel type, a null type takes the shared instance whatever its type
+    public static Channel channel(String name, Channel.ChannelType type) {
+        Channel channel = channels.get(name);
+        if (channel != null && (type == null || channel.getType() == type)) {
+            return channel;
+        }
+        channel = new Channel(name, type);
+        if (channels.size() < MAX_CHANNELS || channels.containsKey(name)) {
+            channels.put(name, channel);
+        }
+        return channel;
+    }
+
+    // Called once the role is saved, so the rows read from now on carry the new role
+    // Messages already built keep the old instance, ChannelService.userRoleChanged drops the buffered ones
+    public static void roleChanged(String username, User.UserRole role) {
+        user(username, role);
+    }
+
+    // Called once the channel is deleted, a channel created later under the same name may have another type
+    public static void removeChannel(String channelName) {
+        channels.remove(channelName);
+    }
+
+    // The shared instance of a user, null if there is none
+    static User sharedUser(String username) {
+        return users.get(username);
+    }
+
+    private ModelRegistry() {
+    }
+}
@@ -0,0 +1,108 @@
+package com.messagingApp.messagingApp_backend.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+@Service
+public class PasswordHasher {
+    // This class hashes and checks passwords with BCrypt on its own small thread pool
+    // A hash costs tens of milliseconds of CPU, run on the request threads a burst of logins would hold them all
+    // The pool has a bounded queue, a full queue rejects the work right away (RejectedExecutionException) and the client retries later
+    // Stored passwords that are not BCrypt hashes are the plain-text rows from before hashing, they are still accepted
+    // and AuthService replaces them with a hash after the login
+
+    private static final Pattern BCRYPT = Pattern.compile("\\$2[aby]?\\$\\d\\d\\$[./0-9A-Za-z]{53}");
+
+    private final BCryptPasswordEncoder encoder;
+    private final ThreadPoolExecutor executor;
+    // Checked for unknown usernames so they take as long as a wrong password
+    private final String unknownUserHash;
+
+    private final Timer hashTimer;
+    private final Timer verifyTimer;
+    private final Counter rejectedCounter;
+
+    public PasswordHasher(MeterRegistry meterRegistry,
+                          @Value("${auth.bcrypt-strength:10}") int strength,
+                          @Value("${auth.hash-threads:2}") int threads,
+                          @Value("${auth.hash-queue-capacity:32}") int queueCapacity) {
+        this.encoder = new BCryptPasswordEncoder(strength);
+        this.unknownUserHash = encoder.encode("unknown user");
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "password-hasher-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Gauge.builder("auth.password.queue.size", executor.getQueue(), BlockingQueue::size).description("Password hashes and checks waiting for a thread").register(meterRegistry);
+        this.hashTimer = Timer.builder("auth.password.work").tag("operation", "hash").description("Time spent hashing a password, without the wait in the queue").register(meterRegistry);
+        this.verifyTimer = Timer.builder("auth.password.work").tag("operation", "verify").description("Time spent checking a password, without the wait in the queue").register(meterRegistry);
+        this.rejectedCounter = Counter.builder("auth.password.rejected").description("Password hashes and checks refused because the queue was full").register(meterRegistry);
+    }
+
+    public CompletableFuture<String> hash(String password) {
+        return submit(hashTimer, () -> encoder.encode(password));
+    }
+
+    // Check a password against the stored one, a null stored password (unknown user) never matches but costs the same
+    public CompletableFuture<Boolean> matches(String password, String storedPassword) {
+        return submit(verifyTimer, () -> {
+            if (storedPassword == null) {
+                encoder.matches(password, unknownUserHash);
+                return false;
+            }
+            if (isHash(storedPassword)) {
+                return encoder.matches(password, storedPassword);
+            }
+            // Plain-text row, compared in constant time
+            return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8), storedPassword.getBytes(StandardCharsets.UTF_8));
+        });
+    }
+
+    // Plain-text rows and hashes made with a lower strength are hashed again on the next login
+    public boolean needsRehash(String storedPassword) {
+        return !isHash(storedPassword) || encoder.upgradeEncoding(storedPassword);
+    }
+
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private static boolean isHash(String storedPassword) {
+        return BCRYPT.matcher(storedPassword).matches();
+    }
+
+    private <T> CompletableFuture<T> submit(Timer timer, Supplier<T> work) {
+        try {
+            return CompletableFuture.supplyAsync(() -> timer.record(work), executor);
+        } catch (RejectedExecutionException e) {
+            rejectedCounter.increment();
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Too many logins and registrations at once, try again later"));
+        }
+    }
+}
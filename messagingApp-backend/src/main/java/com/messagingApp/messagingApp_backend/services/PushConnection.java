@@ -0,0 +1,145 @@
+package com.messagingApp.messagingApp_backend.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.adapter.NativeWebSocketSession;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// One open WebSocket connection with its own bounded send queue
+// Only one task at a time drains the queue, so a slow socket blocks that task, for at most the send timeout, and nothing else
+// The drain task is the only one writing to the session, the close frame included, and every write has a time limit
+class PushConnection {
+    private static final Logger logger = LoggerFactory.getLogger(PushConnection.class);
+
+    // Tomcat gives up on a blocking send after this long (ms) and fails it with an IOException
+    static final String SEND_TIMEOUT_PROPERTY = "org.apache.tomcat.websocket.BLOCKING_SEND_TIMEOUT";
+
+    private final WebSocketSession session;
+    private final String username;
+    private final BlockingQueue<WebSocketMessage<?>> queue;
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    private final Set<String> channels = ConcurrentHashMap.newKeySet();
+    private volatile long lastActivity = System.currentTimeMillis();
+    private volatile CloseStatus closeStatus; // Set once the connection is to be closed, the drain task closes it
+    private volatile boolean closed;
+
+    PushConnection(WebSocketSession session, String username, int queueCapacity, long sendTimeoutMillis) {
+        this.session = session;
+        this.username = username;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        // Without a limit a client that stopped reading holds a send thread until the TCP connection dies
+        if (session instanceof NativeWebSocketSession nativeSession) {
+            jakarta.websocket.Session standardSession = nativeSession.getNativeSession(jakarta.websocket.Session.class);
+            if (standardSession != null) {
+                standardSession.getUserProperties().put(SEND_TIMEOUT_PROPERTY, sendTimeoutMillis);
+            }
+        }
+    }
+
+    String getId() {
+        return session.getId();
+    }
+
+    String getUsername() {
+        return username;
+    }
+
+    Set<String> getChannels() {
+        return channels;
+    }
+
+    long getLastActivity() {
+        return lastActivity;
+    }
+
+    void touch() {
+        lastActivity = System.currentTimeMillis();
+    }
+
+    int getQueueSize() {
+        return queue.size();
+    }
+
+    // Queue a message without ever blocking the caller, returns false if the client is too far behind
+    boolean enqueue(WebSocketMessage<?> message, Executor executor) {
+        if (closeStatus != null) {
+            return true; // Closing, the message would not be sent anyway
+        }
+        if (!queue.offer(message)) {
+            return false;
+        }
+        scheduleDrain(executor);
+        return true;
+    }
+
+    // Close from the drain task, a close frame written while a message is being sent would fail the session
+    // A send in progress finishes or times out first, the queued messages are dropped
+    void close(CloseStatus status, Executor executor) {
+        if (closeStatus == null) {
+            closeStatus = status;
+        }
+        queue.clear();
+        scheduleDrain(executor);
+    }
+
+    private void scheduleDrain(Executor executor) {
+        if (draining.compareAndSet(false, true)) {
+            executor.execute(() -> drain(executor));
+        }
+    }
+
+    private void drain(Executor executor) {
+        if (closed) {
+            draining.set(false);
+            return;
+        }
+        try {
+            WebSocketMessage<?> message;
+            while (closeStatus == null && (message = queue.poll()) != null) {
+                if (!session.isOpen()) {
+                    closeStatus = CloseStatus.SESSION_NOT_RELIABLE;
+                    break;
+                }
+                session.sendMessage(message);
+            }
+        } catch (IOException | IllegalStateException e) {
+            // Also a send that timed out, the session can't be written to anymore
+            logger.warn("Error pushing to WebSocket session {}: {}", session.getId(), e.getMessage());
+            if (closeStatus == null) {
+                closeStatus = CloseStatus.SESSION_NOT_RELIABLE;
+            }
+        } finally {
+            if (closeStatus != null) {
+                closeSession();
+            }
+            draining.set(false);
+        }
+
+        // A message or a close may have come after the last check but before the flag was cleared
+        if (!closed && (closeStatus != null || !queue.isEmpty())) {
+            scheduleDrain(executor);
+        }
+    }
+
+    // Closing a session also ends the connection in PushService (afterConnectionClosed)
+    private void closeSession() {
+        closed = true;
+        queue.clear();
+        try {
+            session.close(closeStatus);
+        } catch (IOException | IllegalStateException e) {
+            // The connection is gone either way
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.messagingApp.messagingApp_backend.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.messagingApp.messagingApp_backend.dto.ChannelEventDto;
+import com.messagingApp.messagingApp_backend.dto.UserDto;
+import com.messagingApp.messagingApp_backend.models.Channel;
+import com.messagingApp.messagingApp_backend.models.ChannelEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Service
+public class PushService {
+    // This class keeps the open WebSocket connections and the channels each of them is subscribed to
+    // Channel events are fanned out in memory to the subscribers instead of every client polling the channel
+
+    private static final Logger logger = LoggerFactory.getLogger(PushService.class);
+
+    private final ChannelService channelService;
+    private final ObjectMapper objectMapper;
+    private final int queueCapacity;
+    private final long sendTimeoutMillis;
+    private final long heartbeatTimeoutMillis;
+    private final ExecutorService sendExecutor;
+
+    private final Map<String, PushConnection> connections = new ConcurrentHashMap<>(); // By WebSocket session id
+    private final Map<String, Set<PushConnection>> subscribers = new ConcurrentHashMap<>(); // By channel name
+
+    private final Counter sentCounter;
+    private final Counter droppedCounter;
+
+    public PushService(ChannelService channelService, ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                       @Value("${push.queue-capacity:256}") int queueCapacity,
+                       @Value("${push.send-threads:4}") int sendThreads,
+                       @Value("${push.send-timeout-ms:10000}") long sendTimeoutMillis,
+                       @Value("${push.heartbeat-timeout-ms:60000}") long heartbeatTimeoutMillis) {
+        this.channelService = channelService;
+        this.objectMapper = objectMapper;
+        this.queueCapacity = queueCapacity;
+        this.sendTimeoutMillis = sendTimeoutMillis;
+        this.heartbeatTimeoutMillis = heartbeatTimeoutMillis;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.sendExecutor = Executors.newFixedThreadPool(sendThreads, runnable -> {
+            Thread thread = new Thread(runnable, "push-sender-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Gauge.builder("push.connections", connections, Map::size).description("Open WebSocket connections").register(meterRegistry);
+        Gauge.builder("push.subscriptions", this, PushService::getSubscriptionCount).description("Channel subscriptions over all connections").register(meterRegistry);
+        this.sentCounter = Counter.builder("push.messages.sent").description("Events queued to subscribers").register(meterRegistry);
+        this.droppedCounter = Counter.builder("push.connections.dropped").description("Connections closed because their send queue was full").register(meterRegistry);
+    }
+
+    // Register a new connection and subscribe it to every channel of the user
+    public void open(WebSocketSession session, String username) {
+        PushConnection connection = new PushConnection(session, username, queueCapacity, sendTimeoutMillis);
+        connections.put(connection.getId(), connection);
+        for (Channel channel : channelService.getUserChannels(username)) {
+            subscribe(connection, channel.getName());
+        }
+        logger.info("WebSocket opened for user {} with {} channels", username, connection.getChannels().size());
+    }
+
+    public void close(WebSocketSession session) {
+        PushConnection connection = connections.remove(session.getId());
+        if (connection == null) {
+            return;
+        }
+        for (String channelName : connection.getChannels()) {
+            unsubscribe(connection, channelName);
+        }
+    }
+
+    // Subscribe a connection to a channel, only members of the channel can subscribe
+    public boolean subscribe(WebSocketSession session, String channelName) {
+        PushConnection connection = connections.get(session.getId());
+        if (connection == null) {
+            return false;
+        }
+        if (!channelService.isMember(connection.getUsername(), channelName)) {
+            return false;
+        }
+        subscribe(connection, channelName);
+        return true;
+    }
+
+    public void unsubscribe(WebSocketSession session, String channelName) {
+        PushConnection connection = connections.get(session.getId());
+        if (connection != null) {
+            unsubscribe(connection, channelName);
+        }
+    }
+
+    // Any frame from the client (text or pong) counts as a heartbeat
+    public void touch(WebSocketSession session) {
+        PushConnection connection = connections.get(session.getId());
+        if (connection != null) {
+            connection.touch();
+        }
+    }
+
+    // Send a message to one connection only, used for replies to the client
+    public void sendTo(WebSocketSession session, Object payload) {
+        PushConnection connection = connections.get(session.getId());
+        TextMessage message = toTextMessage(payload);
+        if (connection != null && message != null) {
+            enqueue(connection, message);
+        }
+    }
+
+    // Fan out every channel event to the subscribers of the channel
+    @EventListener
+    public void onChannelEvent(ChannelEvent event) {
+        // A user who joins a channel starts receiving it on the connections they already have open
+        if (event.getType() == ChannelEvent.EventType.MEMBERSHIP_CHANGED && event.getUsername() != null) {
+            for (PushConnection connection : connections.values()) {
+                if (connection.getUsername().equals(event.getUsername())) {
+                    subscribe(connection, event.getChannelName());
+                }
+            }
+        }
+
+        Set<PushConnection> channelSubscribers = subscribers.get(event.getChannelName());
+        if (channelSubscribers == null || channelSubscribers.isEmpty()) {
+            return;
+        }
+
+        // Serialized once for all subscribers, shaped like the events of /events
+        Map<String, UserDto> senders = new LinkedHashMap<>();
+        if (event.getMessage() != null) {
+            UserDto.addTo(senders, event.getMessage().getSender());
+        }
+        TextMessage message = toTextMessage(Map.of("type", "event", "event", ChannelEventDto.from(event), "senders", senders));
+        if (message == null) {
+            return;
+        }
+        for (PushConnection connection : channelSubscribers) {
+            enqueue(connection, message);
+        }
+    }
+
+    // Ping every connection and close the ones that stopped answering
+    @Scheduled(fixedRateString = "${push.heartbeat-interval-ms:25000}")
+    public void heartbeat() {
+        long now = System.currentTimeMillis();
+        for (PushConnection connection : connections.values()) {
+            if (now - connection.getLastActivity() > heartbeatTimeoutMillis) {
+                logger.info("Closing idle WebSocket of user {}", connection.getUsername());
+                drop(connection, CloseStatus.SESSION_NOT_RELIABLE);
+            } else {
+                enqueue(connection, new PingMessage());
+            }
+        }
+    }
+
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    public int getSubscriberCount(String channelName) {
+        Set<PushConnection> channelSubscribers = subscribers.get(channelName);
+        return channelSubscribers == null ? 0 : channelSubscribers.size();
+    }
+
+    public int getSubscriptionCount() {
+        int count = 0;
+        for (Set<PushConnection> channelSubscribers : subscribers.values()) {
+            count += channelSubscribers.size();
+        }
+        return count;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (PushConnection connection : connections.values()) {
+            connection.close(CloseStatus.GOING_AWAY, sendExecutor);
+        }
+        sendExecutor.shutdown(); // The close tasks already queued still run
+    }
+
+    private void subscribe(PushConnection connection, String channelName) {
+        connection.getChannels().add(channelName);
+        subscribers.computeIfAbsent(channelName, name -> ConcurrentHashMap.newKeySet()).add(connection);
+    }
+
+    private void unsubscribe(PushConnection connection, String channelName) {
+        connection.getChannels().remove(channelName);
+        subscribers.computeIfPresent(channelName, (name, channelSubscribers) -> {
+            channelSubscribers.remove(connection);
+            return channelSubscribers.isEmpty() ? null : channelSubscribers;
+        });
+    }
+
+    private void enqueue(PushConnection connection, WebSocketMessage<?> message) {
+        if (connection.enqueue(message, sendExecutor)) {
+            sentCounter.increment();
+        } else {
+            // The client cannot keep up, it reconnects and catches up through the change feed
+            logger.warn("Send queue full, dropping WebSocket of user {}", connection.getUsername());
+            droppedCounter.increment();
+            drop(connection, CloseStatus.SESSION_NOT_RELIABLE);
+        }
+    }
+
+    private void drop(PushConnection connection, CloseStatus status) {
+        if (connections.remove(connection.getId()) == null) {
+            return;
+        }
+        for (String channelName : connection.getChannels()) {
+            unsubscribe(connection, channelName);
+        }
+        // Closing writes a frame to the socket, done by the drain task of the connection once its current send is over
+        connection.close(status, sendExecutor);
+    }
+
+    private TextMessage toTextMessage(Object payload) {
+        try {
+            return new TextMessage(objectMapper.writeValueAsString(payload));
+        } catch (JsonProcessingException e) {
+            logger.error("Error serializing WebSocket payload", e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.messagingApp.messagingApp_backend.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Service
+@DependsOn("serviceUtility") // Destroyed first, so the last flush still has the connection pool
+public class ReadMarkerBuffer {
+    // This class collects the last seen message of each user in each channel and writes them to messages_seen in batches
+    // Only the highest id per user and channel is kept, so a flush writes at most one row per user and channel
+    // The database also keeps the highest id, markers never go back
+    // When a batch fails its rows are written one by one, a row that fails MAX_ATTEMPTS flushes is dropped
+
+    private static final String UPSERT_QUERY = """
+        /* messages_seen.upsert */
+        INSERT INTO messages_seen (username, channel_name, last_read_msg_id)
+        VALUES (?, ?, ?)
+        ON CONFLICT (username, channel_name)
+        DO UPDATE SET last_read_msg_id = GREATEST(messages_seen.last_read_msg_id, EXCLUDED.last_read_msg_id);
+        """;
+    static final int MAX_ATTEMPTS = 3;
+
+    private final Map<Key, Long> pending = new ConcurrentHashMap<>();
+    private final Map<Key, Integer> failures = new ConcurrentHashMap<>(); // Failed writes of each pending marker
+
+    private final Counter receivedCounter;
+    private final Counter writtenCounter;
+    private final Counter droppedCounter;
+
+    public ReadMarkerBuffer(MeterRegistry meterRegistry) {
+        Gauge.builder("readmarkers.pending", pending, Map::size).description("Read markers waiting to be written").register(meterRegistry);
+        this.receivedCounter = Counter.builder("readmarkers.received").description("Read marker updates received").register(meterRegistry);
+        this.writtenCounter = Counter.builder("readmarkers.written").description("Read markers written to the database").register(meterRegistry);
+        this.droppedCounter = Counter.builder("readmarkers.dropped").description("Read markers dropped after failing to be written").register(meterRegistry);
+    }
+
+    public void record(String username, String channelName, long lastSeenMsgId) {
+        if (username == null || channelName == null) {
+            return; // Would fail the whole batch
+        }
+        receivedCounter.increment();
+        pending.merge(new Key(username, channelName), lastSeenMsgId, Math::max);
+    }
+
+    // Marker not written yet, null when there is none
+    public Long getPending(String username, String channelName) {
+        return pending.get(new Key(username, channelName));
+    }
+
+    // Drop the markers of a deleted channel, their rows would fail the batch
+    public void removeChannel(String channelName) {
+        pending.keySet().removeIf(key -> key.channelName.equals(channelName));
+        failures.keySet().removeIf(key -> key.channelName.equals(channelName));
+    }
+
+    @Scheduled(fixedDelayString = "${read-markers.flush-interval-ms:2000}")
+    public void scheduledFlush() {
+        flush();
+    }
+
+    // Write what is in the buffer, markers recorded during the flush wait for the next one
+    public synchronized int flush() {
+        List<Map.Entry<Key, Long>> batch = new ArrayList<>(pending.entrySet());
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        // Same row order in every batch so two writers can't deadlock each other
+        batch.sort(Map.Entry.comparingByKey());
+
+        List<Object[]> params = new ArrayList<>();
+        for (Map.Entry<Key, Long> entry : batch) {
+            params.add(new Object[]{entry.getKey().username, entry.getKey().channelName, entry.getValue()});
+        }
+        int rowsAffected = ServiceUtility.executeBatch(UPSERT_QUERY, "Error when flushing read markers to messages_seen", params);
+        List<Map.Entry<Key, Long>> written = rowsAffected >= 0 ? batch : writeOneByOne(batch);
+
+        // Only drop what was written, a higher marker recorded meanwhile stays for the next flush
+        for (Map.Entry<Key, Long> entry : written) {
+            pending.remove(entry.getKey(), entry.getValue());
+            failures.remove(entry.getKey());
+        }
+        writtenCounter.increment(written.size());
+        return written.size();
+    }
+
+    // The batch failed, either the database is unreachable or a row is rejected (a user deleted meanwhile)
+    // Rows that failed before are tried last, and the pass stops at a failure before any row was written
+    // so an unreachable database costs one more attempt per flush and not one per row
+    private List<Map.Entry<Key, Long>> writeOneByOne(List<Map.Entry<Key, Long>> batch) {
+        List<Map.Entry<Key, Long>> ordered = new ArrayList<>(batch);
+        ordered.sort(Comparator.comparingInt(entry -> failures.getOrDefault(entry.getKey(), 0)));
+
+        List<Map.Entry<Key, Long>> written = new ArrayList<>();
+        for (Map.Entry<Key, Long> entry : ordered) {
+            Key key = entry.getKey();
+            if (ServiceUtility.executeUpdate(UPSERT_QUERY, "Error when writing a read marker to messages_seen", key.username, key.channelName, entry.getValue()) > 0) {
+                written.add(entry);
+                continue;
+            }
+            if (failures.merge(key, 1, Integer::sum) >= MAX_ATTEMPTS) {
+                pending.remove(key, entry.getValue());
+                failures.remove(key);
+                droppedCounter.increment();
+            }
+            if (written.isEmpty()) {
+                break;
+            }
+        }
+        return written;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    private record Key(String username, String channelName) implements Comparable<Key> {
+        @Override
+        public int compareTo(Key other) {
+            int result = username.compareTo(other.username);
+            return result != 0 ? result : channelName.compareTo(other.channelName);
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.messagingApp.messagingApp_backend.services;
+
+import com.messagingApp.messagingApp_backend.models.ChannelEvent;
+import com.messagingApp.messagingApp_backend.models.Message;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+@Service
+public class RecentMessageCache {
+    // This class keeps the newest messages of each channel in memory so the reads of the tail don't query the database
+    // A channel is loaded from the database on its first read, then kept up to date by the change feed events
+    // When the estimated size of all buffers goes over the budget, the least recently read channels are dropped
+
+    private static final String CACHE_NAME = "recentMessages";
+
+    private final int capacity;
+    private final long maxBytes;
+
+    // Access ordered, the first entry is the least recently used channel
+    private final LinkedHashMap<String, ChannelBuffer> buffers = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter evictionCounter;
+
+    public RecentMessageCache(MeterRegistry meterRegistry,
+                              @Value("${recent-messages.capacity:50}") int capacity,
+                              @Value("${recent-messages.max-bytes:16777216}") long maxBytes) {
+        this.capacity = capacity;
+        this.maxBytes = maxBytes;
+
+        this.hitCounter = Counter.builder("cache.gets").tag("cache", CACHE_NAME).tag("result", "hit").description("Reads served from the recent message buffers").register(meterRegistry);
+        this.missCounter = Counter.builder("cache.gets").tag("cache", CACHE_NAME).tag("result", "miss").description("Reads that loaded a channel from the database").register(meterRegistry);
+        this.evictionCounter = Counter.builder("cache.evictions").tag("cache", CACHE_NAME).description("Channels dropped to stay within the memory budget").register(meterRegistry);
+        Gauge.builder("cache.size", this, RecentMessageCache::getChannelCount).tag("cache", CACHE_NAME).description("Channels with a recent message buffer").register(meterRegistry);
+        Gauge.builder("cache.weight", this, RecentMessageCache::getTotalBytes).tag("cache", CACHE_NAME).baseUnit("bytes").description("Estimated size of the recent message buffers").register(meterRegistry);
+    }
+
+    // Get the newest messages of a channel, the loader is called with capacity + 1 on a miss and returns the newest messages oldest first
+    public Snapshot get(String channelName, IntFunction<List<Message>> loader) {
+        ChannelBuffer buffer;
+        synchronized (this) {
+            buffer = buffers.get(channelName);
+            if (buffer != null && buffer.loaded) {
+                hitCounter.increment();
+                return buffer.snapshot();
+            }
+            if (buffer == null) {
+                // Put the buffer in place before loading, messages sent while the query runs are added to it and merged
+                buffer = new ChannelBuffer();
+                buffers.put(channelName, buffer);
+            }
+        }
+
+        missCounter.increment();
+        List<Message> loaded = loader.apply(capacity + 1);
+
+        synchronized (this) {
+            if (buffers.get(channelName) == buffer) {
+                if (!buffer.loaded) {
+                    boolean hasOlder = loaded.size() > capacity;
+                    for (Message message : hasOlder ? loaded.subList(1, loaded.size()) : loaded) {
+                        add(buffer, message);
+                    }
+                    buffer.hasOlder = buffer.hasOlder || hasOlder;
+                    buffer.loaded = true;
+                    evictOverBudget();
+                }
+                return buffer.snapshot();
+            }
+        }
+
+        // The buffer was dropped while loading, serve this read from the query only
+        boolean hasOlder = loaded.size() > capacity;
+        return new Snapshot(hasOlder ? loaded.subList(1, loaded.size()) : loaded, hasOlder);
+    }
+
+    public synchronized void add(String channelName, Message message) {
+        ChannelBuffer buffer = buffers.get(channelName);
+        if (buffer != null) {
+            add(buffer, message);
+            evictOverBudget();
+        }
+    }
+
+    public synchronized void remove(String channelName, long messageId) {
+        ChannelBuffer buffer = buffers.get(channelName);
+        if (buffer == null) {
+            return;
+        }
+        if (!buffer.loaded || buffer.hasOlder) {
+            // The buffer would be missing a message compared to the database, load it again on the next read
+            evict(channelName);
+            return;
+        }
+        buffer.messages.removeIf(message -> {
+            if (message.getId() == messageId) {
+                buffer.bytes -= estimateBytes(message);
+                totalBytes -= estimateBytes(message);
+                return true;
+            }
+            return false;
+        });
+    }
+
+    public synchronized void evict(String channelName) {
+        ChannelBuffer buffer = buffers.remove(channelName);
+        if (buffer != null) {
+            totalBytes -= buffer.bytes;
+        }
+    }
+
+    // Drop every channel holding a message of the user, its messages point at the User of before a role change
+    // The next read loads the channel again with the new role
+    public synchronized void evictSender(String username) {
+        Iterator<Map.Entry<String, ChannelBuffer>> iterator = buffers.entrySet().iterator();
+        while (iterator.hasNext()) {
+            ChannelBuffer buffer = iterator.next().getValue();
+            for (Message message : buffer.messages) {
+                if (message.getSender() != null && username.equals(message.getSender().getUsername())) {
+                    iterator.remove();
+                    totalBytes -= buffer.bytes;
+                    break;
+                }
+            }
+        }
+    }
+
+    // Sent messages are added and deleted messages are purged through the change feed
+    @EventListener
+    public void onChannelEvent(ChannelEvent event) {
+        if (event.getType() == ChannelEvent.EventType.MESSAGE_CREATED && event.getMessage() != null) {
+            add(event.getChannelName(), event.getMessage());
+        } else if (event.getType() == ChannelEvent.EventType.MESSAGE_DELETED && event.getMessageId() != null) {
+            remove(event.getChannelName(), event.getMessageId());
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized int getChannelCount() {
+        return buffers.size();
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    // Insert in id order, messages can commit slightly out of order
+    private void add(ChannelBuffer buffer, Message message) {
+        List<Message> messages = buffer.messages;
+        int index = messages.size();
+        while (index > 0 && messages.get(index - 1).getId() >= message.getId()) {
+            if (messages.get(index - 1).getId() == message.getId()) {
+                return; // Already there, seen by the loading query and by the event
+            }
+            index--;
+        }
+        if (index == 0 && buffer.hasOlder && messages.size() >= capacity) {
+            return; // Older than everything kept
+        }
+        messages.add(index, message);
+        buffer.bytes += estimateBytes(message);
+        totalBytes += estimateBytes(message);
+
+        // Keep only the newest messages, what is dropped can still be read from the database
+        while (messages.size() > capacity) {
+            Message dropped = messages.remove(0);
+            buffer.bytes -= estimateBytes(dropped);
+            totalBytes -= estimateBytes(dropped);
+            buffer.hasOlder = true;
+        }
+    }
+
+    private void evictOverBudget() {
+        Iterator<Map.Entry<String, ChannelBuffer>> iterator = buffers.entrySet().iterator();
+        while (totalBytes > maxBytes && buffers.size() > 1 && iterator.hasNext()) {
+            ChannelBuffer buffer = iterator.next().getValue();
+            iterator.remove();
+            totalBytes -= buffer.bytes;
+            evictionCounter.increment();
+        }
+    }
+
+    // Rough size of a message on the heap, the strings are the only part that varies
+    static long estimateBytes(Message message) {
+        long bytes = 160;
+        bytes += 2L * (message.getContent() != null ? message.getContent().length() : 0);
+        bytes += 2L * (message.getSender() != null && message.getSender().getUsername() != null ? message.getSender().getUsername().length() : 0);
+        return bytes;
+    }
+
+    private static class ChannelBuffer {
+        private final List<Message> messages = new ArrayList<>(); // Oldest first
+        private boolean loaded;
+        private boolean hasOlder; // The database has messages older than the buffer
+        private long bytes;
+
+        private Snapshot snapshot() {
+            return new Snapshot(messages, hasOlder);
+        }
+    }
+
+    // Copy of a buffer taken under the lock, safe to read after it is returned
+    public static class Snapshot {
+        private final List<Message> messages;
+        private final boolean hasOlder;
+
+        public Snapshot(List<Message> messages, boolean hasOlder) {
+            this.messages = List.copyOf(messages);
+            this.hasOlder = hasOlder;
+        }
+
+        public List<Message> getMessages() {
+            return messages;
+        }
+
+        public boolean hasOlder() {
+            return hasOlder;
+        }
+
+        // The newest messages up to the limit, or null when the buffer doesn't hold enough of them
+        public List<Message> getNewest(int limit) {
+            if (messages.size() < limit && hasOlder) {
+                return null;
+            }
+            return messages.subList(Math.max(0, messages.size() - limit), messages.size());
+        }
+
+        // Every message after the id, or null when some of them could be older than the buffer
+        public List<Message> getAfter(long after) {
+            if (hasOlder && (messages.isEmpty() || after < messages.get(0).getId())) {
+                return null;
+            }
+            List<Message> newer = new ArrayList<>();
+            for (Message message : messages) {
+                if (message.getId() > after) {
+                    newer.add(message);
+                }
+            }
+            return newer;
+        }
+    }
+}
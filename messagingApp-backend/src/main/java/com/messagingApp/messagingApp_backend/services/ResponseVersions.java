@@ -0,0 +1,97 @@
+package com.messagingApp.messagingApp_backend.services;
+
+import com.messagingApp.messagingApp_backend.models.ChannelEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Service
+public class ResponseVersions {
+    // This class keeps in-memory change counters for the responses clients poll, the controllers turn them into ETags
+    // A poll whose If-None-Match still matches is answered with 304 before any query is run
+    // - channel: every change feed event of the channel (messages created or deleted, members joining)
+    // - user: the user's memberships and read markers
+    // - directory: users registered, roles changed, channels deleted
+    // A counter only has to change when the response may change, a change that doesn't alter it only costs one full response
+    // The tags are weak, the same data is sent as JSON, gzipped JSON, CBOR or Smile, and Tomcat doesn't compress strong-tagged responses
+    // The counters only see the changes made through this instance, so every tag also holds the current max-age window
+    // A change made by another instance or directly in the database shows up at the latest when the window ends
+
+    // Part of every tag so the tags handed out before a restart, when the counters start over, never match
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+
+    private final Map<String, AtomicLong> channels = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> users = new ConcurrentHashMap<>();
+    private final AtomicLong directory = new AtomicLong();
+    private final long maxAgeMillis;
+
+    public ResponseVersions(@Value("${response-versions.max-age-ms:60000}") long maxAgeMillis) {
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    // Tag of the data of a channel as seen by a user (messages, members, the user's channels and read marker)
+    public String channelDataTag(String username, String channelName) {
+        return tag("c", username, get(channels, channelName), get(users, username), directory.get());
+    }
+
+    // Tag of the unread channels of a user, the sum only grows, so any new message in one of the channels changes it
+    public String unreadTag(String username, Collection<String> channelNames) {
+        long sum = 0;
+        for (String channelName : channelNames) {
+            sum += get(channels, channelName);
+        }
+        return tag("u", username, sum, get(users, username), directory.get());
+    }
+
+    // Tag of the user list, the same for everybody
+    public String directoryTag() {
+        return tag("d", "", directory.get());
+    }
+
+    public void channelChanged(String channelName) {
+        channels.computeIfAbsent(channelName, key -> new AtomicLong()).incrementAndGet();
+    }
+
+    public void userChanged(String username) {
+        users.computeIfAbsent(username, key -> new AtomicLong()).incrementAndGet();
+    }
+
+    public void directoryChanged() {
+        directory.incrementAndGet();
+    }
+
+    // A deleted channel changes the channel list of all its members, bumping the directory covers them
+    public void removeChannel(String channelName) {
+        channels.remove(channelName);
+        directoryChanged();
+    }
+
+    @EventListener
+    public void onChannelEvent(ChannelEvent event) {
+        channelChanged(event.getChannelName());
+        if (event.getType() == ChannelEvent.EventType.MEMBERSHIP_CHANGED && event.getUsername() != null) {
+            userChanged(event.getUsername());
+        }
+    }
+
+    private static long get(Map<String, AtomicLong> counters, String key) {
+        AtomicLong counter = counters.get(key);
+        return counter != null ? counter.get() : 0;
+    }
+
+    // The username is hashed in, two users at the same counters must not share a tag
+    private String tag(String kind, String username, long... counters) {
+        long window = System.currentTimeMillis() / maxAgeMillis;
+        StringBuilder tag = new StringBuilder("W/\"").append(kind).append('-').append(epoch).append('-').append(Long.toString(window, 36))
+            .append('-').append(Integer.toHexString(username.hashCode()));
+        for (long counter : counters) {
+            tag.append('-').append(Long.toString(counter, 36));
+        }
+        return tag.append('"').toString();
+    }
+}
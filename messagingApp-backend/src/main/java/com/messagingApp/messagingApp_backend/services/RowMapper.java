@@ -0,0 +1,17 @@
+package com.messagingApp.messagingApp_backend.services;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+// Maps the rows of a result set straight into objects, without going through a map per row
+// bind is called once per result set to look up the column positions, the returned reader is then called for every row
+@FunctionalInterface
+public interface RowMapper<T> {
+
+    Reader<T> bind(ResultSet rs) throws SQLException;
+
+    @FunctionalInterface
+    interface Reader<T> {
+        T read(ResultSet rs) throws SQLException;
+    }
+}
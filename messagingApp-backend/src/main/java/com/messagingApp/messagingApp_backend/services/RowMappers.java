@@ -0,0 +1,64 @@
+package com.messagingApp.messagingApp_backend.services;
+
+import com.messagingApp.messagingApp_backend.models.Message;
+import com.messagingApp.messagingApp_backend.models.MessageSearchHit;
+import com.messagingApp.messagingApp_backend.models.User;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public final class RowMappers {
+    // Row mappers for the models, used with ServiceUtility.executeQuery and executeStreamingQuery
+    // Only the message and search queries use them for now, they are the ones returning large results
+    // The columns are found by name once per result set, so the SELECT lists may order them as they like
+
+    // Needs the id, text, date_time, channel_name, username and role columns
+    public static final RowMapper<Message> MESSAGE = rs -> {
+        int id = rs.findColumn("id");
+        int text = rs.findColumn("text");
+        int dateTime = rs.findColumn("date_time");
+        int channelName = rs.findColumn("channel_name");
+        int username = rs.findColumn("username");
+        int role = rs.findColumn("role");
+        return row -> new Message(row.getLong(id), row.getString(text),
+            ModelRegistry.user(row.getString(username), User.UserRole.valueOf(row.getString(role))),
+            ModelRegistry.channel(row.getString(channelName), null), // Channel type is not read, the shared instance may know it
+            row.getTimestamp(dateTime).toLocalDateTime());
+    };
+
+    // Needs the message columns, plus rank and headline (ts_headline with HEADLINE_START and HEADLINE_STOP around the matches)
+    public static final RowMapper<MessageSearchHit> MESSAGE_SEARCH_HIT = rs -> {
+        RowMapper.Reader<Message> message = MESSAGE.bind(rs);
+        int rank = rs.findColumn("rank");
+        int headline = rs.findColumn("headline");
+        return row -> toSearchHit(message.read(row), row.getDouble(rank), row.getString(headline));
+    };
+
+    // Match delimiters asked from ts_headline, control characters that don't appear in typed messages
+    static final char HEADLINE_START = '\u0002';
+    static final char HEADLINE_STOP = '\u0003';
+
+    // Strip the delimiters from the headline and keep where they were as highlight offsets
+    static MessageSearchHit toSearchHit(Message message, double rank, String headline) {
+        StringBuilder snippet = new StringBuilder(headline.length());
+        List<MessageSearchHit.Highlight> highlights = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i < headline.length(); i++) {
+            char c = headline.charAt(i);
+            if (c == HEADLINE_START) {
+                start = snippet.length();
+            } else if (c == HEADLINE_STOP) {
+                if (start >= 0 && snippet.length() > start) {
+                    highlights.add(new MessageSearchHit.Highlight(start, snippet.length()));
+                }
+                start = -1;
+            } else {
+                snippet.append(c);
+            }
+        }
+        return new MessageSearchHit(message, rank, snippet.toString(), highlights);
+    }
+
+    private RowMappers() {
+    }
+}
@@ -1,30 +1,62 @@
 package com.messagingApp.messagingApp_backend.services;
 
-import io.github.cdimascio.dotenv.Dotenv;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
 
+import javax.sql.DataSource;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+@Component
 public class ServiceUtility {
+    private static final Logger logger = LoggerFactory.getLogger(ServiceUtility.class);
 
-    // Load .env variables
-    private static final Dotenv dotenv = Dotenv.configure().ignoreIfMissing().load();
+    // Pooled DataSource configured by Spring (spring.datasource.* / spring.datasource.hikari.*)
+    // Kept static so the services can keep calling the static helpers below
+    private static DataSource dataSource;
+    private static int fetchSize = 500;
 
-    private static final String DB_URL = System.getenv("DB_URL") != null ? System.getenv("DB_URL") : dotenv.get("DB_URL");
-    private static final String DB_USER = System.getenv("DB_USER") != null ? System.getenv("DB_USER") : dotenv.get("DB_USER");
-    private static final String DB_PASSWORD = System.getenv("DB_PASSWORD") != null ? System.getenv("DB_PASSWORD") : dotenv.get("DB_PASSWORD");
+    // Every statement is timed under db.statement and its row count recorded under db.statement.rows
+    // Both are tagged with a query name instead of the SQL text, see queryName()
+    private static MeterRegistry meterRegistry; // Nothing is recorded until Spring creates this component
+    private static final int MAX_QUERY_NAMES = 1000;
+    private static final Map<String, String> queryNames = new ConcurrentHashMap<>(); // By SQL text
+    private static final Pattern NAME = Pattern.compile("^\\s*/\\*\\s*([\\w.]+)\\s*\\*/"); // The "/* messages.newest */" opening a statement
+    private static final Pattern VERB = Pattern.compile("\\b(select|insert|update|delete)\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern WRITE_VERB = Pattern.compile("\\b(insert|update|delete)\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern TABLE = Pattern.compile("\\b(?:from|into|update)\\s+(\\w+)", Pattern.CASE_INSENSITIVE);
 
-    static {
-        System.out.println("Loaded DB_URL: " + (DB_URL != null && !DB_URL.isEmpty() ? "✔" : "❌"));
-        System.out.println("Loaded DB_USER: " + (DB_USER != null && !DB_USER.isEmpty() ? "✔" : "❌"));
-        System.out.println("Loaded DB_PASSWORD: " + (DB_PASSWORD != null && !DB_PASSWORD.isEmpty() ? "✔" : "❌"));
+    public ServiceUtility(DataSource dataSource, MeterRegistry meterRegistry, @Value("${jdbc.fetch-size:500}") int fetchSize) {
+        ServiceUtility.dataSource = dataSource;
+        ServiceUtility.meterRegistry = meterRegistry;
+        ServiceUtility.fetchSize = fetchSize;
+    }
+
+    // Borrow a connection from the pool, callers must close it to return it
+    static Connection getConnection() throws SQLException {
+        if (dataSource == null) {
+            throw new SQLException("DataSource has not been initialized");
+        }
+        return dataSource.getConnection();
     }
 
     // Default method to get data from the database
     static List<Map<String, Object>> executeQuery(String query, Object... params) {
         List<Map<String, Object>> result = new ArrayList<>();
+        long start = System.nanoTime();
+        long rows = -1;
 
-        try (Connection connection = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD); PreparedStatement ps = connection.prepareStatement(query)) {
+        try (Connection connection = getConnection(); PreparedStatement ps = connection.prepareStatement(query)) {
             //Set query parameters
             for (int i = 0; i < params.length; i++) {
                 ps.setObject(i + 1, params[i]);
@@ -32,30 +64,88 @@ public class ServiceUtility {
 
             //Execute the query
             try (ResultSet rs = ps.executeQuery()) {
-                ResultSetMetaData metaData = rs.getMetaData();
-                int columnCount = metaData.getColumnCount();
+                readRows(rs, result);
+            }
+            rows = result.size();
+
+        } catch (SQLException e) {
+            // Named rather than printed with its parameters, they can hold passwords and message contents
+            logger.error("Database error during query execution: {}", queryName(query), e);
+        } finally {
+            record(query, start, rows);
+        }
+        return result;
+    }
 
-                while (rs.next()) {
-                    Map<String, Object> row = new HashMap<>();
-                    for (int i = 1; i <= columnCount; i++) {
-                        row.put(metaData.getColumnName(i), rs.getObject(i));
+    // Copy every row into a map keyed by column name
+    static void readRows(ResultSet rs, List<Map<String, Object>> result) throws SQLException {
+        ResultSetMetaData metaData = rs.getMetaData();
+        int columnCount = metaData.getColumnCount();
+
+        while (rs.next()) {
+            Map<String, Object> row = new HashMap<>();
+            for (int i = 1; i <= columnCount; i++) {
+                row.put(metaData.getColumnName(i), rs.getObject(i));
+            }
+            result.add(row);
+        }
+    }
+
+    // Get data from the database mapped straight into objects, no map is built for the rows
+    static <T> List<T> executeQuery(String query, RowMapper<T> mapper, Object... params) {
+        List<T> result = new ArrayList<>();
+        executeStreamingQuery(query, mapper, result::add, params);
+        return result;
+    }
+
+    // Hand each row to the consumer as it is read, the driver fetches jdbc.fetch-size rows at a time instead of the whole result
+    // Returns the number of rows read, or -1 when the query failed
+    static <T> long executeStreamingQuery(String query, RowMapper<T> mapper, Consumer<? super T> consumer, Object... params) {
+        long start = System.nanoTime();
+        long rows = -1;
+
+        try (Connection connection = getConnection()) {
+            // The PostgreSQL driver only reads through a cursor inside a transaction
+            connection.setAutoCommit(false);
+            try (PreparedStatement ps = connection.prepareStatement(query)) {
+                ps.setFetchSize(fetchSize);
+                for (int i = 0; i < params.length; i++) {
+                    ps.setObject(i + 1, params[i]);
+                }
+
+                long read = 0;
+                try (ResultSet rs = ps.executeQuery()) {
+                    RowMapper.Reader<T> reader = mapper.bind(rs);
+                    while (rs.next()) {
+                        consumer.accept(reader.read(rs));
+                        read++;
                     }
-                    result.add(row);
                 }
+                connection.commit();
+                rows = read;
+                return rows;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
             }
 
         } catch (SQLException e) {
-            System.out.println("Database error during query execution: [" + query + "] with " + Arrays.toString(params));
-            e.printStackTrace();
+            logger.error("Database error during query execution: {}", queryName(query), e);
+            return -1;
+        } finally {
+            record(query, start, rows);
         }
-        return result;
     }
 
     // Default method to update data in the database
     static int executeUpdate(String query, String errorMessage, Object... params) {
         int rowsAffected = 0;
+        long start = System.nanoTime();
+        boolean failed = true;
 
-        try (Connection connection = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD); PreparedStatement ps = connection.prepareStatement(query)) {
+        try (Connection connection = getConnection(); PreparedStatement ps = connection.prepareStatement(query)) {
 
             // Bind parameters
             for (int i = 0; i < params.length; i++) {
@@ -64,12 +154,108 @@ public class ServiceUtility {
 
             // Execute update and return affected rows
             rowsAffected = ps.executeUpdate();
+            failed = false;
 
         } catch (SQLException e) {
-            System.err.println(errorMessage);
-            e.printStackTrace();
+            logger.error(errorMessage, e);
+        } finally {
+            record(query, start, failed ? -1 : rowsAffected);
         }
 
         return rowsAffected;
     }
+
+    // Run the same statement for every set of parameters in one batch and one transaction
+    // Returns the number of rows affected, or -1 when the batch failed and nothing was written
+    static int executeBatch(String query, String errorMessage, List<Object[]> paramsList) {
+        if (paramsList.isEmpty()) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        int rowsAffected = -1;
+
+        try (Connection connection = getConnection(); PreparedStatement ps = connection.prepareStatement(query)) {
+            connection.setAutoCommit(false);
+            try {
+                for (Object[] params : paramsList) {
+                    for (int i = 0; i < params.length; i++) {
+                        ps.setObject(i + 1, params[i]);
+                    }
+                    ps.addBatch();
+                }
+
+                int written = 0;
+                for (int count : ps.executeBatch()) {
+                    written += Math.max(count, 0); // The driver may report SUCCESS_NO_INFO
+                }
+                connection.commit();
+                rowsAffected = written;
+                return rowsAffected;
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+
+        } catch (SQLException e) {
+            logger.error(errorMessage, e);
+            return -1;
+        } finally {
+            record(query, start, rowsAffected);
+        }
+    }
+
+    // Time a statement started at startNanos, rows is the number of rows read or written, -1 when it failed
+    private static void record(String query, long startNanos, long rows) {
+        MeterRegistry registry = meterRegistry;
+        if (registry == null) {
+            return;
+        }
+        String name = queryName(query);
+        Timer.builder("db.statement")
+            .description("SQL statements run through ServiceUtility")
+            .tag("query", name)
+            .tag("outcome", rows < 0 ? "error" : "success")
+            .register(registry)
+            .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        if (rows >= 0) {
+            DistributionSummary.builder("db.statement.rows")
+                .description("Rows read or written per SQL statement")
+                .baseUnit("rows")
+                .tag("query", name)
+                .register(registry)
+                .record(rows);
+        }
+    }
+
+    // Name of a statement for the metrics, the comment it opens with, e.g. "/* messages.newest */ SELECT ..."
+    // Each statement is named where its SQL is written, the comment also shows which one runs in pg_stat_activity and the slow query log
+    // The SQL text would make one series per variant (the ingest INSERT has one per batch size) and can't be read on a dashboard
+    // A statement without the comment falls back to its verb and the table it works on, e.g. "select messages"
+    static String queryName(String query) {
+        String name = queryNames.get(query);
+        if (name == null) {
+            Matcher named = NAME.matcher(query);
+            name = named.find() ? named.group(1) : describe(query);
+            if (queryNames.size() < MAX_QUERY_NAMES) {
+                queryNames.put(query, name);
+            }
+        }
+        return name;
+    }
+
+    // A statement that writes is named after its first write, so a CTE reading its input first is still "insert messages"
+    private static String describe(String query) {
+        Matcher verb = WRITE_VERB.matcher(query);
+        if (!verb.find()) {
+            verb = VERB.matcher(query);
+            if (!verb.find()) {
+                return "other";
+            }
+        }
+        Matcher table = TABLE.matcher(query);
+        String description = verb.group(1).toLowerCase(Locale.ROOT);
+        return table.find(verb.start()) ? description + " " + table.group(1).toLowerCase(Locale.ROOT) : description;
+    }
 }
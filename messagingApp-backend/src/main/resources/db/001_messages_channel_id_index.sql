@@ -0,0 +1,3 @@
+-- Keyset pagination of channel history (ChannelService.getMessagesPage)
+-- Every page is an index range scan on (channel_name, id) instead of a scan of the whole channel
+CREATE INDEX IF NOT EXISTS idx_messages_channel_id ON messages (channel_name, id);
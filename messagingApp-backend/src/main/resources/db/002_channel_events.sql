@@ -0,0 +1,20 @@
+-- Per-channel change feed (ChangeFeedService, /api/channel/{channelName}/events)
+-- channel_event_heads holds the last sequence number of each channel. Appending an event bumps the head and inserts
+-- the event in one statement, so the head row lock keeps the sequence dense and ordered per channel.
+CREATE TABLE IF NOT EXISTS channel_event_heads (
+    channel_name TEXT PRIMARY KEY REFERENCES channels (name) ON DELETE CASCADE,
+    seq BIGINT NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS channel_events (
+    channel_name TEXT NOT NULL REFERENCES channels (name) ON DELETE CASCADE,
+    seq BIGINT NOT NULL,
+    event_type TEXT NOT NULL,
+    message_id BIGINT,
+    username TEXT,
+    created_at TIMESTAMP NOT NULL DEFAULT now(),
+    PRIMARY KEY (channel_name, seq)
+);
+
+-- Used by the retention job
+CREATE INDEX IF NOT EXISTS idx_channel_events_created_at ON channel_events (created_at);
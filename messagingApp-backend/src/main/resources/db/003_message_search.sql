@@ -0,0 +1,10 @@
+-- Full-text message search (ChannelService.searchMessages, /api/channel/search)
+-- search_vector is kept up to date by PostgreSQL on every insert and update, nothing to do in the ingest path
+-- Adding the column rewrites the messages table once, run it outside peak hours on a large table
+ALTER TABLE messages ADD COLUMN IF NOT EXISTS search_vector TSVECTOR
+    GENERATED ALWAYS AS (to_tsvector('english', coalesce(text, ''))) STORED;
+
+CREATE INDEX IF NOT EXISTS idx_messages_search_vector ON messages USING GIN (search_vector);
+
+-- The planner picks between the index and reading the newest messages from the word statistics of search_vector
+ANALYZE messages;
@@ -0,0 +1,7 @@
+-- User autocomplete (ChannelService.findUser, /api/channel/users/search)
+-- The B-tree serves the names starting with the input, in the "C" collation so it serves both the LIKE and the ORDER BY
+CREATE INDEX IF NOT EXISTS idx_users_username_lower_prefix ON users ((LOWER(username) COLLATE "C"));
+
+-- The trigram index serves the names containing the input, when it has 3 letters or digits in a row
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+CREATE INDEX IF NOT EXISTS idx_users_username_lower_trgm ON users USING GIN (LOWER(username) gin_trgm_ops);
@@ -0,0 +1,57 @@
+package com.messagingApp.messagingApp_backend.config;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.messagingApp.messagingApp_backend.models.Channel;
+import com.messagingApp.messagingApp_backend.models.Message;
+import com.messagingApp.messagingApp_backend.models.User;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BinaryFormatsConfigTest {
+
+    private final LocalDateTime sentAt = LocalDateTime.of(2025, 3, 1, 12, 30, 15);
+
+    @Test
+    public void testTimestampsAreEpochMillis() throws Exception {
+        ObjectMapper cbor = BinaryFormatsConfig.binaryObjectMapper(Jackson2ObjectMapperBuilder.json(), new CBORFactory());
+
+        JsonNode message = cbor.readTree(cbor.writeValueAsBytes(messages(1).get(0)));
+
+        assertTrue(message.get("timestamp").isIntegralNumber());
+        assertEquals(sentAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli(), message.get("timestamp").asLong());
+        assertEquals("alice", message.get("sender").get("username").asText());
+    }
+
+    @Test
+    public void testBinaryPayloadsAreSmaller() throws Exception {
+        List<Message> page = messages(50);
+        ObjectMapper json = Jackson2ObjectMapperBuilder.json().build();
+        ObjectMapper cbor = BinaryFormatsConfig.binaryObjectMapper(Jackson2ObjectMapperBuilder.json(), new CBORFactory());
+        ObjectMapper smile = BinaryFormatsConfig.binaryObjectMapper(Jackson2ObjectMapperBuilder.json(), new SmileFactory());
+
+        int jsonSize = json.writeValueAsBytes(page).length;
+
+        // CBOR drops the quotes and the ISO timestamps, Smile also sends each repeated field name once
+        assertTrue(cbor.writeValueAsBytes(page).length < jsonSize * 0.85);
+        assertTrue(smile.writeValueAsBytes(page).length < jsonSize * 0.7);
+    }
+
+    private List<Message> messages(int count) {
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            User sender = new User(i % 2 == 0 ? "alice" : "bob", null, User.UserRole.MEMBER);
+            messages.add(new Message(1000 + i, "Message number " + i, sender, new Channel("General", Channel.ChannelType.PC), sentAt.plusSeconds(i)));
+        }
+        return messages;
+    }
+}
@@ -1,9 +1,9 @@
 package com.messagingApp.messagingApp_backend.config;
 
-import io.github.cdimascio.dotenv.Dotenv;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
 import org.springframework.jdbc.datasource.DriverManagerDataSource;
 
 import javax.sql.DataSource;
@@ -11,17 +11,13 @@ import javax.sql.DataSource;
 @Configuration
 @Profile("test")  // Ensures this config is only used for tests
 public class TestConfig {
+    // DB_URL, DB_USER and DB_PASSWORD come from the environment or the .env file imported in application.properties
     @Bean
-    public Dotenv dotenv() {
-        return Dotenv.configure().ignoreIfMissing().load();
-    }
-
-    @Bean
-    public DataSource dataSource(Dotenv dotenv) {
+    public DataSource dataSource(Environment environment) {
         DriverManagerDataSource dataSource = new DriverManagerDataSource();
-        dataSource.setUrl(dotenv.get("DB_URL"));
-        dataSource.setUsername(dotenv.get("DB_USER"));
-        dataSource.setPassword(dotenv.get("DB_PASSWORD"));
+        dataSource.setUrl(environment.getProperty("DB_URL"));
+        dataSource.setUsername(environment.getProperty("DB_USER"));
+        dataSource.setPassword(environment.getProperty("DB_PASSWORD"));
         dataSource.setDriverClassName("org.postgresql.Driver");
         return dataSource;
     }
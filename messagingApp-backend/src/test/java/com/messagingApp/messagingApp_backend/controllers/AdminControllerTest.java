@@ -71,6 +71,15 @@ public class AdminControllerTest {
         mockMvc.perform(put("/api/admin/updateRole").param("currentUsername", currentUsername).param("targetUsername", targetUsername).param("newRole", newRole)).andExpect(status().isForbidden()).andExpect(content().string("Permission denied or failed to update user role."));
     }
 
+    @Test
+    void updateUserRole_UnknownRole_ReturnsBadRequest() throws Exception {
+        // Arrange
+        Mockito.when(adminService.updateUserRole("adminUser", "testUser", "OWNER")).thenThrow(new IllegalArgumentException("Unknown role: OWNER"));
+
+        // Act & Assert
+        mockMvc.perform(put("/api/admin/updateRole").param("currentUsername", "adminUser").param("targetUsername", "testUser").param("newRole", "OWNER")).andExpect(status().isBadRequest()).andExpect(content().string("Unknown role: OWNER"));
+    }
+
     @Test
     void deleteMessage_SuccessfullyDeletesMessage() throws Exception {
         // Arrange
@@ -10,10 +10,17 @@ import org.springframework.mock.web.MockHttpSession;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(controllers = AuthController.class)
@@ -34,7 +41,7 @@ public class AuthControllerTest {
         MockHttpSession session = new MockHttpSession();
 
         // Mock authService
-        Mockito.when(authService.authenticateUser(username, password, session)).thenReturn(true);
+        Mockito.when(authService.authenticateUser(username, password, session)).thenReturn(CompletableFuture.completedFuture(true));
 
         String requestContent = """
             {
@@ -44,7 +51,8 @@ public class AuthControllerTest {
             """;
 
         // Perform login request
-        mockMvc.perform(post("/api/auth/login").session(session).contentType("application/json").content(requestContent)).andExpect(status().isOk()).andExpect(jsonPath("$.message").value("Login successful"));
+        MvcResult result = mockMvc.perform(post("/api/auth/login").session(session).contentType("application/json").content(requestContent)).andExpect(request().asyncStarted()).andReturn();
+        mockMvc.perform(asyncDispatch(result)).andExpect(status().isOk()).andExpect(jsonPath("$.message").value("Login successful"));
     }
 
     @Test
@@ -55,7 +63,7 @@ public class AuthControllerTest {
         MockHttpSession session = new MockHttpSession();
 
         // Mock authService
-        Mockito.when(authService.authenticateUser(username, password, session)).thenReturn(false);
+        Mockito.when(authService.authenticateUser(username, password, session)).thenReturn(CompletableFuture.completedFuture(false));
 
         String requestContent = """
             {
@@ -65,7 +73,8 @@ public class AuthControllerTest {
             """;
 
         // Perform login request
-        mockMvc.perform(post("/api/auth/login").session(session).contentType(MediaType.APPLICATION_JSON).content(requestContent)).andExpect(status().isUnauthorized()).andExpect(jsonPath("$.error").value("Invalid username or password"));
+        MvcResult result = mockMvc.perform(post("/api/auth/login").session(session).contentType(MediaType.APPLICATION_JSON).content(requestContent)).andReturn();
+        mockMvc.perform(asyncDispatch(result)).andExpect(status().isUnauthorized()).andExpect(jsonPath("$.error").value("Invalid username or password"));
     }
 
     @Test
@@ -106,6 +115,22 @@ public class AuthControllerTest {
         mockMvc.perform(post("/api/auth/logout").session(session)).andExpect(status().isOk()).andExpect(jsonPath("$.message").value("Logout successful"));
     }
 
+    @Test
+    void login_ReturnsServiceUnavailable_WhenHasherIsFull() throws Exception {
+        MockHttpSession session = new MockHttpSession();
+        Mockito.when(authService.authenticateUser("testUser", "testPassword", session)).thenReturn(CompletableFuture.failedFuture(new RejectedExecutionException("Too many logins and registrations at once, try again later")));
+
+        String requestContent = """
+            {
+                "username": "testUser",
+                "password": "testPassword"
+            }
+            """;
+
+        MvcResult result = mockMvc.perform(post("/api/auth/login").session(session).contentType(MediaType.APPLICATION_JSON).content(requestContent)).andReturn();
+        mockMvc.perform(asyncDispatch(result)).andExpect(status().isServiceUnavailable()).andExpect(header().string("Retry-After", "1")).andExpect(jsonPath("$.error").value("Too many logins and registrations at once, try again later"));
+    }
+
     @Test
     void register_ReturnsSuccessMessage_WhenUserIsRegistered() throws Exception {
         // Setup dummy user details
@@ -114,7 +139,7 @@ public class AuthControllerTest {
         String role = "user";
 
         // Mock authService
-        Mockito.when(authService.registerUser(username, password, role)).thenReturn(2);
+        Mockito.when(authService.registerUser(username, password, role)).thenReturn(CompletableFuture.completedFuture(2));
 
         String requestContent = """
             {
@@ -125,7 +150,8 @@ public class AuthControllerTest {
             """;
 
         // Perform registration request
-        mockMvc.perform(post("/api/auth/register").contentType(MediaType.APPLICATION_JSON).content(requestContent)).andExpect(status().isOk()).andExpect(jsonPath("$.message").value("Registration successful"));
+        MvcResult result = mockMvc.perform(post("/api/auth/register").contentType(MediaType.APPLICATION_JSON).content(requestContent)).andReturn();
+        mockMvc.perform(asyncDispatch(result)).andExpect(status().isOk()).andExpect(jsonPath("$.message").value("Registration successful"));
     }
 
     @Test
@@ -136,7 +162,7 @@ public class AuthControllerTest {
         String role = "invalidRole";
 
         // Mock authService
-        Mockito.when(authService.registerUser(username, password, role)).thenReturn(1);
+        Mockito.when(authService.registerUser(username, password, role)).thenReturn(CompletableFuture.completedFuture(1));
 
         String requestContent = """
             {
@@ -147,7 +173,8 @@ public class AuthControllerTest {
             """;
 
         // Perform registration request
-        mockMvc.perform(post("/api/auth/register").contentType(MediaType.APPLICATION_JSON).content(requestContent)).andExpect(status().isBadRequest()).andExpect(jsonPath("$.error").value("Invalid Role"));
+        MvcResult result = mockMvc.perform(post("/api/auth/register").contentType(MediaType.APPLICATION_JSON).content(requestContent)).andReturn();
+        mockMvc.perform(asyncDispatch(result)).andExpect(status().isBadRequest()).andExpect(jsonPath("$.error").value("Invalid Role"));
     }
 
     @Test
@@ -158,7 +185,7 @@ public class AuthControllerTest {
         String role = "user";
 
         // Mock authService
-        Mockito.when(authService.registerUser(username, password, role)).thenReturn(0);
+        Mockito.when(authService.registerUser(username, password, role)).thenReturn(CompletableFuture.completedFuture(0));
 
         String requestContent = """
             {
@@ -169,6 +196,7 @@ public class AuthControllerTest {
             """;
 
         // Perform registration request
-        mockMvc.perform(post("/api/auth/register").contentType(MediaType.APPLICATION_JSON).content(requestContent)).andExpect(status().isConflict()).andExpect(jsonPath("$.error").value("Error creating user"));
+        MvcResult result = mockMvc.perform(post("/api/auth/register").contentType(MediaType.APPLICATION_JSON).content(requestContent)).andReturn();
+        mockMvc.perform(asyncDispatch(result)).andExpect(status().isConflict()).andExpect(jsonPath("$.error").value("Error creating user"));
     }
 }
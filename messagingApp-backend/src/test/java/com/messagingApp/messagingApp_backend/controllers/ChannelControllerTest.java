@@ -1,28 +1,56 @@
 package com.messagingApp.messagingApp_backend.controllers;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.messagingApp.messagingApp_backend.config.BinaryFormatsConfig;
+import com.messagingApp.messagingApp_backend.dto.MessageWithSendersDto;
 import com.messagingApp.messagingApp_backend.models.Channel;
+import com.messagingApp.messagingApp_backend.models.ChannelEvent;
+import com.messagingApp.messagingApp_backend.models.ChannelEventPage;
+import com.messagingApp.messagingApp_backend.models.ChannelList;
+import com.messagingApp.messagingApp_backend.models.ChannelStats;
 import com.messagingApp.messagingApp_backend.models.Message;
+import com.messagingApp.messagingApp_backend.models.MessagePage;
+import com.messagingApp.messagingApp_backend.models.MessageSearchHit;
+import com.messagingApp.messagingApp_backend.models.MessageSearchPage;
 import com.messagingApp.messagingApp_backend.models.User;
 import com.messagingApp.messagingApp_backend.services.AuthService;
+import com.messagingApp.messagingApp_backend.services.ChangeFeedService;
 import com.messagingApp.messagingApp_backend.services.ChannelService;
+import com.messagingApp.messagingApp_backend.services.ExportLimiter;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.mock.web.MockHttpSession;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.context.request.async.DeferredResult;
 
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(controllers = ChannelController.class)
+@Import(BinaryFormatsConfig.class)
 @ActiveProfiles("test")
 public class ChannelControllerTest {
 
@@ -35,6 +63,9 @@ public class ChannelControllerTest {
     @MockitoBean
     private AuthService authService;
 
+    @MockitoBean
+    private ExportLimiter exportLimiter;
+
     @Test
     void getChannelData_ReturnsExpectedData() throws Exception {
         // Setup dummy session username
@@ -45,13 +76,202 @@ public class ChannelControllerTest {
 
         // Mock the channelService to return expected data
         Mockito.when(authService.getLoggedInUser(session)).thenReturn("testUser");
-        Mockito.when(channelService.getAllChannels()).thenReturn(List.of(mockChannel));
+        Mockito.when(channelService.channelExists("General")).thenReturn(true);
+        Mockito.when(channelService.isMember("testUser", "General")).thenReturn(true);
         Mockito.when(channelService.getUserChannels("testUser")).thenReturn(List.of(mockChannel));
         Mockito.when(channelService.getUsersInChannel("General")).thenReturn(List.of(mockUser));
-        Mockito.when(channelService.getMessagesInChannel("General")).thenReturn(List.of(new Message(1, "Hello", mockUser, mockChannel, LocalDateTime.now())));
+        Mockito.when(channelService.getMessagesPage("General", null, null, null, ChannelService.DEFAULT_PAGE_SIZE)).thenReturn(new MessagePage(List.of(new Message(1, "Hello", mockUser, mockChannel, LocalDateTime.now())), false, false));
 
         // Perform the request
-        mockMvc.perform(get("/api/channel/General").session(session).accept(MediaType.APPLICATION_JSON)).andExpect(status().isOk()).andExpect(jsonPath("$.channels[0].name").value("General")).andExpect(jsonPath("$.users[0].username").value("testUser")).andExpect(jsonPath("$.messages[0].content").value("Hello"));
+        mockMvc.perform(get("/api/channel/General").session(session).accept(MediaType.APPLICATION_JSON)).andExpect(status().isOk()).andExpect(jsonPath("$.channels[0].name").value("General")).andExpect(jsonPath("$.users[0].username").value("testUser")).andExpect(jsonPath("$.messages[0].content").value("Hello")).andExpect(jsonPath("$.cursor.after").value(1))
+            // The sender is named on the message and described once in senders, the password never leaves the server
+            .andExpect(jsonPath("$.messages[0].senderId").value("testUser")).andExpect(jsonPath("$.messages[0].sender").doesNotExist()).andExpect(jsonPath("$.senders.testUser.role").value("MEMBER")).andExpect(jsonPath("$.users[0].password").doesNotExist());
+    }
+
+    @Test
+    void waitForLatestMessage_NewMessage_ReturnsMessage() throws Exception {
+        MockHttpSession session = new MockHttpSession();
+        User mockUser = new User("testUser", "password", User.UserRole.MEMBER);
+        Channel mockChannel = new Channel("General", Channel.ChannelType.PC);
+        DeferredResult<ResponseEntity<?>> deferred = new DeferredResult<>();
+
+        Mockito.when(authService.getLoggedInUser(session)).thenReturn("testUser");
+        Mockito.when(channelService.isMember("testUser", "General")).thenReturn(true);
+        Mockito.when(channelService.waitForMessageAfter("General", 5, 30000)).thenReturn(deferred);
+
+        // The request is parked until a newer message is sent
+        MvcResult result = mockMvc.perform(get("/api/channel/General/latest/wait").session(session).param("after", "5").accept(MediaType.APPLICATION_JSON)).andExpect(request().asyncStarted()).andReturn();
+        deferred.setResult(ResponseEntity.ok(MessageWithSendersDto.from(new Message(6, "Hello", mockUser, mockChannel, LocalDateTime.now()))));
+
+        mockMvc.perform(asyncDispatch(result)).andExpect(status().isOk()).andExpect(jsonPath("$.id").value(6)).andExpect(jsonPath("$.content").value("Hello")).andExpect(jsonPath("$.senderId").value("testUser")).andExpect(jsonPath("$.senders.testUser.role").value("MEMBER"));
+    }
+
+    @Test
+    void waitForLatestMessage_NotMember_ReturnsForbidden() throws Exception {
+        MockHttpSession session = new MockHttpSession();
+
+        Mockito.when(authService.getLoggedInUser(session)).thenReturn("testUser");
+        Mockito.when(channelService.isMember("testUser", "General")).thenReturn(false);
+
+        MvcResult result = mockMvc.perform(get("/api/channel/General/latest/wait").session(session).param("after", "5")).andReturn();
+
+        mockMvc.perform(asyncDispatch(result)).andExpect(status().isForbidden());
+        Mockito.verify(channelService, Mockito.never()).waitForMessageAfter(Mockito.anyString(), Mockito.anyLong(), Mockito.anyLong());
+    }
+
+    @Test
+    void getAllChannels_ReturnsChannelsWithVersion() throws Exception {
+        MockHttpSession session = new MockHttpSession();
+
+        Mockito.when(authService.getLoggedInUser(session)).thenReturn("testUser");
+        Mockito.when(channelService.getChannelList()).thenReturn(new ChannelList(42, List.of(new Channel("General", Channel.ChannelType.PC))));
+
+        mockMvc.perform(get("/api/channel/all").session(session).param("version", "41").accept(MediaType.APPLICATION_JSON)).andExpect(status().isOk()).andExpect(jsonPath("$.version").value(42)).andExpect(jsonPath("$.channels[0].name").value("General"));
+    }
+
+    @Test
+    void getAllChannels_SameVersion_ReturnsNotModified() throws Exception {
+        MockHttpSession session = new MockHttpSession();
+
+        Mockito.when(authService.getLoggedInUser(session)).thenReturn("testUser");
+        Mockito.when(channelService.getChannelList()).thenReturn(new ChannelList(42, List.of(new Channel("General", Channel.ChannelType.PC))));
+
+        mockMvc.perform(get("/api/channel/all").session(session).param("version", "42")).andExpect(status().isNotModified());
+    }
+
+    @Test
+    void getUnreadCounts_ReturnsCountsByChannel() throws Exception {
+        MockHttpSession session = new MockHttpSession();
+
+        Mockito.when(authService.getLoggedInUser(session)).thenReturn("testUser");
+        Mockito.when(channelService.getUnreadCounts("testUser")).thenReturn(Map.of("General", 3));
+
+        mockMvc.perform(get("/api/channel/getUnreadCounts").session(session).accept(MediaType.APPLICATION_JSON)).andExpect(status().isOk()).andExpect(jsonPath("$.General").value(3));
+    }
+
+    @Test
+    void getChannelData_AcceptCbor_ReturnsCbor() throws Exception {
+        MockHttpSession session = new MockHttpSession();
+        User mockUser = new User("testUser", null, User.UserRole.MEMBER);
+        Channel mockChannel = new Channel("General", Channel.ChannelType.PC);
+        LocalDateTime sentAt = LocalDateTime.of(2025, 3, 1, 12, 30);
+
+        Mockito.when(authService.getLoggedInUser(session)).thenReturn("testUser");
+        Mockito.when(channelService.channelExists("General")).thenReturn(true);
+        Mockito.when(channelService.isMember("testUser", "General")).thenReturn(true);
+        Mockito.when(channelService.getChannelDataTag("testUser", "General")).thenReturn("W/\"c-1-2\"");
+        Mockito.when(channelService.getUserChannels("testUser")).thenReturn(List.of(mockChannel));
+        Mockito.when(channelService.getUsersInChannel("General")).thenReturn(List.of(mockUser));
+        Mockito.when(channelService.getMessagesPage("General", null, null, null, ChannelService.DEFAULT_PAGE_SIZE)).thenReturn(new MessagePage(List.of(new Message(1, "Hello", mockUser, mockChannel, sentAt)), false, false));
+
+        byte[] body = mockMvc.perform(get("/api/channel/General").session(session).accept("application/cbor")).andExpect(status().isOk()).andExpect(header().string("Content-Type", "application/cbor")).andExpect(header().string("Vary", "Accept")).andReturn().getResponse().getContentAsByteArray();
+
+        // Same fields as the JSON, the timestamp is in epoch milliseconds
+        JsonNode data = new ObjectMapper(new CBORFactory()).readTree(body);
+        assertEquals("Hello", data.get("messages").get(0).get("content").asText());
+        assertEquals(sentAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli(), data.get("messages").get(0).get("timestamp").asLong());
+    }
+
+    @Test
+    void getChannelData_CurrentETag_ReturnsNotModified() throws Exception {
+        MockHttpSession session = new MockHttpSession();
+
+        Mockito.when(authService.getLoggedInUser(session)).thenReturn("testUser");
+        Mockito.when(channelService.channelExists("General")).thenReturn(true);
+        Mockito.when(channelService.isMember("testUser", "General")).thenReturn(true);
+        Mockito.when(channelService.getChannelDataTag("testUser", "General")).thenReturn("\"c-1-2\"");
+
+        mockMvc.perform(get("/api/channel/General").session(session).header("If-None-Match", "W/\"c-1-2\"")).andExpect(status().isNotModified()).andExpect(header().string("ETag", "\"c-1-2\""));
+
+        // Nothing is read when the client is up to date
+        Mockito.verify(channelService, Mockito.never()).getUsersInChannel(Mockito.any());
+        Mockito.verify(channelService, Mockito.never()).getMessagesPage(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyInt());
+    }
+
+    @Test
+    void getAllUsers_ReturnsETag() throws Exception {
+        MockHttpSession session = new MockHttpSession();
+
+        Mockito.when(authService.getLoggedInUser(session)).thenReturn("testUser");
+        Mockito.when(channelService.getAllUsersTag()).thenReturn("\"d-1-3\"");
+        Mockito.when(channelService.getAllUsers()).thenReturn(List.of(new User("testUser", null, User.UserRole.MEMBER)));
+
+        mockMvc.perform(get("/api/channel/users").session(session).header("If-None-Match", "\"d-1-2\"")).andExpect(status().isOk()).andExpect(header().string("ETag", "\"d-1-3\"")).andExpect(header().string("Cache-Control", "no-cache, private")).andExpect(jsonPath("$[0].username").value("testUser"));
+    }
+
+    @Test
+    void getUnreadChannels_CurrentETag_ReturnsNotModified() throws Exception {
+        MockHttpSession session = new MockHttpSession();
+
+        Mockito.when(authService.getLoggedInUser(session)).thenReturn("testUser");
+        Mockito.when(channelService.getUnreadTag("testUser")).thenReturn("\"u-1-5\"");
+
+        mockMvc.perform(get("/api/channel/getUnreadChannels").session(session).header("If-None-Match", "\"u-1-5\"")).andExpect(status().isNotModified());
+        Mockito.verify(channelService, Mockito.never()).getUnreadChannels(Mockito.any());
+    }
+
+    @Test
+    void getMessages_BeforeCursor_ReturnsPage() throws Exception {
+        MockHttpSession session = new MockHttpSession();
+        User mockUser = new User("testUser", "password", User.UserRole.MEMBER);
+        Channel mockChannel = new Channel("General", Channel.ChannelType.PC);
+
+        Mockito.when(authService.getLoggedInUser(session)).thenReturn("testUser");
+        Mockito.when(channelService.isMember("testUser", "General")).thenReturn(true);
+        Mockito.when(channelService.getMessagesPage("General", 10L, null, null, 2)).thenReturn(new MessagePage(List.of(new Message(8, "Older", mockUser, mockChannel, LocalDateTime.now()), new Message(9, "Old", mockUser, mockChannel, LocalDateTime.now())), true, true));
+
+        mockMvc.perform(get("/api/channel/General/messages").session(session).param("before", "10").param("limit", "2").accept(MediaType.APPLICATION_JSON)).andExpect(status().isOk()).andExpect(jsonPath("$.messages[0].id").value(8)).andExpect(jsonPath("$.cursor.before").value(8)).andExpect(jsonPath("$.cursor.hasOlder").value(true));
+    }
+
+    @Test
+    void getMessages_SeveralCursors_ReturnsBadRequest() throws Exception {
+        MockHttpSession session = new MockHttpSession();
+        Channel mockChannel = new Channel("General", Channel.ChannelType.PC);
+
+        Mockito.when(authService.getLoggedInUser(session)).thenReturn("testUser");
+        Mockito.when(channelService.isMember("testUser", "General")).thenReturn(true);
+        Mockito.when(channelService.getMessagesPage("General", 10L, 5L, null, ChannelService.DEFAULT_PAGE_SIZE)).thenThrow(new IllegalArgumentException("Only one of before, after and around can be used"));
+
+        mockMvc.perform(get("/api/channel/General/messages").session(session).param("before", "10").param("after", "5").accept(MediaType.APPLICATION_JSON)).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void searchMessages_InUserChannels_ReturnsHits() throws Exception {
+        MockHttpSession session = new MockHttpSession();
+        User mockUser = new User("testUser", "password", User.UserRole.MEMBER);
+        Channel mockChannel = new Channel("General", Channel.ChannelType.PC);
+        Message message = new Message(8, "Deploy is done", mockUser, mockChannel, LocalDateTime.now());
+
+        Mockito.when(authService.getLoggedInUser(session)).thenReturn("testUser");
+        Mockito.when(channelService.searchMessages("testUser", "deploy", null, 0, ChannelService.DEFAULT_SEARCH_LIMIT)).thenReturn(new MessageSearchPage(List.of(new MessageSearchHit(message, 0.1, "Deploy is done", List.of(new MessageSearchHit.Highlight(0, 6)))), 0, false));
+
+        mockMvc.perform(get("/api/channel/search").session(session).param("q", "deploy").accept(MediaType.APPLICATION_JSON)).andExpect(status().isOk()).andExpect(jsonPath("$.hits[0].message.id").value(8)).andExpect(jsonPath("$.hits[0].highlights[0].end").value(6)).andExpect(jsonPath("$.hasMore").value(false));
+    }
+
+    @Test
+    void searchMessages_UserNotInChannel_ReturnsForbidden() throws Exception {
+        MockHttpSession session = new MockHttpSession();
+
+        Mockito.when(authService.getLoggedInUser(session)).thenReturn("testUser");
+        Mockito.when(channelService.isMember("testUser", "Private")).thenReturn(false);
+
+        mockMvc.perform(get("/api/channel/search").session(session).param("q", "deploy").param("channel", "Private")).andExpect(status().isForbidden());
+        Mockito.verify(channelService, Mockito.never()).searchMessages(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyInt(), Mockito.anyInt());
+    }
+
+    @Test
+    void searchMessages_EmptyQuery_ReturnsBadRequest() throws Exception {
+        MockHttpSession session = new MockHttpSession();
+
+        Mockito.when(authService.getLoggedInUser(session)).thenReturn("testUser");
+        Mockito.when(channelService.searchMessages("testUser", " ", null, 0, ChannelService.DEFAULT_SEARCH_LIMIT)).thenThrow(new IllegalArgumentException("Search query is empty"));
+
+        mockMvc.perform(get("/api/channel/search").session(session).param("q", " ")).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void searchMessages_WithoutSessionUser_ReturnsUnauthorized() throws Exception {
+        mockMvc.perform(get("/api/channel/search").session(new MockHttpSession()).param("q", "deploy")).andExpect(status().isUnauthorized());
     }
 
     @Test
@@ -72,8 +292,8 @@ public class ChannelControllerTest {
 
         // Simulate user not being in the channel
         Mockito.when(authService.getLoggedInUser(session)).thenReturn("testUser");
-        Mockito.when(channelService.getAllChannels()).thenReturn(List.of(mockChannel));
-        Mockito.when(channelService.getUserChannels("testUser")).thenReturn(List.of()); // No channels returned
+        Mockito.when(channelService.channelExists("General")).thenReturn(true);
+        Mockito.when(channelService.isMember("testUser", "General")).thenReturn(false); // Not a member of the channel
 
         // Perform the request
         mockMvc.perform(get("/api/channel/General").session(session).accept(MediaType.APPLICATION_JSON)).andExpect(status().isForbidden());
@@ -85,34 +305,138 @@ public class ChannelControllerTest {
         MockHttpSession session = new MockHttpSession();
         session.setAttribute("username", "testUser");
 
-        // Simulate channel list that doesn't include "General"
+        // Simulate a catalog that doesn't include "General"
         Mockito.when(authService.getLoggedInUser(session)).thenReturn("testUser");
-        Mockito.when(channelService.getAllChannels()).thenReturn(List.of()); // No channels returned
-        Mockito.when(channelService.getUserChannels("testUser")).thenReturn(List.of(new Channel("General", Channel.ChannelType.PC)));
+        Mockito.when(channelService.channelExists("General")).thenReturn(false);
+        Mockito.when(channelService.isMember("testUser", "General")).thenReturn(true);
 
         // Perform the request
         mockMvc.perform(get("/api/channel/General").session(session).accept(MediaType.APPLICATION_JSON)).andExpect(status().isNotFound());
     }
 
+    @Test
+    void getChannelEvents_ReturnsEventsAfterSeq() throws Exception {
+        MockHttpSession session = new MockHttpSession();
+        Channel mockChannel = new Channel("General", Channel.ChannelType.PC);
+        ChannelEvent event = new ChannelEvent(8, "General", ChannelEvent.EventType.MESSAGE_DELETED, 3L, null, null, LocalDateTime.now());
+        Message created = new Message(4, "Hello", new User("testUser", "password", User.UserRole.ADMIN), mockChannel, LocalDateTime.now());
+        ChannelEvent createdEvent = new ChannelEvent(9, "General", ChannelEvent.EventType.MESSAGE_CREATED, 4L, "testUser", created, LocalDateTime.now());
+
+        Mockito.when(authService.getLoggedInUser(session)).thenReturn("testUser");
+        Mockito.when(channelService.isMember("testUser", "General")).thenReturn(true);
+        Mockito.when(channelService.getEventsSince("General", 7L, ChangeFeedService.DEFAULT_EVENT_LIMIT)).thenReturn(new ChannelEventPage(List.of(event, createdEvent), 9L, false, false));
+
+        mockMvc.perform(get("/api/channel/General/events").session(session).param("since", "7").accept(MediaType.APPLICATION_JSON)).andExpect(status().isOk()).andExpect(jsonPath("$.seq").value(9)).andExpect(jsonPath("$.events[0].type").value("MESSAGE_DELETED")).andExpect(jsonPath("$.events[0].messageId").value(3))
+            // The created message has the shape of a page message, its sender is in senders
+            .andExpect(jsonPath("$.events[1].message.senderId").value("testUser")).andExpect(jsonPath("$.events[1].message.sender").doesNotExist()).andExpect(jsonPath("$.events[1].message.channel").doesNotExist()).andExpect(jsonPath("$.senders.testUser.role").value("ADMIN"));
+    }
+
+    @Test
+    void getChannelEvents_UserNotInChannel_ReturnsForbidden() throws Exception {
+        MockHttpSession session = new MockHttpSession();
+
+        Mockito.when(authService.getLoggedInUser(session)).thenReturn("testUser");
+        Mockito.when(channelService.isMember("testUser", "General")).thenReturn(false);
+
+        mockMvc.perform(get("/api/channel/General/events").session(session).param("since", "7").accept(MediaType.APPLICATION_JSON)).andExpect(status().isForbidden());
+    }
+
+    @Test
+    void exportMessages_StreamsChannelHistory() throws Exception {
+        MockHttpSession session = new MockHttpSession();
+
+        Mockito.when(authService.getLoggedInUser(session)).thenReturn("testUser");
+        Mockito.when(channelService.isMember("testUser", "General")).thenReturn(true);
+        Runnable release = Mockito.mock(Runnable.class);
+        Mockito.when(exportLimiter.tryStart()).thenReturn(release);
+        Mockito.when(exportLimiter.getTimeoutMillis()).thenReturn(600000L);
+        Mockito.doAnswer(invocation -> {
+            OutputStream out = invocation.getArgument(1);
+            out.write("[{\"id\":1,\"content\":\"Hello\"}]".getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).when(channelService).exportMessages(Mockito.eq("General"), Mockito.any(OutputStream.class));
+
+        // The body is written on another thread once the request has started, under the export timeout
+        MvcResult result = mockMvc.perform(get("/api/channel/General/export").session(session)).andExpect(request().asyncStarted()).andReturn();
+        assertEquals(600000L, result.getRequest().getAsyncContext().getTimeout());
+
+        mockMvc.perform(asyncDispatch(result)).andExpect(status().isOk()).andExpect(header().string("Content-Disposition", "attachment; filename=\"General-messages.json\"")).andExpect(jsonPath("$[0].content").value("Hello"));
+        Mockito.verify(release, Mockito.atLeastOnce()).run();
+    }
+
+    @Test
+    void exportMessages_TooManyExports_ReturnsServiceUnavailable() throws Exception {
+        MockHttpSession session = new MockHttpSession();
+
+        Mockito.when(authService.getLoggedInUser(session)).thenReturn("testUser");
+        Mockito.when(channelService.isMember("testUser", "General")).thenReturn(true);
+        Mockito.when(exportLimiter.tryStart()).thenReturn(null);
+
+        MvcResult result = mockMvc.perform(get("/api/channel/General/export").session(session)).andReturn();
+
+        mockMvc.perform(asyncDispatch(result)).andExpect(status().isServiceUnavailable()).andExpect(header().string("Retry-After", "30"));
+        Mockito.verify(channelService, Mockito.never()).exportMessages(Mockito.anyString(), Mockito.any(OutputStream.class));
+    }
+
+    @Test
+    void exportMessages_NotMember_ReturnsForbidden() throws Exception {
+        MockHttpSession session = new MockHttpSession();
+
+        Mockito.when(authService.getLoggedInUser(session)).thenReturn("testUser");
+        Mockito.when(channelService.isMember("testUser", "General")).thenReturn(false);
+
+        MvcResult result = mockMvc.perform(get("/api/channel/General/export").session(session)).andReturn();
+
+        mockMvc.perform(asyncDispatch(result)).andExpect(status().isForbidden()).andExpect(jsonPath("$.error").value("User is not a member of the channel"));
+        Mockito.verify(channelService, Mockito.never()).exportMessages(Mockito.anyString(), Mockito.any(OutputStream.class));
+    }
+
+    @Test
+    void updateLastSeenMessage_NotMember_ReturnsForbidden() throws Exception {
+        MockHttpSession session = new MockHttpSession();
+
+        Mockito.when(authService.getLoggedInUser(session)).thenReturn("testUser");
+        Mockito.when(channelService.isMember("testUser", "Made Up")).thenReturn(false);
+
+        mockMvc.perform(post("/api/channel/Made Up/updateLastSeenMessage").session(session).contentType(MediaType.APPLICATION_JSON).content("{\"lastSeenMessageID\": 7}")).andExpect(status().isForbidden());
+        Mockito.verify(channelService, Mockito.never()).updateMessageSeenTable(Mockito.anyString(), Mockito.anyString(), Mockito.anyLong());
+    }
+
     @Test
     void sendMessage_ValidRequest() throws Exception {
         MockHttpSession session = new MockHttpSession();
         Channel mockChannel = new Channel("General", Channel.ChannelType.PC);
         session.setAttribute("username", "testUser");
+        Message mockMessage = new Message(1, "Hello world", new User("testUser", null, User.UserRole.MEMBER), mockChannel, LocalDateTime.now());
 
         // Mock user session and service call
         Mockito.when(authService.getLoggedInUser(session)).thenReturn("testUser");
-        Mockito.when(channelService.getUserChannels("testUser")).thenReturn(List.of(mockChannel));
-        Mockito.doNothing().when(channelService).sendMessage("General", "Hello world", "testUser");
+        Mockito.when(channelService.isMember("testUser", "General")).thenReturn(true);
+        Mockito.when(channelService.sendMessage("General", "Hello world", "testUser")).thenReturn(CompletableFuture.completedFuture(mockMessage));
 
         // JSON request body
         String requestBody = """
                 {
-                    "text": "Hello world"
+                    "content": "Hello world"
                 }
             """;
 
-        mockMvc.perform(post("/api/channel/General/sendMessage").session(session).contentType(MediaType.APPLICATION_JSON).content(requestBody)).andExpect(status().isOk());
+        MvcResult result = mockMvc.perform(post("/api/channel/General/sendMessage").session(session).contentType(MediaType.APPLICATION_JSON).content(requestBody)).andExpect(request().asyncStarted()).andReturn();
+
+        mockMvc.perform(asyncDispatch(result)).andExpect(status().isOk()).andExpect(jsonPath("$.message").value("Message sent successfully"));
+    }
+
+    @Test
+    void sendMessage_PipelineFull_ReturnsServiceUnavailable() throws Exception {
+        MockHttpSession session = new MockHttpSession();
+
+        Mockito.when(authService.getLoggedInUser(session)).thenReturn("testUser");
+        Mockito.when(channelService.isMember("testUser", "General")).thenReturn(true);
+        Mockito.when(channelService.sendMessage("General", "Hello world", "testUser")).thenReturn(CompletableFuture.failedFuture(new RejectedExecutionException("Too many messages are being sent, try again later")));
+
+        MvcResult result = mockMvc.perform(post("/api/channel/General/sendMessage").session(session).contentType(MediaType.APPLICATION_JSON).content("{\"content\": \"Hello world\"}")).andReturn();
+
+        mockMvc.perform(asyncDispatch(result)).andExpect(status().isServiceUnavailable()).andExpect(header().string("Retry-After", "1"));
     }
 
     @Test
@@ -122,17 +446,19 @@ public class ChannelControllerTest {
 
         // Mock user session and service call
         Mockito.when(authService.getLoggedInUser(session)).thenReturn("testUser");
-        Mockito.when(channelService.getUserChannels("testUser")).thenReturn(List.of()); // No channels returned
-        Mockito.doNothing().when(channelService).sendMessage("General", "Hello world", "testUser");
+        Mockito.when(channelService.isMember("testUser", "General")).thenReturn(false); // Not a member of the channel
 
         // JSON request body
         String requestBody = """
                 {
-                    "text": "Hello world"
+                    "content": "Hello world"
                 }
             """;
 
-        mockMvc.perform(post("/api/channel/General/sendMessage").session(session).contentType(MediaType.APPLICATION_JSON).content(requestBody)).andExpect(status().isForbidden());
+        MvcResult result = mockMvc.perform(post("/api/channel/General/sendMessage").session(session).contentType(MediaType.APPLICATION_JSON).content(requestBody)).andReturn();
+
+        mockMvc.perform(asyncDispatch(result)).andExpect(status().isForbidden());
+        Mockito.verify(channelService, Mockito.never()).sendMessage(Mockito.anyString(), Mockito.anyString(), Mockito.anyString());
     }
 
     @Test
@@ -147,11 +473,11 @@ public class ChannelControllerTest {
 
         // Mock dependencies
         Mockito.when(authService.getLoggedInUser(session)).thenReturn("testUser");
-        Mockito.when(channelService.getUserChannels("testUser")).thenReturn(List.of(mockChannel));
+        Mockito.when(channelService.isMember("testUser", "General")).thenReturn(true);
         Mockito.when(channelService.getLatestMessageInChannel("General")).thenReturn(mockMessage);
 
         // Perform the GET request
-        mockMvc.perform(get("/api/channel/General/latest").session(session).accept(MediaType.APPLICATION_JSON)).andExpect(status().isOk()).andExpect(jsonPath("$.content").value("Latest message")).andExpect(jsonPath("$.sender.username").value("testUser"));
+        mockMvc.perform(get("/api/channel/General/latest").session(session).accept(MediaType.APPLICATION_JSON)).andExpect(status().isOk()).andExpect(jsonPath("$.content").value("Latest message")).andExpect(jsonPath("$.senderId").value("testUser")).andExpect(jsonPath("$.senders.testUser.role").value("MEMBER")).andExpect(jsonPath("$.sender").doesNotExist());
     }
 
     @Test
@@ -163,7 +489,7 @@ public class ChannelControllerTest {
 
         // Mock dependencies
         Mockito.when(authService.getLoggedInUser(session)).thenReturn("testUser");
-        Mockito.when(channelService.getUserChannels("testUser")).thenReturn(List.of(mockChannel));
+        Mockito.when(channelService.isMember("testUser", "General")).thenReturn(true);
         Mockito.when(channelService.getLatestMessageInChannel("General")).thenReturn(null);
 
         // Perform the GET request
@@ -204,6 +530,20 @@ public class ChannelControllerTest {
         mockMvc.perform(get("/api/channel/admins-count/General").accept(MediaType.APPLICATION_JSON)).andExpect(status().isOk()).andExpect(jsonPath("$.adminsCount").value(5));
     }
 
+    @Test
+    void getChannelStats_ReturnsStats() throws Exception {
+        MockHttpSession session = new MockHttpSession();
+        Mockito.when(authService.getLoggedInUser(session)).thenReturn("testUser");
+        Mockito.when(channelService.isMember("testUser", "General")).thenReturn(true);
+        Mockito.when(channelService.getChannelStats("General")).thenReturn(new ChannelStats(12, 2, 340, LocalDateTime.of(2025, 3, 1, 9, 30)));
+
+        mockMvc.perform(get("/api/channel/General/stats").session(session).accept(MediaType.APPLICATION_JSON)).andExpect(status().isOk()).andExpect(jsonPath("$.memberCount").value(12)).andExpect(jsonPath("$.adminCount").value(2)).andExpect(jsonPath("$.messageCount").value(340)).andExpect(jsonPath("$.lastActivity").value("2025-03-01T09:30:00"));
+
+        Mockito.when(channelService.isMember("testUser", "Secret")).thenReturn(false);
+        mockMvc.perform(get("/api/channel/Secret/stats").session(session).accept(MediaType.APPLICATION_JSON)).andExpect(status().isForbidden());
+        Mockito.verify(channelService, Mockito.never()).getChannelStats("Secret");
+    }
+
     @Test
     void createChannel_ValidRequest() throws Exception {
         // Setup dummy session and mock data
@@ -293,7 +633,7 @@ public class ChannelControllerTest {
 
         // Mock user session and service call
         Mockito.when(authService.getLoggedInUser(session)).thenReturn("testUser");
-        Mockito.when(channelService.findUser("test")).thenReturn(List.of(mockUser));
+        Mockito.when(channelService.findUser("test", ChannelService.DEFAULT_USER_SEARCH_LIMIT)).thenReturn(List.of(mockUser));
 
         mockMvc.perform(get("/api/channel/users/search").session(session).contentType(MediaType.APPLICATION_JSON).param("query", "test")).andExpect(status().isOk()).andExpect(jsonPath("$[0].username").value("testUser"));
     }
@@ -306,7 +646,7 @@ public class ChannelControllerTest {
 
         // Mock user session and service call
         Mockito.when(authService.getLoggedInUser(session)).thenReturn("testUser");
-        Mockito.when(channelService.findUser("test")).thenReturn(List.of()); // No users found
+        Mockito.when(channelService.findUser("test", ChannelService.DEFAULT_USER_SEARCH_LIMIT)).thenReturn(List.of()); // No users found
 
         mockMvc.perform(get("/api/channel/users/search").session(session).contentType(MediaType.APPLICATION_JSON).param("query", "test")).andExpect(status().isNotFound());
     }
@@ -0,0 +1,58 @@
+package com.messagingApp.messagingApp_backend.dto;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.messagingApp.messagingApp_backend.models.Channel;
+import com.messagingApp.messagingApp_backend.models.Message;
+import com.messagingApp.messagingApp_backend.models.MessagePage;
+import com.messagingApp.messagingApp_backend.models.User;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MessagePageDtoTest {
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    @Test
+    public void testEachSenderIsSentOnce() {
+        User alice = new User("alice", null, User.UserRole.ADMIN);
+        User bob = new User("bob", null, User.UserRole.MEMBER);
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            messages.add(new Message(i + 1, "Message " + i, i % 3 == 0 ? bob : alice, new Channel("General", null), LocalDateTime.now()));
+        }
+
+        MessagePageDto page = MessagePageDto.from(new MessagePage(messages, true, false));
+
+        assertEquals(6, page.getMessages().size());
+        assertEquals("bob", page.getMessages().get(0).getSenderId());
+        assertEquals(List.of("bob", "alice"), new ArrayList<>(page.getSenders().keySet()));
+        assertEquals(User.UserRole.ADMIN, page.getSenders().get("alice").getRole());
+        assertEquals(1L, page.getCursor().getBefore());
+    }
+
+    @Test
+    public void testNullsAreLeftOut() throws Exception {
+        Message message = new Message(1, "Hello", new User("alice", "hash", User.UserRole.MEMBER), new Channel("General", null), null);
+
+        JsonNode page = objectMapper.valueToTree(MessagePageDto.from(new MessagePage(List.of(message), false, false)));
+        JsonNode channel = objectMapper.valueToTree(ChannelDto.from(new Channel("General", null)));
+
+        assertFalse(page.get("messages").get(0).has("timestamp"));
+        assertFalse(page.get("messages").get(0).has("channel"));
+        assertEquals(List.of("username", "role"), fieldNames(page.get("senders").get("alice")));
+        assertEquals(List.of("name"), fieldNames(channel));
+    }
+
+    private List<String> fieldNames(JsonNode node) {
+        List<String> names = new ArrayList<>();
+        node.fieldNames().forEachRemaining(names::add);
+        return names;
+    }
+}
@@ -0,0 +1,107 @@
+package com.messagingApp.messagingApp_backend.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.util.LogbackMDCAdapter;
+import ch.qos.logback.core.AppenderBase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AsyncLogAppenderTest {
+
+    private LoggerContext context;
+    private Logger logger;
+    private BlockingAppender target;
+    private AsyncLogAppender appender;
+
+    @BeforeEach
+    public void setup() {
+        context = new LoggerContext();
+        context.setMDCAdapter(new LogbackMDCAdapter()); // Set by the SLF4J binding for the real context
+        logger = context.getLogger("test");
+        logger.setLevel(Level.INFO);
+        logger.setAdditive(false);
+
+        target = new BlockingAppender();
+        target.setContext(context);
+        target.start();
+
+        appender = new AsyncLogAppender();
+        appender.setContext(context);
+        appender.setName("ASYNC");
+        appender.setQueueSize(2);
+        appender.addAppender(target);
+        appender.start();
+        logger.addAppender(appender);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        target.release.countDown();
+        context.stop();
+    }
+
+    @Test
+    public void testEventsAreWrittenByTheWriterThread() throws Exception {
+        target.release.countDown();
+
+        logger.info("Hello {}", "alice");
+        appender.stop();
+
+        assertEquals(1, target.events.size());
+        assertEquals("Hello alice", target.events.get(0).getFormattedMessage());
+        assertEquals(Thread.currentThread().getName(), target.events.get(0).getThreadName());
+        assertTrue(target.writerThreads.get(0).startsWith("log-writer-"));
+    }
+
+    @Test
+    public void testFullQueueDropsAndCounts() throws Exception {
+        // The writer takes the first event and blocks on it, two more fill the queue
+        logger.info("First");
+        assertTrue(target.writing.await(5, TimeUnit.SECONDS));
+        logger.info("Second");
+        logger.info("Third");
+
+        long start = System.nanoTime();
+        logger.info("Fourth");
+        logger.info("Fifth");
+        // Dropped right away, the logging thread never waits for the writer
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        assertEquals(2, appender.getDroppedCount());
+        assertEquals(2, appender.getQueuedCount());
+
+        target.release.countDown();
+        appender.stop();
+        assertEquals(List.of("First", "Second", "Third"), target.events.stream().map(ILoggingEvent::getFormattedMessage).toList());
+    }
+
+    // Records the events, the first one waits until the test releases it
+    private static class BlockingAppender extends AppenderBase<ILoggingEvent> {
+        private final List<ILoggingEvent> events = new CopyOnWriteArrayList<>();
+        private final List<String> writerThreads = new CopyOnWriteArrayList<>();
+        private final CountDownLatch writing = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        protected void append(ILoggingEvent event) {
+            writing.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            events.add(event);
+            writerThreads.add(Thread.currentThread().getName());
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.messagingApp.messagingApp_backend.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.core.spi.FilterReply;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LogSamplingFilterTest {
+
+    private LoggerContext context;
+    private LogSamplingFilter filter;
+
+    @BeforeEach
+    public void setup() {
+        context = new LoggerContext();
+        context.getLogger(Logger.ROOT_LOGGER_NAME).setLevel(Level.DEBUG);
+        filter = new LogSamplingFilter();
+        filter.setContext(context);
+        filter.setCategory("app.services");
+        filter.setLevel(Level.INFO);
+        filter.setMaxPerSecond(3);
+        filter.start();
+    }
+
+    @Test
+    public void testEventsOverTheCapAreDenied() {
+        Logger logger = context.getLogger("app.services.AuthService");
+        int denied = 0;
+        for (int i = 0; i < 10; i++) {
+            if (filter.decide(null, logger, Level.INFO, "Login", null, null) == FilterReply.DENY) {
+                denied++;
+            }
+        }
+        // The second may roll over during the loop, which gives a new budget
+        assertTrue(denied >= 4, "denied " + denied);
+        assertEquals(denied, filter.getSampledOutCount());
+    }
+
+    @Test
+    public void testOtherCategoriesAndHigherLevelsAreNotCapped() {
+        Logger other = context.getLogger("app.controllers.AuthController");
+        Logger service = context.getLogger("app.services.AuthService");
+        for (int i = 0; i < 10; i++) {
+            assertEquals(FilterReply.NEUTRAL, filter.decide(null, other, Level.INFO, "Login", null, null));
+            assertEquals(FilterReply.NEUTRAL, filter.decide(null, service, Level.ERROR, "Failed", null, null));
+            // isInfoEnabled() checks have no format and don't use the budget
+            assertEquals(FilterReply.NEUTRAL, filter.decide(null, service, Level.INFO, null, null, null));
+        }
+        assertEquals(0, filter.getSampledOutCount());
+    }
+
+    @Test
+    public void testDisabledEventsDontUseTheBudget() {
+        Logger logger = context.getLogger("app.services.ChannelService");
+        logger.setLevel(Level.INFO);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(FilterReply.NEUTRAL, filter.decide(null, logger, Level.DEBUG, "Loading", null, null));
+        }
+        assertEquals(0, filter.getSampledOutCount());
+    }
+}
@@ -12,6 +12,7 @@ import org.springframework.test.context.TestPropertySource;
 import java.util.List;
 import java.util.Map;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -24,9 +25,9 @@ public class AdminServiceTest {
     private final String sampleAdminName = "admin";
 
     @Autowired
-    ChannelService channelService = new ChannelService();
+    ChannelService channelService;
     @Autowired
-    AdminService adminService = new AdminService(channelService);
+    AdminService adminService;
     String getMessageId = "SELECT id FROM messages WHERE username = ? AND id = ?";
 
     @Autowired
@@ -120,6 +121,8 @@ public class AdminServiceTest {
         // Getting the result, should be empty
         results = ServiceUtility.executeQuery(getMessageId, sampleMemberName, 1);
         assertTrue(results.isEmpty(), "Message should have been deleted");
+        // The event was written by the same statement
+        assertEquals(List.of("MESSAGE_DELETED"), jdbcTemplate.queryForList("SELECT event_type FROM channel_events WHERE channel_name = 'General' AND message_id = 1", String.class));
 
 
     }
@@ -62,7 +62,7 @@ public class AuthServiceTest {
         String role = "ADMIN";
 
         // When
-        authService.createUser(username, password, role);
+        authService.createUser(username, password, role).join();
 
         /// Then
         Integer countUsers = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users WHERE username = ?", Integer.class, username);
@@ -80,7 +80,7 @@ public class AuthServiceTest {
         String role = "MEMBER";
 
         // When
-        authService.createUser(username, password, role);
+        authService.createUser(username, password, role).join();
 
         /// Then
         Integer countUsers = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users WHERE username = ?", Integer.class, username);
@@ -97,8 +97,8 @@ public class AuthServiceTest {
         String password = "password";
         String role = "MEMBER";
         // When
-        authService.createUser(username, password, role);
-        authService.createUser(username, password, role);
+        authService.createUser(username, password, role).join();
+        authService.createUser(username, password, role).join();
         /// Then
         Integer countUsers = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users WHERE username = ?", Integer.class, username);
         Integer countChannels = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM user_channel WHERE username = ?", Integer.class, username);
@@ -110,7 +110,7 @@ public class AuthServiceTest {
     void authenticateUserAdmin() {
         // Ensure no logged in user
         assertNull(session.getAttribute("loggedInUser"), "loggedInUser should be null");
-        authService.authenticateUser(sampleAdminName, sampleAdminPassword, session);
+        authService.authenticateUser(sampleAdminName, sampleAdminPassword, session).join();
         assertEquals(session.getAttribute("loggedInUser"), sampleAdminName, "Should return" + sampleAdminName);
     }
 
@@ -118,7 +118,7 @@ public class AuthServiceTest {
     void authenticateUserMember() {
         // Ensure no logged in user
         assertNull(session.getAttribute("loggedInUser"), "loggedInUser should be null");
-        authService.authenticateUser(sampleMemberName, sampleMemberPassword, session);
+        authService.authenticateUser(sampleMemberName, sampleMemberPassword, session).join();
         assertEquals(session.getAttribute("loggedInUser"), sampleMemberName, "Should return" + sampleMemberName);
     }
 
@@ -126,7 +126,7 @@ public class AuthServiceTest {
     void authenticateUserNoGivenUsername() {
         // Ensure no logged in user
         assertNull(session.getAttribute("loggedInUser"), "loggedInUser should be null");
-        authService.authenticateUser("", sampleAdminPassword, session); // Wrong password
+        authService.authenticateUser("", sampleAdminPassword, session).join(); // Wrong password
         assertNull(session.getAttribute("loggedInUser"), "Should have null loggedInUser");
     }
 
@@ -134,10 +134,38 @@ public class AuthServiceTest {
     void authenticateUserWrongPassword() {
         // Ensure no logged in user
         assertNull(session.getAttribute("loggedInUser"), "loggedInUser should be null");
-        authService.authenticateUser(sampleMemberName, sampleAdminPassword, session); // Wrong password
+        authService.authenticateUser(sampleMemberName, sampleAdminPassword, session).join(); // Wrong password
         assertNull(session.getAttribute("loggedInUser"), "Should have null loggedInUser");
     }
 
+    @Test
+    void authenticateUserRehashesPlainTextPassword() throws Exception {
+        // The sample users are stored with plain-text passwords, as before hashing
+        assertTrue(authService.authenticateUser(sampleMemberName, sampleMemberPassword, session).join());
+
+        // Rehashed in the background after the login
+        String stored = sampleMemberPassword;
+        for (int i = 0; i < 50 && stored.equals(sampleMemberPassword); i++) {
+            Thread.sleep(20);
+            stored = jdbcTemplate.queryForObject("SELECT password FROM users WHERE username = ?", String.class, sampleMemberName);
+        }
+        assertTrue(stored.startsWith("$2"), "Password should be stored as a BCrypt hash");
+
+        // The hash is checked on the next login
+        HttpSession nextSession = new MockHttpServletRequest().getSession(true);
+        assertTrue(authService.authenticateUser(sampleMemberName, sampleMemberPassword, nextSession).join());
+        assertFalse(authService.authenticateUser(sampleMemberName, sampleAdminPassword, nextSession).join());
+    }
+
+    @Test
+    public void createUserStoresHash() {
+        authService.createUser("Carol", "password", "MEMBER").join();
+
+        String stored = jdbcTemplate.queryForObject("SELECT password FROM users WHERE username = ?", String.class, "Carol");
+        assertNotEquals("password", stored);
+        assertTrue(authService.authenticateUser("Carol", "password", session).join());
+    }
+
     @Test
     void getLoggedInUserMember() {
         // Set loggedInUser as sampleMemberName
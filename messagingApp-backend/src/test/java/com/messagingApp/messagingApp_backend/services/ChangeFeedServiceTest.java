@@ -0,0 +1,111 @@
+package com.messagingApp.messagingApp_backend.services;
+
+import com.messagingApp.messagingApp_backend.models.ChannelEvent;
+import com.messagingApp.messagingApp_backend.models.ChannelEventPage;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+
+public class ChangeFeedServiceTest {
+
+    private final List<Object> publishedEvents = new ArrayList<>();
+    private final ChangeFeedService changeFeedService = new ChangeFeedService(7, publishedEvents::add);
+
+    @Test
+    public void testGetEventsSince() {
+        // Prepare test data, one created message and one deleted message after seq 4
+        List<Map<String, Object>> resultData = new ArrayList<>();
+        resultData.add(eventRow(5, "MESSAGE_CREATED", 10L, "testUser", "Hello"));
+        resultData.add(eventRow(6, "MESSAGE_DELETED", 9L, null, null));
+
+        // Mock the static executeQuery method
+        try (MockedStatic<ServiceUtility> mockedStatic = Mockito.mockStatic(ServiceUtility.class)) {
+            mockedStatic.when(() -> ServiceUtility.executeQuery(anyString(), eq("General"), eq(4L), eq(11))).thenReturn(resultData);
+
+            // Call the method under test
+            ChannelEventPage page = changeFeedService.getEventsSince("General", 4L, 10);
+
+            // Verify the results
+            assertEquals(2, page.getEvents().size());
+            assertEquals(6L, page.getSeq());
+            assertFalse(page.isHasMore());
+            assertFalse(page.isResync());
+            assertEquals("Hello", page.getEvents().get(0).getMessage().getContent());
+            assertEquals(ChannelEvent.EventType.MESSAGE_DELETED, page.getEvents().get(1).getType());
+            assertEquals(9L, page.getEvents().get(1).getMessageId());
+        }
+    }
+
+    @Test
+    public void testGetEventsSinceIdleChannel() {
+        // Mock the static executeQuery method, nothing happened after seq 6
+        try (MockedStatic<ServiceUtility> mockedStatic = Mockito.mockStatic(ServiceUtility.class)) {
+            mockedStatic.when(() -> ServiceUtility.executeQuery(anyString(), eq("General"), eq(6L), eq(101))).thenReturn(new ArrayList<>());
+
+            ChannelEventPage page = changeFeedService.getEventsSince("General", 6L, ChangeFeedService.DEFAULT_EVENT_LIMIT);
+
+            assertTrue(page.getEvents().isEmpty());
+            assertEquals(6L, page.getSeq());
+            assertFalse(page.isResync());
+        }
+    }
+
+    @Test
+    public void testGetEventsSincePrunedAsksForResync() {
+        // The client is at seq 2 but the oldest event left is seq 40
+        List<Map<String, Object>> resultData = new ArrayList<>();
+        resultData.add(eventRow(40, "MEMBERSHIP_CHANGED", null, "newUser", null));
+
+        try (MockedStatic<ServiceUtility> mockedStatic = Mockito.mockStatic(ServiceUtility.class)) {
+            mockedStatic.when(() -> ServiceUtility.executeQuery(anyString(), eq("General"), eq(2L), eq(101))).thenReturn(resultData);
+
+            ChannelEventPage page = changeFeedService.getEventsSince("General", 2L, ChangeFeedService.DEFAULT_EVENT_LIMIT);
+
+            assertTrue(page.isResync());
+            assertTrue(page.getEvents().isEmpty());
+        }
+    }
+
+    @Test
+    public void testRecordReturnsSequence() {
+        List<Map<String, Object>> resultData = new ArrayList<>();
+        Map<String, Object> row = new HashMap<>();
+        row.put("seq", 7L);
+        resultData.add(row);
+
+        try (MockedStatic<ServiceUtility> mockedStatic = Mockito.mockStatic(ServiceUtility.class)) {
+            mockedStatic.when(() -> ServiceUtility.executeQuery(anyString(), eq("General"), eq("General"), eq("MESSAGE_DELETED"), eq(3L), eq(null))).thenReturn(resultData);
+
+            assertEquals(7L, changeFeedService.record("General", ChannelEvent.EventType.MESSAGE_DELETED, 3L, null));
+
+            // The event is also published to the in-process listeners
+            assertEquals(1, publishedEvents.size());
+            assertEquals(7L, ((ChannelEvent) publishedEvents.get(0)).getSeq());
+        }
+    }
+
+    private Map<String, Object> eventRow(long seq, String type, Long messageId, String username, String text) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("seq", seq);
+        row.put("event_type", type);
+        row.put("message_id", messageId);
+        row.put("username", username);
+        row.put("created_at", new Timestamp(System.currentTimeMillis()));
+        if (text != null) {
+            row.put("text", text);
+            row.put("date_time", new Timestamp(System.currentTimeMillis()));
+            row.put("role", "MEMBER");
+        }
+        return row;
+    }
+}
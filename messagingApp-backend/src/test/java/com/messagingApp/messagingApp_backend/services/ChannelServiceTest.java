@@ -1,36 +1,100 @@
 package com.messagingApp.messagingApp_backend.services;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.messagingApp.messagingApp_backend.dto.MessageWithSendersDto;
 import com.messagingApp.messagingApp_backend.models.Channel;
+import com.messagingApp.messagingApp_backend.models.ChannelEvent;
 import com.messagingApp.messagingApp_backend.models.Message;
+import com.messagingApp.messagingApp_backend.models.MessagePage;
+import com.messagingApp.messagingApp_backend.models.MessageSearchHit;
+import com.messagingApp.messagingApp_backend.models.MessageSearchPage;
 import com.messagingApp.messagingApp_backend.models.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
+import org.mockito.Mock;
 import org.mockito.MockedStatic;
 import org.mockito.Mockito;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.sql.Timestamp;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
-import static org.mockito.Mockito.doReturn;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
 public class ChannelServiceTest {
 
+    @Mock
+    private ChangeFeedService changeFeedService;
+
+    @Mock
+    private LongPollService longPollService;
+
+    @Spy
+    private RecentMessageCache recentMessageCache = new RecentMessageCache(new SimpleMeterRegistry(), 3, 1 << 20);
+
+    @Spy
+    private MembershipCache membershipCache = new MembershipCache(new SimpleMeterRegistry(), 60000, 100);
+
+    @Spy
+    private ChannelCatalog channelCatalog = new ChannelCatalog();
+
+    @Spy
+    private MessageHighWaterMarks highWaterMarks = new MessageHighWaterMarks(60000);
+
+    @Spy
+    private ReadMarkerBuffer readMarkerBuffer = new ReadMarkerBuffer(new SimpleMeterRegistry());
+
+    @Mock
+    private MessageIngestPipeline messageIngestPipeline;
+
+    @Spy
+    private ResponseVersions responseVersions = new ResponseVersions(Long.MAX_VALUE);
+
+    @Spy
+    private ChannelStatsService channelStatsService = new ChannelStatsService(new SimpleMeterRegistry());
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule()).disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
     @InjectMocks
     private ChannelService channelService;
 
+    // Query loading the recent message buffer of a channel, with the buffer capacity + 1 as limit
+    private static final String NEWEST_MESSAGES_QUERY = """
+        /* messages.newest */
+        SELECT m.id, m.text, m.date_time, m.channel_name, u.username, u.role
+        FROM messages m
+        JOIN users u ON m.username = u.username
+        WHERE m.channel_name = ?
+        ORDER BY m.id DESC
+        LIMIT ?
+        """;
+
     @BeforeEach
     public void setup() {
-        // No setup required as we'll use static mocking for ServiceUtility
+        // No setup required as we'll use static mocking for ServiceUtility and a mock change feed
     }
 
     @Test
@@ -44,7 +108,7 @@ public class ChannelServiceTest {
 
         // Mock the static executeQuery method
         try (MockedStatic<ServiceUtility> mockedStatic = Mockito.mockStatic(ServiceUtility.class)) {
-            mockedStatic.when(() -> ServiceUtility.executeQuery(eq("SELECT * FROM channels"))).thenReturn(resultData);
+            mockedStatic.when(() -> ServiceUtility.executeQuery(eq("/* channels.all */ SELECT * FROM channels"))).thenReturn(resultData);
 
             // Call the method under test
             List<Channel> channels = channelService.getAllChannels();
@@ -67,6 +131,7 @@ public class ChannelServiceTest {
         resultData.add(row);
 
         String query = """
+            /* channels.of_user */
             SELECT uc.username, uc.channel_name, c.type
             FROM user_channel uc
             JOIN channels c ON uc.channel_name = c.name
@@ -97,6 +162,7 @@ public class ChannelServiceTest {
         resultData.add(row);
 
         String query = """
+            /* users.of_channel */
             SELECT uc.username, u.role
             FROM user_channel uc
             JOIN users u ON uc.username = u.username
@@ -120,26 +186,26 @@ public class ChannelServiceTest {
     @Test
     public void testGetMessagesInChannel() {
         // Prepare test data
-        List<Map<String, Object>> resultData = new ArrayList<>();
-        Map<String, Object> row = new HashMap<>();
-        row.put("id", 1);
-        row.put("text", "Hello World");
-        row.put("date_time", new Timestamp(System.currentTimeMillis()));
-        row.put("channel_name", "General");
-        row.put("username", "testUser");
-        row.put("role", "MEMBER");
-        resultData.add(row);
+        List<Message> resultData = new ArrayList<>();
+        resultData.add(message(1, "Hello World"));
 
         String query = """
+            /* messages.of_channel */
             SELECT m.id, m.text, m.date_time, m.channel_name, u.username, u.role
             FROM messages m
             JOIN users u ON m.username = u.username
             WHERE m.channel_name = ?
+            ORDER BY m.id
             """;
 
-        // Mock the static executeQuery method
+        // Mock the static executeQuery method, the recent buffer shows the channel has older messages
+        List<Message> recentData = new ArrayList<>();
+        for (int id = 5; id >= 2; id--) {
+            recentData.add(message(id, "Message " + id));
+        }
         try (MockedStatic<ServiceUtility> mockedStatic = Mockito.mockStatic(ServiceUtility.class)) {
-            mockedStatic.when(() -> ServiceUtility.executeQuery(eq(query), eq("General"))).thenReturn(resultData);
+            mockedStatic.when(() -> ServiceUtility.executeQuery(eq(NEWEST_MESSAGES_QUERY), eq(RowMappers.MESSAGE), eq("General"), eq(4))).thenReturn(recentData);
+            mockedStatic.when(() -> ServiceUtility.executeQuery(eq(query), eq(RowMappers.MESSAGE), eq("General"))).thenReturn(resultData);
 
             // Call the method under test
             List<Message> messages = channelService.getMessagesInChannel("General");
@@ -153,30 +219,235 @@ public class ChannelServiceTest {
     }
 
     @Test
-    public void testGetLatestMessageInChannel() {
+    public void testGetMessagesPageNewest() {
+        // Prepare test data, rows come newest first and one more than the limit
+        List<Message> resultData = new ArrayList<>();
+        for (int id = 3; id >= 1; id--) {
+            resultData.add(message(id, "Message " + id));
+        }
+
+        String query = """
+            /* messages.newest */
+            SELECT m.id, m.text, m.date_time, m.channel_name, u.username, u.role
+            FROM messages m
+            JOIN users u ON m.username = u.username
+            WHERE m.channel_name = ?
+            ORDER BY m.id DESC
+            LIMIT ?
+            """;
+
+        // Mock the static executeQuery method
+        try (MockedStatic<ServiceUtility> mockedStatic = Mockito.mockStatic(ServiceUtility.class)) {
+            mockedStatic.when(() -> ServiceUtility.executeQuery(eq(query), eq(RowMappers.MESSAGE), eq("General"), eq(4))).thenReturn(resultData);
+
+            // Call the method under test, the page is taken from the recent buffer loaded by the query
+            MessagePage page = channelService.getMessagesPage("General", null, null, null, 2);
+
+            // Verify the results are the two newest, oldest first
+            assertEquals(2, page.getMessages().size());
+            assertEquals(2, page.getMessages().get(0).getId());
+            assertEquals(3, page.getMessages().get(1).getId());
+            assertTrue(page.getCursor().isHasOlder());
+            assertFalse(page.getCursor().isHasNewer());
+            assertEquals(2L, page.getCursor().getBefore());
+            assertEquals(3L, page.getCursor().getAfter());
+        }
+    }
+
+    @Test
+    public void testSearchMessagesInUserChannels() {
+        // Prepare test data, one more hit than the limit
+        List<MessageSearchHit> resultData = new ArrayList<>();
+        for (int id = 3; id >= 1; id--) {
+            resultData.add(RowMappers.toSearchHit(message(id, "Deploy " + id), 0.1 * id, "Deploy " + id));
+        }
+
+        // Mock the static executeQuery method, the query text is bound three times around the scope, limit and offset
+        try (MockedStatic<ServiceUtility> mockedStatic = Mockito.mockStatic(ServiceUtility.class)) {
+            mockedStatic.when(() -> ServiceUtility.executeQuery(Mockito.contains("m.channel_name IN (SELECT uc.channel_name FROM user_channel uc WHERE uc.username = ?)"), eq(RowMappers.MESSAGE_SEARCH_HIT),
+                    eq("deploy"), eq("testUser"), eq(ChannelService.SEARCH_CANDIDATES), eq("deploy"), eq(0), eq(3), eq("deploy"))).thenReturn(resultData);
+
+            // Call the method under test
+            MessageSearchPage page = channelService.searchMessages("testUser", "deploy", null, 0, 2);
+
+            // Verify the page is cut to the limit and says there is more
+            assertEquals(2, page.getHits().size());
+            assertEquals(3, page.getHits().get(0).getMessage().getId());
+            assertTrue(page.isHasMore());
+            assertEquals(0, page.getOffset());
+        }
+    }
+
+    @Test
+    public void testSearchMessagesRefusesEmptyQuery() {
+        try (MockedStatic<ServiceUtility> mockedStatic = Mockito.mockStatic(ServiceUtility.class)) {
+            assertThrows(IllegalArgumentException.class, () -> channelService.searchMessages("testUser", "  ", null, 0, 20));
+            assertThrows(IllegalArgumentException.class, () -> channelService.searchMessages("testUser", "a".repeat(ChannelService.MAX_SEARCH_QUERY_LENGTH + 1), null, 0, 20));
+
+            // Past the candidates, nothing can be found
+            assertTrue(channelService.searchMessages("testUser", "deploy", "General", ChannelService.SEARCH_CANDIDATES, 20).getHits().isEmpty());
+
+            mockedStatic.verifyNoInteractions();
+        }
+    }
+
+    @Test
+    public void testSearchHitHighlights() {
+        String headline = "the " + RowMappers.HEADLINE_START + "deploy" + RowMappers.HEADLINE_STOP + " is done, " + RowMappers.HEADLINE_START + "deployed" + RowMappers.HEADLINE_STOP;
+
+        MessageSearchHit hit = RowMappers.toSearchHit(message(1, "the deploy is done, deployed"), 0.5, headline);
+
+        // The delimiters are removed, the offsets point at the matched words in the snippet
+        assertEquals("the deploy is done, deployed", hit.getSnippet());
+        assertEquals(2, hit.getHighlights().size());
+        assertEquals("deploy", hit.getSnippet().substring(hit.getHighlights().get(0).getStart(), hit.getHighlights().get(0).getEnd()));
+        assertEquals("deployed", hit.getSnippet().substring(hit.getHighlights().get(1).getStart(), hit.getHighlights().get(1).getEnd()));
+    }
+
+    @Test
+    public void testRecentMessagesAreServedFromMemory() {
+        List<Message> resultData = new ArrayList<>();
+        resultData.add(message(1, "Hello"));
+
+        try (MockedStatic<ServiceUtility> mockedStatic = Mockito.mockStatic(ServiceUtility.class)) {
+            mockedStatic.when(() -> ServiceUtility.executeQuery(eq(NEWEST_MESSAGES_QUERY), eq(RowMappers.MESSAGE), eq("General"), eq(4))).thenReturn(resultData);
+
+            // The first read loads the channel, the next ones don't touch the database
+            channelService.getMessagesPage("General", null, null, null, 3);
+            Message latest = channelService.getLatestMessageInChannel("General");
+            List<Message> messages = channelService.getMessagesInChannel("General");
+
+            assertEquals(1, latest.getId());
+            assertEquals(1, messages.size());
+            mockedStatic.verify(() -> ServiceUtility.executeQuery(any(String.class), eq(RowMappers.MESSAGE), any(Object[].class)), Mockito.times(1));
+        }
+    }
+
+    @Test
+    public void testRoleChangeReloadsBufferedMessages() {
+        List<Message> before = new ArrayList<>();
+        before.add(message(1, "Hello"));
+        List<Message> after = new ArrayList<>();
+        after.add(new Message(1L, "Hello", new User("testUser", null, User.UserRole.ADMIN), new Channel("General", null), LocalDateTime.now()));
+
+        try (MockedStatic<ServiceUtility> mockedStatic = Mockito.mockStatic(ServiceUtility.class)) {
+            mockedStatic.when(() -> ServiceUtility.executeQuery(eq(NEWEST_MESSAGES_QUERY), eq(RowMappers.MESSAGE), eq("General"), eq(4))).thenReturn(before, after);
+            mockedStatic.when(() -> ServiceUtility.executeQuery(any(String.class), eq("testUser"))).thenReturn(new ArrayList<>());
+
+            assertEquals(User.UserRole.MEMBER, channelService.getLatestMessageInChannel("General").getSender().getRole());
+
+            channelService.userRoleChanged("testUser");
+
+            // The buffer was dropped, the next read loads the channel again with the new role
+            assertEquals(User.UserRole.ADMIN, channelService.getLatestMessageInChannel("General").getSender().getRole());
+            assertEquals(User.UserRole.ADMIN, channelService.getMessagesPage("General", null, null, null, 3).getMessages().get(0).getSender().getRole());
+            mockedStatic.verify(() -> ServiceUtility.executeQuery(eq(NEWEST_MESSAGES_QUERY), eq(RowMappers.MESSAGE), eq("General"), eq(4)), Mockito.times(2));
+        }
+    }
+
+    @Test
+    public void testGetMessagesPageAfter() {
         // Prepare test data
-        List<Map<String, Object>> resultData = new ArrayList<>();
-        Map<String, Object> row = new HashMap<>();
-        row.put("id", 1);
-        row.put("text", "Hello World");
-        row.put("date_time", new Timestamp(System.currentTimeMillis()));
-        row.put("channel_name", "General");
-        row.put("username", "testUser");
-        row.put("role", "MEMBER");
-        resultData.add(row);
+        List<Message> resultData = new ArrayList<>();
+        resultData.add(message(6, "Newer"));
 
         String query = """
+            /* messages.after */
+            SELECT m.id, m.text, m.date_time, m.channel_name, u.username, u.role
+            FROM messages m
+            JOIN users u ON m.username = u.username
+            WHERE m.channel_name = ? AND m.id > ?
+            ORDER BY m.id
+            LIMIT ?
+            """;
+
+        // Mock the static executeQuery method
+        try (MockedStatic<ServiceUtility> mockedStatic = Mockito.mockStatic(ServiceUtility.class)) {
+            // The recent buffer holds messages 7 to 9 only, so the query is used for what comes after 5
+            List<Message> recentData = new ArrayList<>();
+            for (int id = 9; id >= 6; id--) {
+                recentData.add(message(id, "Message " + id));
+            }
+            mockedStatic.when(() -> ServiceUtility.executeQuery(eq(NEWEST_MESSAGES_QUERY), eq(RowMappers.MESSAGE), eq("General"), eq(4))).thenReturn(recentData);
+            mockedStatic.when(() -> ServiceUtility.executeQuery(eq(query), eq(RowMappers.MESSAGE), eq("General"), eq(5L), eq(11))).thenReturn(resultData);
+
+            // Call the method under test
+            MessagePage page = channelService.getMessagesPage("General", null, 5L, null, 10);
+
+            // Verify the results
+            assertEquals(1, page.getMessages().size());
+            assertEquals("Newer", page.getMessages().get(0).getContent());
+            assertFalse(page.getCursor().isHasNewer());
+            assertEquals(6L, page.getCursor().getAfter());
+        }
+    }
+
+    @Test
+    public void testExportMessagesWritesEachRowAsItIsRead() throws Exception {
+        String query = """
+            /* messages.export */
             SELECT m.id, m.text, m.date_time, m.channel_name, u.username, u.role
             FROM messages m
             JOIN users u ON m.username = u.username
             WHERE m.channel_name = ?
-            ORDER BY m.date_time DESC
-            LIMIT 1
+            ORDER BY m.id
             """;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (MockedStatic<ServiceUtility> mockedStatic = Mockito.mockStatic(ServiceUtility.class)) {
+            mockedStatic.when(() -> ServiceUtility.executeStreamingQuery(eq(query), eq(RowMappers.MESSAGE), any(), eq("General"))).thenAnswer(invocation -> {
+                Consumer<Message> consumer = invocation.getArgument(2);
+                consumer.accept(message(1, "First"));
+                consumer.accept(message(2, "Second"));
+                return 2L;
+            });
+
+            channelService.exportMessages("General", out);
+        }
+
+        JsonNode exported = objectMapper.readTree(out.toByteArray());
+        JsonNode messages = exported.get("messages");
+        assertEquals(2, messages.size());
+        assertEquals("First", messages.get(0).get("content").asText());
+        assertEquals(2, messages.get(1).get("id").asLong());
+        // Shaped like a page, the sender is named on each message and described once
+        assertEquals("testUser", messages.get(1).get("senderId").asText());
+        assertNull(messages.get(1).get("sender"));
+        assertEquals(1, exported.get("senders").size());
+        assertEquals("MEMBER", exported.get("senders").get("testUser").get("role").asText());
+    }
+
+    @Test
+    public void testExportMessagesFailedQueryLeavesArrayOpen() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (MockedStatic<ServiceUtility> mockedStatic = Mockito.mockStatic(ServiceUtility.class)) {
+            mockedStatic.when(() -> ServiceUtility.executeStreamingQuery(any(String.class), eq(RowMappers.MESSAGE), any(), eq("General"))).thenReturn(-1L);
+
+            assertThrows(IOException.class, () -> channelService.exportMessages("General", out));
+        }
+
+        assertFalse(out.toString().endsWith("]"));
+    }
+
+    @Test
+    public void testGetMessagesPageRejectsSeveralCursors() {
+        assertThrows(IllegalArgumentException.class, () -> channelService.getMessagesPage("General", 10L, 5L, null, 10));
+    }
+
+    private Message message(long id, String text) {
+        return new Message(id, text, new User("testUser", null, User.UserRole.MEMBER), new Channel("General", null), LocalDateTime.now());
+    }
+
+    @Test
+    public void testGetLatestMessageInChannel() {
+        // Prepare test data
+        List<Message> resultData = new ArrayList<>();
+        resultData.add(message(1, "Hello World"));
 
         // Mock the static executeQuery method
         try (MockedStatic<ServiceUtility> mockedStatic = Mockito.mockStatic(ServiceUtility.class)) {
-            mockedStatic.when(() -> ServiceUtility.executeQuery(eq(query), eq("General"))).thenReturn(resultData);
+            mockedStatic.when(() -> ServiceUtility.executeQuery(eq(NEWEST_MESSAGES_QUERY), eq(RowMappers.MESSAGE), eq("General"), eq(4))).thenReturn(resultData);
 
             // Call the method under test
             Message message = channelService.getLatestMessageInChannel("General");
@@ -189,23 +460,50 @@ public class ChannelServiceTest {
         }
     }
 
+    @Test
+    public void testWaitForMessageAfterCompletesWithNewerMessage() {
+        List<Message> resultData = new ArrayList<>();
+        resultData.add(message(6, "Newer"));
+
+        when(longPollService.await("General", 5, 30000)).thenReturn(new DeferredResult<>());
+
+        try (MockedStatic<ServiceUtility> mockedStatic = Mockito.mockStatic(ServiceUtility.class)) {
+            mockedStatic.when(() -> ServiceUtility.executeQuery(eq(NEWEST_MESSAGES_QUERY), eq(RowMappers.MESSAGE), eq("General"), eq(4))).thenReturn(resultData);
+
+            // A message newer than the client's was sent before the request was parked
+            DeferredResult<ResponseEntity<?>> result = channelService.waitForMessageAfter("General", 5, 30000);
+
+            assertTrue(result.hasResult());
+            MessageWithSendersDto message = (MessageWithSendersDto) ((ResponseEntity<?>) result.getResult()).getBody();
+            assertEquals(6, message.getMessage().getId());
+            assertEquals(User.UserRole.MEMBER, message.getSenders().get("testUser").getRole());
+        }
+    }
+
+    @Test
+    public void testWaitForMessageAfterStaysParkedWithoutNewerMessage() {
+        List<Message> resultData = new ArrayList<>();
+        resultData.add(message(5, "Known"));
+
+        when(longPollService.await("General", 5, 30000)).thenReturn(new DeferredResult<>());
+
+        try (MockedStatic<ServiceUtility> mockedStatic = Mockito.mockStatic(ServiceUtility.class)) {
+            mockedStatic.when(() -> ServiceUtility.executeQuery(eq(NEWEST_MESSAGES_QUERY), eq(RowMappers.MESSAGE), eq("General"), eq(4))).thenReturn(resultData);
+
+            DeferredResult<ResponseEntity<?>> result = channelService.waitForMessageAfter("General", 5, 30000);
+
+            assertFalse(result.hasResult());
+        }
+    }
+
     @Test
     public void testGetLatestMessageInChannelNoMessages() {
         // Prepare test data
-        List<Map<String, Object>> resultData = new ArrayList<>();
-
-        String query = """
-            SELECT m.id, m.text, m.date_time, m.channel_name, u.username, u.role
-            FROM messages m
-            JOIN users u ON m.username = u.username
-            WHERE m.channel_name = ?
-            ORDER BY m.date_time DESC
-            LIMIT 1
-            """;
+        List<Message> resultData = new ArrayList<>();
 
         // Mock the static executeQuery method
         try (MockedStatic<ServiceUtility> mockedStatic = Mockito.mockStatic(ServiceUtility.class)) {
-            mockedStatic.when(() -> ServiceUtility.executeQuery(eq(query), eq("EmptyChannel"))).thenReturn(resultData);
+            mockedStatic.when(() -> ServiceUtility.executeQuery(eq(NEWEST_MESSAGES_QUERY), eq(RowMappers.MESSAGE), eq("EmptyChannel"), eq(4))).thenReturn(resultData);
 
             // Call the method under test
             Message message = channelService.getLatestMessageInChannel("EmptyChannel");
@@ -227,7 +525,7 @@ public class ChannelServiceTest {
 
         // Mock the static executeQuery method
         try (MockedStatic<ServiceUtility> mockedStatic = Mockito.mockStatic(ServiceUtility.class)) {
-            mockedStatic.when(() -> ServiceUtility.executeQuery(eq("SELECT * FROM users"))).thenReturn(resultData);
+            mockedStatic.when(() -> ServiceUtility.executeQuery(eq("/* users.all */ SELECT * FROM users"))).thenReturn(resultData);
 
             // Call the method under test
             List<User> users = channelService.getAllUsers();
@@ -240,52 +538,102 @@ public class ChannelServiceTest {
         }
     }
 
+    // Queries of findUser, the names starting with the input then the names containing it
+    private static final String USER_PREFIX_QUERY = """
+        /* users.search_prefix */
+        SELECT u.username, u.role
+        FROM users u
+        WHERE LOWER(u.username) COLLATE "C" LIKE ?
+        ORDER BY LOWER(u.username) COLLATE "C"
+        LIMIT ?
+        """;
+    private static final String USER_SUBSTRING_QUERY = """
+        /* users.search_substring */
+        SELECT u.username, u.role
+        FROM users u
+        WHERE LOWER(u.username) LIKE ? AND LOWER(u.username) NOT LIKE ?
+        ORDER BY LENGTH(u.username), LOWER(u.username)
+        LIMIT ?
+        """;
+
     @Test
     public void testFindUser() {
         // Prepare test data
-        List<Map<String, Object>> resultData = new ArrayList<>();
+        List<Map<String, Object>> prefixData = new ArrayList<>();
         Map<String, Object> row = new HashMap<>();
         row.put("username", "testUser");
         row.put("role", "MEMBER");
-        resultData.add(row);
-
-        String query = """
-            SELECT u.username, u.role
-            FROM users u
-            WHERE LOWER(username) LIKE LOWER(?)
-            """;
+        prefixData.add(row);
+        List<Map<String, Object>> substringData = new ArrayList<>();
+        row = new HashMap<>();
+        row.put("username", "myTest");
+        row.put("role", "ADMIN");
+        substringData.add(row);
 
         // Mock the static executeQuery method
         try (MockedStatic<ServiceUtility> mockedStatic = Mockito.mockStatic(ServiceUtility.class)) {
-            mockedStatic.when(() -> ServiceUtility.executeQuery(eq(query), eq("%test%"))).thenReturn(resultData);
+            mockedStatic.when(() -> ServiceUtility.executeQuery(eq(USER_PREFIX_QUERY), eq("test%"), eq(10))).thenReturn(prefixData);
+            mockedStatic.when(() -> ServiceUtility.executeQuery(eq(USER_SUBSTRING_QUERY), eq("%test%"), eq("test%"), eq(9))).thenReturn(substringData);
 
-            // Call the method under test
-            List<User> users = channelService.findUser("test");
+            // Call the method under test, the input is lowercased
+            List<User> users = channelService.findUser(" Test", 10);
 
-            // Verify the results
-            assertEquals(1, users.size());
+            // Verify the results, the name starting with the input comes first
+            assertEquals(2, users.size());
             assertEquals("testUser", users.get(0).getUsername());
             assertEquals(User.UserRole.MEMBER, users.get(0).getRole());
+            assertEquals("myTest", users.get(1).getUsername());
         }
     }
 
     @Test
-    public void testGetAdminsCountForChannel() {
-        // Create test data
-        List<User> users = new ArrayList<>();
-        users.add(new User("admin1", null, User.UserRole.ADMIN));
-        users.add(new User("admin2", null, User.UserRole.ADMIN));
-        users.add(new User("user1", null, User.UserRole.MEMBER));
+    public void testFindUserPrefixOnly() {
+        List<Map<String, Object>> resultData = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("username", "alice" + i);
+            row.put("role", "MEMBER");
+            resultData.add(row);
+        }
+
+        try (MockedStatic<ServiceUtility> mockedStatic = Mockito.mockStatic(ServiceUtility.class)) {
+            // The typed wildcard is escaped, the limit is capped, a short input has no substring lookup
+            mockedStatic.when(() -> ServiceUtility.executeQuery(eq(USER_PREFIX_QUERY), eq("a\\_%"), eq(ChannelService.MAX_USER_SEARCH_LIMIT))).thenReturn(new ArrayList<>());
+            assertTrue(channelService.findUser("a_", 1000).isEmpty());
 
-        // Create a spy of channelService to mock the getUsersInChannel method
-        ChannelService spyService = Mockito.spy(channelService);
-        doReturn(users).when(spyService).getUsersInChannel("TestChannel");
+            // Enough names starting with the input, no substring lookup either
+            mockedStatic.when(() -> ServiceUtility.executeQuery(eq(USER_PREFIX_QUERY), eq("alice%"), eq(2))).thenReturn(resultData);
+            assertEquals(2, channelService.findUser("alice", 2).size());
 
-        // Call the method under test
-        int adminsCount = spyService.getAdminsCountForChannel("TestChannel");
+            mockedStatic.verify(() -> ServiceUtility.executeQuery(eq(USER_SUBSTRING_QUERY), any(Object[].class)), Mockito.never());
+        }
+    }
 
-        // Verify the results
-        assertEquals(2, adminsCount);
+    @Test
+    public void testGetAdminsCountForChannel() {
+        Map<String, Object> channelRow = new HashMap<>();
+        channelRow.put("name", "TestChannel");
+        channelRow.put("type", "PC");
+        Map<String, Object> statsRow = new HashMap<>();
+        statsRow.put("members", 3L);
+        statsRow.put("admins", 2L);
+        statsRow.put("messages", 10L);
+        statsRow.put("last_activity", null);
+
+        try (MockedStatic<ServiceUtility> mockedStatic = Mockito.mockStatic(ServiceUtility.class)) {
+            mockedStatic.when(() -> ServiceUtility.executeQuery(eq("/* channels.all */ SELECT * FROM channels"))).thenReturn(List.of(channelRow));
+            mockedStatic.when(() -> ServiceUtility.executeQuery(Mockito.contains("AS last_activity"), any(Object[].class))).thenReturn(List.of(statsRow));
+
+            // Read once, then served from memory
+            assertEquals(2, channelService.getAdminsCountForChannel("TestChannel"));
+            assertEquals(2, channelService.getAdminsCountForChannel("TestChannel"));
+            assertEquals(3, channelService.getChannelStats("TestChannel").getMemberCount());
+
+            // Unknown channels are neither read nor held
+            assertEquals(0, channelService.getAdminsCountForChannel("Missing"));
+            mockedStatic.verify(() -> ServiceUtility.executeQuery(Mockito.contains("AS last_activity"), any(Object[].class)), Mockito.times(1));
+            assertEquals(1, channelStatsService.size());
+        }
     }
 
     @Test
@@ -294,18 +642,29 @@ public class ChannelServiceTest {
         String channelName = "General";
         String content = "Test message";
         String sender = "testUser";
+        Message stored = new Message(42, content, new User(sender, null, User.UserRole.MEMBER), new Channel(channelName, null), LocalDateTime.now());
+
+        Mockito.when(messageIngestPipeline.submit(channelName, content, sender)).thenReturn(CompletableFuture.completedFuture(stored));
 
-        String query = "INSERT INTO messages (text, username, channel_name, date_time) VALUES (?, ?, ?, ?)";
+        // Call the method under test
+        CompletableFuture<Message> result = channelService.sendMessage(channelName, content, sender);
+
+        // Verify the message was handed to the ingest pipeline
+        assertSame(stored, result.join());
+        Mockito.verify(messageIngestPipeline).submit(channelName, content, sender);
+    }
+
+    @Test
+    public void testJoinChannel_RecordsMembershipChange() {
+        String sql = "/* user_channel.insert */ INSERT INTO user_channel (username, channel_name) VALUES (?, ?)";
 
         // Mock the static executeUpdate method
         try (MockedStatic<ServiceUtility> mockedStatic = Mockito.mockStatic(ServiceUtility.class)) {
-            mockedStatic.when(() -> ServiceUtility.executeUpdate(eq(query), eq("Error sending message to channel"), eq(content), eq(sender), eq(channelName), any(Timestamp.class))).thenReturn(1);
+            mockedStatic.when(() -> ServiceUtility.executeUpdate(eq(sql), eq("Error joining the server"), eq("testUser"), eq("Social"))).thenReturn(1);
 
-            // Call the method under test
-            channelService.sendMessage(channelName, content, sender);
+            channelService.joinChannel("Social", "testUser");
 
-            // Verify the method was called
-            mockedStatic.verify(() -> ServiceUtility.executeUpdate(eq(query), eq("Error sending message to channel"), eq(content), eq(sender), eq(channelName), any(Timestamp.class)));
+            Mockito.verify(changeFeedService).record("Social", ChannelEvent.EventType.MEMBERSHIP_CHANGED, null, "testUser");
         }
     }
 
@@ -315,8 +674,8 @@ public class ChannelServiceTest {
         String channelName = "NewChannel";
         String creatorUsername = "testUser";
 
-        String createChannelQuery = "INSERT INTO channels (name, type) VALUES (?, 'PC')";
-        String addUserToChannelQuery = "INSERT INTO user_channel (username, channel_name) VALUES (?, ?)";
+        String createChannelQuery = "/* channels.create */ INSERT INTO channels (name, type) VALUES (?, 'PC')";
+        String addUserToChannelQuery = "/* user_channel.insert */ INSERT INTO user_channel (username, channel_name) VALUES (?, ?)";
 
         // Mock the static executeUpdate method
         try (MockedStatic<ServiceUtility> mockedStatic = Mockito.mockStatic(ServiceUtility.class)) {
@@ -332,6 +691,145 @@ public class ChannelServiceTest {
         }
     }
 
+    @Test
+    public void testChannelCatalogFollowsCreateAndDelete() {
+        List<Map<String, Object>> resultData = new ArrayList<>();
+        Map<String, Object> row = new HashMap<>();
+        row.put("name", "General");
+        row.put("type", "PC");
+        resultData.add(row);
+        Map<String, Object> countRow = new HashMap<>();
+        countRow.put("count", 1L);
+
+        try (MockedStatic<ServiceUtility> mockedStatic = Mockito.mockStatic(ServiceUtility.class)) {
+            mockedStatic.when(() -> ServiceUtility.executeQuery(eq("/* channels.all */ SELECT * FROM channels"))).thenReturn(resultData);
+            mockedStatic.when(() -> ServiceUtility.executeQuery(eq("/* channels.exists */ SELECT COUNT(*) AS count FROM channels WHERE name = ?"), eq("NewChannel"))).thenReturn(List.of(countRow));
+            mockedStatic.when(() -> ServiceUtility.executeUpdate(any(String.class), any(String.class), any(Object[].class))).thenReturn(1);
+
+            // Loaded once on the first lookup
+            assertTrue(channelService.channelExists("General"));
+            assertFalse(channelService.channelExists("NewChannel"));
+            long version = channelService.getChannelList().getVersion();
+
+            channelService.createChannel("NewChannel", "testUser");
+            assertTrue(channelService.channelExists("NewChannel"));
+            assertEquals(Channel.ChannelType.PC, channelService.getChannelType("NewChannel"));
+            assertEquals(version + 1, channelService.getChannelList().getVersion());
+
+            channelService.deleteChannel("NewChannel");
+            assertFalse(channelService.channelExists("NewChannel"));
+            assertEquals(version + 2, channelService.getChannelList().getVersion());
+            mockedStatic.verify(() -> ServiceUtility.executeQuery(eq("/* channels.all */ SELECT * FROM channels")), Mockito.times(1));
+        }
+    }
+
+    @Test
+    public void testGetUnreadCounts() {
+        List<Map<String, Object>> channelRows = new ArrayList<>();
+        for (String name : List.of("General", "Social", "Quiet")) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("username", "testUser");
+            row.put("channel_name", name);
+            row.put("type", "PC");
+            channelRows.add(row);
+        }
+        Map<String, Object> generalRead = new HashMap<>();
+        generalRead.put("channel_name", "General");
+        generalRead.put("last_read_msg_id", 10L);
+        Map<String, Object> quietRead = new HashMap<>();
+        quietRead.put("channel_name", "Quiet");
+        quietRead.put("last_read_msg_id", 7L);
+        Map<String, Object> countRow = new HashMap<>();
+        countRow.put("count", 2L);
+
+        String channelsQuery = """
+            /* channels.of_user */
+            SELECT uc.username, uc.channel_name, c.type
+            FROM user_channel uc
+            JOIN channels c ON uc.channel_name = c.name
+            WHERE uc.username = ?
+            """;
+        String lastReadQuery = """
+            /* messages_seen.of_user */
+            SELECT channel_name, last_read_msg_id
+            FROM messages_seen
+            WHERE username = ?
+            """;
+        String countQuery = """
+            /* messages.unread_count */
+            SELECT COUNT(*) AS count
+            FROM (SELECT 1 FROM messages WHERE channel_name = ? AND id > ? LIMIT ?) unread
+            """;
+
+        // Nothing new in Quiet since it was read, General and Social have new messages
+        highWaterMarks.advance("General", 12);
+        highWaterMarks.advance("Social", 4);
+        highWaterMarks.advance("Quiet", 7);
+
+        try (MockedStatic<ServiceUtility> mockedStatic = Mockito.mockStatic(ServiceUtility.class)) {
+            mockedStatic.when(() -> ServiceUtility.executeQuery(eq(channelsQuery), eq("testUser"))).thenReturn(channelRows);
+            mockedStatic.when(() -> ServiceUtility.executeQuery(eq(lastReadQuery), eq("testUser"))).thenReturn(List.of(generalRead, quietRead));
+            mockedStatic.when(() -> ServiceUtility.executeQuery(eq(countQuery), eq("General"), eq(10L), eq(ChannelService.MAX_UNREAD_COUNT))).thenReturn(List.of(countRow));
+            mockedStatic.when(() -> ServiceUtility.executeQuery(eq(countQuery), eq("Social"), eq(0L), eq(ChannelService.MAX_UNREAD_COUNT))).thenReturn(List.of(countRow));
+
+            Map<String, Integer> counts = channelService.getUnreadCounts("testUser");
+
+            assertEquals(Map.of("General", 2, "Social", 2), counts);
+            mockedStatic.verify(() -> ServiceUtility.executeQuery(eq(countQuery), eq("Quiet"), any(Long.class), any(Integer.class)), Mockito.never());
+            assertEquals(List.of("General", "Social"), channelService.getUnreadChannels("testUser"));
+        }
+    }
+
+    @Test
+    public void testLastSeenMessageIncludesUnflushedMarker() {
+        Map<String, Object> row = new HashMap<>();
+        row.put("last_read_msg_id", 4L);
+
+        String query = """
+            /* messages_seen.last_read */
+            SELECT last_read_msg_id
+            FROM messages_seen
+            WHERE username = ? AND channel_name = ?
+            """;
+
+        try (MockedStatic<ServiceUtility> mockedStatic = Mockito.mockStatic(ServiceUtility.class)) {
+            mockedStatic.when(() -> ServiceUtility.executeQuery(eq(query), eq("testUser"), eq("General"))).thenReturn(List.of(row));
+
+            assertEquals(4L, channelService.getLastSeenMsg("testUser", "General"));
+
+            // Buffered, nothing is written until the next flush
+            channelService.updateMessageSeenTable("testUser", "General", 7L);
+            mockedStatic.verify(() -> ServiceUtility.executeUpdate(any(String.class), any(String.class), any(Object[].class)), Mockito.never());
+
+            assertEquals(7L, channelService.getLastSeenMsg("testUser", "General"));
+        }
+    }
+
+    @Test
+    public void testGetUnreadCountsLoadsHighWaterMarkOnce() {
+        Map<String, Object> channelRow = new HashMap<>();
+        channelRow.put("username", "testUser");
+        channelRow.put("channel_name", "General");
+        channelRow.put("type", "PC");
+        Map<String, Object> lastIdRow = new HashMap<>();
+        lastIdRow.put("last_id", null); // No messages yet
+
+        String highWaterQuery = "/* messages.last_id */ SELECT MAX(id) AS last_id FROM messages WHERE channel_name = ?";
+
+        try (MockedStatic<ServiceUtility> mockedStatic = Mockito.mockStatic(ServiceUtility.class)) {
+            mockedStatic.when(() -> ServiceUtility.executeQuery(any(String.class), eq("testUser"))).thenReturn(List.of());
+            mockedStatic.when(() -> ServiceUtility.executeQuery(startsWith("/* channels.of_user */"), eq("testUser"))).thenReturn(List.of(channelRow));
+            mockedStatic.when(() -> ServiceUtility.executeQuery(eq(highWaterQuery), eq("General"))).thenReturn(List.of(lastIdRow));
+
+            assertTrue(channelService.getUnreadCounts("testUser").isEmpty());
+            assertTrue(channelService.getUnreadCounts("testUser").isEmpty());
+
+            // The mark is read once, and nothing is counted while it is not past the last read message
+            mockedStatic.verify(() -> ServiceUtility.executeQuery(eq(highWaterQuery), eq("General")), Mockito.times(1));
+            mockedStatic.verify(() -> ServiceUtility.executeQuery(startsWith("/* messages.unread_count */"), any(Object[].class)), Mockito.never());
+        }
+    }
+
     @Test
     public void testCreateChannel_NoUserLoggedIn() {
         // Prepare parameters
@@ -351,7 +849,7 @@ public class ChannelServiceTest {
         String channelName = "NewChannel";
         String creatorUsername = "testUser";
 
-        String createChannelQuery = "INSERT INTO channels (name, type) VALUES (?, 'PC')";
+        String createChannelQuery = "/* channels.create */ INSERT INTO channels (name, type) VALUES (?, 'PC')";
 
         // Mock the static executeUpdate method
         try (MockedStatic<ServiceUtility> mockedStatic = Mockito.mockStatic(ServiceUtility.class)) {
@@ -370,9 +868,18 @@ public class ChannelServiceTest {
         // Prepare parameters
         String channelName = "ChannelToDelete";
 
-        String checkChannelQuery = "SELECT COUNT(*) AS count FROM channels WHERE name = ?";
-        String deleteUserChannelQuery = "DELETE FROM user_channel WHERE channel_name = ?";
-        String deleteChannelQuery = "DELETE FROM channels WHERE name = ?";
+        String checkChannelQuery = "/* channels.exists */ SELECT COUNT(*) AS count FROM channels WHERE name = ?";
+        String deleteUserChannelQuery = "/* user_channel.delete_channel */ DELETE FROM user_channel WHERE channel_name = ?";
+        String deleteChannelQuery = """
+            /* channels.delete */
+            WITH events AS (
+                DELETE FROM channel_events WHERE channel_name = ?
+            ),
+            head AS (
+                DELETE FROM channel_event_heads WHERE channel_name = ?
+            )
+            DELETE FROM channels WHERE name = ?
+            """;
 
         // Prepare mock result
         List<Map<String, Object>> checkResult = new ArrayList<>();
@@ -386,7 +893,7 @@ public class ChannelServiceTest {
 
             mockedStatic.when(() -> ServiceUtility.executeUpdate(eq(deleteUserChannelQuery), eq("Error deleting from user_channel"), eq(channelName))).thenReturn(1);
 
-            mockedStatic.when(() -> ServiceUtility.executeUpdate(eq(deleteChannelQuery), eq("Error deleting channel"), eq(channelName))).thenReturn(1);
+            mockedStatic.when(() -> ServiceUtility.executeUpdate(eq(deleteChannelQuery), eq("Error deleting channel"), eq(channelName), eq(channelName), eq(channelName))).thenReturn(1);
 
             // Call the method under test
             int result = channelService.deleteChannel(channelName);
@@ -401,7 +908,7 @@ public class ChannelServiceTest {
         // Prepare parameters
         String channelName = "NonExistentChannel";
 
-        String checkChannelQuery = "SELECT COUNT(*) AS count FROM channels WHERE name = ?";
+        String checkChannelQuery = "/* channels.exists */ SELECT COUNT(*) AS count FROM channels WHERE name = ?";
 
         // Prepare mock result
         List<Map<String, Object>> checkResult = new ArrayList<>();
@@ -421,13 +928,51 @@ public class ChannelServiceTest {
         }
     }
 
+    @Test
+    public void testIsMemberIsCachedUntilJoin() {
+        List<Map<String, Object>> resultData = new ArrayList<>();
+        Map<String, Object> row = new HashMap<>();
+        row.put("username", "testUser");
+        row.put("channel_name", "General");
+        row.put("type", "PC");
+        resultData.add(row);
+
+        String query = """
+            /* channels.of_user */
+            SELECT uc.username, uc.channel_name, c.type
+            FROM user_channel uc
+            JOIN channels c ON uc.channel_name = c.name
+            WHERE uc.username = ?
+            """;
+        String sql = "/* user_channel.insert */ INSERT INTO user_channel (username, channel_name) VALUES (?, ?)";
+
+        try (MockedStatic<ServiceUtility> mockedStatic = Mockito.mockStatic(ServiceUtility.class)) {
+            mockedStatic.when(() -> ServiceUtility.executeQuery(eq(query), eq("testUser"))).thenReturn(resultData);
+            mockedStatic.when(() -> ServiceUtility.executeUpdate(eq(sql), eq("Error joining the server"), eq("testUser"), eq("Social"))).thenReturn(1);
+
+            // Loaded once, then checked in memory
+            assertTrue(channelService.isMember("testUser", "General"));
+            assertFalse(channelService.isMember("testUser", "Social"));
+            mockedStatic.verify(() -> ServiceUtility.executeQuery(eq(query), eq("testUser")), Mockito.times(1));
+
+            // Joining drops the cached channels of the user
+            channelService.joinChannel("Social", "testUser");
+            Map<String, Object> joined = new HashMap<>(row);
+            joined.put("channel_name", "Social");
+            resultData.add(joined);
+
+            assertTrue(channelService.isMember("testUser", "Social"));
+            mockedStatic.verify(() -> ServiceUtility.executeQuery(eq(query), eq("testUser")), Mockito.times(2));
+        }
+    }
+
     @Test
     public void testJoinChannel_Success() {
         // Prepare parameters
         String channelName = "ChannelToJoin";
         String username = "testUser";
 
-        String sql = "INSERT INTO user_channel (username, channel_name) VALUES (?, ?)";
+        String sql = "/* user_channel.insert */ INSERT INTO user_channel (username, channel_name) VALUES (?, ?)";
 
         // Mock the static executeUpdate method
         try (MockedStatic<ServiceUtility> mockedStatic = Mockito.mockStatic(ServiceUtility.class)) {
@@ -447,7 +992,7 @@ public class ChannelServiceTest {
         String channelName = "ChannelToJoin";
         String username = "testUser";
 
-        String sql = "INSERT INTO user_channel (username, channel_name) VALUES (?, ?)";
+        String sql = "/* user_channel.insert */ INSERT INTO user_channel (username, channel_name) VALUES (?, ?)";
 
         // Mock the static executeUpdate method
         try (MockedStatic<ServiceUtility> mockedStatic = Mockito.mockStatic(ServiceUtility.class)) {
@@ -468,8 +1013,8 @@ public class ChannelServiceTest {
         String user1 = "user1";
         String user2 = "user2";
 
-        String createChannelQuery = "INSERT INTO channels (name, type) VALUES (?, 'DM')";
-        String addUserToChannelQuery = "INSERT INTO user_channel (username, channel_name) VALUES (?, ?)";
+        String createChannelQuery = "/* channels.create_dm */ INSERT INTO channels (name, type) VALUES (?, 'DM')";
+        String addUserToChannelQuery = "/* user_channel.insert */ INSERT INTO user_channel (username, channel_name) VALUES (?, ?)";
 
         // Mock the static executeUpdate method
         try (MockedStatic<ServiceUtility> mockedStatic = Mockito.mockStatic(ServiceUtility.class)) {
@@ -522,7 +1067,7 @@ public class ChannelServiceTest {
         String user1 = "user1";
         String user2 = "user2";
 
-        String createChannelQuery = "INSERT INTO channels (name, type) VALUES (?, 'DM')";
+        String createChannelQuery = "/* channels.create_dm */ INSERT INTO channels (name, type) VALUES (?, 'DM')";
 
         // Mock the static executeUpdate method
         try (MockedStatic<ServiceUtility> mockedStatic = Mockito.mockStatic(ServiceUtility.class)) {
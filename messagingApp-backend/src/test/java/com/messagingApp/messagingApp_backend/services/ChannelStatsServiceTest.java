@@ -0,0 +1,116 @@
+package com.messagingApp.messagingApp_backend.services;
+
+import com.messagingApp.messagingApp_backend.models.ChannelEvent;
+import com.messagingApp.messagingApp_backend.models.ChannelStats;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+
+public class ChannelStatsServiceTest {
+
+    private static final LocalDateTime LAST_MESSAGE = LocalDateTime.of(2025, 3, 1, 9, 30);
+
+    private SimpleMeterRegistry meterRegistry;
+    private ChannelStatsService statsService;
+
+    @BeforeEach
+    public void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        statsService = new ChannelStatsService(meterRegistry);
+    }
+
+    @Test
+    public void testEventsUpdateTheLoadedStats() {
+        try (MockedStatic<ServiceUtility> mockedStatic = Mockito.mockStatic(ServiceUtility.class)) {
+            mockedStatic.when(() -> ServiceUtility.executeQuery(Mockito.contains("AS last_activity"), any(Object[].class))).thenReturn(List.of(statsRow(3, 1, 10, LAST_MESSAGE)));
+            mockedStatic.when(() -> ServiceUtility.executeQuery(eq("/* users.role */ SELECT role FROM users WHERE username = ?"), eq("carol"))).thenReturn(List.of(Map.of("role", "ADMIN")));
+            mockedStatic.when(() -> ServiceUtility.executeQuery(eq("/* users.role */ SELECT role FROM users WHERE username = ?"), eq("dave"))).thenReturn(List.of(Map.of("role", "MEMBER")));
+
+            assertEquals(new ChannelStats(3, 1, 10, LAST_MESSAGE), statsService.get("General"));
+
+            LocalDateTime sent = LAST_MESSAGE.plusMinutes(5);
+            statsService.onChannelEvent(event("General", ChannelEvent.EventType.MESSAGE_CREATED, 11L, "bob", sent));
+            statsService.onChannelEvent(event("General", ChannelEvent.EventType.MESSAGE_DELETED, 4L, null, sent.plusMinutes(1)));
+            statsService.onChannelEvent(event("General", ChannelEvent.EventType.MEMBERSHIP_CHANGED, null, "carol", sent));
+            statsService.onChannelEvent(event("General", ChannelEvent.EventType.MEMBERSHIP_CHANGED, null, "dave", sent));
+            // Not loaded, left for its first lookup
+            statsService.onChannelEvent(event("Social", ChannelEvent.EventType.MESSAGE_CREATED, 12L, "bob", sent));
+
+            assertEquals(new ChannelStats(5, 2, 10, sent), statsService.get("General"));
+            assertEquals(1, statsService.size());
+            mockedStatic.verify(() -> ServiceUtility.executeQuery(Mockito.contains("AS last_activity"), any(Object[].class)), Mockito.times(1));
+        }
+    }
+
+    @Test
+    public void testCreatedChannelStartsEmpty() {
+        statsService.channelCreated("Project");
+        try (MockedStatic<ServiceUtility> mockedStatic = Mockito.mockStatic(ServiceUtility.class)) {
+            mockedStatic.when(() -> ServiceUtility.executeQuery(eq("/* users.role */ SELECT role FROM users WHERE username = ?"), any(Object[].class))).thenReturn(List.of(Map.of("role", "MEMBER")));
+
+            statsService.onChannelEvent(event("Project", ChannelEvent.EventType.MEMBERSHIP_CHANGED, null, "alice", LAST_MESSAGE));
+
+            assertEquals(new ChannelStats(1, 0, 0, null), statsService.get("Project"));
+            mockedStatic.verify(() -> ServiceUtility.executeQuery(Mockito.contains("AS last_activity"), any(Object[].class)), Mockito.never());
+        }
+
+        statsService.removeChannel("Project");
+        assertEquals(0, statsService.size());
+    }
+
+    @Test
+    public void testRoleChangeRecountsTheAdmins() {
+        try (MockedStatic<ServiceUtility> mockedStatic = Mockito.mockStatic(ServiceUtility.class)) {
+            mockedStatic.when(() -> ServiceUtility.executeQuery(Mockito.contains("AS last_activity"), any(Object[].class))).thenReturn(List.of(statsRow(3, 1, 10, LAST_MESSAGE)));
+            mockedStatic.when(() -> ServiceUtility.executeQuery(Mockito.startsWith("/* channel_stats.admins */"), any(Object[].class))).thenReturn(List.of(Map.of("admins", 2L)));
+            statsService.get("General");
+
+            statsService.roleChanged("bob", List.of("General", "Social"));
+
+            assertEquals(new ChannelStats(3, 2, 10, LAST_MESSAGE), statsService.get("General"));
+            // Only the held channels are recounted
+            mockedStatic.verify(() -> ServiceUtility.executeQuery(Mockito.startsWith("/* channel_stats.admins */"), any(Object[].class)), Mockito.times(1));
+        }
+    }
+
+    @Test
+    public void testReconcileCorrectsDrift() {
+        try (MockedStatic<ServiceUtility> mockedStatic = Mockito.mockStatic(ServiceUtility.class)) {
+            mockedStatic.when(() -> ServiceUtility.executeQuery(Mockito.contains("AS last_activity"), any(Object[].class)))
+                .thenReturn(List.of(statsRow(3, 1, 10, LAST_MESSAGE)))
+                .thenReturn(List.of(statsRow(3, 1, 12, LAST_MESSAGE)))
+                .thenReturn(List.of(statsRow(3, 1, 12, LAST_MESSAGE)));
+            statsService.get("General");
+
+            assertEquals(1, statsService.reconcile());
+            assertEquals(12, statsService.get("General").getMessageCount());
+            assertEquals(0, statsService.reconcile());
+            assertEquals(1.0, meterRegistry.get("channelstats.corrected").counter().count());
+        }
+    }
+
+    private Map<String, Object> statsRow(long members, long admins, long messages, LocalDateTime lastActivity) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("members", members);
+        row.put("admins", admins);
+        row.put("messages", messages);
+        row.put("last_activity", lastActivity != null ? Timestamp.valueOf(lastActivity) : null);
+        return row;
+    }
+
+    private ChannelEvent event(String channelName, ChannelEvent.EventType type, Long messageId, String username, LocalDateTime timestamp) {
+        return new ChannelEvent(1, channelName, type, messageId, username, null, timestamp);
+    }
+}
@@ -0,0 +1,31 @@
+package com.messagingApp.messagingApp_backend.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExportLimiterTest {
+
+    @Test
+    public void testExportsPastTheLimitAreRefused() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ExportLimiter limiter = new ExportLimiter(meterRegistry, 2, 600000);
+
+        Runnable first = limiter.tryStart();
+        Runnable second = limiter.tryStart();
+
+        assertNotNull(first);
+        assertNotNull(second);
+        assertNull(limiter.tryStart());
+        assertEquals(2.0, meterRegistry.get("export.active").gauge().value());
+        assertEquals(1.0, meterRegistry.get("export.rejected").counter().count());
+
+        // Freed by the body and by the end of the request, only the first one counts
+        first.run();
+        first.run();
+        assertEquals(1, limiter.getActiveCount());
+        assertNotNull(limiter.tryStart());
+        assertNull(limiter.tryStart());
+    }
+}
@@ -0,0 +1,76 @@
+package com.messagingApp.messagingApp_backend.services;
+
+import com.messagingApp.messagingApp_backend.dto.MessageWithSendersDto;
+import com.messagingApp.messagingApp_backend.models.Channel;
+import com.messagingApp.messagingApp_backend.models.ChannelEvent;
+import com.messagingApp.messagingApp_backend.models.Message;
+import com.messagingApp.messagingApp_backend.models.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LongPollServiceTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private LongPollService longPollService;
+
+    @BeforeEach
+    public void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        longPollService = new LongPollService(meterRegistry, 55000, 2);
+    }
+
+    @Test
+    public void testNewerMessageWakesUpWaiter() {
+        DeferredResult<ResponseEntity<?>> result = longPollService.await("General", 5, 30000);
+        assertFalse(result.hasResult());
+        assertEquals(1, longPollService.getWaiterCount("General"));
+
+        Message message = message(6, "General");
+        longPollService.onChannelEvent(new ChannelEvent(1, "General", ChannelEvent.EventType.MESSAGE_CREATED, 6L, "alice", message, LocalDateTime.now()));
+
+        ResponseEntity<?> response = (ResponseEntity<?>) result.getResult();
+        assertEquals(200, response.getStatusCode().value());
+        MessageWithSendersDto body = (MessageWithSendersDto) response.getBody();
+        assertEquals(6, body.getMessage().getId());
+        assertEquals("alice", body.getMessage().getSenderId());
+        assertEquals(User.UserRole.MEMBER, body.getSenders().get("alice").getRole());
+        assertEquals(0, longPollService.getWaiterCount());
+        assertEquals(0.0, meterRegistry.get("longpoll.waiters").gauge().value());
+    }
+
+    @Test
+    public void testOtherChannelsAndOlderMessagesDoNotWakeUpWaiter() {
+        DeferredResult<ResponseEntity<?>> result = longPollService.await("General", 5, 30000);
+
+        longPollService.notifyMessage("Social", message(7, "Social"));
+        longPollService.notifyMessage("General", message(5, "General"));
+        longPollService.onChannelEvent(new ChannelEvent(2, "General", ChannelEvent.EventType.MESSAGE_DELETED, 4L, "admin", null, LocalDateTime.now()));
+
+        assertFalse(result.hasResult());
+        assertEquals(1, longPollService.getWaiterCount());
+    }
+
+    @Test
+    public void testTooManyWaitersAreRejected() {
+        longPollService.await("General", 1, 30000);
+        longPollService.await("Social", 1, 30000);
+
+        DeferredResult<ResponseEntity<?>> result = longPollService.await("General", 1, 30000);
+
+        ResponseEntity<?> response = (ResponseEntity<?>) result.getResult();
+        assertEquals(503, response.getStatusCode().value());
+        assertEquals(2, longPollService.getWaiterCount());
+        assertEquals(1.0, meterRegistry.get("longpoll.rejected").counter().count());
+    }
+
+    private Message message(long id, String channelName) {
+        return new Message(id, "Hello", new User("alice", null, User.UserRole.MEMBER), new Channel(channelName, Channel.ChannelType.PC), LocalDateTime.now());
+    }
+}
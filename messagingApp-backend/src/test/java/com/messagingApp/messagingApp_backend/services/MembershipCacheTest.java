@@ -0,0 +1,100 @@
+package com.messagingApp.messagingApp_backend.services;
+
+import com.messagingApp.messagingApp_backend.models.Channel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MembershipCacheTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private MembershipCache cache;
+    private AtomicInteger loads;
+    private Function<String, List<Channel>> loader;
+
+    @BeforeEach
+    public void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new MembershipCache(meterRegistry, 60000, 2);
+        loads = new AtomicInteger();
+        loader = username -> {
+            loads.incrementAndGet();
+            return List.of(new Channel("General", Channel.ChannelType.PC), new Channel(username + "-dm", Channel.ChannelType.DM));
+        };
+    }
+
+    @Test
+    public void testMembershipIsLoadedOnce() {
+        assertTrue(cache.isMember("alice", "General", loader));
+        assertTrue(cache.isMember("alice", "alice-dm", loader));
+        assertFalse(cache.isMember("alice", "Social", loader));
+        assertEquals(2, cache.getChannels("alice", loader).size());
+
+        assertEquals(1, loads.get());
+        assertEquals(3.0, meterRegistry.get("cache.gets").tag("result", "hit").counter().count());
+    }
+
+    @Test
+    public void testInvalidateUserReloadsOnlyThatUser() {
+        cache.isMember("alice", "General", loader);
+        cache.isMember("bob", "General", loader);
+
+        cache.invalidateUser("alice");
+        cache.isMember("alice", "General", loader);
+        cache.isMember("bob", "General", loader);
+
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    public void testInvalidateChannelDropsItsMembers() {
+        cache.isMember("alice", "General", loader);
+        cache.isMember("bob", "General", loader);
+
+        cache.invalidateChannel("alice-dm");
+
+        assertEquals(1, cache.size());
+        cache.isMember("bob", "General", loader);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testLoadRacingAnInvalidationIsNotStored() {
+        cache.isMember("alice", "General", username -> {
+            // The user joins a channel while their channels are being read
+            cache.invalidateUser(username);
+            return loader.apply(username);
+        });
+
+        cache.isMember("alice", "General", loader);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedUserIsDropped() {
+        cache.isMember("alice", "General", loader);
+        cache.isMember("bob", "General", loader);
+        cache.isMember("alice", "General", loader); // Bob is now the least recently used
+        cache.isMember("carol", "General", loader);
+
+        assertEquals(2, cache.size());
+        cache.isMember("alice", "General", loader);
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    public void testExpiredEntryIsReloaded() {
+        cache = new MembershipCache(meterRegistry, 0, 2);
+
+        cache.isMember("alice", "General", loader);
+        cache.isMember("alice", "General", loader);
+
+        assertEquals(2, loads.get());
+    }
+}
@@ -0,0 +1,34 @@
+package com.messagingApp.messagingApp_backend.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MessageHighWaterMarksTest {
+
+    @Test
+    public void testMarkIsLoadedOnceWithinTheTtl() {
+        MessageHighWaterMarks marks = new MessageHighWaterMarks(60000);
+        AtomicInteger loads = new AtomicInteger();
+
+        assertEquals(5L, marks.get("General", channelName -> { loads.incrementAndGet(); return 5L; }));
+        marks.advance("General", 8);
+        assertEquals(8L, marks.get("General", channelName -> { loads.incrementAndGet(); return 5L; }));
+
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testExpiredMarkSeesMessagesStoredElsewhere() {
+        MessageHighWaterMarks marks = new MessageHighWaterMarks(0);
+
+        assertEquals(5L, marks.get("General", channelName -> 5L));
+        // Another instance stored messages 6 and 7
+        assertEquals(7L, marks.get("General", channelName -> 7L));
+        // Marks only move up, a message stored here meanwhile is kept
+        marks.advance("General", 9);
+        assertEquals(9L, marks.get("General", channelName -> 7L));
+    }
+}
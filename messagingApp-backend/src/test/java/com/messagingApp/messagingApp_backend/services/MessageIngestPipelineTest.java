@@ -0,0 +1,169 @@
+package com.messagingApp.messagingApp_backend.services;
+
+import com.messagingApp.messagingApp_backend.models.Channel;
+import com.messagingApp.messagingApp_backend.models.ChannelEvent;
+import com.messagingApp.messagingApp_backend.models.Message;
+import com.messagingApp.messagingApp_backend.models.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+
+public class MessageIngestPipelineTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private ChangeFeedService changeFeedService;
+    private RecentMessageCache recentMessageCache;
+    private MessageIngestPipeline pipeline;
+
+    @BeforeEach
+    public void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        changeFeedService = Mockito.mock(ChangeFeedService.class);
+        recentMessageCache = Mockito.mock(RecentMessageCache.class);
+        // Not started, the tests run the stages on their own thread where the static mock applies
+        pipeline = new MessageIngestPipeline(changeFeedService, recentMessageCache, new MessageHighWaterMarks(60000), meterRegistry, 2, 50, 0);
+    }
+
+    @Test
+    public void testQueuedMessagesAreStoredWithTheirEventsInOneStatement() throws Exception {
+        CompletableFuture<Message> first = pipeline.submit("General", "Hello", "alice");
+        CompletableFuture<Message> second = pipeline.submit("Social", "Hi", "bob");
+
+        try (MockedStatic<ServiceUtility> mockedStatic = Mockito.mockStatic(ServiceUtility.class)) {
+            mockedStatic.when(() -> ServiceUtility.executeQuery(anyString(), storedMessageMapper(), any(Object[].class))).thenAnswer(invocation -> {
+                List<MessageIngestPipeline.StoredMessage> rows = storedRows(invocation.getArguments(), new AtomicLong(10));
+                Collections.reverse(rows); // Matched on their position in the batch, not on the row order
+                return rows;
+            });
+
+            assertEquals(2, pipeline.persistBatch(0));
+
+            mockedStatic.verify(() -> ServiceUtility.executeQuery(Mockito.contains("VALUES (CAST(? AS INT), CAST(? AS TEXT), CAST(? AS TEXT), CAST(? AS TEXT), CAST(? AS TIMESTAMP)), (?, ?, ?, ?, ?)"), storedMessageMapper(), any(Object[].class)), Mockito.times(1));
+        }
+
+        assertEquals(11L, first.join().getId());
+        assertEquals(12L, second.join().getId());
+        Mockito.verify(recentMessageCache).add(eq("General"), any(Message.class));
+        assertEquals(1.0, meterRegistry.get("ingest.batch.size").summary().count());
+
+        // The events were stored with the messages, the fan-out stage only passes them to the listeners
+        Mockito.verifyNoInteractions(changeFeedService);
+        assertTrue(pipeline.publishNext(0));
+        assertTrue(pipeline.publishNext(0));
+        assertFalse(pipeline.publishNext(0));
+        ArgumentCaptor<ChannelEvent> events = ArgumentCaptor.forClass(ChannelEvent.class);
+        Mockito.verify(changeFeedService, Mockito.times(2)).publish(events.capture());
+        // Published in the order of the rows
+        assertEquals(List.of(102L, 101L), events.getAllValues().stream().map(ChannelEvent::getSeq).toList());
+        assertEquals(List.of("Social", "General"), events.getAllValues().stream().map(ChannelEvent::getChannelName).toList());
+        assertEquals(ChannelEvent.EventType.MESSAGE_CREATED, events.getAllValues().get(0).getType());
+        Mockito.verify(changeFeedService, Mockito.never()).record(anyString(), any(), any(), any(), any());
+    }
+
+    @Test
+    public void testFullQueueRejects() {
+        pipeline.submit("General", "One", "alice");
+        pipeline.submit("General", "Two", "alice");
+
+        CompletableFuture<Message> rejected = pipeline.submit("General", "Three", "alice");
+
+        CompletionException exception = assertThrows(CompletionException.class, rejected::join);
+        assertInstanceOf(RejectedExecutionException.class, exception.getCause());
+        assertEquals(2, pipeline.getPersistQueueSize());
+        assertEquals(1.0, meterRegistry.get("ingest.rejected").counter().count());
+    }
+
+    @Test
+    public void testEmptyMessageIsRefused() {
+        CompletableFuture<Message> result = pipeline.submit("General", "   ", "alice");
+
+        CompletionException exception = assertThrows(CompletionException.class, result::join);
+        assertInstanceOf(IllegalArgumentException.class, exception.getCause());
+        assertEquals(0, pipeline.getPersistQueueSize());
+    }
+
+    @Test
+    public void testRejectedMessageFailsAlone() throws Exception {
+        CompletableFuture<Message> bad = pipeline.submit("Deleted", "Hi", "bob");
+        CompletableFuture<Message> good = pipeline.submit("General", "Hello", "alice");
+
+        try (MockedStatic<ServiceUtility> mockedStatic = Mockito.mockStatic(ServiceUtility.class)) {
+            // Any statement with a row for the deleted channel fails, nothing of it is written
+            AtomicLong ids = new AtomicLong(10);
+            mockedStatic.when(() -> ServiceUtility.executeQuery(anyString(), storedMessageMapper(), any(Object[].class))).thenAnswer(invocation ->
+                List.of(invocation.getArguments()).contains("Deleted") ? new ArrayList<>() : storedRows(invocation.getArguments(), ids));
+
+            assertEquals(2, pipeline.persistBatch(0));
+
+            // The batch, then each message on its own
+            mockedStatic.verify(() -> ServiceUtility.executeQuery(anyString(), storedMessageMapper(), any(Object[].class)), Mockito.times(3));
+        }
+
+        CompletionException exception = assertThrows(CompletionException.class, bad::join);
+        assertInstanceOf(IllegalStateException.class, exception.getCause());
+        assertEquals("Hello", good.join().getContent());
+        assertEquals(1.0, meterRegistry.get("ingest.failed").counter().count());
+        assertTrue(pipeline.publishNext(0));
+        assertFalse(pipeline.publishNext(0));
+    }
+
+    @Test
+    public void testUnreachableDatabaseIsNotTriedOnceForEveryMessage() throws Exception {
+        pipeline = new MessageIngestPipeline(changeFeedService, recentMessageCache, new MessageHighWaterMarks(60000), meterRegistry, 4, 50, 0);
+        List<CompletableFuture<Message>> results = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            results.add(pipeline.submit("General", "Hello " + i, "alice"));
+        }
+
+        try (MockedStatic<ServiceUtility> mockedStatic = Mockito.mockStatic(ServiceUtility.class)) {
+            mockedStatic.when(() -> ServiceUtility.executeQuery(anyString(), storedMessageMapper(), any(Object[].class))).thenReturn(new ArrayList<>());
+
+            assertEquals(4, pipeline.persistBatch(0));
+
+            // The batch, then two messages on their own before giving up
+            mockedStatic.verify(() -> ServiceUtility.executeQuery(anyString(), storedMessageMapper(), any(Object[].class)), Mockito.times(3));
+        }
+
+        for (CompletableFuture<Message> result : results) {
+            CompletionException exception = assertThrows(CompletionException.class, result::join);
+            assertInstanceOf(IllegalStateException.class, exception.getCause());
+        }
+        assertEquals(4.0, meterRegistry.get("ingest.failed").counter().count());
+        assertFalse(pipeline.publishNext(0));
+    }
+
+    private static RowMapper<MessageIngestPipeline.StoredMessage> storedMessageMapper() {
+        return ArgumentMatchers.any();
+    }
+
+    // Rows as returned by the statement, the arguments are the query, the mapper, then ord, text, username, channel_name, date_time per message
+    // Every message gets the next id, its event the sequence number 90 + id
+    private List<MessageIngestPipeline.StoredMessage> storedRows(Object[] args, AtomicLong ids) {
+        List<MessageIngestPipeline.StoredMessage> rows = new ArrayList<>();
+        for (int i = 2; i + 4 < args.length; i += 5) {
+            User sender = new User((String) args[i + 2], null, User.UserRole.MEMBER);
+            long id = ids.incrementAndGet();
+            Message message = new Message(id, (String) args[i + 1], sender, new Channel((String) args[i + 3], null), ((Timestamp) args[i + 4]).toLocalDateTime());
+            rows.add(new MessageIngestPipeline.StoredMessage((Integer) args[i], 90 + id, message));
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,119 @@
+package com.messagingApp.messagingApp_backend.services;
+
+import com.messagingApp.messagingApp_backend.models.Channel;
+import com.messagingApp.messagingApp_backend.models.Message;
+import com.messagingApp.messagingApp_backend.models.User;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetMetaDataImpl;
+import javax.sql.rowset.RowSetProvider;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+
+public class ModelRegistryTest {
+    // The registry is static, each test uses its own names
+
+    @Test
+    public void testMessagesShareTheirSenderAndChannel() throws Exception {
+        CachedRowSet rows = messageRows("registry-page", "registry-alice", "registry-bob", "registry-alice", "registry-bob");
+        RowMapper.Reader<Message> reader = RowMappers.MESSAGE.bind(rows);
+        List<Message> messages = new ArrayList<>();
+        while (rows.next()) {
+            messages.add(reader.read(rows));
+        }
+
+        assertSame(messages.get(0).getSender(), messages.get(2).getSender());
+        assertSame(messages.get(1).getSender(), messages.get(3).getSender());
+        assertNotSame(messages.get(0).getSender(), messages.get(1).getSender());
+        assertSame(messages.get(0).getChannel(), messages.get(3).getChannel());
+        assertNull(messages.get(0).getSender().getPassword());
+    }
+
+    @Test
+    public void testRoleChangeReplacesTheUser() {
+        User member = ModelRegistry.user("registry-carol", User.UserRole.MEMBER);
+
+        try (MockedStatic<ServiceUtility> mockedStatic = Mockito.mockStatic(ServiceUtility.class)) {
+            mockedStatic.when(() -> ServiceUtility.executeUpdate(anyString(), anyString(), any(Object[].class))).thenReturn(1);
+            mockedStatic.when(() -> ServiceUtility.executeQuery(anyString(), any(Object[].class))).thenReturn(List.of(Map.of("role", "ADMIN")));
+            AdminService adminService = new AdminService(Mockito.mock(ChannelService.class), Mockito.mock(ChangeFeedService.class), new ResponseVersions(Long.MAX_VALUE));
+
+            assertEquals(1, adminService.updateUserRole("admin", "registry-carol", "ADMIN"));
+        }
+
+        User admin = ModelRegistry.sharedUser("registry-carol");
+        assertEquals(User.UserRole.ADMIN, admin.getRole());
+        assertNotSame(member, admin);
+        assertSame(admin, ModelRegistry.user("registry-carol", User.UserRole.ADMIN));
+    }
+
+    @Test
+    public void testRoleIsCheckedBeforeItIsSaved() {
+        try (MockedStatic<ServiceUtility> mockedStatic = Mockito.mockStatic(ServiceUtility.class)) {
+            mockedStatic.when(() -> ServiceUtility.executeUpdate(anyString(), anyString(), any(Object[].class))).thenReturn(1);
+            mockedStatic.when(() -> ServiceUtility.executeQuery(anyString(), any(Object[].class))).thenReturn(List.of(Map.of("role", "ADMIN")));
+            AdminService adminService = new AdminService(Mockito.mock(ChannelService.class), Mockito.mock(ChangeFeedService.class), new ResponseVersions(Long.MAX_VALUE));
+
+            assertThrows(IllegalArgumentException.class, () -> adminService.updateUserRole("admin", "registry-erin", "owner"));
+            mockedStatic.verify(() -> ServiceUtility.executeUpdate(anyString(), anyString(), any(Object[].class)), Mockito.never());
+
+            // Any case is taken, the role is saved as the registry holds it
+            assertEquals(1, adminService.updateUserRole("admin", "registry-erin", "admin"));
+            mockedStatic.verify(() -> ServiceUtility.executeUpdate(anyString(), anyString(), Mockito.eq("ADMIN"), Mockito.eq("registry-erin")));
+        }
+
+        assertEquals(User.UserRole.ADMIN, ModelRegistry.sharedUser("registry-erin").getRole());
+    }
+
+    @Test
+    public void testUntypedLookupTakesTheTypedChannel() {
+        Channel direct = ModelRegistry.channel("registry-dm", Channel.ChannelType.DM);
+
+        assertSame(direct, ModelRegistry.channel("registry-dm", null));
+        assertEquals(new Channel("registry-dm", Channel.ChannelType.DM), direct);
+
+        ModelRegistry.removeChannel("registry-dm");
+        assertEquals(Channel.ChannelType.PC, ModelRegistry.channel("registry-dm", Channel.ChannelType.PC).getType());
+        assertNotSame(direct, ModelRegistry.channel("registry-dm", null));
+    }
+
+    // Rows shaped like the message queries, one message per sender given
+    private CachedRowSet messageRows(String channelName, String... senders) throws Exception {
+        RowSetMetaDataImpl metaData = new RowSetMetaDataImpl();
+        String[] names = {"id", "text", "date_time", "channel_name", "username", "role"};
+        int[] types = {Types.BIGINT, Types.VARCHAR, Types.TIMESTAMP, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR};
+        metaData.setColumnCount(names.length);
+        for (int i = 0; i < names.length; i++) {
+            metaData.setColumnName(i + 1, names[i]);
+            metaData.setColumnLabel(i + 1, names[i]);
+            metaData.setColumnType(i + 1, types[i]);
+        }
+
+        CachedRowSet rows = RowSetProvider.newFactory().createCachedRowSet();
+        rows.setMetaData(metaData);
+        for (int i = 0; i < senders.length; i++) {
+            rows.moveToInsertRow();
+            rows.updateLong(1, i + 1);
+            rows.updateString(2, "Message " + i);
+            rows.updateTimestamp(3, new Timestamp(1700000000000L + i));
+            // New strings, as the driver returns for every row
+            rows.updateString(4, new String(channelName));
+            rows.updateString(5, new String(senders[i]));
+            rows.updateString(6, "MEMBER");
+            rows.insertRow();
+            rows.moveToCurrentRow();
+        }
+        rows.beforeFirst();
+        return rows;
+    }
+}
@@ -0,0 +1,73 @@
+package com.messagingApp.messagingApp_backend.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PasswordHasherTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private PasswordHasher hasher;
+
+    @AfterEach
+    public void shutdown() {
+        hasher.shutdown();
+    }
+
+    @Test
+    public void testHashIsCheckedAndNotRehashed() {
+        hasher = new PasswordHasher(meterRegistry, 4, 1, 8); // Lowest strength, fast enough for tests
+
+        String hash = hasher.hash("secret").join();
+
+        assertNotEquals("secret", hash);
+        assertTrue(hasher.matches("secret", hash).join());
+        assertFalse(hasher.matches("wrong", hash).join());
+        assertFalse(hasher.needsRehash(hash));
+        assertEquals(3, meterRegistry.get("auth.password.work").timers().stream().mapToLong(timer -> timer.count()).sum());
+    }
+
+    @Test
+    public void testPlainTextRowsAreAcceptedAndRehashed() {
+        hasher = new PasswordHasher(meterRegistry, 4, 1, 8);
+
+        assertTrue(hasher.matches("secret", "secret").join());
+        assertFalse(hasher.matches("Secret", "secret").join());
+        assertTrue(hasher.needsRehash("secret"));
+        // Unknown user
+        assertFalse(hasher.matches("secret", null).join());
+    }
+
+    @Test
+    public void testWeakerHashIsRehashed() {
+        String weak = new PasswordHasher(new SimpleMeterRegistry(), 4, 1, 8).hash("secret").join();
+        hasher = new PasswordHasher(meterRegistry, 5, 1, 8);
+
+        assertTrue(hasher.matches("secret", weak).join());
+        assertTrue(hasher.needsRehash(weak));
+    }
+
+    @Test
+    public void testFullQueueRejects() {
+        hasher = new PasswordHasher(meterRegistry, 12, 1, 1);
+
+        // One running, one queued, the third doesn't fit
+        CompletableFuture<String> running = hasher.hash("one");
+        CompletableFuture<String> queued = hasher.hash("two");
+        CompletableFuture<Boolean> rejected = hasher.matches("three", null);
+
+        CompletionException exception = assertThrows(CompletionException.class, rejected::join);
+        assertInstanceOf(RejectedExecutionException.class, exception.getCause());
+        assertEquals(1.0, meterRegistry.get("auth.password.rejected").counter().count());
+        assertEquals(1.0, meterRegistry.get("auth.password.queue.size").gauge().value());
+
+        running.join();
+        queued.join();
+    }
+}
@@ -0,0 +1,167 @@
+package com.messagingApp.messagingApp_backend.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.messagingApp.messagingApp_backend.models.Channel;
+import com.messagingApp.messagingApp_backend.models.ChannelEvent;
+import com.messagingApp.messagingApp_backend.models.Message;
+import com.messagingApp.messagingApp_backend.models.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.adapter.standard.StandardWebSocketSession;
+
+import java.net.SocketTimeoutException;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+public class PushServiceTest {
+
+    private ChannelService channelService;
+    private SimpleMeterRegistry meterRegistry;
+    private PushService pushService;
+
+    @BeforeEach
+    public void setup() {
+        channelService = Mockito.mock(ChannelService.class);
+        meterRegistry = new SimpleMeterRegistry();
+        pushService = new PushService(channelService, new ObjectMapper().registerModule(new JavaTimeModule()), meterRegistry, 2, 2, 5000, 60000);
+    }
+
+    @AfterEach
+    public void cleanup() {
+        pushService.shutdown();
+    }
+
+    @Test
+    public void testOpenSubscribesToUserChannels() {
+        when(channelService.getUserChannels("alice")).thenReturn(List.of(new Channel("General", Channel.ChannelType.PC), new Channel("Social", Channel.ChannelType.PC)));
+
+        pushService.open(session("s1"), "alice");
+
+        assertEquals(1, pushService.getConnectionCount());
+        assertEquals(1, pushService.getSubscriberCount("General"));
+        assertEquals(2, pushService.getSubscriptionCount());
+        assertEquals(2.0, meterRegistry.get("push.subscriptions").gauge().value());
+    }
+
+    @Test
+    public void testEventIsFannedOutToSubscribersOnly() throws Exception {
+        when(channelService.getUserChannels("alice")).thenReturn(List.of(new Channel("General", Channel.ChannelType.PC)));
+        when(channelService.getUserChannels("bob")).thenReturn(List.of(new Channel("Social", Channel.ChannelType.PC)));
+        WebSocketSession alice = session("s1");
+        WebSocketSession bob = session("s2");
+        pushService.open(alice, "alice");
+        pushService.open(bob, "bob");
+
+        pushService.onChannelEvent(new ChannelEvent(3, "General", ChannelEvent.EventType.MESSAGE_DELETED, 7L, null, null, LocalDateTime.now()));
+
+        verify(alice, timeout(1000)).sendMessage(argThat(message -> message instanceof TextMessage && ((TextMessage) message).getPayload().contains("MESSAGE_DELETED")));
+        verify(bob, after(100).never()).sendMessage(any());
+    }
+
+    @Test
+    public void testPushedMessageNamesItsSender() throws Exception {
+        when(channelService.getUserChannels("alice")).thenReturn(List.of(new Channel("General", Channel.ChannelType.PC)));
+        WebSocketSession alice = session("s1");
+        pushService.open(alice, "alice");
+        Message message = new Message(7, "Hello", new User("bob", null, User.UserRole.ADMIN), new Channel("General", Channel.ChannelType.PC), LocalDateTime.now());
+
+        pushService.onChannelEvent(new ChannelEvent(3, "General", ChannelEvent.EventType.MESSAGE_CREATED, 7L, "bob", message, LocalDateTime.now()));
+
+        // Same shape as the events of /events
+        verify(alice, timeout(1000)).sendMessage(argThat(sent -> {
+            String payload = ((TextMessage) sent).getPayload();
+            return payload.contains("\"senderId\":\"bob\"") && payload.contains("\"senders\":{\"bob\":{\"username\":\"bob\",\"role\":\"ADMIN\"}}") && !payload.contains("\"sender\":");
+        }));
+    }
+
+    @Test
+    public void testSlowConsumerIsDroppedWithoutBlockingOthers() throws Exception {
+        when(channelService.getUserChannels(any())).thenReturn(List.of(new Channel("General", Channel.ChannelType.PC)));
+
+        // The slow client blocks in its first send until the test releases it
+        CountDownLatch release = new CountDownLatch(1);
+        WebSocketSession slow = session("slow");
+        doAnswer(invocation -> release.await(5, TimeUnit.SECONDS)).when(slow).sendMessage(any());
+        WebSocketSession fast = session("fast");
+        pushService.open(slow, "slow");
+        pushService.open(fast, "fast");
+
+        // Queue capacity is 2: once the first message is stuck in flight, two more fit and the fourth overflows
+        for (int seq = 1; seq <= 4; seq++) {
+            pushService.onChannelEvent(new ChannelEvent(seq, "General", ChannelEvent.EventType.MESSAGE_DELETED, (long) seq, null, null, LocalDateTime.now()));
+            verify(fast, timeout(1000).times(seq)).sendMessage(any());
+            verify(slow, timeout(1000)).sendMessage(any());
+        }
+
+        assertEquals(1, pushService.getConnectionCount());
+        assertEquals(1.0, meterRegistry.get("push.connections.dropped").counter().count());
+        // The close frame waits for the send in progress, the session is never written from two threads
+        verify(slow, after(100).never()).close(any());
+        release.countDown();
+        verify(slow, timeout(1000)).close(CloseStatus.SESSION_NOT_RELIABLE);
+        verify(slow, times(1)).sendMessage(any());
+    }
+
+    @Test
+    public void testSendsHaveATimeLimit() {
+        when(channelService.getUserChannels("alice")).thenReturn(List.of());
+        jakarta.websocket.Session standardSession = Mockito.mock(jakarta.websocket.Session.class);
+        Map<String, Object> userProperties = new HashMap<>();
+        when(standardSession.getUserProperties()).thenReturn(userProperties);
+        StandardWebSocketSession session = Mockito.mock(StandardWebSocketSession.class);
+        when(session.getId()).thenReturn("s1");
+        when(session.getNativeSession(jakarta.websocket.Session.class)).thenReturn(standardSession);
+
+        pushService.open(session, "alice");
+
+        assertEquals(5000L, userProperties.get(PushConnection.SEND_TIMEOUT_PROPERTY));
+    }
+
+    @Test
+    public void testTimedOutSendClosesTheConnection() throws Exception {
+        when(channelService.getUserChannels("alice")).thenReturn(List.of(new Channel("General", Channel.ChannelType.PC)));
+        WebSocketSession session = session("s1");
+        doThrow(new SocketTimeoutException("Send timed out")).when(session).sendMessage(any());
+        pushService.open(session, "alice");
+
+        pushService.onChannelEvent(new ChannelEvent(1, "General", ChannelEvent.EventType.MESSAGE_DELETED, 1L, null, null, LocalDateTime.now()));
+
+        verify(session, timeout(1000)).close(CloseStatus.SESSION_NOT_RELIABLE);
+        // No more sends on the broken session
+        pushService.onChannelEvent(new ChannelEvent(2, "General", ChannelEvent.EventType.MESSAGE_DELETED, 2L, null, null, LocalDateTime.now()));
+        verify(session, after(100).times(1)).sendMessage(any());
+    }
+
+    @Test
+    public void testMembershipChangeSubscribesOpenConnections() {
+        when(channelService.getUserChannels("alice")).thenReturn(List.of());
+        pushService.open(session("s1"), "alice");
+
+        pushService.onChannelEvent(new ChannelEvent(1, "Social", ChannelEvent.EventType.MEMBERSHIP_CHANGED, null, "alice", null, LocalDateTime.now()));
+
+        assertEquals(1, pushService.getSubscriberCount("Social"));
+    }
+
+    private WebSocketSession session(String id) {
+        WebSocketSession session = Mockito.mock(WebSocketSession.class);
+        when(session.getId()).thenReturn(id);
+        when(session.isOpen()).thenReturn(true);
+        return session;
+    }
+}
@@ -0,0 +1,140 @@
+package com.messagingApp.messagingApp_backend.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+
+public class ReadMarkerBufferTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private ReadMarkerBuffer buffer;
+
+    @BeforeEach
+    public void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        buffer = new ReadMarkerBuffer(meterRegistry);
+    }
+
+    @Test
+    public void testMarkersAreCoalescedToTheHighestId() {
+        buffer.record("alice", "General", 5);
+        buffer.record("alice", "General", 9);
+        buffer.record("alice", "General", 7);
+        buffer.record("bob", "General", 3);
+
+        assertEquals(9L, buffer.getPending("alice", "General"));
+        assertNull(buffer.getPending("alice", "Social"));
+        assertEquals(2, buffer.getPendingCount());
+    }
+
+    @Test
+    public void testFlushWritesOneRowPerUserAndChannel() {
+        buffer.record("bob", "General", 3);
+        buffer.record("alice", "General", 5);
+        buffer.record("alice", "General", 9);
+
+        List<List<Object[]>> batches = new ArrayList<>();
+        try (MockedStatic<ServiceUtility> mockedStatic = Mockito.mockStatic(ServiceUtility.class)) {
+            mockedStatic.when(() -> ServiceUtility.executeBatch(anyString(), anyString(), anyList())).thenAnswer(invocation -> {
+                List<Object[]> params = invocation.getArgument(2);
+                batches.add(params);
+                return params.size();
+            });
+
+            assertEquals(2, buffer.flush());
+            assertEquals(0, buffer.flush()); // Nothing left, no second batch
+        }
+
+        assertEquals(1, batches.size());
+        assertArrayEquals(new Object[]{"alice", "General", 9L}, batches.get(0).get(0));
+        assertArrayEquals(new Object[]{"bob", "General", 3L}, batches.get(0).get(1));
+        assertEquals(0, buffer.getPendingCount());
+        assertEquals(2.0, meterRegistry.get("readmarkers.written").counter().count());
+    }
+
+    @Test
+    public void testFailedFlushKeepsMarkers() {
+        buffer.record("alice", "General", 5);
+
+        try (MockedStatic<ServiceUtility> mockedStatic = Mockito.mockStatic(ServiceUtility.class)) {
+            mockedStatic.when(() -> ServiceUtility.executeBatch(anyString(), anyString(), anyList())).thenReturn(-1);
+
+            assertEquals(0, buffer.flush());
+        }
+
+        assertEquals(5L, buffer.getPending("alice", "General"));
+    }
+
+    @Test
+    public void testFailedBatchIsWrittenOneByOneAndBadRowsDropped() {
+        buffer.record("alice", "General", 5);
+        buffer.record("bob", "Gone", 3); // Its channel was deleted meanwhile, the row always fails
+
+        try (MockedStatic<ServiceUtility> mockedStatic = Mockito.mockStatic(ServiceUtility.class)) {
+            mockedStatic.when(() -> ServiceUtility.executeBatch(anyString(), anyString(), anyList())).thenReturn(-1);
+            mockedStatic.when(() -> ServiceUtility.executeUpdate(anyString(), anyString(), any(Object[].class))).thenAnswer(invocation -> "Gone".equals(invocation.getArgument(3)) ? 0 : 1);
+
+            assertEquals(1, buffer.flush());
+            assertEquals(3L, buffer.getPending("bob", "Gone"));
+            for (int i = 1; i < ReadMarkerBuffer.MAX_ATTEMPTS; i++) {
+                assertEquals(0, buffer.flush());
+            }
+        }
+
+        assertEquals(0, buffer.getPendingCount());
+        assertEquals(1.0, meterRegistry.get("readmarkers.dropped").counter().count());
+    }
+
+    @Test
+    public void testUnreachableDatabaseStopsAtTheFirstRow() {
+        buffer.record("alice", "General", 5);
+        buffer.record("bob", "General", 3);
+
+        try (MockedStatic<ServiceUtility> mockedStatic = Mockito.mockStatic(ServiceUtility.class)) {
+            mockedStatic.when(() -> ServiceUtility.executeBatch(anyString(), anyString(), anyList())).thenReturn(-1);
+            mockedStatic.when(() -> ServiceUtility.executeUpdate(anyString(), anyString(), any(Object[].class))).thenReturn(0);
+
+            assertEquals(0, buffer.flush());
+            mockedStatic.verify(() -> ServiceUtility.executeUpdate(anyString(), anyString(), any(Object[].class)), Mockito.times(1));
+        }
+
+        assertEquals(2, buffer.getPendingCount());
+    }
+
+    @Test
+    public void testMarkerRecordedDuringFlushIsKept() {
+        buffer.record("alice", "General", 5);
+
+        try (MockedStatic<ServiceUtility> mockedStatic = Mockito.mockStatic(ServiceUtility.class)) {
+            mockedStatic.when(() -> ServiceUtility.executeBatch(anyString(), anyString(), any())).thenAnswer(invocation -> {
+                buffer.record("alice", "General", 8); // The user read more while the batch was running
+                return 1;
+            });
+
+            buffer.flush();
+        }
+
+        assertEquals(8L, buffer.getPending("alice", "General"));
+    }
+
+    @Test
+    public void testDeletedChannelMarkersAreDropped() {
+        buffer.record("alice", "General", 5);
+        buffer.record("alice", "Old", 2);
+        buffer.record(null, "General", 1);
+
+        buffer.removeChannel("Old");
+
+        assertEquals(1, buffer.getPendingCount());
+    }
+}
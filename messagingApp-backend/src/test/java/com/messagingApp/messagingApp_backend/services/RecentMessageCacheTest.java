@@ -0,0 +1,155 @@
+package com.messagingApp.messagingApp_backend.services;
+
+import com.messagingApp.messagingApp_backend.models.Channel;
+import com.messagingApp.messagingApp_backend.models.ChannelEvent;
+import com.messagingApp.messagingApp_backend.models.Message;
+import com.messagingApp.messagingApp_backend.models.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RecentMessageCacheTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private RecentMessageCache cache;
+
+    @BeforeEach
+    public void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new RecentMessageCache(meterRegistry, 3, 1 << 20);
+    }
+
+    @Test
+    public void testFirstReadLoadsThenHits() {
+        AtomicInteger loads = new AtomicInteger();
+
+        RecentMessageCache.Snapshot first = cache.get("General", limit -> {
+            loads.incrementAndGet();
+            assertEquals(4, limit);
+            return messages("General", 1, 2);
+        });
+        RecentMessageCache.Snapshot second = cache.get("General", limit -> {
+            loads.incrementAndGet();
+            return List.of();
+        });
+
+        assertEquals(1, loads.get());
+        assertEquals(List.of(1L, 2L), ids(second.getMessages()));
+        assertFalse(first.hasOlder());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("result", "hit").counter().count());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("result", "miss").counter().count());
+    }
+
+    @Test
+    public void testSentMessagesAreAddedAndOldestDropped() {
+        cache.get("General", limit -> messages("General", 1, 2, 3));
+
+        cache.onChannelEvent(created(5));
+        cache.onChannelEvent(created(4)); // Committed out of order
+
+        RecentMessageCache.Snapshot snapshot = cache.get("General", limit -> fail("Should not load again"));
+        assertEquals(List.of(3L, 4L, 5L), ids(snapshot.getMessages()));
+        assertTrue(snapshot.hasOlder());
+        assertNull(snapshot.getNewest(4)); // Older than the buffer, has to be read from the database
+        assertNull(snapshot.getAfter(1));
+        assertEquals(List.of(4L, 5L), ids(snapshot.getAfter(3)));
+    }
+
+    @Test
+    public void testMessagesSentWhileLoadingAreKept() {
+        RecentMessageCache.Snapshot snapshot = cache.get("General", limit -> {
+            // Sent after the query read the channel
+            cache.add("General", messages("General", 3).get(0));
+            return messages("General", 1, 2);
+        });
+
+        assertEquals(List.of(1L, 2L, 3L), ids(snapshot.getMessages()));
+    }
+
+    @Test
+    public void testDeletedMessagesArePurged() {
+        cache.get("General", limit -> messages("General", 1, 2));
+
+        cache.onChannelEvent(new ChannelEvent(2, "General", ChannelEvent.EventType.MESSAGE_DELETED, 1L, null, null, LocalDateTime.now()));
+
+        RecentMessageCache.Snapshot snapshot = cache.get("General", limit -> fail("Should not load again"));
+        assertEquals(List.of(2L), ids(snapshot.getMessages()));
+    }
+
+    @Test
+    public void testDeleteInTruncatedBufferReloads() {
+        cache.get("General", limit -> messages("General", 1, 2, 3, 4));
+
+        cache.remove("General", 3);
+
+        AtomicInteger loads = new AtomicInteger();
+        cache.get("General", limit -> {
+            loads.incrementAndGet();
+            return messages("General", 1, 2, 4);
+        });
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testLeastRecentlyReadChannelIsEvictedOverBudget() {
+        long messageBytes = RecentMessageCache.estimateBytes(messages("General", 1).get(0));
+        cache = new RecentMessageCache(meterRegistry = new SimpleMeterRegistry(), 3, messageBytes * 5);
+
+        cache.get("General", limit -> messages("General", 1, 2));
+        cache.get("Social", limit -> messages("Social", 3, 4));
+        cache.get("General", limit -> fail("Should not load again")); // Social is now the least recently read
+        cache.get("Random", limit -> messages("Random", 5, 6));
+
+        assertEquals(2, cache.getChannelCount());
+        assertTrue(cache.getTotalBytes() <= messageBytes * 5);
+        assertEquals(1.0, meterRegistry.get("cache.evictions").counter().count());
+
+        AtomicInteger loads = new AtomicInteger();
+        cache.get("Social", limit -> {
+            loads.incrementAndGet();
+            return messages("Social", 3, 4);
+        });
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testChannelsWithMessagesOfTheSenderAreEvicted() {
+        cache.get("General", limit -> messages("General", 1, 2));
+        cache.get("Social", limit -> List.of(new Message(3L, "Hi", new User("bob", null, User.UserRole.MEMBER), new Channel("Social", Channel.ChannelType.PC), LocalDateTime.now())));
+
+        cache.evictSender("alice");
+
+        assertEquals(1, cache.getChannelCount());
+        assertEquals(RecentMessageCache.estimateBytes(cache.get("Social", limit -> fail("Should not load again")).getMessages().get(0)), cache.getTotalBytes());
+        AtomicInteger loads = new AtomicInteger();
+        cache.get("General", limit -> {
+            loads.incrementAndGet();
+            return messages("General", 1, 2);
+        });
+        assertEquals(1, loads.get());
+    }
+
+    private ChannelEvent created(long id) {
+        Message message = messages("General", id).get(0);
+        return new ChannelEvent(id, "General", ChannelEvent.EventType.MESSAGE_CREATED, id, "alice", message, LocalDateTime.now());
+    }
+
+    private List<Message> messages(String channelName, long... ids) {
+        List<Message> messages = new ArrayList<>();
+        for (long id : ids) {
+            messages.add(new Message(id, "Message " + id, new User("alice", null, User.UserRole.MEMBER), new Channel(channelName, Channel.ChannelType.PC), LocalDateTime.now()));
+        }
+        return messages;
+    }
+
+    private List<Long> ids(List<Message> messages) {
+        return messages.stream().map(Message::getId).toList();
+    }
+}
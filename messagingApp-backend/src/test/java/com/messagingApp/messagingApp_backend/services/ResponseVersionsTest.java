@@ -0,0 +1,82 @@
+package com.messagingApp.messagingApp_backend.services;
+
+import com.messagingApp.messagingApp_backend.models.ChannelEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResponseVersionsTest {
+
+    private ResponseVersions versions;
+
+    @BeforeEach
+    public void setup() {
+        versions = new ResponseVersions(Long.MAX_VALUE); // One window for the whole test, the tags only change with the counters
+    }
+
+    @Test
+    public void testChannelEventsChangeOnlyThatChannel() {
+        String general = versions.channelDataTag("alice", "General");
+        String social = versions.channelDataTag("alice", "Social");
+
+        versions.onChannelEvent(new ChannelEvent(1, "General", ChannelEvent.EventType.MESSAGE_CREATED, 10L, "bob", null, LocalDateTime.now()));
+
+        assertNotEquals(general, versions.channelDataTag("alice", "General"));
+        assertEquals(social, versions.channelDataTag("alice", "Social"));
+    }
+
+    @Test
+    public void testMembershipChangeChangesTheUser() {
+        String alice = versions.channelDataTag("alice", "Social");
+        String bob = versions.channelDataTag("bob", "Social");
+
+        // Alice joining General changes her channel list on every channel page
+        versions.onChannelEvent(new ChannelEvent(1, "General", ChannelEvent.EventType.MEMBERSHIP_CHANGED, null, "alice", null, LocalDateTime.now()));
+
+        assertNotEquals(alice, versions.channelDataTag("alice", "Social"));
+        assertEquals(bob, versions.channelDataTag("bob", "Social"));
+    }
+
+    @Test
+    public void testUsersNeverShareATag() {
+        assertNotEquals(versions.channelDataTag("alice", "General"), versions.channelDataTag("bob", "General"));
+        assertNotEquals(versions.unreadTag("alice", List.of()), versions.unreadTag("bob", List.of()));
+    }
+
+    @Test
+    public void testUnreadTagFollowsTheUsersChannels() {
+        String unread = versions.unreadTag("alice", List.of("General", "Social"));
+
+        versions.channelChanged("Random");
+        assertEquals(unread, versions.unreadTag("alice", List.of("General", "Social")));
+
+        versions.channelChanged("Social");
+        assertNotEquals(unread, versions.unreadTag("alice", List.of("General", "Social")));
+    }
+
+    @Test
+    public void testTagsExpireWithTheirWindow() throws InterruptedException {
+        versions = new ResponseVersions(1);
+        String general = versions.channelDataTag("alice", "General");
+
+        Thread.sleep(5); // Nothing changed here, but another instance may have changed the channel meanwhile
+
+        assertNotEquals(general, versions.channelDataTag("alice", "General"));
+    }
+
+    @Test
+    public void testDirectoryChanges() {
+        String users = versions.directoryTag();
+        String general = versions.channelDataTag("alice", "General");
+
+        versions.removeChannel("Random");
+
+        assertNotEquals(users, versions.directoryTag());
+        assertNotEquals(general, versions.channelDataTag("alice", "General"));
+        assertTrue(versions.directoryTag().startsWith("W/\"") && versions.directoryTag().endsWith("\""));
+    }
+}
@@ -0,0 +1,62 @@
+package com.messagingApp.messagingApp_backend.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ServiceUtilityTest {
+
+    @Test
+    public void testQueryNameIsTheNameOfTheStatement() {
+        String query = """
+            /* messages.newest */
+            SELECT m.id, m.text FROM messages m JOIN users u ON m.username = u.username
+            WHERE m.channel_name = ? ORDER BY m.id DESC LIMIT ?
+            """;
+        assertEquals("messages.newest", ServiceUtility.queryName(query));
+        assertEquals("users.role", ServiceUtility.queryName("/* users.role */ SELECT role FROM users WHERE username = ?"));
+    }
+
+    @Test
+    public void testStatementsOnTheSameTableKeepTheirOwnNames() {
+        String before = "/* messages.before */ SELECT m.id FROM messages m WHERE m.channel_name = ? AND m.id < ?";
+        String after = "/* messages.after */ SELECT m.id FROM messages m WHERE m.channel_name = ? AND m.id > ?";
+        assertEquals("messages.before", ServiceUtility.queryName(before));
+        assertEquals("messages.after", ServiceUtility.queryName(after));
+    }
+
+    @Test
+    public void testQueryNameWithoutANameIsVerbAndTable() {
+        assertEquals("select messages",
+            ServiceUtility.queryName("SELECT m.id, m.text FROM messages m JOIN users u ON m.username = u.username WHERE m.channel_name = ?"));
+        assertEquals("update users",
+            ServiceUtility.queryName("UPDATE users SET role = ? WHERE username = ?"));
+        assertEquals("delete user_channel",
+            ServiceUtility.queryName("DELETE FROM user_channel WHERE channel_name = ?"));
+    }
+
+    @Test
+    public void testQueryNameIsTheFirstWrite() {
+        String query = """
+            WITH input (text, username) AS (
+                VALUES (?, ?)
+            ),
+            m AS (
+                INSERT INTO messages (text, username) SELECT text, username FROM input
+                RETURNING id
+            )
+            SELECT m.id FROM m
+            """;
+        assertEquals("insert messages", ServiceUtility.queryName(query));
+    }
+
+    @Test
+    public void testQueryNameDoesNotDependOnTheCaller() {
+        String query = "INSERT INTO messages_seen (username, channel_name, last_read_msg_id) VALUES (?, ?, ?) ON CONFLICT DO NOTHING";
+        Supplier<String> name = () -> ServiceUtility.queryName(query);
+        assertEquals("insert messages_seen", name.get());
+        assertEquals(name.get(), ServiceUtility.queryName(query));
+    }
+}